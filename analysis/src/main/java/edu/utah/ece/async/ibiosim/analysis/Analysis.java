@@ -14,7 +14,11 @@
 package edu.utah.ece.async.ibiosim.analysis;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.text.ParseException;
@@ -27,6 +31,7 @@ import org.jdom2.JDOMException;
 import org.jlibsedml.AbstractTask;
 import org.jlibsedml.Libsedml;
 import org.jlibsedml.Output;
+import org.jlibsedml.RepeatedTask;
 import org.jlibsedml.SEDMLDocument;
 import org.jlibsedml.SedML;
 import org.jlibsedml.XMLException;
@@ -44,6 +49,20 @@ import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisPropertiesLoader;
 import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisPropertiesWriter;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.ParameterScan;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.ScanExecutor;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.SEDMLScan;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.SEDMLScanReport;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.ScanTSDWriter;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity.ForwardSensitivity;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity.GlobalSensitivity;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity.ParameterPointExecutor;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc.BoundedProperty;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc.StatisticalModelChecker;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate.SteadyStateContinuation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate.SteadyStateSolver;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate.SteadyStateSystem;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
 import edu.utah.ece.async.ibiosim.dataModels.graphData.GraphData;
 import edu.utah.ece.async.ibiosim.dataModels.util.Executables;
@@ -60,7 +79,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObserver;
  *  <li>Optional:</li>
  *  <ul>
  *    <li>-d [value]: project directory</li>
- *    <li>-p [value]: loads a properties file</li>
+ *    <li>-p [value]: loads a properties file, and runs the parameter sweeps of the .sim file next to it</li>
  *    <li>-outDir [value]: where the output should be stored </li>
  *    <li>-ti [value]: non-negative double initial simulation time</li>
  *    <li>-tl [value]: non-negative double simulation time limit</li>
@@ -72,8 +91,14 @@ import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObserver;
  *    <li>-sErr [value]: positive double for relative error</li>
  *    <li>-sd [value]: long for random seed</li>
  *    <li>-r [value]: integer for number of runs</li>
- *    <li>-sim [value]: simulation type. Options are: ode, hode, ssa, hssa, dfba, jode, jssa.</li>
+ *    <li>-sim [value]: simulation type. Options are: ode, hode, ssa, hssa, hcle, dfba, jode, jssa.</li>
  *    <li>-data [value]: graph data type. Options are: csv, tsd.</li>
+ *    <li>-smc [value]: estimates the probability of a bounded property, e.g. "F[0,100] S2 &gt;= 50", using the hierarchical SSA.</li>
+ *    <li>-sens [value]: comma-separated parameters whose forward sensitivities are written to sensitivity.csv.</li>
+ *    <li>-gsa [value]: global sensitivity method written to gsa.csv. Options are: morris, sobol.</li>
+ *    <li>-bounds [value]: parameter ranges of the global sensitivity analysis, e.g. "k1=0.5:2,k2=0:1".</li>
+ *    <li>-ss [value]: steady-state analysis written to steadystate.csv. Options are: solve, or a continuation such as "k1=0.5:2:10".</li>
+ *    <li>-outputs [value]: comma-separated variables of the sensitivity and steady-state analyses.</li>
  *  </ul>
  *  <li>Input file: (Combine archive, SED-ML, or SBML.</li>
  * </ul>
@@ -100,9 +125,21 @@ public class Analysis implements BioObserver
   private static final String sim = "Simulation";
   private static final String data = "Graph Data Type";
 
+  private static final double smcEpsilon = 0.02;
+  private static final double smcDelta = 0.05;
+  private static final int morrisTrajectories = 10;
+  private static final int morrisLevels = 4;
+  private static final int sobolSamples = 256;
+
   private String sedML = null;
   private String propertiesFile = null;
   private String omex = null;
+  private String smcProperty = null;
+  private String sensitivityParameters = null;
+  private String gsaMethod = null;
+  private String gsaBounds = null;
+  private String outputs = null;
+  private String steadyState = null;
 
   private boolean isSetRoot = false;
 
@@ -133,6 +170,12 @@ public class Analysis implements BioObserver
     System.err.println("\t -r [value]: number of runs");
     System.err.println("\t -sim [value]: simulation type");
     System.err.println("\t -data [value]: output data type");
+    System.err.println("\t -smc [value]: bounded property to estimate, e.g. \"F[0,100] S2 >= 50\"");
+    System.err.println("\t -sens [value]: parameters of the forward sensitivity analysis, e.g. \"k1,k2\"");
+    System.err.println("\t -gsa [value]: global sensitivity method (morris or sobol)");
+    System.err.println("\t -bounds [value]: parameter ranges of the global sensitivity analysis, e.g. \"k1=0.5:2,k2=0:1\"");
+    System.err.println("\t -ss [value]: steady-state analysis, either \"solve\" or a continuation such as \"k1=0.5:2:10\"");
+    System.err.println("\t -outputs [value]: variables of the sensitivity and steady-state analyses, e.g. \"S1,S2\"");
     System.exit(1);
   }
 
@@ -211,6 +254,24 @@ public class Analysis implements BioObserver
       case "-data":
         analysis.propertiesMap.put(data, value);
         break;
+      case "-smc":
+        analysis.smcProperty = value;
+        break;
+      case "-sens":
+        analysis.sensitivityParameters = value;
+        break;
+      case "-gsa":
+        analysis.gsaMethod = value;
+        break;
+      case "-bounds":
+        analysis.gsaBounds = value;
+        break;
+      case "-outputs":
+        analysis.outputs = value;
+        break;
+      case "-ss":
+        analysis.steadyState = value;
+        break;
       case "-outDir":
         analysis.properties.setOutDir(value);
         File file = new File(value);
@@ -268,10 +329,209 @@ public class Analysis implements BioObserver
       }
       loadUserValues(propertiesMap);
       AnalysisPropertiesWriter.createProperties(properties);
-      run.execute(properties.getDirectory(),properties.getFilename());
+      if(smcProperty != null)
+      {
+        checkProperty(smcProperty);
+      }
+      else if(gsaMethod != null)
+      {
+        runGlobalSensitivity();
+      }
+      else if(sensitivityParameters != null)
+      {
+        runForwardSensitivity();
+      }
+      else if(steadyState != null)
+      {
+        runSteadyState();
+      }
+      else
+      {
+        ParameterScan scan = loadParameterScan();
+        if(scan != null && scan.getNumOfPoints() > 0)
+        {
+          new ScanExecutor(CompiledModel.compile(properties)).run(scan, new ScanTSDWriter(scan.getParameters(), getOutputDirectory()));
+        }
+        else
+        {
+          run.execute(properties.getDirectory(),properties.getFilename());
+        }
+      }
+    }
+  }
+
+  private void checkProperty(String property) throws IOException, XMLStreamException, BioSimException
+  {
+    BoundedProperty boundedProperty;
+    try
+    {
+      boundedProperty = BoundedProperty.parse(property);
+    }
+    catch (IllegalArgumentException e)
+    {
+      throw new BioSimException(e.getMessage(), "Error in statistical model checking");
+    }
+    StatisticalModelChecker checker = new StatisticalModelChecker(properties, boundedProperty, Runtime.getRuntime().availableProcessors());
+    StatisticalModelChecker.Result result = checker.estimate(smcEpsilon, smcDelta);
+    System.out.println("P(" + property + ") = " + result.getProbability() + " +/- " + smcEpsilon + " with confidence " + (1 - smcDelta)
+      + " (" + result.getNumberOfSuccesses() + "/" + result.getNumberOfSamples() + " trajectories)");
+  }
+
+  /**
+   * Reads the parameter sweeps of the model editor from the .sim file that is saved next to the
+   * properties file. The first line of the file is the reference model and the others are the
+   * parameter changes.
+   *
+   * @return the parameter scan, or null if there is no .sim file.
+   */
+  private ParameterScan loadParameterScan() throws IOException, BioSimException
+  {
+    if(propertiesFile == null)
+    {
+      return null;
+    }
+    File simFile = new File(propertiesFile.substring(0, propertiesFile.lastIndexOf(".properties")) + ".sim");
+    if(!simFile.exists())
+    {
+      return null;
+    }
+    List<String> lines = Files.readAllLines(simFile.toPath());
+    try
+    {
+      return ParameterScan.parse(lines.subList(Math.min(1, lines.size()), lines.size()));
+    }
+    catch (IllegalArgumentException e)
+    {
+      throw new BioSimException(e.getMessage(), "Error in parameter scan");
+    }
+  }
+
+  private void runForwardSensitivity() throws IOException, XMLStreamException, BioSimException
+  {
+    ForwardSensitivity sensitivity = new ForwardSensitivity(CompiledModel.compile(properties), Arrays.asList(sensitivityParameters.split(",")), getOutputs());
+    try (Writer writer = new FileWriter(getOutputDirectory() + File.separator + "sensitivity.csv"))
+    {
+      sensitivity.run(writer);
     }
   }
 
+  private void runGlobalSensitivity() throws IOException, XMLStreamException, BioSimException
+  {
+    if(gsaBounds == null)
+    {
+      throw new BioSimException("Global sensitivity analysis requires -bounds.", "Error in sensitivity analysis");
+    }
+    String[] ranges = gsaBounds.split(",");
+    List<String> parameters = new ArrayList<String>();
+    double[] lowerBounds = new double[ranges.length];
+    double[] upperBounds = new double[ranges.length];
+    for(int i = 0; i < ranges.length; i++)
+    {
+      String[] range = ranges[i].split("[=:]");
+      if(range.length != 3)
+      {
+        throw new BioSimException("Invalid parameter range " + ranges[i] + ".", "Error in sensitivity analysis");
+      }
+      parameters.add(range[0].trim());
+      try
+      {
+        lowerBounds[i] = Double.parseDouble(range[1]);
+        upperBounds[i] = Double.parseDouble(range[2]);
+      }
+      catch (NumberFormatException e)
+      {
+        throw new BioSimException("Invalid parameter range " + ranges[i] + ".", "Error in sensitivity analysis");
+      }
+    }
+    int numberOfThreads = Runtime.getRuntime().availableProcessors();
+    ParameterPointExecutor executor = new ParameterPointExecutor(CompiledModel.compile(properties), parameters, getOutputs(), numberOfThreads);
+    GlobalSensitivity sensitivity = new GlobalSensitivity(executor, lowerBounds, upperBounds, properties.getSimulationProperties().getRndSeed());
+    try (Writer writer = new FileWriter(getOutputDirectory() + File.separator + "gsa.csv"))
+    {
+      switch(gsaMethod)
+      {
+      case "morris":
+        sensitivity.morris(morrisTrajectories, morrisLevels, writer);
+        break;
+      case "sobol":
+        sensitivity.sobol(sobolSamples, writer);
+        break;
+      default:
+        throw new BioSimException("Unknown global sensitivity method " + gsaMethod + ".", "Error in sensitivity analysis");
+      }
+    }
+  }
+
+  private List<String> getOutputs() throws BioSimException
+  {
+    if(outputs == null)
+    {
+      throw new BioSimException("Sensitivity analysis requires -outputs.", "Error in sensitivity analysis");
+    }
+    return Arrays.asList(outputs.split(","));
+  }
+
+  /**
+   * Finds the steady state of the model from its initial values, or continues it in a parameter
+   * when the value of -ss is of the form id=start:stop:steps.
+   */
+  private void runSteadyState() throws IOException, XMLStreamException, BioSimException
+  {
+    if(outputs == null)
+    {
+      throw new BioSimException("Steady-state analysis requires -outputs.", "Error in steady-state analysis");
+    }
+    List<String> listOfOutputs = Arrays.asList(outputs.split(","));
+    CompiledModel compiledModel = CompiledModel.compile(properties);
+    try (Writer writer = new FileWriter(getOutputDirectory() + File.separator + "steadystate.csv"))
+    {
+      if(steadyState.equals("solve"))
+      {
+        SteadyStateSystem system = new SteadyStateSystem(compiledModel);
+        SteadyStateSolver solver = new SteadyStateSolver(system, properties.getSimulationProperties().getAbsError());
+        double[] x = system.getValues();
+        if(!solver.solve(x))
+        {
+          throw new BioSimException("No steady state was found.", "Error in steady-state analysis");
+        }
+        system.evaluate(x, new double[x.length]);
+        StringBuilder header = new StringBuilder();
+        StringBuilder row = new StringBuilder();
+        for(String output : listOfOutputs)
+        {
+          header.append(header.length() > 0 ? "," : "").append(output);
+          row.append(row.length() > 0 ? "," : "").append(system.getTopLevelValue(output));
+        }
+        writer.write(header.toString() + "\n" + row.toString() + "\n");
+        return;
+      }
+      String[] range = steadyState.split("[=:]");
+      if(range.length != 4)
+      {
+        throw new BioSimException("Invalid steady-state analysis " + steadyState + ".", "Error in steady-state analysis");
+      }
+      SteadyStateContinuation continuation = new SteadyStateContinuation(compiledModel, range[0].trim(), listOfOutputs);
+      try
+      {
+        if(!continuation.run(Double.parseDouble(range[1]), Double.parseDouble(range[2]), Integer.parseInt(range[3]), writer))
+        {
+          Message message = new Message();
+          message.setLog("The steady-state branch of " + range[0].trim() + " ended before " + range[2] + ".");
+          update(message);
+        }
+      }
+      catch (IllegalArgumentException e)
+      {
+        throw new BioSimException("Invalid steady-state analysis " + steadyState + ".", "Error in steady-state analysis");
+      }
+    }
+  }
+
+  private String getOutputDirectory()
+  {
+    return properties.getOutDir().equals(".") ? properties.getDirectory() : properties.getOutDir();
+  }
+
   private static void readInput(Analysis analysis, String filename)
   {
     if(!analysis.isSetRoot)
@@ -399,53 +659,23 @@ public class Analysis implements BioObserver
     SedML sedml = sedmlDoc.getSedMLModel();
     List<AbstractTask> listOfTasks = sedml.getTasks();
     String root = properties.getRoot();
+    List<String> scannedOutputs = new ArrayList<String>();
     for(AbstractTask task : listOfTasks)
     {
-      /* Load from SED-ML */
-      properties.setId(task.getId());
-
-      org.jlibsedml.Model model = sedml.getModelWithId(task.getModelReference());
-      String modelSource = sedml.getModelWithId(task.getModelReference()).getSource();
-      while (sedml.getModelWithId(modelSource)!=null) {
-        modelSource = sedml.getModelWithId(modelSource).getSource();
-      }
-      if (modelSource.indexOf("/")!=-1) {
-        modelSource = modelSource.substring(modelSource.lastIndexOf("/")+1);
+      if (task instanceof RepeatedTask)
+      {
+        scannedOutputs.addAll(runRepeatedTask(sedmlDoc, (RepeatedTask) task, properties, userValues));
+        continue;
       }
-      SBMLDocument sbmlDoc = SBMLReader.read(new File(root + File.separator + modelSource));
-      if (model.getListOfChanges().size() != 0) {
-        try {
-          sbmlDoc = applyChanges(sedmlDoc, sbmlDoc, model);
-        } catch (Exception e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        }
-      } 
-      SBMLWriter Xwriter = new SBMLWriter();
-      Xwriter.write(sbmlDoc, root + File.separator + modelSource + "_");	
-
-      properties.setModelFile(modelSource);
-      AnalysisPropertiesLoader.loadSEDML(sedmlDoc, "", properties);
-      //      File analysisDir = new File(root + File.separator + task.getId());
-      /* Replace values with properties given by user */
-      loadUserValues(userValues);
-      File analysisDir = new File(properties.getDirectory());
-      if (!analysisDir.exists()) 
-      {
-        new File(properties.getDirectory()).mkdir();
-      }
-      /* Flattening happens here */
-      BioModel biomodel =  BioModel.createBioModel(root, this);
-      biomodel.addObserver(this);
-      biomodel.load(root + File.separator + modelSource + "_");
-      SBMLDocument flatten = biomodel.flattenModel(true);
-      String newFilename = root + File.separator + task.getId() + File.separator + modelSource;
-      SBMLWriter.write(flatten, newFilename, ' ', (short) 2);
-      AnalysisPropertiesWriter.createProperties(properties);
+      prepareTask(sedmlDoc, task, properties, userValues);
       run.execute(properties.getDirectory(),properties.getFilename());
     }
     for (Output output : sedml.getOutputs()) 
     {
+      if (scannedOutputs.contains(output.getId()))
+      {
+        continue;
+      }
       if (output.isPlot2d()) 
       {
         //        GraphData.createTSDGraph(sedmlDoc,GraphData.TSD_DATA_TYPE,root,null,output.getId(),
@@ -463,6 +693,81 @@ public class Analysis implements BioObserver
     }
   }
 
+  /**
+   * Applies the model changes of a task, flattens its model into the task directory and loads the
+   * analysis properties of the task.
+   */
+  private void prepareTask(SEDMLDocument sedmlDoc, AbstractTask task, AnalysisProperties properties, HashMap<String, String> userValues) throws Exception
+  {
+    SedML sedml = sedmlDoc.getSedMLModel();
+    String root = properties.getRoot();
+    /* Load from SED-ML */
+    properties.setId(task.getId());
+
+    org.jlibsedml.Model model = sedml.getModelWithId(task.getModelReference());
+    String modelSource = sedml.getModelWithId(task.getModelReference()).getSource();
+    while (sedml.getModelWithId(modelSource)!=null) {
+      modelSource = sedml.getModelWithId(modelSource).getSource();
+    }
+    if (modelSource.indexOf("/")!=-1) {
+      modelSource = modelSource.substring(modelSource.lastIndexOf("/")+1);
+    }
+    SBMLDocument sbmlDoc = SBMLReader.read(new File(root + File.separator + modelSource));
+    if (model.getListOfChanges().size() != 0) {
+      try {
+        sbmlDoc = applyChanges(sedmlDoc, sbmlDoc, model);
+      } catch (Exception e) {
+        // TODO Auto-generated catch block
+        e.printStackTrace();
+      }
+    } 
+    SBMLWriter Xwriter = new SBMLWriter();
+    Xwriter.write(sbmlDoc, root + File.separator + modelSource + "_");	
+
+    properties.setModelFile(modelSource);
+    AnalysisPropertiesLoader.loadSEDML(sedmlDoc, "", properties);
+    //      File analysisDir = new File(root + File.separator + task.getId());
+    /* Replace values with properties given by user */
+    loadUserValues(userValues);
+    File analysisDir = new File(properties.getDirectory());
+    if (!analysisDir.exists()) 
+    {
+      new File(properties.getDirectory()).mkdir();
+    }
+    /* Flattening happens here */
+    BioModel biomodel =  BioModel.createBioModel(root, this);
+    biomodel.addObserver(this);
+    biomodel.load(root + File.separator + modelSource + "_");
+    SBMLDocument flatten = biomodel.flattenModel(true);
+    String newFilename = root + File.separator + task.getId() + File.separator + modelSource;
+    SBMLWriter.write(flatten, newFilename, ' ', (short) 2);
+    AnalysisPropertiesWriter.createProperties(properties);
+  }
+
+  /**
+   * Runs the parameter scan of a repeated task. The model of the repeated simulation task is
+   * compiled once, the points are simulated in parallel, and the data generators of the outputs
+   * of the repeated task are evaluated on the results of each point.
+   *
+   * @return the ids of the outputs written from the scan.
+   */
+  private List<String> runRepeatedTask(SEDMLDocument sedmlDoc, RepeatedTask task, AnalysisProperties properties, HashMap<String, String> userValues) throws Exception
+  {
+    SedML sedml = sedmlDoc.getSedMLModel();
+    ParameterScan scan = SEDMLScan.create(sedml, task);
+    prepareTask(sedmlDoc, SEDMLScan.getBaseTask(sedml, task), properties, userValues);
+    CompiledModel compiledModel = CompiledModel.compile(properties);
+    File scanDir = new File(properties.getRoot() + File.separator + task.getId());
+    if (!scanDir.exists()) 
+    {
+      scanDir.mkdir();
+    }
+    try (SEDMLScanReport report = new SEDMLScanReport(sedml, task.getId(), scan.getParameters(), scanDir.getPath()))
+    {
+      new ScanExecutor(compiledModel).run(scan, report);
+      return report.getOutputs();
+    }
+  }
 
 
   private void loadUserValues(HashMap<String, String> userValues)
@@ -534,6 +839,11 @@ public class Analysis implements BioObserver
           properties.setSim("SSA-Direct (Hierarchical)");
           properties.setSsa();
         }
+        else if(value.equals("hcle"))
+        {
+          properties.setSim("Chemical-Langevin (Hierarchical)");
+          properties.setSsa();
+        }
         else if(value.equals("dfba"))
         {
           properties.setSim("Mixed-Hierarchical");
@@ -442,6 +442,9 @@ public class Run extends CoreObservable implements ActionListener {
     } else if (sim.equals("Hybrid-Hierarchical")) {
       dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_HYBRID);
       dynSim.addObservable(this);
+    } else if (sim.equals("Chemical-Langevin (Hierarchical)")) {
+      dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_CLE);
+      dynSim.addObservable(this);
     } else if (sim.equals("Runge-Kutta-Fehlberg (Dynamic)")) {
       dynSim = new DynamicSimulation(SimulationType.RK);
       dynSim.addObservable(this);
@@ -0,0 +1,450 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import edu.utah.ece.async.lema.verification.lpn.ExprTree;
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+
+/**
+ * Checks CSL path and steady-state formulas over a frozen copy of a {@link StateGraph}.
+ * The CTMC is stored as a sparse row-compressed rate matrix, satisfaction sets are
+ * {@link BitSet}s, and every probability is computed for all states at once
+ * (time-bounded until by uniformization, unbounded until and long-run probabilities by
+ * Gauss-Seidel). Results are cached by subformula so that they can be shared across
+ * properties checked against the same graph.
+ *
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CSLChecker {
+
+	private static final int MAX_ITERATIONS = 1000000;
+
+	private final LPN lhpn;
+
+	private final int numStates;
+
+	/*
+	 * Outgoing transitions of state s are at indices rowStart[s]..rowStart[s+1]-1 of
+	 * column and rate.
+	 */
+	private final int[] rowStart;
+
+	private final int[] column;
+
+	private final double[] rate;
+
+	private final double[] exitRate;
+
+	/*
+	 * Incoming transitions, in the same layout, used for backward reachability.
+	 */
+	private final int[] reverseRowStart;
+
+	private final int[] reverseColumn;
+
+	private final HashMap<String, String>[] stateVariables;
+
+	private final double error;
+
+	private final HashMap<String, BitSet> satCache;
+
+	private final HashMap<String, double[]> probabilityCache;
+
+	/**
+	 * @param lhpn the LPN whose variables appear in the formulas.
+	 * @param rowStart row offsets of the sparse rate matrix (length numStates + 1).
+	 * @param column target state of each transition.
+	 * @param rate rate of each transition.
+	 * @param stateVariables variable valuation of each state.
+	 * @param error truncation error for uniformization and iterative solvers.
+	 */
+	public CSLChecker(LPN lhpn, int[] rowStart, int[] column, double[] rate, HashMap<String, String>[] stateVariables,
+			double error) {
+		this.lhpn = lhpn;
+		this.numStates = rowStart.length - 1;
+		this.rowStart = rowStart;
+		this.column = column;
+		this.rate = rate;
+		this.stateVariables = stateVariables;
+		this.error = error;
+		satCache = new HashMap<String, BitSet>();
+		probabilityCache = new HashMap<String, double[]>();
+		exitRate = new double[numStates];
+		int[] inDegree = new int[numStates + 1];
+		for (int s = 0; s < numStates; s++) {
+			for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+				exitRate[s] += rate[i];
+				inDegree[column[i] + 1]++;
+			}
+		}
+		reverseRowStart = new int[numStates + 1];
+		for (int s = 0; s < numStates; s++) {
+			reverseRowStart[s + 1] = reverseRowStart[s] + inDegree[s + 1];
+		}
+		reverseColumn = new int[column.length];
+		int[] next = new int[numStates];
+		for (int s = 0; s < numStates; s++) {
+			next[s] = reverseRowStart[s];
+		}
+		for (int s = 0; s < numStates; s++) {
+			for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+				reverseColumn[next[column[i]]++] = s;
+			}
+		}
+	}
+
+	public int getNumberOfStates() {
+		return numStates;
+	}
+
+	/**
+	 * Adds the per-state values of a derived variable (e.g., the probability of a nested
+	 * formula) so that later formulas can refer to it.
+	 */
+	public void addStateVariable(String variable, double[] values) {
+		for (int s = 0; s < numStates; s++) {
+			stateVariables[s].put(variable, "" + values[s]);
+		}
+	}
+
+	/**
+	 * Returns the set of states in which the given LPN expression evaluates to true.
+	 */
+	public BitSet getSatisfyingStates(String condition) {
+		BitSet sat = satCache.get(condition);
+		if (sat == null) {
+			sat = new BitSet(numStates);
+			if (condition.equals("true")) {
+				sat.set(0, numStates);
+			}
+			else if (!condition.equals("false")) {
+				ExprTree expr = new ExprTree(lhpn);
+				expr.token = expr.intexpr_gettok(condition);
+				expr.intexpr_L(condition);
+				for (int s = 0; s < numStates; s++) {
+					if (expr.evaluateExpr(stateVariables[s]) == 1.0) {
+						sat.set(s);
+					}
+				}
+			}
+			satCache.put(condition, sat);
+		}
+		return sat;
+	}
+
+	/**
+	 * Computes, for every state, the probability of phi U[lower,upper] psi. An upper
+	 * bound of {@link Double#POSITIVE_INFINITY} gives the time-unbounded until.
+	 */
+	public double[] getUntilProbabilities(String phi, String psi, double lower, double upper) {
+		String key = "U|" + phi + "|" + psi + "|" + lower + "|" + upper;
+		double[] result = probabilityCache.get(key);
+		if (result != null) {
+			return result;
+		}
+		BitSet phiSat = getSatisfyingStates(phi);
+		BitSet psiSat = getSatisfyingStates(psi);
+		if (Double.isInfinite(upper)) {
+			result = unboundedUntil(phiSat, psiSat);
+		}
+		else {
+			// Make psi states and states violating both phi and psi absorbing.
+			BitSet absorbing = (BitSet) phiSat.clone();
+			absorbing.flip(0, numStates);
+			absorbing.or(psiSat);
+			double[] target = new double[numStates];
+			for (int s = psiSat.nextSetBit(0); s >= 0; s = psiSat.nextSetBit(s + 1)) {
+				target[s] = 1.0;
+			}
+			result = transientBackward(target, absorbing, upper - lower);
+		}
+		if (lower > 0) {
+			// Paths must remain in phi states for the first lower time units.
+			BitSet notPhi = (BitSet) phiSat.clone();
+			notPhi.flip(0, numStates);
+			double[] restricted = new double[numStates];
+			for (int s = phiSat.nextSetBit(0); s >= 0; s = phiSat.nextSetBit(s + 1)) {
+				restricted[s] = result[s];
+			}
+			result = transientBackward(restricted, notPhi, lower);
+		}
+		probabilityCache.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Computes, for every state, the long-run probability of being in a psi state.
+	 */
+	public double[] getSteadyStateProbabilities(String psi) {
+		String key = "S|" + psi;
+		double[] result = probabilityCache.get(key);
+		if (result != null) {
+			return result;
+		}
+		BitSet psiSat = getSatisfyingStates(psi);
+		int[] bscc = findBottomComponents();
+		HashMap<Integer, Double> bsccValues = new HashMap<Integer, Double>();
+		BitSet fixed = new BitSet(numStates);
+		result = new double[numStates];
+		for (int s = 0; s < numStates; s++) {
+			if (bscc[s] >= 0) {
+				Double value = bsccValues.get(bscc[s]);
+				if (value == null) {
+					value = componentSteadyState(bscc, bscc[s], psiSat);
+					bsccValues.put(bscc[s], value);
+				}
+				result[s] = value;
+				fixed.set(s);
+			}
+		}
+		solveReachability(result, fixed);
+		probabilityCache.put(key, result);
+		return result;
+	}
+
+	private double[] unboundedUntil(BitSet phiSat, BitSet psiSat) {
+		// States that can reach psi along phi states; all others have probability 0.
+		BitSet canReach = (BitSet) psiSat.clone();
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for (int s = psiSat.nextSetBit(0); s >= 0; s = psiSat.nextSetBit(s + 1)) {
+			queue.add(s);
+		}
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			for (int i = reverseRowStart[s]; i < reverseRowStart[s + 1]; i++) {
+				int pred = reverseColumn[i];
+				if (!canReach.get(pred) && phiSat.get(pred)) {
+					canReach.set(pred);
+					queue.add(pred);
+				}
+			}
+		}
+		double[] result = new double[numStates];
+		BitSet fixed = (BitSet) canReach.clone();
+		fixed.flip(0, numStates);
+		fixed.or(psiSat);
+		for (int s = psiSat.nextSetBit(0); s >= 0; s = psiSat.nextSetBit(s + 1)) {
+			result[s] = 1.0;
+		}
+		solveReachability(result, fixed);
+		return result;
+	}
+
+	/*
+	 * Solves x(s) = sum R(s,s')/E(s) x(s') for all states not in fixed, by Gauss-Seidel,
+	 * keeping the values of the fixed states.
+	 */
+	private void solveReachability(double[] x, BitSet fixed) {
+		double maxChange;
+		int iteration = 0;
+		do {
+			maxChange = 0;
+			for (int s = fixed.nextClearBit(0); s < numStates; s = fixed.nextClearBit(s + 1)) {
+				if (exitRate[s] == 0) {
+					continue;
+				}
+				double value = 0;
+				for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+					value += rate[i] * x[column[i]];
+				}
+				value /= exitRate[s];
+				maxChange = Math.max(maxChange, Math.abs(value - x[s]));
+				x[s] = value;
+			}
+			iteration++;
+		} while (maxChange > error && iteration < MAX_ITERATIONS);
+	}
+
+	/*
+	 * Computes sum_k Poisson(q*time, k) * P^k * b, where P is the uniformized transition
+	 * matrix with the absorbing states made into self-loops.
+	 */
+	private double[] transientBackward(double[] b, BitSet absorbing, double time) {
+		double q = 0;
+		for (int s = absorbing.nextClearBit(0); s < numStates; s = absorbing.nextClearBit(s + 1)) {
+			q = Math.max(q, exitRate[s]);
+		}
+		if (q == 0 || time <= 0) {
+			return b.clone();
+		}
+		double qt = q * time;
+		double[] x = b.clone();
+		double[] next = new double[numStates];
+		double[] result = new double[numStates];
+		// Poisson weights are computed in log space so that large q*t does not underflow.
+		double logWeight = -qt;
+		double totalWeight = 0;
+		for (int k = 0; k < MAX_ITERATIONS; k++) {
+			if (k > 0) {
+				logWeight += Math.log(qt) - Math.log(k);
+				for (int s = 0; s < numStates; s++) {
+					if (absorbing.get(s)) {
+						next[s] = x[s];
+						continue;
+					}
+					double value = x[s] * (1 - exitRate[s] / q);
+					for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+						value += rate[i] / q * x[column[i]];
+					}
+					next[s] = value;
+				}
+				double[] temp = x;
+				x = next;
+				next = temp;
+			}
+			double weight = Math.exp(logWeight);
+			for (int s = 0; s < numStates; s++) {
+				result[s] += weight * x[s];
+			}
+			totalWeight += weight;
+			if (k > qt && totalWeight >= 1 - error) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Labels each state with the index of its bottom strongly connected component, or
+	 * -1 if it is transient. Uses an iterative version of Tarjan's algorithm.
+	 */
+	private int[] findBottomComponents() {
+		int[] index = new int[numStates];
+		int[] lowLink = new int[numStates];
+		int[] component = new int[numStates];
+		boolean[] onStack = new boolean[numStates];
+		Arrays.fill(index, -1);
+		int[] stack = new int[numStates];
+		int stackSize = 0;
+		int[] callStack = new int[numStates];
+		int[] edge = new int[numStates];
+		int counter = 0;
+		int components = 0;
+		for (int root = 0; root < numStates; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			int depth = 0;
+			callStack[depth] = root;
+			edge[root] = rowStart[root];
+			index[root] = lowLink[root] = counter++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (depth >= 0) {
+				int s = callStack[depth];
+				if (edge[s] < rowStart[s + 1]) {
+					int t = column[edge[s]++];
+					if (index[t] == -1) {
+						index[t] = lowLink[t] = counter++;
+						stack[stackSize++] = t;
+						onStack[t] = true;
+						edge[t] = rowStart[t];
+						callStack[++depth] = t;
+					}
+					else if (onStack[t]) {
+						lowLink[s] = Math.min(lowLink[s], index[t]);
+					}
+					continue;
+				}
+				if (lowLink[s] == index[s]) {
+					int t;
+					do {
+						t = stack[--stackSize];
+						onStack[t] = false;
+						component[t] = components;
+					} while (t != s);
+					components++;
+				}
+				depth--;
+				if (depth >= 0) {
+					int parent = callStack[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[s]);
+				}
+			}
+		}
+		boolean[] bottom = new boolean[components];
+		Arrays.fill(bottom, true);
+		for (int s = 0; s < numStates; s++) {
+			for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+				if (component[column[i]] != component[s]) {
+					bottom[component[s]] = false;
+				}
+			}
+		}
+		for (int s = 0; s < numStates; s++) {
+			if (!bottom[component[s]]) {
+				component[s] = -1;
+			}
+		}
+		return component;
+	}
+
+	/*
+	 * Returns the stationary probability of psi within one bottom component, computed by
+	 * power iteration on the uniformized chain restricted to that component.
+	 */
+	private double componentSteadyState(int[] bscc, int id, BitSet psiSat) {
+		BitSet members = new BitSet(numStates);
+		double q = 0;
+		for (int s = 0; s < numStates; s++) {
+			if (bscc[s] == id) {
+				members.set(s);
+				q = Math.max(q, exitRate[s]);
+			}
+		}
+		int size = members.cardinality();
+		if (size == 1 || q == 0) {
+			return psiSat.get(members.nextSetBit(0)) ? 1.0 : 0.0;
+		}
+		// A slightly larger uniformization rate makes the chain aperiodic.
+		q *= 1.02;
+		double[] pi = new double[numStates];
+		double[] next = new double[numStates];
+		for (int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1)) {
+			pi[s] = 1.0 / size;
+		}
+		double maxChange;
+		int iteration = 0;
+		do {
+			for (int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1)) {
+				next[s] = pi[s] * (1 - exitRate[s] / q);
+			}
+			for (int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1)) {
+				for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+					next[column[i]] += pi[s] * rate[i] / q;
+				}
+			}
+			maxChange = 0;
+			for (int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1)) {
+				maxChange = Math.max(maxChange, Math.abs(next[s] - pi[s]));
+				pi[s] = next[s];
+			}
+			iteration++;
+		} while (maxChange > error && iteration < MAX_ITERATIONS);
+		double prob = 0;
+		for (int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1)) {
+			if (psiSat.get(s)) {
+				prob += pi[s];
+			}
+		}
+		return prob;
+	}
+}
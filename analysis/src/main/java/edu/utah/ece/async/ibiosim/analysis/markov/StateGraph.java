@@ -64,6 +64,14 @@ public class StateGraph extends CoreObservable implements Runnable {
 
 	private final Message message = new Message(); 
 	
+	/*
+	 * Sparse copy of the state graph used to check nested CSL subformulas, and the
+	 * error it was built with. It is discarded whenever the state graph is rebuilt.
+	 */
+	private CSLChecker cslChecker;
+	
+	private double cslCheckerError;
+	
 	public StateGraph(LPN lhpn) {
 		this.lhpn = lhpn;
 		stop = false;
@@ -79,6 +87,7 @@ public class StateGraph extends CoreObservable implements Runnable {
 		long initialMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
 		stateGraph = new ArrayList<State>();// HashMap<String,
 		// LinkedList<State>>();
+		cslChecker = null;
 		HashMap<String, LinkedList<Integer>> stateLocations = new HashMap<String, LinkedList<Integer>>();
 		variables = new ArrayList<String>();
 		for (String var : lhpn.getBooleanVars()) {
@@ -825,174 +834,94 @@ public class StateGraph extends CoreObservable implements Runnable {
 				prop += c;
 			}
 		}
-		String[] condition = Translator.getProbpropParts(prop.substring(5, prop.length() - 1));
 		String id = "Pr" + Math.abs(prop.hashCode());
 		if (!variables.contains(id)) {
 			variables.add(id);
 			lhpn.addInteger(id, id);
-			boolean globallyTrue = false;
-			if (prop.contains("PF")) {
-				condition[0] = "true";
+			CSLChecker checker = getCSLChecker(error);
+			double[] probs;
+			if (prop.startsWith("St=?{")) {
+				probs = checker.getSteadyStateProbabilities(prop.substring(5, prop.length() - 1));
 			}
-			else if (prop.contains("PG")) {
-				condition[0] = "true";
-				globallyTrue = true;
-			}
-			for (State initial : stateGraph) {
-				if (initial.getVariables().keySet().contains(id)) {
-					break;
+			else {
+				String[] condition = Translator.getProbpropParts(prop.substring(5, prop.length() - 1));
+				boolean globallyTrue = false;
+				if (prop.contains("PF")) {
+					condition[0] = "true";
 				}
-				enableAllTransitions();
-				double Gamma;
-				for (State m : stateGraph) {
-					m.setCurrentProb(0.0);
-					m.setPiProb(0.0);
+				else if (prop.contains("PG")) {
+					condition[0] = "true";
+					globallyTrue = true;
 				}
-				initial.setCurrentProb(1.0);
-				initial.setPiProb(1.0);
 				double lowerbound = 0;
 				if (!condition[2].equals("")) {
 					ExprTree expr = new ExprTree(lhpn);
 					expr.token = expr.intexpr_gettok(condition[2]);
 					expr.intexpr_L(condition[2]);
 					lowerbound = expr.evaluateExpr(null);
-					pruneStateGraph("~(" + condition[0] + ")");
-					// Compute Gamma
-					Gamma = 0;
-					for (State m : stateGraph) {
-						Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
-					}
-					// Compute K
-					int K = 0;
-					double xi = 1;
-					double delta = 1;
-					double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-					while (delta < eta) {
-						K = K + 1;
-						xi = xi * ((Gamma * timeStep) / K);
-						delta = delta + xi;
-					}
-					double step = Math.min(timeStep, lowerbound);
-					for (double i = 0; i < lowerbound; i += step) {
-						step = Math.min(timeStep, lowerbound - i);
-						if (step != timeStep) {
-							// Compute K
-							K = 0;
-							xi = 1;
-							delta = 1;
-							eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-							while (delta < eta) {
-								K = K + 1;
-								xi = xi * ((Gamma * step) / K);
-								delta = delta + xi;
-							}
-						}
-						performTransientMarkovianAnalysis(step, Gamma, K, null);
-					}
-				}
-				else {
-					pruneStateGraph("~(" + condition[0] + ")");
-				}
-				double upperbound;
-				if (condition[3].equals("inf")) {
-					upperbound = -1;
 				}
-				else {
+				double upperbound = Double.POSITIVE_INFINITY;
+				if (!condition[3].equals("inf")) {
 					ExprTree expr = new ExprTree(lhpn);
 					expr.token = expr.intexpr_gettok(condition[3]);
 					expr.intexpr_L(condition[3]);
-					upperbound = expr.evaluateExpr(null) - lowerbound;
+					upperbound = expr.evaluateExpr(null);
 				}
 				if (globallyTrue) {
-					pruneStateGraph("~(" + condition[1] + ")");
-				}
-				else {
-					pruneStateGraph(condition[1]);
-				}
-				if (upperbound == -1) {
-					ArrayList<Property> conditions = new ArrayList<Property>();
-					if (!condition[0].equals("true")) {
-						conditions.add(new Property("Failure", "~(" + condition[0] + ")&~(" + condition[1] + ")"));
-					}
-					else {
-						conditions.add(new Property("Failure", "~(" + condition[1] + ")"));
-					}
-					conditions.add(new Property("Success", condition[1]));
-					performSteadyStateMarkovianAnalysis(error, conditions, initial, null);
-				}
-				// Compute Gamma
-				Gamma = 0;
-				for (State m : stateGraph) {
-					Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
-				}
-				// Compute K
-				int K = 0;
-				double xi = 1;
-				double delta = 1;
-				double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-				while (delta < eta) {
-					K = K + 1;
-					xi = xi * ((Gamma * timeStep) / K);
-					delta = delta + xi;
-				}
-				double step = Math.min(timeStep, upperbound - lowerbound);
-				for (double i = 0; i < upperbound; i += step) {
-					step = Math.min(timeStep, upperbound - i);
-					if (step != timeStep) {
-						// Compute K
-						K = 0;
-						xi = 1;
-						delta = 1;
-						eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-						while (delta < eta) {
-							K = K + 1;
-							xi = xi * ((Gamma * step) / K);
-							delta = delta + xi;
-						}
+					// G[l,u] psi holds exactly when true U[l,u] ~psi does not.
+					probs = checker.getUntilProbabilities("true", "~(" + condition[1] + ")", lowerbound, upperbound)
+							.clone();
+					for (int i = 0; i < probs.length; i++) {
+						probs[i] = 1 - probs[i];
 					}
-					performTransientMarkovianAnalysis(step, Gamma, K, null);
 				}
-				//double failureProb = 0;
-				double successProb = 0;
-				//double timelimitProb = 0;
-				for (State m : stateGraph) {
-					// for (String state : stateGraph.keySet()) {
-					// for (State m : stateGraph.get(state)) {
-					ExprTree failureExpr = new ExprTree(lhpn);
-					failureExpr.token = failureExpr.intexpr_gettok("~(" + condition[0] + ")&~(" + condition[1] + ")");
-					failureExpr.intexpr_L("~(" + condition[0] + ")&~(" + condition[1] + ")");
-					ExprTree successExpr = new ExprTree(lhpn);
-					if (globallyTrue) {
-						successExpr.token = successExpr.intexpr_gettok("~(" + condition[1] + ")");
-						successExpr.intexpr_L("~(" + condition[1] + ")");
-					}
-					else {
-						successExpr.token = successExpr.intexpr_gettok(condition[1]);
-						successExpr.intexpr_L(condition[1]);
-					}
-					if (failureExpr.evaluateExpr(m.getVariables()) == 1.0) {
-						//failureProb += m.getCurrentProb();
-					}
-					else if (successExpr.evaluateExpr(m.getVariables()) == 1.0) {
-						successProb += m.getCurrentProb();
-					}
-					else {
-						if (!globallyTrue) {
-							//timelimitProb += m.getCurrentProb();
-						}
-					}
-					// }
-				}
-				if (globallyTrue) {
-					successProb = 1 - successProb;
-					//timelimitProb = 1 - (failureProb + successProb);
+				else {
+					probs = checker.getUntilProbabilities(condition[0], condition[1], lowerbound, upperbound);
 				}
-				initial.addVariable(id, "" + successProb);
+			}
+			checker.addStateVariable(id, probs);
+			for (int i = 0; i < stateGraph.size(); i++) {
+				stateGraph.get(i).addVariable(id, "" + probs[i]);
 			}
 		}
 		return id;
 	}
 
+	/**
+	 * Returns a checker over a frozen copy of this state graph with all transitions
+	 * enabled. The checker, and the subformula results it caches, are reused until the
+	 * state graph is rebuilt or a different error is requested.
+	 */
+	public CSLChecker getCSLChecker(double error) {
+		if (cslChecker == null || cslCheckerError != error) {
+			HashMap<State, Integer> stateIndices = new HashMap<State, Integer>();
+			int numTransitions = 0;
+			for (int i = 0; i < stateGraph.size(); i++) {
+				stateIndices.put(stateGraph.get(i), i);
+				numTransitions += stateGraph.get(i).getNumTransitions();
+			}
+			int[] rowStart = new int[stateGraph.size() + 1];
+			int[] column = new int[numTransitions];
+			double[] rate = new double[numTransitions];
+			@SuppressWarnings("unchecked")
+			HashMap<String, String>[] stateVariables = new HashMap[stateGraph.size()];
+			int t = 0;
+			for (int i = 0; i < stateGraph.size(); i++) {
+				State m = stateGraph.get(i);
+				stateVariables[i] = m.getVariables();
+				for (StateTransitionPair next : m.getNextStatesWithTrans()) {
+					column[t] = stateIndices.get(next.getState());
+					rate[t] = next.getTransition();
+					t++;
+				}
+				rowStart[i + 1] = t;
+			}
+			cslChecker = new CSLChecker(lhpn, rowStart, column, rate, stateVariables, error);
+			cslCheckerError = error;
+		}
+		return cslChecker;
+	}
+
 	private synchronized boolean performTransientMarkovianAnalysis(double timeLimit, double Gamma, int K,
 			JProgressBar progress) {
 		if (timeLimit == 0.0) {
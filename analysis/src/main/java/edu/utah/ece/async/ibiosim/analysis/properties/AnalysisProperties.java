@@ -121,6 +121,41 @@ public final class AnalysisProperties extends CoreObservable {
 		this.addObservable(verifProperties);
 	}
 
+	/**
+	 * Copy constructor. The simulation properties are copied, so a copy can change its time limit,
+	 * seed and other simulation options without affecting the original; the advanced, incremental
+	 * and verification properties are shared. The observers of the original are registered with
+	 * the copy, so messages sent through the copy reach them too.
+	 *
+	 * @param copy
+	 *          - the analysis properties to copy.
+	 */
+	public AnalysisProperties(AnalysisProperties copy) {
+		this.id = copy.id;
+		this.modelFile = copy.modelFile;
+		this.root = copy.root;
+		this.gui = copy.gui;
+		this.directory = copy.directory;
+		this.fileStem = copy.fileStem;
+		this.filename = copy.filename;
+		this.propertiesFile = copy.propertiesFile;
+		this.outDir = copy.outDir;
+		this.sim = copy.sim;
+		this.simProp = copy.simProp;
+		this.method = copy.method;
+		this.abs = copy.abs;
+		this.userInterval = copy.userInterval;
+		this.tasks = new ArrayList<>(copy.tasks);
+
+		this.advProperties = copy.advProperties;
+		this.incProperties = copy.incProperties;
+		this.simProperties = new SimulationProperties(copy.simProperties);
+		this.verifProperties = copy.verifProperties;
+
+		this.addObservable(simProperties);
+		this.addObservers(copy);
+	}
+
 	/**
 	 * Getter for {@link AdvancedProperties}.
 	 *
@@ -54,6 +54,25 @@ public final class SimulationProperties extends CoreObservable {
 
 	}
 
+	SimulationProperties(SimulationProperties copy) {
+		numSteps = copy.numSteps;
+		run = copy.run;
+		startIndex = copy.startIndex;
+		initialTime = copy.initialTime;
+		outputStartTime = copy.outputStartTime;
+		minTimeStep = copy.minTimeStep;
+		maxTimeStep = copy.maxTimeStep;
+		printInterval = copy.printInterval;
+		timeLimit = copy.timeLimit;
+		absError = copy.absError;
+		relError = copy.relError;
+		printer_id = copy.printer_id;
+		printer_track_quantity = copy.printer_track_quantity;
+		genStats = copy.genStats;
+		rndSeed = copy.rndSeed;
+		intSpecies = new ArrayList<>(copy.intSpecies);
+	}
+
 	/**
 	 * Getter for absolute error.
 	 *
@@ -22,6 +22,7 @@ import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorODERK;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSACR;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSADirect;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalCLESimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalMixedSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
@@ -49,7 +50,7 @@ public class DynamicSimulation extends CoreObservable {
   private boolean statisticsFlag;
 
   public static enum SimulationType {
-    CR, DIRECT, RK, HIERARCHICAL_DIRECT, HIERARCHICAL_HYBRID, HIERARCHICAL_RK, HIERARCHICAL_MIXED;
+    CR, DIRECT, RK, HIERARCHICAL_DIRECT, HIERARCHICAL_HYBRID, HIERARCHICAL_RK, HIERARCHICAL_MIXED, HIERARCHICAL_CLE;
   }
 
   /**
@@ -107,11 +108,14 @@ public class DynamicSimulation extends CoreObservable {
         simulator.addObservable(this);
         break;
       case HIERARCHICAL_HYBRID:
-        break;
       case HIERARCHICAL_MIXED:
         simulator = new HierarchicalMixedSimulator(properties);
         simulator.addObservable(this);
         break;
+      case HIERARCHICAL_CLE:
+        simulator = new HierarchicalCLESimulator(properties);
+        simulator.addObservable(this);
+        break;
       default:
         message.setLog("The simulation selection was invalid.");
         notifyObservers(message);
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+/**
+ * Reaction groups for the composition-rejection SSA. A reaction with a
+ * positive propensity belongs to the group of the binary exponent of its
+ * propensity, so group boundaries never move and a propensity change only
+ * touches the reaction's old and new groups. Groups are arrays with swap
+ * removal, and the group totals are kept in a sum tree, so selecting a group
+ * and updating a reaction both take constant time for a fixed floating point
+ * range. Infinite and NaN propensities cannot be sampled by rejection and are
+ * refused with an {@link IllegalArgumentException}.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompositionRejectionGroups
+{
+
+	// one leaf per binary exponent of a double; leaf 0 holds zero propensities
+	private static final int	NUM_GROUPS	= 2048;
+
+	private final double[]		propensities;
+	private final int[]			reactionToGroup;
+	private final int[]			reactionToPosition;
+
+	private final int[][]		groupToReactions;
+	private final int[]			groupToSize;
+	private final double[]		groupToTotalPropensity;
+
+	// tree[1] is the total propensity and the leaves start at NUM_GROUPS
+	private final double[]		tree;
+
+	/**
+	 * creates the groups for the given propensities
+	 * 
+	 * @param propensities
+	 *            the propensities indexed by reaction; the array is updated in
+	 *            place by {@link #update(int, double)}
+	 * @throws IllegalArgumentException
+	 *             if a propensity is infinite or NaN
+	 */
+	public CompositionRejectionGroups(double[] propensities)
+	{
+
+		for (int reaction = 0; reaction < propensities.length; reaction++)
+		{
+			checkPropensity(reaction, propensities[reaction]);
+		}
+
+		this.propensities = propensities;
+		this.reactionToGroup = new int[propensities.length];
+		this.reactionToPosition = new int[propensities.length];
+		this.groupToReactions = new int[NUM_GROUPS][];
+		this.groupToSize = new int[NUM_GROUPS];
+		this.groupToTotalPropensity = new double[NUM_GROUPS];
+		this.tree = new double[2 * NUM_GROUPS];
+
+		for (int reaction = 0; reaction < propensities.length; reaction++)
+		{
+
+			int group = getGroup(propensities[reaction]);
+
+			reactionToGroup[reaction] = group;
+
+			if (group != 0)
+			{
+				add(reaction, group);
+				groupToTotalPropensity[group] += propensities[reaction];
+			}
+		}
+
+		for (int group = 0; group < NUM_GROUPS; group++)
+		{
+			tree[NUM_GROUPS + group] = groupToTotalPropensity[group];
+		}
+
+		for (int node = NUM_GROUPS - 1; node > 0; node--)
+		{
+			tree[node] = tree[2 * node] + tree[2 * node + 1];
+		}
+	}
+
+	/**
+	 * @return the sum of all propensities
+	 */
+	public double getTotalPropensity()
+	{
+		return tree[1];
+	}
+
+	/**
+	 * sets the propensity of a reaction and moves it to its new group if needed
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 * @param newPropensity
+	 *            the new propensity
+	 * @throws IllegalArgumentException
+	 *             if the propensity is infinite or NaN
+	 */
+	public void update(int reaction, double newPropensity)
+	{
+
+		checkPropensity(reaction, newPropensity);
+
+		double oldPropensity = propensities[reaction];
+		int oldGroup = reactionToGroup[reaction];
+		int newGroup = getGroup(newPropensity);
+
+		propensities[reaction] = newPropensity;
+
+		if (oldGroup == newGroup)
+		{
+
+			if (oldGroup != 0)
+			{
+				groupToTotalPropensity[oldGroup] += newPropensity - oldPropensity;
+				updateTree(oldGroup);
+			}
+
+			return;
+		}
+
+		if (oldGroup != 0)
+		{
+
+			remove(reaction, oldGroup);
+
+			// an empty group is reset so that rounding errors do not build up
+			if (groupToSize[oldGroup] == 0)
+			{
+				groupToTotalPropensity[oldGroup] = 0.0;
+			}
+			else
+			{
+				groupToTotalPropensity[oldGroup] -= oldPropensity;
+			}
+
+			updateTree(oldGroup);
+		}
+
+		reactionToGroup[reaction] = newGroup;
+
+		if (newGroup != 0)
+		{
+			add(reaction, newGroup);
+			groupToTotalPropensity[newGroup] += newPropensity;
+			updateTree(newGroup);
+		}
+	}
+
+	/**
+	 * selects a reaction with probability proportional to its propensity; the
+	 * group is found in the sum tree and a reaction of the group is then
+	 * accepted or rejected against the group's upper bound
+	 * 
+	 * @param r2
+	 *            random number used to select the group
+	 * @param r3
+	 *            random number used to pick a reaction in the group
+	 * @param r4
+	 *            random number used to accept the reaction
+	 * @param randomNumberGenerator
+	 *            source of random numbers for rejected attempts
+	 * @return the index of the selected reaction, or -1 if all propensities are
+	 *         zero
+	 */
+	public int selectReaction(double r2, double r3, double r4, XORShiftRandom randomNumberGenerator)
+	{
+
+		int group = selectGroup(r2 * tree[1]);
+
+		if (group <= 0)
+		{
+			return -1;
+		}
+
+		int[] reactions = groupToReactions[group];
+		int size = groupToSize[group];
+		// the ceiling of the top group, 2^1024, is not a double
+		double groupCeiling = group == NUM_GROUPS - 1 ? Double.MAX_VALUE : Math.scalb(1.0, group - 1023);
+
+		while (true)
+		{
+
+			int reaction = reactions[(int) (r3 * size)];
+
+			if (r4 * groupCeiling < propensities[reaction])
+			{
+				return reaction;
+			}
+
+			r3 = randomNumberGenerator.nextDouble();
+			r4 = randomNumberGenerator.nextDouble();
+		}
+	}
+
+	private int selectGroup(double randomPropensity)
+	{
+
+		if (tree[1] <= 0.0)
+		{
+			return -1;
+		}
+
+		int node = 1;
+
+		while (node < NUM_GROUPS)
+		{
+
+			node *= 2;
+
+			if (randomPropensity >= tree[node])
+			{
+				randomPropensity -= tree[node];
+				node++;
+			}
+		}
+
+		int group = node - NUM_GROUPS;
+
+		// rounding can land on an empty leaf next to the intended one
+		if (groupToSize[group] == 0)
+		{
+			group = NUM_GROUPS - 1;
+
+			while (group > 0 && groupToSize[group] == 0)
+			{
+				group--;
+			}
+		}
+
+		return group;
+	}
+
+	private void add(int reaction, int group)
+	{
+
+		int[] reactions = groupToReactions[group];
+		int size = groupToSize[group];
+
+		if (reactions == null)
+		{
+			reactions = new int[16];
+			groupToReactions[group] = reactions;
+		}
+		else if (size == reactions.length)
+		{
+			int[] newReactions = new int[size * 2];
+			System.arraycopy(reactions, 0, newReactions, 0, size);
+			reactions = newReactions;
+			groupToReactions[group] = reactions;
+		}
+
+		reactions[size] = reaction;
+		reactionToPosition[reaction] = size;
+		groupToSize[group] = size + 1;
+	}
+
+	private void remove(int reaction, int group)
+	{
+
+		int[] reactions = groupToReactions[group];
+		int last = --groupToSize[group];
+		int position = reactionToPosition[reaction];
+
+		// move the last reaction of the group into the freed slot
+		reactions[position] = reactions[last];
+		reactionToPosition[reactions[position]] = position;
+	}
+
+	private void updateTree(int group)
+	{
+
+		int node = NUM_GROUPS + group;
+
+		tree[node] = groupToTotalPropensity[group];
+
+		for (node /= 2; node > 0; node /= 2)
+		{
+			tree[node] = tree[2 * node] + tree[2 * node + 1];
+		}
+	}
+
+	private static void checkPropensity(int reaction, double propensity)
+	{
+
+		// an infinite propensity would be rejected forever and NaN would be
+		// taken for zero
+		if (Double.isInfinite(propensity) || Double.isNaN(propensity))
+		{
+			throw new IllegalArgumentException("The propensity of reaction " + reaction + " is " + propensity + ".");
+		}
+	}
+
+	private static int getGroup(double propensity)
+	{
+
+		if (propensity > 0.0)
+		{
+			return Math.min(Math.getExponent(propensity) + 1024, NUM_GROUPS - 1);
+		}
+
+		return 0;
+	}
+}
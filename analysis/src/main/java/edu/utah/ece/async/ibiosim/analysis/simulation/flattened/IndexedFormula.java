@@ -0,0 +1,285 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import org.apache.commons.math3.util.FastMath;
+import org.sbml.jsbml.ASTNode;
+
+/**
+ * Kinetic law of an indexed reaction, compiled so that the variables it reads
+ * are addressed by their slots in the simulator's value map and the reaction
+ * ids it reads by their index in the propensity array. Numbers, names, time
+ * and the arithmetic operators are evaluated here with the same semantics as
+ * {@link Simulator#evaluateExpressionRecursive(ASTNode)}; any other
+ * subexpression is handed back to that method.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+class IndexedFormula
+{
+
+	private static final int		NUMBER			= 0;
+	private static final int		VALUE			= 1;
+	private static final int		CONCENTRATION	= 2;
+	private static final int		PROPENSITY		= 3;
+	private static final int		TIME			= 4;
+	private static final int		PLUS			= 5;
+	private static final int		MINUS			= 6;
+	private static final int		TIMES			= 7;
+	private static final int		DIVIDE			= 8;
+	private static final int		POWER			= 9;
+	private static final int		EXPRESSION		= 10;
+
+	private final int				type;
+	private final double			number;
+	private final String			variable;
+	private final String			compartment;
+	private final int				reaction;
+	private final IndexedFormula[]	children;
+	private final ASTNode			expression;
+
+	private int						slot;
+	private int						compartmentSlot;
+
+	private IndexedFormula(int type, double number, String variable, String compartment, int reaction, IndexedFormula[] children, ASTNode expression)
+	{
+		this.type = type;
+		this.number = number;
+		this.variable = variable;
+		this.compartment = compartment;
+		this.reaction = reaction;
+		this.children = children;
+		this.expression = expression;
+		this.slot = -1;
+		this.compartmentSlot = -1;
+	}
+
+	/**
+	 * compiles a kinetic law; the slots are resolved separately by
+	 * {@link #resolveSlots(IndexedValueMap)}
+	 * 
+	 * @param node
+	 *            the kinetic law
+	 * @param simulator
+	 *            the simulator whose maps describe the names in the law
+	 * @param reactionIndex
+	 *            the indices of the reactions
+	 * @return the compiled formula
+	 */
+	static IndexedFormula compile(ASTNode node, Simulator simulator, TObjectIntHashMap<String> reactionIndex)
+	{
+
+		// same order of checks as the recursive evaluator
+		if (node.isBoolean() || node.isConstant())
+		{
+			return new IndexedFormula(EXPRESSION, 0, null, null, -1, null, node);
+		}
+		else if (node.isNumber())
+		{
+			return new IndexedFormula(NUMBER, node.getReal(), null, null, -1, null, null);
+		}
+		else if (node.isName())
+		{
+
+			String name = node.getName().replace("_negative_", "-");
+
+			if (node.getType().equals(ASTNode.Type.NAME_TIME))
+			{
+				return new IndexedFormula(TIME, 0, null, null, -1, null, null);
+			}
+			else if (simulator.reactionToPropensityMap.keySet().contains(node.getName()))
+			{
+
+				int reaction = reactionIndex.get(node.getName());
+
+				if (reaction < 0)
+				{
+					return new IndexedFormula(EXPRESSION, 0, null, null, -1, null, node);
+				}
+
+				return new IndexedFormula(PROPENSITY, 0, null, null, reaction, null, null);
+			}
+			else if (simulator.speciesToHasOnlySubstanceUnitsMap.containsKey(name) && simulator.speciesToHasOnlySubstanceUnitsMap.get(name) == false)
+			{
+				return new IndexedFormula(CONCENTRATION, 0, name, simulator.speciesToCompartmentNameMap.get(name), -1, null, null);
+			}
+
+			return new IndexedFormula(VALUE, 0, name, null, -1, null, null);
+		}
+
+		int type;
+
+		switch (node.getType())
+		{
+
+		case PLUS:
+			type = PLUS;
+			break;
+
+		case MINUS:
+			// a unary minus keeps the evaluator's handling
+			type = node.getChildCount() > 1 ? MINUS : EXPRESSION;
+			break;
+
+		case TIMES:
+			type = TIMES;
+			break;
+
+		case DIVIDE:
+			type = DIVIDE;
+			break;
+
+		case FUNCTION_POWER:
+			type = POWER;
+			break;
+
+		default:
+			type = EXPRESSION;
+		}
+
+		if (type == EXPRESSION)
+		{
+			return new IndexedFormula(EXPRESSION, 0, null, null, -1, null, node);
+		}
+
+		IndexedFormula[] children = new IndexedFormula[node.getChildCount()];
+
+		for (int childIter = 0; childIter < children.length; ++childIter)
+		{
+			children[childIter] = compile(node.getChild(childIter), simulator, reactionIndex);
+		}
+
+		return new IndexedFormula(type, 0, null, null, -1, children, null);
+	}
+
+	/**
+	 * looks up the slots of the variables read by this formula
+	 * 
+	 * @param values
+	 *            the value map of the simulator
+	 */
+	void resolveSlots(IndexedValueMap values)
+	{
+
+		if (variable != null)
+		{
+			slot = values.getSlot(variable);
+		}
+
+		if (compartment != null)
+		{
+			compartmentSlot = values.getSlot(compartment);
+		}
+
+		if (children != null)
+		{
+			for (IndexedFormula child : children)
+			{
+				child.resolveSlots(values);
+			}
+		}
+	}
+
+	/**
+	 * evaluates the formula
+	 * 
+	 * @param simulator
+	 *            the simulator, used for the time and for subexpressions that
+	 *            are not compiled
+	 * @param values
+	 *            the value map of the simulator
+	 * @param propensities
+	 *            the propensities of the indexed reactions
+	 * @return the value of the formula
+	 */
+	double evaluate(Simulator simulator, IndexedValueMap values, double[] propensities)
+	{
+
+		switch (type)
+		{
+
+		case NUMBER:
+			return number;
+
+		case VALUE:
+			return getValue(values, slot, variable);
+
+		case CONCENTRATION:
+			return getValue(values, slot, variable) / getValue(values, compartmentSlot, compartment);
+
+		case PROPENSITY:
+			return propensities[reaction];
+
+		case TIME:
+			return simulator.currentTime;
+
+		case PLUS:
+		{
+
+			double sum = 0.0;
+
+			for (IndexedFormula child : children)
+			{
+				sum += child.evaluate(simulator, values, propensities);
+			}
+
+			return sum;
+		}
+
+		case MINUS:
+		{
+
+			double sum = children[0].evaluate(simulator, values, propensities);
+
+			for (int childIter = 1; childIter < children.length; ++childIter)
+			{
+				sum -= children[childIter].evaluate(simulator, values, propensities);
+			}
+
+			return sum;
+		}
+
+		case TIMES:
+		{
+
+			double product = 1.0;
+
+			for (IndexedFormula child : children)
+			{
+				product *= child.evaluate(simulator, values, propensities);
+			}
+
+			return product;
+		}
+
+		case DIVIDE:
+			return children[0].evaluate(simulator, values, propensities) / children[1].evaluate(simulator, values, propensities);
+
+		case POWER:
+			return FastMath.pow(children[0].evaluate(simulator, values, propensities), children[1].evaluate(simulator, values, propensities));
+
+		default:
+			return simulator.evaluateExpressionRecursive(expression);
+		}
+	}
+
+	private static double getValue(IndexedValueMap values, int slot, String variable)
+	{
+		// a name that is not in the map reads as the map's default value
+		return slot >= 0 ? values.getSlotValue(slot) : values.get(variable);
+	}
+}
@@ -0,0 +1,533 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.HashSet;
+
+import org.sbml.jsbml.AssignmentRule;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.Simulator.StringDoublePair;
+
+/**
+ * Index-based view of the reactions of a flattened simulator. Reactions and
+ * species are given dense integer ids when a run starts, and stoichiometries,
+ * reactants and reaction dependencies are stored in compressed (CSR) arrays, so
+ * the stochastic simulators can select and fire reactions without building
+ * string sets. Species values are read and written through their slots in the
+ * simulator's value map and kinetic laws are compiled against those slots, so
+ * firing a reaction and updating its dependents does not hash names. The maps
+ * stay authoritative for rules, events and output.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IndexedReactionNetwork
+{
+
+	final Simulator						simulator;
+	final IndexedValueMap				values;
+	final IndexedValueMap				propensityMap;
+
+	final String[]						reactionIds;
+	final TObjectIntHashMap<String>		reactionIndex;
+	final IndexedFormula[]				formulas;
+	final double[]						propensities;
+
+	final String[]						speciesIds;
+	final boolean[]						isUpdatable;
+	final String[]						conversionFactors;
+	final boolean[]						isInAssignmentRule;
+	final boolean[]						isInConstraint;
+
+	// slots in the value and propensity maps; -1 if the name is not in the map
+	final int[]							speciesSlots;
+	final int[]							conversionFactorSlots;
+	final int[]							propensitySlots;
+	private int							valuesVersion;
+	private int							propensityMapVersion;
+
+	// reactants and products of reaction r are in [stoichiometryStart[r], stoichiometryStart[r + 1])
+	final int[]							stoichiometryStart;
+	final int[]							stoichiometrySpecies;
+	final double[]						stoichiometries;
+	final boolean[]						hasNonconstantStoichiometry;
+
+	// reactants and modifiers whose amount enables reaction r
+	final int[]							reactantStart;
+	final int[]							reactantSpecies;
+	final double[]						reactantStoichiometries;
+
+	// reactions whose propensity changes when reaction r fires, including r
+	final int[]							dependencyStart;
+	final int[]							dependencies;
+
+	// sums of the propensities below each node, with the reactions as leaves
+	// from leafStart on; only built by the simulators that select through it
+	private double[]					sumTree;
+	private int							leafStart;
+
+	/**
+	 * builds the index from the maps of the given simulator; the reactions must
+	 * already be set up
+	 * 
+	 * @param simulator
+	 *            the simulator whose reactions are indexed
+	 * @param noAssignmentRulesFlag
+	 *            whether the model has no assignment rules
+	 */
+	IndexedReactionNetwork(Simulator simulator, boolean noAssignmentRulesFlag)
+	{
+
+		this.simulator = simulator;
+		this.values = simulator.variableToValueMap;
+		this.propensityMap = simulator.reactionToPropensityMap;
+
+		int numReactions = simulator.reactionToPropensityMap.size();
+
+		// follow the iteration order of the propensity map so that a seed
+		// selects the same reactions as the name-based selection did
+		reactionIds = simulator.reactionToPropensityMap.keySet().toArray(new String[numReactions]);
+		reactionIndex = new TObjectIntHashMap<String>(numReactions * 2, 0.5f, -1);
+		formulas = new IndexedFormula[numReactions];
+		propensities = new double[numReactions];
+		propensitySlots = new int[numReactions];
+
+		TObjectIntHashMap<String> speciesIndex = new TObjectIntHashMap<String>(simulator.speciesIDSet.size() * 2, 0.5f, -1);
+
+		for (String speciesID : simulator.speciesIDSet)
+		{
+			speciesIndex.put(speciesID, speciesIndex.size());
+		}
+
+		int numStoichiometries = 0;
+		int numReactants = 0;
+
+		// all reactions are indexed before the formulas that may refer to them
+		for (int r = 0; r < numReactions; r++)
+		{
+			reactionIndex.put(reactionIds[r], r);
+		}
+
+		for (int r = 0; r < numReactions; r++)
+		{
+
+			String reactionID = reactionIds[r];
+
+			formulas[r] = IndexedFormula.compile(simulator.reactionToFormulaMap.get(reactionID), simulator, reactionIndex);
+			propensities[r] = simulator.reactionToPropensityMap.get(reactionID);
+
+			for (StringDoublePair speciesAndStoichiometry : getSet(simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID)))
+			{
+				addSpecies(speciesIndex, speciesAndStoichiometry.string);
+				numStoichiometries++;
+			}
+
+			for (StringDoublePair speciesAndStoichiometry : getSet(simulator.reactionToReactantStoichiometrySetMap.get(reactionID)))
+			{
+				addSpecies(speciesIndex, speciesAndStoichiometry.string);
+				numReactants++;
+			}
+		}
+
+		int numSpecies = speciesIndex.size();
+
+		speciesIds = new String[numSpecies];
+		isUpdatable = new boolean[numSpecies];
+		conversionFactors = new String[numSpecies];
+		isInAssignmentRule = new boolean[numSpecies];
+		isInConstraint = new boolean[numSpecies];
+		speciesSlots = new int[numSpecies];
+		conversionFactorSlots = new int[numSpecies];
+
+		for (Object key : speciesIndex.keys())
+		{
+
+			String speciesID = (String) key;
+			int s = speciesIndex.get(speciesID);
+
+			speciesIds[s] = speciesID;
+			isUpdatable[s] = !isTrue(simulator.speciesToIsBoundaryConditionMap.get(speciesID)) && !isTrue(simulator.variableToIsConstantMap.get(speciesID));
+			conversionFactors[s] = simulator.speciesToConversionFactorMap.get(speciesID);
+			isInAssignmentRule[s] = simulator.variableToIsInAssignmentRuleMap != null && isTrue(simulator.variableToIsInAssignmentRuleMap.get(speciesID));
+			isInConstraint[s] = simulator.variableToIsInConstraintMap != null && isTrue(simulator.variableToIsInConstraintMap.get(speciesID));
+		}
+
+		stoichiometryStart = new int[numReactions + 1];
+		stoichiometrySpecies = new int[numStoichiometries];
+		stoichiometries = new double[numStoichiometries];
+		hasNonconstantStoichiometry = new boolean[numReactions];
+		reactantStart = new int[numReactions + 1];
+		reactantSpecies = new int[numReactants];
+		reactantStoichiometries = new double[numReactants];
+		dependencyStart = new int[numReactions + 1];
+
+		int[] dependencyBuffer = new int[Math.max(16, numStoichiometries * 4)];
+		int numDependencies = 0;
+		int stoichiometryPosition = 0;
+		int reactantPosition = 0;
+
+		for (int r = 0; r < numReactions; r++)
+		{
+
+			String reactionID = reactionIds[r];
+			HashSet<String> affectedReactionSet = new HashSet<String>();
+
+			affectedReactionSet.add(reactionID);
+			hasNonconstantStoichiometry[r] = simulator.reactionToNonconstantStoichiometriesSetMap.containsKey(reactionID);
+
+			for (StringDoublePair speciesAndStoichiometry : getSet(simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID)))
+			{
+
+				String speciesID = speciesAndStoichiometry.string;
+
+				stoichiometrySpecies[stoichiometryPosition] = speciesIndex.get(speciesID);
+				stoichiometries[stoichiometryPosition] = speciesAndStoichiometry.doub;
+				stoichiometryPosition++;
+
+				// same dependencies as Simulator.getAffectedReactionSet
+				addAll(affectedReactionSet, simulator.speciesToAffectedReactionSetMap.get(speciesID));
+
+				if (noAssignmentRulesFlag == false && isInAssignmentRule[speciesIndex.get(speciesID)])
+				{
+					for (AssignmentRule assignmentRule : simulator.variableToAffectedAssignmentRuleSetMap.get(speciesID))
+					{
+						addAll(affectedReactionSet, simulator.speciesToAffectedReactionSetMap.get(assignmentRule.getVariable()));
+					}
+				}
+			}
+
+			stoichiometryStart[r + 1] = stoichiometryPosition;
+
+			for (StringDoublePair speciesAndStoichiometry : getSet(simulator.reactionToReactantStoichiometrySetMap.get(reactionID)))
+			{
+				reactantSpecies[reactantPosition] = speciesIndex.get(speciesAndStoichiometry.string);
+				reactantStoichiometries[reactantPosition] = speciesAndStoichiometry.doub;
+				reactantPosition++;
+			}
+
+			reactantStart[r + 1] = reactantPosition;
+
+			for (String affectedReactionID : affectedReactionSet)
+			{
+
+				int affected = reactionIndex.get(affectedReactionID);
+
+				if (affected >= 0)
+				{
+
+					if (numDependencies == dependencyBuffer.length)
+					{
+						int[] newBuffer = new int[dependencyBuffer.length * 2];
+						System.arraycopy(dependencyBuffer, 0, newBuffer, 0, numDependencies);
+						dependencyBuffer = newBuffer;
+					}
+
+					dependencyBuffer[numDependencies++] = affected;
+				}
+			}
+
+			dependencyStart[r + 1] = numDependencies;
+		}
+
+		dependencies = new int[numDependencies];
+		System.arraycopy(dependencyBuffer, 0, dependencies, 0, numDependencies);
+
+		resolveSlots();
+	}
+
+	/**
+	 * looks up the slots of the species, conversion factors, propensities and
+	 * formula variables again if either map has been rehashed since they were
+	 * resolved
+	 */
+	void checkSlots()
+	{
+		if (values.getVersion() != valuesVersion || propensityMap.getVersion() != propensityMapVersion)
+		{
+			resolveSlots();
+		}
+	}
+
+	private void resolveSlots()
+	{
+
+		for (int s = 0; s < speciesIds.length; s++)
+		{
+			speciesSlots[s] = values.getSlot(speciesIds[s]);
+			conversionFactorSlots[s] = conversionFactors[s] == null ? -1 : values.getSlot(conversionFactors[s]);
+		}
+
+		for (int r = 0; r < reactionIds.length; r++)
+		{
+			propensitySlots[r] = propensityMap.getSlot(reactionIds[r]);
+			formulas[r].resolveSlots(values);
+		}
+
+		valuesVersion = values.getVersion();
+		propensityMapVersion = propensityMap.getVersion();
+	}
+
+	/**
+	 * @param species
+	 *            the index of a species
+	 * @return the current amount of the species
+	 */
+	double getSpeciesValue(int species)
+	{
+		int slot = speciesSlots[species];
+		return slot >= 0 ? values.getSlotValue(slot) : values.get(speciesIds[species]);
+	}
+
+	/**
+	 * @param species
+	 *            the index of a species
+	 * @param amount
+	 *            the amount added to the species; as with the map's
+	 *            adjustValue, nothing happens if the species is not in the
+	 *            value map
+	 */
+	void adjustSpeciesValue(int species, double amount)
+	{
+		int slot = speciesSlots[species];
+
+		if (slot >= 0)
+		{
+			values.adjustSlotValue(slot, amount);
+		}
+	}
+
+	/**
+	 * @param species
+	 *            the index of a species with a conversion factor
+	 * @return the current value of the conversion factor
+	 */
+	double getConversionFactorValue(int species)
+	{
+		int slot = conversionFactorSlots[species];
+		return slot >= 0 ? values.getSlotValue(slot) : values.get(conversionFactors[species]);
+	}
+
+	/**
+	 * evaluates the propensity of a reaction from the current values, which is
+	 * zero if its reactants are not available
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 * @return the new propensity; the stored propensity is not changed
+	 */
+	double computePropensity(int reaction)
+	{
+
+		checkSlots();
+
+		// check for enough molecules for the reaction to occur
+		for (int i = reactantStart[reaction]; i < reactantStart[reaction + 1]; i++)
+		{
+			if (getSpeciesValue(reactantSpecies[i]) < reactantStoichiometries[i])
+			{
+				return 0.0;
+			}
+		}
+
+		return formulas[reaction].evaluate(simulator, values, propensities);
+	}
+
+	/**
+	 * stores the propensity of a reaction, in the propensity array, the sum tree
+	 * if there is one, and the simulator's propensity map, which rules and
+	 * events read
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 * @param propensity
+	 *            the new propensity
+	 */
+	void setPropensity(int reaction, double propensity)
+	{
+
+		propensities[reaction] = propensity;
+
+		if (sumTree != null)
+		{
+
+			int node = leafStart + reaction;
+
+			sumTree[node] = propensity;
+
+			for (node /= 2; node > 0; node /= 2)
+			{
+				sumTree[node] = sumTree[2 * node] + sumTree[2 * node + 1];
+			}
+		}
+
+		if (propensitySlots[reaction] >= 0)
+		{
+			propensityMap.setSlotValue(propensitySlots[reaction], propensity);
+		}
+		else
+		{
+			propensityMap.put(reactionIds[reaction], propensity);
+		}
+	}
+
+	/**
+	 * builds the sum tree used by {@link #selectReaction(double)}; afterwards
+	 * propensities must be changed through {@link #setPropensity(int, double)}
+	 */
+	void buildSumTree()
+	{
+
+		leafStart = 1;
+
+		while (leafStart < propensities.length)
+		{
+			leafStart *= 2;
+		}
+
+		sumTree = new double[2 * leafStart];
+		System.arraycopy(propensities, 0, sumTree, leafStart, propensities.length);
+
+		for (int node = leafStart - 1; node > 0; node--)
+		{
+			sumTree[node] = sumTree[2 * node] + sumTree[2 * node + 1];
+		}
+	}
+
+	/**
+	 * @return the number of indexed reactions
+	 */
+	public int getNumberOfReactions()
+	{
+		return reactionIds.length;
+	}
+
+	/**
+	 * @param reactionID
+	 *            the id of a reaction
+	 * @return the index of the reaction, or -1 if it is not indexed
+	 */
+	public int getReactionIndex(String reactionID)
+	{
+		return reactionIndex.get(reactionID);
+	}
+
+	/**
+	 * @param reaction
+	 *            the index of a reaction
+	 * @return the id of the reaction
+	 */
+	public String getReactionID(int reaction)
+	{
+		return reactionIds[reaction];
+	}
+
+	/**
+	 * @param reaction
+	 *            the index of a reaction
+	 * @return the current propensity of the reaction
+	 */
+	public double getPropensity(int reaction)
+	{
+		return propensities[reaction];
+	}
+
+	/**
+	 * finds the reaction whose cumulative propensity interval, in index order,
+	 * contains the given value by descending the sum tree, which must have been
+	 * built by {@link #buildSumTree()}
+	 * 
+	 * @param randomPropensity
+	 *            a value in [0, totalPropensity)
+	 * @return the index of the selected reaction, or -1 if there is none
+	 */
+	public int selectReaction(double randomPropensity)
+	{
+
+		if (randomPropensity >= sumTree[1])
+		{
+			return -1;
+		}
+
+		int node = 1;
+
+		while (node < leafStart)
+		{
+
+			node *= 2;
+
+			if (randomPropensity >= sumTree[node])
+			{
+				randomPropensity -= sumTree[node];
+				node++;
+			}
+		}
+
+		int reaction = node - leafStart;
+
+		// rounding can land on a reaction without propensity next to the
+		// intended one
+		if (reaction >= propensities.length || propensities[reaction] <= 0.0)
+		{
+
+			int previous = Math.min(reaction, propensities.length - 1);
+
+			while (previous >= 0 && propensities[previous] <= 0.0)
+			{
+				previous--;
+			}
+
+			if (previous >= 0)
+			{
+				return previous;
+			}
+
+			while (reaction < propensities.length && propensities[reaction] <= 0.0)
+			{
+				reaction++;
+			}
+
+			return reaction < propensities.length ? reaction : -1;
+		}
+
+		return reaction;
+	}
+
+	private static void addSpecies(TObjectIntHashMap<String> speciesIndex, String speciesID)
+	{
+		if (!speciesIndex.containsKey(speciesID))
+		{
+			speciesIndex.put(speciesID, speciesIndex.size());
+		}
+	}
+
+	private static void addAll(HashSet<String> set, HashSet<String> toAdd)
+	{
+		if (toAdd != null)
+		{
+			set.addAll(toAdd);
+		}
+	}
+
+	private static HashSet<StringDoublePair> getSet(HashSet<StringDoublePair> set)
+	{
+		return set == null ? new HashSet<StringDoublePair>() : set;
+	}
+
+	private static boolean isTrue(Boolean value)
+	{
+		return value != null && value.booleanValue();
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+/**
+ * Value map of the flattened simulators whose entries can also be addressed by
+ * slot, the position of a key in the map's value array. The indexed reaction
+ * network resolves the slots of its species once per run and then reads and
+ * writes their values without hashing names, while everything else keeps
+ * using the map by name. Slots stay valid until the table is rehashed or
+ * cleared, which changes {@link #getVersion()}.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IndexedValueMap extends TObjectDoubleHashMap<String>
+{
+
+	private int	version;
+
+	/**
+	 * @param initialCapacity
+	 *            the initial capacity of the map
+	 */
+	public IndexedValueMap(int initialCapacity)
+	{
+		super(initialCapacity);
+	}
+
+	/**
+	 * @param key
+	 *            a key of the map
+	 * @return the slot of the key, or -1 if it is not in the map
+	 */
+	public int getSlot(String key)
+	{
+		return index(key);
+	}
+
+	/**
+	 * @param slot
+	 *            a slot returned by {@link #getSlot(String)}
+	 * @return the value stored in the slot
+	 */
+	public double getSlotValue(int slot)
+	{
+		return _values[slot];
+	}
+
+	/**
+	 * @param slot
+	 *            a slot returned by {@link #getSlot(String)}
+	 * @param value
+	 *            the new value
+	 */
+	public void setSlotValue(int slot, double value)
+	{
+		_values[slot] = value;
+	}
+
+	/**
+	 * @param slot
+	 *            a slot returned by {@link #getSlot(String)}
+	 * @param amount
+	 *            the amount added to the value
+	 */
+	public void adjustSlotValue(int slot, double amount)
+	{
+		_values[slot] += amount;
+	}
+
+	/**
+	 * @return a number that changes whenever previously returned slots become
+	 *         invalid
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	@Override
+	protected void rehash(int newCapacity)
+	{
+		super.rehash(newCapacity);
+		version++;
+	}
+
+	@Override
+	public void clear()
+	{
+		super.clear();
+		version++;
+	}
+}
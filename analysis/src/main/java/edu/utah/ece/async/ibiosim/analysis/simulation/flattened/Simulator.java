@@ -98,7 +98,14 @@ public abstract class Simulator extends AbstractSimulator
 	protected XORShiftRandom								randomNumberGenerator						= null;
 
 	// allows for access to a propensity from a reaction ID
-	protected TObjectDoubleHashMap<String>					reactionToPropensityMap						= null;
+	protected IndexedValueMap								reactionToPropensityMap						= null;
+
+	// index-based view of the reactions, built at the start of each run by the
+	// stochastic simulators
+	protected IndexedReactionNetwork						indexedNetwork								= null;
+
+	// whether the stochastic simulators may use the indexed network
+	protected boolean										indexedNetworkEnabled						= true;
 
 	// allows for access to reactant/product speciesID and stoichiometry from a
 	// reaction ID
@@ -137,7 +144,7 @@ public abstract class Simulator extends AbstractSimulator
 	protected LinkedHashSet<String>							speciesIDSet								= null;
 
 	// allows for access to species and parameter values from a variable ID
-	protected TObjectDoubleHashMap<String>					variableToValueMap							= null;
+	protected IndexedValueMap								variableToValueMap							= null;
 
 	// stores events in order of fire time and priority
 	protected PriorityQueue<EventToFire>					triggeredEventQueue							= null;
@@ -363,9 +370,9 @@ public abstract class Simulator extends AbstractSimulator
 		speciesToCompartmentSizeMap = new TObjectDoubleHashMap<String>((int) numSpecies);
 		speciesIDSet = new LinkedHashSet<String>((int) numSpecies);
 		reactionToNonconstantStoichiometriesSetMap = new HashMap<String, HashSet<StringStringPair>>();
-		variableToValueMap = new TObjectDoubleHashMap<String>((int) numSpecies + (int) numParameters);
+		variableToValueMap = new IndexedValueMap((int) numSpecies + (int) numParameters);
 
-		reactionToPropensityMap = new TObjectDoubleHashMap<String>((int) (numReactions * 1.5));
+		reactionToPropensityMap = new IndexedValueMap((int) (numReactions * 1.5));
 		reactionToSpeciesAndStoichiometrySetMap = new HashMap<String, HashSet<StringDoublePair>>((int) (numReactions * 1.5));
 		reactionToReactantStoichiometrySetMap = new HashMap<String, HashSet<StringDoublePair>>((int) (numReactions * 1.5));
 		reactionToFormulaMap = new HashMap<String, ASTNode>((int) (numReactions * 1.5));
@@ -4187,6 +4194,86 @@ public abstract class Simulator extends AbstractSimulator
 		}
 	}
 
+	/**
+	 * updates the species amounts after a reaction fires, using the indexed
+	 * reaction network
+	 * 
+	 * @param selectedReaction
+	 *            the index of the reaction that fired
+	 * @param noAssignmentRulesFlag
+	 * @param noConstraintsFlag
+	 */
+	protected void performReaction(int selectedReaction, final boolean noAssignmentRulesFlag, final boolean noConstraintsFlag)
+	{
+
+		IndexedReactionNetwork network = indexedNetwork;
+
+		// stoichiometries that are variables are only known by name
+		if (network.hasNonconstantStoichiometry[selectedReaction])
+		{
+			performReaction(network.reactionIds[selectedReaction], noAssignmentRulesFlag, noConstraintsFlag);
+			return;
+		}
+
+		HashSet<AssignmentRule> affectedAssignmentRuleSet = null;
+		HashSet<ASTNode> affectedConstraintSet = null;
+
+		network.checkSlots();
+
+		for (int i = network.stoichiometryStart[selectedReaction]; i < network.stoichiometryStart[selectedReaction + 1]; i++)
+		{
+
+			int species = network.stoichiometrySpecies[i];
+			String speciesID = network.speciesIds[species];
+
+			// species amounts are updated in place through their slots
+			if (network.isUpdatable[species])
+			{
+
+				if (network.conversionFactors[species] != null)
+				{
+					network.adjustSpeciesValue(species, network.stoichiometries[i] * network.getConversionFactorValue(species));
+				}
+				else
+				{
+					network.adjustSpeciesValue(species, network.stoichiometries[i]);
+				}
+			}
+
+			if (noAssignmentRulesFlag == false && network.isInAssignmentRule[species])
+			{
+
+				if (affectedAssignmentRuleSet == null)
+				{
+					affectedAssignmentRuleSet = new HashSet<AssignmentRule>();
+				}
+
+				affectedAssignmentRuleSet.addAll(variableToAffectedAssignmentRuleSetMap.get(speciesID));
+			}
+
+			if (noConstraintsFlag == false && network.isInConstraint[species])
+			{
+
+				if (affectedConstraintSet == null)
+				{
+					affectedConstraintSet = new HashSet<ASTNode>();
+				}
+
+				affectedConstraintSet.addAll(variableToAffectedConstraintSetMap.get(speciesID));
+			}
+		}
+
+		if (affectedAssignmentRuleSet != null)
+		{
+			performAssignmentRules(affectedAssignmentRuleSet);
+		}
+
+		if (affectedConstraintSet != null && testConstraints(affectedConstraintSet) == false)
+		{
+			constraintFailureFlag = true;
+		}
+	}
+
 	/**
 	 * recursively finds all variable nodes and prepends a string to the
 	 * variable static version
@@ -6549,6 +6636,38 @@ public abstract class Simulator extends AbstractSimulator
 		}
 	}
 
+	/**
+	 * sets whether the stochastic simulators index the reactions of a run or
+	 * use the name-based maps throughout; both select the same reactions for a
+	 * given seed
+	 * 
+	 * @param indexedNetworkEnabled
+	 */
+	public void setIndexedNetworkEnabled(boolean indexedNetworkEnabled)
+	{
+
+		this.indexedNetworkEnabled = indexedNetworkEnabled;
+	}
+
+	/**
+	 * indexes the reactions of the current run; models that change their
+	 * structure during simulation keep using the name-based maps
+	 * 
+	 * @param noAssignmentRulesFlag
+	 */
+	protected void setupIndexedNetwork(boolean noAssignmentRulesFlag)
+	{
+
+		if (dynamicBoolean == true || indexedNetworkEnabled == false)
+		{
+			indexedNetwork = null;
+		}
+		else
+		{
+			indexedNetwork = new IndexedReactionNetwork(this, noAssignmentRulesFlag);
+		}
+	}
+
 	/**
 	 * abstract simulate method each simulator needs a simulate method
 	 */
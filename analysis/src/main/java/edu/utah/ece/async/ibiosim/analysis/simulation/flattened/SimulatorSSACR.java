@@ -62,6 +62,16 @@ public class SimulatorSSACR extends Simulator
 	// number of groups including the empty groups and zero-propensity group
 	private int							numGroups						= 0;
 
+	// int-indexed groups used when the model structure is static
+	private CompositionRejectionGroups	compositionRejectionGroups		= null;
+
+	// whether an indexed reaction's propensity is scaled by stoichiometry
+	// amplification
+	private boolean[]					isAmplifiedDiffusionReaction	= null;
+
+	// set when a reaction's propensity is infinite or NaN, which ends the run
+	private String						invalidPropensityMessage		= null;
+
 	private static Long					initializationTime				= new Long(0);
 
 	MutableBoolean						eventsFlag						= new MutableBoolean(false);
@@ -117,6 +127,9 @@ public class SimulatorSSACR extends Simulator
 
 		double oldTime = 0;
 
+		setupIndexedNetwork(noAssignmentRulesFlag);
+		setupCompositionRejectionGroups();
+
 		initializationTime += System.nanoTime() - initTime2;
 		// long initTime3 = System.nanoTime() - initTime2;
 
@@ -153,7 +166,7 @@ public class SimulatorSSACR extends Simulator
 			// recalculate propensties/groups for affected reactions
 			if (affectedReactionSet.size() > 0)
 			{
-				updatePropensities(affectedReactionSet);
+				updatePropensitiesAndGroups(affectedReactionSet);
 			}
 		}
 
@@ -173,6 +186,14 @@ public class SimulatorSSACR extends Simulator
         return;
 			}
 
+			// composition-rejection cannot sample an infinite or NaN propensity
+			if (invalidPropensityMessage != null)
+			{
+				message.setErrorDialog("Simulation Canceled Due To Invalid Propensity", invalidPropensityMessage);
+				this.notifyObservers(message);
+				return;
+			}
+
 			// prints the initial (time == 0) data
 			// if (currentTime >= printTime) {
 			//
@@ -261,7 +282,7 @@ public class SimulatorSSACR extends Simulator
 
 					if (speciesToAffectedReactionSetMap != null && speciesToAffectedReactionSetMap.containsKey(affectedVariable))
 					{
-						updatePropensities(speciesToAffectedReactionSetMap.get(affectedVariable));
+						updatePropensitiesAndGroups(speciesToAffectedReactionSetMap.get(affectedVariable));
 					}
 
 					if (variableToAffectedAssignmentRuleSetMap != null && variableToAffectedAssignmentRuleSetMap.containsKey(affectedVariable))
@@ -275,69 +296,78 @@ public class SimulatorSSACR extends Simulator
 					}
 				}
 
-				// STEP 3A: select a group
+				// STEPS 3-6 on the indexed groups
+				if (compositionRejectionGroups != null)
+				{
+					performIndexedReaction(r2, r3, r4, noAssignmentRulesFlag, noConstraintsFlag);
+				}
+				else
+				{
 
-				// long step3aInitial = System.nanoTime();
+					// STEP 3A: select a group
 
-				int selectedGroup = selectGroup(r2);
+					// long step3aInitial = System.nanoTime();
 
-				// step3aTime += System.nanoTime() - step3aInitial;
+					int selectedGroup = selectGroup(r2);
 
-				// if it's zero that means there aren't any reactions to fire
-				if (selectedGroup != 0)
-				{
+					// step3aTime += System.nanoTime() - step3aInitial;
 
-					// STEP 3B: select a reaction within the group
+					// if it's zero that means there aren't any reactions to fire
+					if (selectedGroup != 0)
+					{
 
-					// long step3bInitial = System.nanoTime();
+						// STEP 3B: select a reaction within the group
 
-					String selectedReactionID = selectReaction(selectedGroup, r3, r4);
+						// long step3bInitial = System.nanoTime();
 
-					// step3bTime += System.nanoTime() - step3bInitial;
+						String selectedReactionID = selectReaction(selectedGroup, r3, r4);
 
-					// System.err.println(selectedReactionID + "  " +
-					// reactionToPropensityMap.get(selectedReactionID));
+						// step3bTime += System.nanoTime() - step3bInitial;
 
-					// STEP 4: perform selected reaction and update species
-					// counts
+						// System.err.println(selectedReactionID + "  " +
+						// reactionToPropensityMap.get(selectedReactionID));
 
-					// long step4Initial = System.nanoTime();
+						// STEP 4: perform selected reaction and update species
+						// counts
 
-					performReaction(selectedReactionID, noAssignmentRulesFlag, noConstraintsFlag);
+						// long step4Initial = System.nanoTime();
 
-					// step4Time += System.nanoTime() - step4Initial;
+						performReaction(selectedReactionID, noAssignmentRulesFlag, noConstraintsFlag);
 
-					// STEP 5: compute affected reactions' new propensities and
-					// update total propensity
+						// step4Time += System.nanoTime() - step4Initial;
 
-					// long step5Initial = System.nanoTime();
+						// STEP 5: compute affected reactions' new propensities and
+						// update total propensity
 
-					// create a set (precludes duplicates) of reactions that the
-					// selected reaction's species affect
-					HashSet<String> affectedReactionSet = getAffectedReactionSet(selectedReactionID, noAssignmentRulesFlag);
+						// long step5Initial = System.nanoTime();
 
-					boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
+						// create a set (precludes duplicates) of reactions that the
+						// selected reaction's species affect
+						HashSet<String> affectedReactionSet = getAffectedReactionSet(selectedReactionID, noAssignmentRulesFlag);
 
-					// step5Time += System.nanoTime() - step5Initial;
+						boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
 
-					// STEP 6: re-assign affected reactions to appropriate
-					// groups
+						// step5Time += System.nanoTime() - step5Initial;
 
-					// long step6Initial = System.nanoTime();
+						// STEP 6: re-assign affected reactions to appropriate
+						// groups
 
-					// if there's a new minPropensity, then the group boundaries
-					// change
-					// so re-calculate all groups
-					if (newMinPropensityFlag == true)
-					{
-						reassignAllReactionsToGroups();
-					}
-					else
-					{
-						updateGroups(affectedReactionSet);
-					}
+						// long step6Initial = System.nanoTime();
+
+						// if there's a new minPropensity, then the group boundaries
+						// change
+						// so re-calculate all groups
+						if (newMinPropensityFlag == true)
+						{
+							reassignAllReactionsToGroups();
+						}
+						else
+						{
+							updateGroups(affectedReactionSet);
+						}
 
-					// step6Time += System.nanoTime() - step6Initial;
+						// step6Time += System.nanoTime() - step6Initial;
+					}
 				}
 
 				if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
@@ -358,17 +388,7 @@ public class SimulatorSSACR extends Simulator
 				// recalculate propensties/groups for affected reactions
 				if (affectedReactionSet.size() > 0)
 				{
-
-					boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
-
-					if (newMinPropensityFlag == true)
-					{
-						reassignAllReactionsToGroups();
-					}
-					else
-					{
-						updateGroups(affectedReactionSet);
-					}
+					updatePropensitiesAndGroups(affectedReactionSet);
 				}
 
 				performRateRules(currentTime - oldTime);
@@ -648,6 +668,165 @@ public class SimulatorSSACR extends Simulator
 		}
 	}
 
+	/**
+	 * creates the int-indexed groups from the indexed reaction network; models
+	 * whose structure changes during simulation keep the name-based groups
+	 */
+	private void setupCompositionRejectionGroups()
+	{
+
+		if (indexedNetwork == null)
+		{
+			compositionRejectionGroups = null;
+			return;
+		}
+
+		int numIndexedReactions = indexedNetwork.getNumberOfReactions();
+
+		isAmplifiedDiffusionReaction = new boolean[numIndexedReactions];
+		invalidPropensityMessage = null;
+
+		for (int reaction = 0; reaction < numIndexedReactions; reaction++)
+		{
+
+			isAmplifiedDiffusionReaction[reaction] = stoichAmpBoolean == true && indexedNetwork.getReactionID(reaction).contains("_Diffusion_");
+
+			if (isInvalidPropensity(reaction, indexedNetwork.propensities[reaction]))
+			{
+				indexedNetwork.propensities[reaction] = 0.0;
+			}
+		}
+
+		compositionRejectionGroups = new CompositionRejectionGroups(indexedNetwork.propensities);
+		totalPropensity = compositionRejectionGroups.getTotalPropensity();
+	}
+
+	/**
+	 * selects and performs a reaction using the indexed groups, then updates
+	 * the propensities of the reactions that depend on it
+	 * 
+	 * @param r2
+	 * @param r3
+	 * @param r4
+	 * @param noAssignmentRulesFlag
+	 * @param noConstraintsFlag
+	 */
+	private void performIndexedReaction(double r2, double r3, double r4, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	{
+
+		int selectedReaction = compositionRejectionGroups.selectReaction(r2, r3, r4, randomNumberGenerator);
+
+		// if it's negative that means there aren't any reactions to fire
+		if (selectedReaction < 0)
+		{
+			return;
+		}
+
+		performReaction(selectedReaction, noAssignmentRulesFlag, noConstraintsFlag);
+
+		for (int i = indexedNetwork.dependencyStart[selectedReaction]; i < indexedNetwork.dependencyStart[selectedReaction + 1]; i++)
+		{
+			updatePropensity(indexedNetwork.dependencies[i]);
+		}
+
+		totalPropensity = compositionRejectionGroups.getTotalPropensity();
+	}
+
+	/**
+	 * recomputes the propensity of an indexed reaction and moves it to its new
+	 * group
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 */
+	private void updatePropensity(int reaction)
+	{
+
+		double newPropensity = indexedNetwork.computePropensity(reaction);
+
+		// stoichiometry amplification -- alter the propensity
+		if (isAmplifiedDiffusionReaction[reaction])
+		{
+			newPropensity *= (1.0 / stoichAmpGridValue);
+		}
+
+		if (isInvalidPropensity(reaction, newPropensity))
+		{
+			return;
+		}
+
+		compositionRejectionGroups.update(reaction, newPropensity);
+		indexedNetwork.setPropensity(reaction, newPropensity);
+	}
+
+	/**
+	 * records an infinite or NaN propensity so that the run is canceled
+	 * before the next step
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 * @param propensity
+	 *            its propensity
+	 * @return whether the propensity is invalid
+	 */
+	private boolean isInvalidPropensity(int reaction, double propensity)
+	{
+
+		if (Double.isInfinite(propensity) || Double.isNaN(propensity))
+		{
+
+			if (invalidPropensityMessage == null)
+			{
+				invalidPropensityMessage = "The propensity of reaction " + indexedNetwork.getReactionID(reaction) + " is " + propensity + ".";
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * updates the propensities and groups of the given reactions
+	 * 
+	 * @param affectedReactionSet
+	 *            the reactions whose propensities may have changed
+	 */
+	private void updatePropensitiesAndGroups(HashSet<String> affectedReactionSet)
+	{
+
+		if (compositionRejectionGroups != null)
+		{
+
+			for (String affectedReactionID : affectedReactionSet)
+			{
+
+				int reaction = indexedNetwork.getReactionIndex(affectedReactionID);
+
+				if (reaction >= 0)
+				{
+					updatePropensity(reaction);
+				}
+			}
+
+			totalPropensity = compositionRejectionGroups.getTotalPropensity();
+			return;
+		}
+
+		boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
+
+		// if there's a new minPropensity, then the group boundaries change
+		// so re-calculate all groups
+		if (newMinPropensityFlag == true)
+		{
+			reassignAllReactionsToGroups();
+		}
+		else
+		{
+			updateGroups(affectedReactionSet);
+		}
+	}
+
 	/**
 	 * cancels the current run
 	 */
@@ -66,6 +66,13 @@ public class SimulatorSSADirect extends Simulator
 		final boolean noAssignmentRulesFlag = (Boolean) rulesFlag.getValue();
 		final boolean noConstraintsFlag = (Boolean) constraintsFlag.getValue();
 
+		setupIndexedNetwork(noAssignmentRulesFlag);
+
+		if (indexedNetwork != null)
+		{
+			indexedNetwork.buildSumTree();
+		}
+
 		initializationTime += System.nanoTime() - initTime2;
 
 		currentTime = 0.0;
@@ -344,6 +351,13 @@ public class SimulatorSSADirect extends Simulator
 
 	private void performReaction(double r2, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
 	{
+
+		if (indexedNetwork != null)
+		{
+			performIndexedReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
+			return;
+		}
+
 		// long step3Initial = System.nanoTime();
 		String selectedReactionID = selectReaction(r2);
 
@@ -384,6 +398,46 @@ public class SimulatorSSADirect extends Simulator
 		}
 	}
 
+	private void performIndexedReaction(double r2, boolean noAssignmentRulesFlag, boolean noConstraintsFlag)
+	{
+
+		IndexedReactionNetwork network = indexedNetwork;
+		int selectedReaction = network.selectReaction(r2 * totalPropensity);
+
+		if (selectedReaction >= 0)
+		{
+
+			performReaction(selectedReaction, noAssignmentRulesFlag, noConstraintsFlag);
+
+			// the affected reactions are precomputed by the network
+			for (int i = network.dependencyStart[selectedReaction]; i < network.dependencyStart[selectedReaction + 1]; i++)
+			{
+				updatePropensity(network.dependencies[i]);
+			}
+		}
+
+		if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
+		{
+			performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get("time"));
+		}
+	}
+
+	/**
+	 * recomputes the propensity of one reaction of the indexed network
+	 * 
+	 * @param reaction
+	 *            the index of the reaction
+	 */
+	private void updatePropensity(int reaction)
+	{
+
+		IndexedReactionNetwork network = indexedNetwork;
+		double newPropensity = network.computePropensity(reaction);
+
+		totalPropensity += newPropensity - network.propensities[reaction];
+		network.setPropensity(reaction, newPropensity);
+	}
+
 	private double print(double printTime)
 	{
 		while (currentTime >= printTime && printTime < timeLimit)
@@ -420,6 +474,24 @@ public class SimulatorSSADirect extends Simulator
 	private void updatePropensities(HashSet<String> affectedReactionSet)
 	{
 
+		if (indexedNetwork != null)
+		{
+
+			for (String affectedReactionID : affectedReactionSet)
+			{
+
+				int reaction = indexedNetwork.getReactionIndex(affectedReactionID);
+
+				if (reaction >= 0)
+				{
+					updatePropensity(reaction);
+				}
+			}
+
+			return;
+		}
+
+
 		// loop through the affected reactions and update the propensities
 		for (String affectedReactionID : affectedReactionSet)
 		{
@@ -267,9 +267,10 @@ public final class HierarchicalModel {
     double reactionPropensity;
     for (ReactionNode node : reactions) {
       reactionPropensity = 0;
-      for (HierarchicalNode subNode : node) {
+      for (int element = 0; element < node.getNumOfElements(); element++) {
+        node.setArrayElement(element);
         hasChanged = hasChanged | node.computePropensity(index, computeSpeciesRate);
-        reactionPropensity += node.getValue(index);
+        reactionPropensity += node.getElementState(index, element).getValue();
       }
       if (node.isArray()) {
         node.getState().getChild(index).setStateValue(reactionPropensity);
@@ -16,8 +16,12 @@ package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Random;
 
@@ -32,11 +36,15 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Constrai
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState.StateType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.EventIndex;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.RuleScheduler;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.SpeciesConcentration;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.TriggeredEvent;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 /**
@@ -56,9 +64,14 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
   }
 
   final private StateType atomicType;
+  private CompiledModel compiledModel;
   private int currentRun;
+  private EventIndex eventIndex;
+  private final Map<String, Double> initialValueOverrides;
   final private StateType parentType;
   private final Random randomNumberGenerator;
+  private RuleScheduler ruleScheduler;
+  private final ArrayDeque<TriggeredEvent> triggeredEventPool;
   final private SimType type;
   private HierarchicalWriter writer;
 
@@ -70,6 +83,7 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
   protected boolean isInitialized;
   protected List<HierarchicalModel> modules;
   protected double printTime;
+  protected boolean splitReversibleReactions;
   protected HierarchicalModel topmodel;
   protected final AnalysisProperties properties;
   protected PriorityQueue<TriggeredEvent> triggeredEventList;
@@ -110,6 +124,27 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     this.randomNumberGenerator = new Random(simProperties.getRndSeed());
     this.writer = new HierarchicalTSDWriter();
     this.computeRateOfChange = false;
+    this.initialValueOverrides = new HashMap<>();
+    this.triggeredEventPool = new ArrayDeque<>();
+  }
+
+  /**
+   * Constructs a new simulation instance from a compiled model. The SBML is not parsed again.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param type
+   *          - the simulation type.
+   * @throws XMLStreamException
+   *           - if an error occurs when parsing the SBML file.
+   * @throws IOException
+   *           - if an error occurs with handling input/output files.
+   * @throws BioSimException
+   *           - if something went wrong during simulation.
+   */
+  public HierarchicalSimulation(CompiledModel compiledModel, SimType type) throws XMLStreamException, IOException, BioSimException {
+    this(compiledModel.getProperties(), type);
+    this.compiledModel = compiledModel;
   }
 
   /**
@@ -129,6 +164,10 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     this.atomicType = copy.atomicType;
     this.parentType = copy.parentType;
     this.computeRateOfChange = copy.computeRateOfChange;
+    this.splitReversibleReactions = copy.splitReversibleReactions;
+    this.compiledModel = copy.compiledModel;
+    this.initialValueOverrides = copy.initialValueOverrides;
+    this.triggeredEventPool = new ArrayDeque<>();
   }
 
   /**
@@ -142,6 +181,8 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
       modules = new ArrayList<>();
     }
     modules.add(hierarchicalModel);
+    ruleScheduler = null;
+    eventIndex = null;
   }
 
   /**
@@ -205,6 +246,15 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return this.parentType;
   }
 
+  /**
+   * Gets the compiled model this simulation is set up from.
+   *
+   * @return the compiled model, or null if the model file is parsed when the simulation is initialized.
+   */
+  public CompiledModel getCompiledModel() {
+    return compiledModel;
+  }
+
   /**
    * Gets the current simulation time.
    *
@@ -223,6 +273,15 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return currentTime;
   }
 
+  /**
+   * Gets the initial values that replace the ones in the model.
+   *
+   * @return the map from top-level variable id to its initial value.
+   */
+  public Map<String, Double> getInitialValueOverrides() {
+    return initialValueOverrides;
+  }
+
   /**
    * Gets the list of hierarchical models in the simulation.
    *
@@ -250,6 +309,17 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return type;
   }
 
+  /**
+   * Checks whether the kinetic laws of reversible reactions are split into a forward rate and a
+   * negated reverse rate when the reactions are not stochastic. The sum of the two rates is still
+   * the net rate of the reaction.
+   *
+   * @return true if reversible reactions are split.
+   */
+  public boolean isSplitReversibleReactions() {
+    return splitReversibleReactions;
+  }
+
   /**
    * Gets the value of a top-level variable.
    *
@@ -267,6 +337,15 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return Double.NaN;
   }
 
+  /**
+   * Gets the top-level model.
+   *
+   * @return the top-level model.
+   */
+  public HierarchicalModel getTopmodel() {
+    return topmodel;
+  }
+
   /**
    * Checks if the simulation has any event.
    *
@@ -276,6 +355,20 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return this.hasEvents;
   }
 
+  /**
+   * Replaces the initial value of a top-level variable. Unlike {@link #setTopLevelValue(String, double)}, the
+   * new value is used when the simulation is initialized and is restored at the start of every run. It must be
+   * set before the simulation is initialized.
+   *
+   * @param variable
+   *          - the id of the variable.
+   * @param value
+   *          - the new initial value.
+   */
+  public void overrideInitialValue(String variable, double value) {
+    initialValueOverrides.put(variable, value);
+  }
+
   /**
    * Sets the current simulation run.
    *
@@ -314,6 +407,8 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
    */
   public void setListOfHierarchicalModels(List<HierarchicalModel> modules) {
     this.modules = modules;
+    this.ruleScheduler = null;
+    this.eventIndex = null;
   }
 
   /**
@@ -333,6 +428,16 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     }
   }
 
+  /**
+   * Reseeds the random number generator.
+   *
+   * @param seed
+   *          - the new seed.
+   */
+  public void setRandomSeed(long seed) {
+    randomNumberGenerator.setSeed(seed);
+  }
+
   /**
    * Sets the top-level model.
    *
@@ -343,30 +448,64 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     this.topmodel = topmodel;
   }
 
+  /**
+   * Sets where the results of the simulation are printed to. The writer must be set before the
+   * simulation is initialized, which is when the printed variables are added to it.
+   *
+   * @param writer
+   *          - the new writer.
+   */
+  public void setWriter(HierarchicalWriter writer) {
+    this.writer = writer;
+  }
+
   protected void checkEvents() {
     double time = currentTime.getState().getValue();
     for (HierarchicalModel model : modules) {
       int index = model.getIndex();
       for (EventNode event : model.getListOfEvents()) {
-        for (HierarchicalNode subEvent : event) {
-          if (!event.isDeleted(index) && event.isTriggeredAtTime(time, index)) {
-            event.setMaxDisabledTime(index, Double.NEGATIVE_INFINITY);
-            event.setMinEnabledTime(index, Double.POSITIVE_INFINITY);
-            double fireTime = currentTime.getState().getValue() + event.evaluateFireTime(index);
-            TriggeredEvent triggered = new TriggeredEvent(index, fireTime, event);
-            triggered.setPriority(event.evaluatePriority(index));
-            if (event.getState().getChild(index).isUseTriggerValue()) {
-              double[] eventAssignments = event.computeEventAssignmentValues(index);
-              if (eventAssignments != null) {
-                triggered.setAssignmentValues(eventAssignments);
-              }
+        checkEvent(event, index, time);
+      }
+    }
+  }
 
-            }
-            triggeredEventList.add(triggered);
-            if (!event.getState().getChild(index).isPersistent()) {
-              event.addTriggeredEvent(index, triggered);
-            }
+  /**
+   * Checks only the events whose trigger can change when the given reaction fires. This is equivalent to
+   * {@link #checkEvents()} if nothing else has changed since the last check.
+   *
+   * @param reaction
+   *          - the reaction that has fired.
+   * @param index
+   *          - the index of the model the reaction belongs to.
+   */
+  protected void checkEvents(ReactionNode reaction, int index) {
+    double time = currentTime.getState().getValue();
+    EventIndex eventIndex = getEventIndex();
+    BitSet affected = eventIndex.getAffectedEvents(reaction, index);
+    for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+      checkEvent(eventIndex.getEvent(i), eventIndex.getIndex(i), time);
+    }
+  }
+
+  private void checkEvent(EventNode event, int index, double time) {
+    for (int element = 0; element < event.getNumOfElements(); element++) {
+      event.setArrayElement(element);
+      if (!event.isDeleted(index) && event.isTriggeredAtTime(time, index)) {
+        event.setMaxDisabledTime(index, Double.NEGATIVE_INFINITY);
+        event.setMinEnabledTime(index, Double.POSITIVE_INFINITY);
+        double fireTime = time + event.evaluateFireTime(index);
+        TriggeredEvent triggered = obtainTriggeredEvent(index, fireTime, event);
+        triggered.setPriority(event.evaluatePriority(index));
+        if (event.getState().getChild(index).isUseTriggerValue()) {
+          double[] eventAssignments = event.computeEventAssignmentValues(index);
+          if (eventAssignments != null) {
+            triggered.setAssignmentValues(eventAssignments);
           }
+
+        }
+        triggeredEventList.add(triggered);
+        if (!event.getState().getChild(index).isPersistent()) {
+          event.addTriggeredEvent(index, triggered);
         }
       }
     }
@@ -379,19 +518,19 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
   }
 
   protected void computeAssignmentRules() {
-    boolean changed = true;
-    while (changed) {
-      changed = false;
-      for (HierarchicalModel modelstate : this.modules) {
-        if (modelstate.getListOfAssignmentRules() != null) {
-          for (FunctionNode node : modelstate.getListOfAssignmentRules()) {
-            for (HierarchicalNode subnode : node) {
-              changed = changed | node.updateVariable(modelstate.getIndex());
-            }
-          }
-        }
-      }
-    }
+    getRuleScheduler().computeAssignmentRules();
+  }
+
+  /**
+   * Evaluates the assignment rules that can be affected by firing the given reaction.
+   *
+   * @param reaction
+   *          - the reaction that has fired.
+   * @param index
+   *          - the index of the model the reaction belongs to.
+   */
+  protected void computeAssignmentRules(ReactionNode reaction, int index) {
+    getRuleScheduler().computeAssignmentRules(reaction, index);
   }
 
   protected void computeEvents() {
@@ -408,6 +547,7 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
         if (eventState.getFireTime() <= time) {
           triggeredEventList.poll();
           eventState.fireEvent(time);
+          releaseTriggeredEvent(eventState);
           reevaluatePriorities();
           changed = true;
         } else {
@@ -472,6 +612,68 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     }
   }
 
+  /**
+   * Gets the index from states to the event triggers that read them, building it the first time it is needed.
+   *
+   * @return the event index.
+   */
+  protected EventIndex getEventIndex() {
+    if (eventIndex == null) {
+      eventIndex = new EventIndex(modules, currentTime);
+    }
+    return eventIndex;
+  }
+
+  /**
+   * Gets the scheduler of the assignment rules, building it the first time it is needed.
+   *
+   * @return the rule scheduler.
+   */
+  protected RuleScheduler getRuleScheduler() {
+    if (ruleScheduler == null) {
+      ruleScheduler = new RuleScheduler(modules, currentTime);
+    }
+    return ruleScheduler;
+  }
+
+  /**
+   * Evaluates the assignment rules, the propensities and the rate rules once each, in that order, when
+   * the assignment rules can be evaluated in a single pass. The propensities come before the rate rules
+   * because a rate rule may read the flux of a reaction.
+   *
+   * @param propensities
+   *          - computes the propensities of the reactions.
+   * @return false if the rules have to be iterated to a fixed point instead.
+   */
+  protected boolean computeRatesInSinglePass(Runnable propensities) {
+    if (!getRuleScheduler().isSinglePass() || computeRateOfChange) { return false; }
+    resetRateValues();
+    getRuleScheduler().computeAssignmentRules();
+    propensities.run();
+    computeRateRules();
+    return true;
+  }
+
+  /**
+   * Evaluates the rate rules of every module.
+   *
+   * @return true if any rate changed.
+   */
+  protected boolean computeRateRules() {
+    boolean changed = false;
+    for (HierarchicalModel hierarchicalModel : modules) {
+      if (hierarchicalModel.getListOfRateRules() != null) {
+        for (FunctionNode rateRule : hierarchicalModel.getListOfRateRules()) {
+          for (int element = 0; element < rateRule.getNumOfElements(); element++) {
+            rateRule.setArrayElement(element);
+            changed = changed | rateRule.updateRate(hierarchicalModel.getIndex());
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
   /**
    * @return the randomNumberGenerator
    */
@@ -479,6 +681,32 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return randomNumberGenerator.nextDouble();
   }
 
+  /**
+   * Fills an array with independent standard normal random numbers. The values are drawn in pairs
+   * with the polar method from uniform numbers of the random number generator, so both values of a
+   * pair are used and the synchronized {@link Random#nextGaussian()} is not called once per value.
+   * The second value of the last pair is dropped when the length of the array is odd.
+   *
+   * @param values
+   *          - the array to fill.
+   */
+  protected void getGaussians(double[] values) {
+    int i = 0;
+    while (i < values.length) {
+      double u, v, s;
+      do {
+        u = 2 * randomNumberGenerator.nextDouble() - 1;
+        v = 2 * randomNumberGenerator.nextDouble() - 1;
+        s = u * u + v * v;
+      } while (s >= 1 || s == 0);
+      double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+      values[i++] = u * multiplier;
+      if (i < values.length) {
+        values[i++] = v * multiplier;
+      }
+    }
+  }
+
   protected double getRoundedDouble(double value) {
     if (Double.isFinite(value)) {
       BigDecimal bd = new BigDecimal(value);
@@ -512,6 +740,36 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     }
   }
 
+  /**
+   * Gets a triggered event from the pool, or creates one if the pool is empty.
+   *
+   * @param index
+   *          - the model index.
+   * @param fireTime
+   *          - the time the event should be fired.
+   * @param event
+   *          - the event node that got triggered.
+   * @return the triggered event.
+   */
+  protected TriggeredEvent obtainTriggeredEvent(int index, double fireTime, EventNode event) {
+    TriggeredEvent triggered = triggeredEventPool.poll();
+    if (triggered == null) { return new TriggeredEvent(index, fireTime, event); }
+    triggered.reset(index, fireTime, event);
+    return triggered;
+  }
+
+  /**
+   * Returns a triggered event that is no longer in the queue to the pool.
+   *
+   * @param triggered
+   *          - the triggered event that has been fired or discarded.
+   */
+  protected void releaseTriggeredEvent(TriggeredEvent triggered) {
+    triggered.getParent().removeTriggeredEvent(triggered.getIndex(), triggered);
+    triggered.clear();
+    triggeredEventPool.push(triggered);
+  }
+
   protected void reevaluatePriorities() {
     PriorityQueue<TriggeredEvent> tmp = new PriorityQueue<>(1);
     while (triggeredEventList != null && !triggeredEventList.isEmpty()) {
@@ -539,7 +797,9 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
   protected void restoreInitialState() {
 
     if (triggeredEventList != null) {
-      triggeredEventList.clear();
+      while (!triggeredEventList.isEmpty()) {
+        releaseTriggeredEvent(triggeredEventList.poll());
+      }
     }
 
     for (HierarchicalModel hierarchicalModel : modules) {
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Keeps the simulation results in memory instead of writing them to a file. Each call to
+ * {@link #init(String)} starts a new run and discards the rows of the previous one, so a writer
+ * holds the time series of a single run.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class HierarchicalMemoryWriter extends HierarchicalWriter {
+
+  private final List<String> ids;
+  private final List<double[]> rows;
+
+  public HierarchicalMemoryWriter() {
+    super();
+    this.ids = new ArrayList<>();
+    this.rows = new ArrayList<>();
+  }
+
+  @Override
+  public void print(double currentTime) {
+    double[] row = new double[listOfStates.size() + 1];
+    row[0] = currentTime;
+    for (int i = 0; i < listOfStates.size(); ++i) {
+      row[i + 1] = listOfStates.get(i).getValue();
+    }
+    rows.add(row);
+  }
+
+  @Override
+  public void addVariable(String id, HierarchicalNode node, HierarchicalNode compartment, int index) {
+    ids.add(id);
+    HierarchicalState nodeState = node.getRootState(index);
+    HierarchicalState compartmentState = null;
+    if (compartment != null) {
+      compartmentState = compartment.getState().getChild(index);
+    }
+    addNode(nodeState, compartmentState);
+  }
+
+  /**
+   * Starts a new run. The filename is ignored.
+   */
+  @Override
+  public void init(String filename) {
+    rows.clear();
+  }
+
+  @Override
+  public void close() {}
+
+  /**
+   * @return the ids of the printed variables, in the order of the columns.
+   */
+  public List<String> getIds() {
+    return Collections.unmodifiableList(ids);
+  }
+
+  /**
+   * Gets the column of a variable.
+   *
+   * @param id
+   *          - the id of the variable.
+   * @return the column of the variable, or -1 if the variable is not printed.
+   */
+  public int getColumn(String id) {
+    return ids.indexOf(id);
+  }
+
+  /**
+   * @return the number of printed time points.
+   */
+  public int getNumOfRows() {
+    return rows.size();
+  }
+
+  /**
+   * Gets the time of a printed row.
+   *
+   * @param row
+   *          - the row.
+   * @return the simulation time of the row.
+   */
+  public double getTime(int row) {
+    return rows.get(row)[0];
+  }
+
+  /**
+   * Gets a value of a printed row.
+   *
+   * @param row
+   *          - the row.
+   * @param column
+   *          - the column of the variable.
+   * @return the value of the variable at the time of the row.
+   */
+  public double getValue(int row, int column) {
+    return rows.get(row)[column + 1];
+  }
+}
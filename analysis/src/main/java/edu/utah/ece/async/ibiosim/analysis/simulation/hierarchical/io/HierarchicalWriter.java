@@ -123,15 +123,25 @@ public abstract class HierarchicalWriter {
       this.compartmentState = compartmentState;
     }
 
-    @Override
-    public String toString() {
+    /**
+     * Gets the value of the variable, divided by the size of the compartment if the variable is printed as a
+     * concentration.
+     *
+     * @return the printed value.
+     */
+    public double getValue() {
       double value = state.getValue();
 
       if (compartmentState != null) {
         value = value / compartmentState.getValue();
       }
 
-      return String.valueOf(value);
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(getValue());
     }
   }
 
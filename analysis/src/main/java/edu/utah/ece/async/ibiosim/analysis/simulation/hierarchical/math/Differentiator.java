@@ -0,0 +1,430 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Functions to differentiate and simplify math.
+ *
+ * <p>
+ * The derivative of an expression is built as a new tree that shares the unchanged subtrees of the original one,
+ * including its name nodes, so it is evaluated with {@link Evaluator} in the scope of the same model index.
+ * Every node is created through the simplifying constructors of this class, which fold numbers and drop the
+ * neutral elements, so derivatives that are identically zero come out as the number zero.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class Differentiator {
+
+  private Differentiator() {}
+
+  /**
+   * Differentiates math with respect to the value of a variable. Relational and logical operators and step
+   * functions such as floor have a zero derivative almost everywhere, and piecewise functions, abs, min and max
+   * are differentiated branch by branch.
+   *
+   * @param math
+   *          - the expression.
+   * @param state
+   *          - the state of the variable. A name node is the variable if its state for the model index is this
+   *          state.
+   * @param index
+   *          - the model index.
+   * @return the simplified derivative.
+   * @throws IllegalArgumentException
+   *           - if the math uses random values, delays, rates of change, arrays, or a function without a
+   *           derivative.
+   */
+  public static HierarchicalNode differentiate(HierarchicalNode math, HierarchicalState state, int index) {
+    if (math.isArray()) { throw new IllegalArgumentException("Cannot differentiate arrays."); }
+    if (math.isBoolean() || math.isConstant() || math.isNumber()) { return number(0); }
+    if (math.isName()) { return number(math.getState() != null && math.getState().getChild(index) == state ? 1 : 0); }
+
+    int n = math.getNumOfChild();
+    switch (math.getType()) {
+    case PLUS: {
+      HierarchicalNode result = number(0);
+      for (int i = 0; i < n; i++) {
+        result = sum(result, differentiate(math.getChild(i), state, index));
+      }
+      return result;
+    }
+    case MINUS: {
+      HierarchicalNode result = differentiate(math.getChild(0), state, index);
+      if (n == 1) { return negate(result); }
+      for (int i = 1; i < n; i++) {
+        result = difference(result, differentiate(math.getChild(i), state, index));
+      }
+      return result;
+    }
+    case TIMES: {
+      HierarchicalNode result = number(0);
+      for (int i = 0; i < n; i++) {
+        HierarchicalNode term = differentiate(math.getChild(i), state, index);
+        for (int j = 0; j < n && !isNumber(term, 0); j++) {
+          if (j != i) {
+            term = product(term, math.getChild(j));
+          }
+        }
+        result = sum(result, term);
+      }
+      return result;
+    }
+    case DIVIDE: {
+      HierarchicalNode u = math.getChild(0);
+      HierarchicalNode v = math.getChild(1);
+      HierarchicalNode du = differentiate(u, state, index);
+      HierarchicalNode dv = differentiate(v, state, index);
+      return difference(quotient(du, v), quotient(product(u, dv), power(v, number(2))));
+    }
+    case POWER:
+    case FUNCTION_POWER: {
+      HierarchicalNode u = math.getChild(0);
+      HierarchicalNode v = math.getChild(1);
+      return differentiatePower(math, u, v, differentiate(u, state, index), differentiate(v, state, index));
+    }
+    case FUNCTION_ROOT: {
+      HierarchicalNode degree = n > 1 ? math.getChild(0) : number(2);
+      HierarchicalNode u = math.getChild(n - 1);
+      HierarchicalNode v = quotient(number(1), degree);
+      return differentiatePower(math, u, v, differentiate(u, state, index), differentiate(v, state, index));
+    }
+    case FUNCTION_EXP:
+      return product(differentiate(math.getChild(0), state, index), math);
+    case FUNCTION_LN:
+      return quotient(differentiate(math.getChild(0), state, index), math.getChild(0));
+    case FUNCTION_LOG: {
+      HierarchicalNode base = n > 1 ? math.getChild(0) : number(10);
+      HierarchicalNode u = math.getChild(n - 1);
+      if (!isNumber(differentiate(base, state, index), 0)) { throw new IllegalArgumentException("Cannot differentiate a logarithm with a variable base."); }
+      return quotient(differentiate(u, state, index), product(u, function(Type.FUNCTION_LN, base)));
+    }
+    case FUNCTION_SIN:
+      return chain(math, state, index, function(Type.FUNCTION_COS, math.getChild(0)));
+    case FUNCTION_COS:
+      return negate(chain(math, state, index, function(Type.FUNCTION_SIN, math.getChild(0))));
+    case FUNCTION_TAN:
+      return chain(math, state, index, quotient(number(1), power(function(Type.FUNCTION_COS, math.getChild(0)), number(2))));
+    case FUNCTION_SEC:
+      return chain(math, state, index, product(math, function(Type.FUNCTION_TAN, math.getChild(0))));
+    case FUNCTION_CSC:
+      return negate(chain(math, state, index, product(math, function(Type.FUNCTION_COT, math.getChild(0)))));
+    case FUNCTION_COT:
+      return negate(chain(math, state, index, quotient(number(1), power(function(Type.FUNCTION_SIN, math.getChild(0)), number(2)))));
+    case FUNCTION_SINH:
+      return chain(math, state, index, function(Type.FUNCTION_COSH, math.getChild(0)));
+    case FUNCTION_COSH:
+      return chain(math, state, index, function(Type.FUNCTION_SINH, math.getChild(0)));
+    case FUNCTION_TANH:
+      return chain(math, state, index, difference(number(1), power(math, number(2))));
+    case FUNCTION_ARCSIN:
+      return chain(math, state, index, quotient(number(1), power(difference(number(1), power(math.getChild(0), number(2))), number(0.5))));
+    case FUNCTION_ARCCOS:
+      return negate(chain(math, state, index, quotient(number(1), power(difference(number(1), power(math.getChild(0), number(2))), number(0.5)))));
+    case FUNCTION_ARCTAN:
+      return chain(math, state, index, quotient(number(1), sum(number(1), power(math.getChild(0), number(2)))));
+    case FUNCTION_ARCSINH:
+      return chain(math, state, index, quotient(number(1), power(sum(power(math.getChild(0), number(2)), number(1)), number(0.5))));
+    case FUNCTION_ARCCOSH:
+      return chain(math, state, index, quotient(number(1), power(difference(power(math.getChild(0), number(2)), number(1)), number(0.5))));
+    case FUNCTION_ARCTANH:
+      return chain(math, state, index, quotient(number(1), difference(number(1), power(math.getChild(0), number(2)))));
+    case FUNCTION_ABS: {
+      HierarchicalNode du = differentiate(math.getChild(0), state, index);
+      return piecewise(du, relation(Type.RELATIONAL_GEQ, math.getChild(0), number(0)), negate(du));
+    }
+    case FUNCTION_MIN:
+    case FUNCTION_MAX: {
+      if (n == 1) { return differentiate(math.getChild(0), state, index); }
+      if (n != 2) { throw new IllegalArgumentException("Cannot differentiate " + math.getType() + " with more than two arguments."); }
+      Type comparison = math.getType() == Type.FUNCTION_MIN ? Type.RELATIONAL_LEQ : Type.RELATIONAL_GEQ;
+      return piecewise(differentiate(math.getChild(0), state, index), relation(comparison, math.getChild(0), math.getChild(1)), differentiate(math.getChild(1), state, index));
+    }
+    case FUNCTION_PIECEWISE: {
+      HierarchicalNode result = new HierarchicalNode(Type.FUNCTION_PIECEWISE);
+      boolean isZero = true;
+      for (int i = 0; i < n; i++) {
+        HierarchicalNode child = math.getChild(i);
+        if (i % 2 == 0) {
+          child = differentiate(child, state, index);
+          isZero &= isNumber(child, 0);
+        }
+        result.addChild(child);
+      }
+      return isZero ? number(0) : result;
+    }
+    case FUNCTION_CEILING:
+    case FUNCTION_FLOOR:
+    case FUNCTION_FACTORIAL:
+    case FUNCTION_QUOTIENT:
+    case FUNCTION_REM:
+      return number(0);
+    default:
+      throw new IllegalArgumentException("Cannot differentiate " + math.getType() + ".");
+    }
+  }
+
+  /**
+   * Simplifies math by folding the numbers and dropping the neutral elements of arithmetic operators. The
+   * subtrees that cannot be simplified are shared with the original math.
+   *
+   * @param math
+   *          - the expression.
+   * @return the simplified expression.
+   */
+  public static HierarchicalNode simplify(HierarchicalNode math) {
+    int n = math.getNumOfChild();
+    if (n == 0 || math.isName() || math.isArray()) { return math; }
+    HierarchicalNode[] children = new HierarchicalNode[n];
+    boolean changed = false;
+    for (int i = 0; i < n; i++) {
+      children[i] = simplify(math.getChild(i));
+      changed |= children[i] != math.getChild(i);
+    }
+    switch (math.getType()) {
+    case PLUS: {
+      HierarchicalNode result = number(0);
+      for (HierarchicalNode child : children) {
+        result = sum(result, child);
+      }
+      return result;
+    }
+    case MINUS: {
+      if (n == 1) { return negate(children[0]); }
+      HierarchicalNode result = children[0];
+      for (int i = 1; i < n; i++) {
+        result = difference(result, children[i]);
+      }
+      return result;
+    }
+    case TIMES: {
+      HierarchicalNode result = number(1);
+      for (HierarchicalNode child : children) {
+        result = product(result, child);
+      }
+      return result;
+    }
+    case DIVIDE:
+      return quotient(children[0], children[1]);
+    case POWER:
+      return power(children[0], children[1]);
+    default:
+      if (!changed) { return math; }
+      HierarchicalNode result = new HierarchicalNode(math.getType());
+      result.setName(math.getName());
+      for (HierarchicalNode child : children) {
+        result.addChild(child);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Creates a number node.
+   *
+   * @param value
+   *          - the value of the number.
+   * @return the number node.
+   */
+  public static HierarchicalNode number(double value) {
+    return new HierarchicalNode(value);
+  }
+
+  /**
+   * Checks if a node is the given number.
+   *
+   * @param node
+   *          - the node.
+   * @param value
+   *          - the number.
+   * @return true if the node is a number with the given value.
+   */
+  public static boolean isNumber(HierarchicalNode node, double value) {
+    return node.isNumber() && node.getState().getValue() == value;
+  }
+
+  /**
+   * Creates the sum of two expressions.
+   *
+   * @param a
+   *          - the first term.
+   * @param b
+   *          - the second term.
+   * @return the simplified sum.
+   */
+  public static HierarchicalNode sum(HierarchicalNode a, HierarchicalNode b) {
+    if (isNumber(a, 0)) { return b; }
+    if (isNumber(b, 0)) { return a; }
+    if (a.isNumber() && b.isNumber()) { return number(value(a) + value(b)); }
+    HierarchicalNode result = new HierarchicalNode(Type.PLUS);
+    addOperands(result, a);
+    addOperands(result, b);
+    return result;
+  }
+
+  /**
+   * Creates the difference of two expressions.
+   *
+   * @param a
+   *          - the minuend.
+   * @param b
+   *          - the subtrahend.
+   * @return the simplified difference.
+   */
+  public static HierarchicalNode difference(HierarchicalNode a, HierarchicalNode b) {
+    if (isNumber(b, 0)) { return a; }
+    if (isNumber(a, 0)) { return negate(b); }
+    if (a.isNumber() && b.isNumber()) { return number(value(a) - value(b)); }
+    HierarchicalNode result = new HierarchicalNode(Type.MINUS);
+    result.addChild(a);
+    result.addChild(b);
+    return result;
+  }
+
+  /**
+   * Creates the negation of an expression.
+   *
+   * @param a
+   *          - the expression.
+   * @return the simplified negation.
+   */
+  public static HierarchicalNode negate(HierarchicalNode a) {
+    if (a.isNumber()) { return number(-value(a)); }
+    if (a.getType() == Type.MINUS && a.getNumOfChild() == 1) { return a.getChild(0); }
+    HierarchicalNode result = new HierarchicalNode(Type.MINUS);
+    result.addChild(a);
+    return result;
+  }
+
+  /**
+   * Creates the product of two expressions.
+   *
+   * @param a
+   *          - the first factor.
+   * @param b
+   *          - the second factor.
+   * @return the simplified product.
+   */
+  public static HierarchicalNode product(HierarchicalNode a, HierarchicalNode b) {
+    if (isNumber(a, 0) || isNumber(b, 0)) { return number(0); }
+    if (isNumber(a, 1)) { return b; }
+    if (isNumber(b, 1)) { return a; }
+    if (a.isNumber() && b.isNumber()) { return number(value(a) * value(b)); }
+    if (isNumber(a, -1)) { return negate(b); }
+    if (isNumber(b, -1)) { return negate(a); }
+    HierarchicalNode result = new HierarchicalNode(Type.TIMES);
+    addFactors(result, a);
+    addFactors(result, b);
+    return result;
+  }
+
+  /**
+   * Creates the quotient of two expressions.
+   *
+   * @param a
+   *          - the dividend.
+   * @param b
+   *          - the divisor.
+   * @return the simplified quotient.
+   */
+  public static HierarchicalNode quotient(HierarchicalNode a, HierarchicalNode b) {
+    if (isNumber(a, 0)) { return number(0); }
+    if (isNumber(b, 1)) { return a; }
+    if (a.isNumber() && b.isNumber() && value(b) != 0) { return number(value(a) / value(b)); }
+    HierarchicalNode result = new HierarchicalNode(Type.DIVIDE);
+    result.addChild(a);
+    result.addChild(b);
+    return result;
+  }
+
+  /**
+   * Creates a power.
+   *
+   * @param a
+   *          - the base.
+   * @param b
+   *          - the exponent.
+   * @return the simplified power.
+   */
+  public static HierarchicalNode power(HierarchicalNode a, HierarchicalNode b) {
+    if (isNumber(b, 0)) { return number(1); }
+    if (isNumber(b, 1)) { return a; }
+    if (a.isNumber() && b.isNumber()) { return number(Math.pow(value(a), value(b))); }
+    HierarchicalNode result = new HierarchicalNode(Type.POWER);
+    result.addChild(a);
+    result.addChild(b);
+    return result;
+  }
+
+  private static HierarchicalNode differentiatePower(HierarchicalNode math, HierarchicalNode u, HierarchicalNode v, HierarchicalNode du, HierarchicalNode dv) {
+    if (isNumber(dv, 0)) { return product(du, product(v, power(u, difference(v, number(1))))); }
+    // d(u^v) = u^v (v' ln(u) + v u' / u)
+    return product(math, sum(product(dv, function(Type.FUNCTION_LN, u)), quotient(product(v, du), u)));
+  }
+
+  /**
+   * Applies the chain rule to a function of one argument, given the derivative of the function at its argument.
+   */
+  private static HierarchicalNode chain(HierarchicalNode math, HierarchicalState state, int index, HierarchicalNode derivative) {
+    HierarchicalNode du = differentiate(math.getChild(0), state, index);
+    if (isNumber(du, 0)) { return du; }
+    return product(du, derivative);
+  }
+
+  private static HierarchicalNode function(Type type, HierarchicalNode argument) {
+    HierarchicalNode result = new HierarchicalNode(type);
+    result.addChild(argument);
+    if (argument.isNumber()) { return number(Evaluator.evaluateExpressionRecursive(result, 0)); }
+    return result;
+  }
+
+  private static HierarchicalNode relation(Type type, HierarchicalNode a, HierarchicalNode b) {
+    HierarchicalNode result = new HierarchicalNode(type);
+    result.addChild(a);
+    result.addChild(b);
+    return result;
+  }
+
+  private static HierarchicalNode piecewise(HierarchicalNode a, HierarchicalNode condition, HierarchicalNode b) {
+    if (isNumber(a, 0) && isNumber(b, 0)) { return a; }
+    HierarchicalNode result = new HierarchicalNode(Type.FUNCTION_PIECEWISE);
+    result.addChild(a);
+    result.addChild(condition);
+    result.addChild(b);
+    return result;
+  }
+
+  private static void addOperands(HierarchicalNode sum, HierarchicalNode term) {
+    if (term.getType() == Type.PLUS && !term.isArray()) {
+      sum.addChildren(term.getChildren());
+    } else {
+      sum.addChild(term);
+    }
+  }
+
+  private static void addFactors(HierarchicalNode product, HierarchicalNode factor) {
+    if (factor.getType() == Type.TIMES && !factor.isArray()) {
+      product.addChildren(factor.getChildren());
+    } else {
+      product.addChild(factor);
+    }
+  }
+
+  private static double value(HierarchicalNode node) {
+    return node.getState().getValue();
+  }
+}
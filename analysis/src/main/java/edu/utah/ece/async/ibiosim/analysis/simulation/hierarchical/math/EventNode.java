@@ -130,6 +130,18 @@ public class EventNode extends HierarchicalNode {
     getRootState(index).getEventState().addNonPersistentEvent(event);
   }
 
+  /**
+   * Removes a triggered event from the list of non-persistent events that are still pending.
+   *
+   * @param index
+   *          - the model index.
+   * @param event
+   *          - the triggered event that has been fired or discarded.
+   */
+  public void removeTriggeredEvent(int index, TriggeredEvent event) {
+    getRootState(index).getEventState().getNonPersistentEvents().remove(event);
+  }
+
   private void untriggerNonPersistent(int index) {
     LinkedList<TriggeredEvent> nonPersistent = getRootState(index).getEventState().getNonPersistentEvents();
 
@@ -204,7 +216,8 @@ public class EventNode extends HierarchicalNode {
       }
       assignmentValues = new double[size];
       for (FunctionNode eventAssignment : eventAssignments) {
-        for (HierarchicalNode subNode : eventAssignment) {
+        for (int element = 0; element < eventAssignment.getNumOfElements(); element++) {
+          eventAssignment.setArrayElement(element);
           double value = Evaluator.evaluateExpressionRecursive(eventAssignment.getMath(), index);
           assignmentValues[assignmentIndex++] = value;
         }
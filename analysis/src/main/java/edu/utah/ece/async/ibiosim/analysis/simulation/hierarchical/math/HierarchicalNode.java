@@ -32,6 +32,8 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.Hie
  */
 public class HierarchicalNode extends AbstractHierarchicalNode implements Iterable<HierarchicalNode> {
   private List<HierarchicalNode> children;
+  private int[][] arrayElements;
+  private HierarchicalState[][] elementStates;
   protected HierarchicalState state;
 
   public HierarchicalNode(Type type) {
@@ -334,6 +336,129 @@ public class HierarchicalNode extends AbstractHierarchicalNode implements Iterab
     return false;
   }
 
+  /**
+   * Precomputes the index space of the array. Element k is assigned the dimension values the
+   * {@link HierarchicalIterator} would visit at step k, so that array elements can be visited with a plain
+   * loop over {@link #getNumOfElements()}. This must be called again if the size of a dimension changes.
+   */
+  public void initializeArrayElements() {
+    if (listOfDimensions == null) {
+      arrayElements = null;
+      elementStates = null;
+      return;
+    }
+    int numOfDimensions = listOfDimensions.size();
+    int size = getSize();
+    if (arrayElements == null || arrayElements.length != size) {
+      elementStates = null;
+    }
+    arrayElements = new int[size][numOfDimensions];
+    for (int k = 1; k < size; k++) {
+      int[] previous = arrayElements[k - 1];
+      int[] current = arrayElements[k];
+      System.arraycopy(previous, 0, current, 0, numOfDimensions);
+      for (int i = 0; i < numOfDimensions; i++) {
+        if (++current[i] < listOfDimensions.get(i).getSize()) {
+          break;
+        }
+        current[i] = 0;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of elements of the node. Scalar nodes have a single element.
+   *
+   * @return the number of elements.
+   */
+  public int getNumOfElements() {
+    if (listOfDimensions == null) { return 1; }
+    if (arrayElements == null) {
+      initializeArrayElements();
+    }
+    return arrayElements.length;
+  }
+
+  /**
+   * Sets the dimensions of the node to the values of the given element. Does nothing for scalar nodes. The
+   * dimension nodes are shared by every element, so this is only needed right before evaluating math that
+   * refers to the dimensions. Use {@link #getElementState(int, int)} to read the state of an element.
+   *
+   * @param element
+   *          - the position of the element in the index space of the array.
+   */
+  public void setArrayElement(int element) {
+    if (listOfDimensions == null) { return; }
+    if (arrayElements == null) {
+      initializeArrayElements();
+    }
+    int[] values = arrayElements[element];
+    for (int i = 0; i < values.length; i++) {
+      listOfDimensions.get(i).getState().setStateValue(values[i]);
+    }
+  }
+
+  /**
+   * Resolves the states of every element of the node for the given model, so that
+   * {@link #getElementState(int, int)} is a plain lookup. Called once the array states of the model are created.
+   *
+   * @param index
+   *          - the model index.
+   */
+  public void initializeElementStates(int index) {
+    if (listOfDimensions == null || state == null) { return; }
+    if (arrayElements == null) {
+      initializeArrayElements();
+    }
+    if (elementStates == null || index >= elementStates.length) {
+      HierarchicalState[][] resized = new HierarchicalState[index + 1][];
+      if (elementStates != null) {
+        System.arraycopy(elementStates, 0, resized, 0, elementStates.length);
+      }
+      elementStates = resized;
+    }
+    HierarchicalState[] states = new HierarchicalState[arrayElements.length];
+    for (int k = 0; k < states.length; k++) {
+      states[k] = resolveElementState(index, k);
+    }
+    elementStates[index] = states;
+  }
+
+  /**
+   * Gets the state of an element of the node. Neither the dimension values nor any other state of the node are
+   * read or written, so elements can be visited in any order.
+   *
+   * @param index
+   *          - the model index.
+   * @param element
+   *          - the position of the element in the index space of the array.
+   * @return the state of the element.
+   */
+  public HierarchicalState getElementState(int index, int element) {
+    if (listOfDimensions == null) { return state.getChild(index); }
+    if (elementStates != null && index < elementStates.length && elementStates[index] != null) { return elementStates[index][element]; }
+    return resolveElementState(index, element);
+  }
+
+  private HierarchicalState resolveElementState(int index, int element) {
+    HierarchicalState subState = state.getChild(index);
+    int[] values = arrayElements != null ? arrayElements[element] : elementValues(element);
+    for (int i = values.length - 1; i >= 0; i--) {
+      subState = subState.getChild(values[i]);
+    }
+    return subState;
+  }
+
+  private int[] elementValues(int element) {
+    int[] values = new int[listOfDimensions.size()];
+    for (int i = 0; i < values.length; i++) {
+      int size = listOfDimensions.get(i).getSize();
+      values[i] = element % size;
+      element /= size;
+    }
+    return values;
+  }
+
   @Override
   public Iterator<HierarchicalNode> iterator() {
     return new HierarchicalIterator(this);
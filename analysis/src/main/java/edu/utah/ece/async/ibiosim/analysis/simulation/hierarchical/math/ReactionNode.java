@@ -76,6 +76,24 @@ public class ReactionNode extends VariableNode {
     products.add(speciesRef);
   }
 
+  /**
+   * Gets the reactants of the reaction.
+   *
+   * @return the list of reactants, or null if the reaction has no reactant.
+   */
+  public List<SpeciesReferenceNode> getListOfReactants() {
+    return reactants;
+  }
+
+  /**
+   * Gets the products of the reaction.
+   *
+   * @return the list of products, or null if the reaction has no product.
+   */
+  public List<SpeciesReferenceNode> getListOfProducts() {
+    return products;
+  }
+
   /**
    * Sets the forward reaction rate.
    *
@@ -154,7 +172,8 @@ public class ReactionNode extends VariableNode {
     double value = getValue(index);
     if (reactants != null) {
       for (SpeciesReferenceNode specRef : reactants) {
-        for (HierarchicalNode subNode : specRef) {
+        for (int element = 0; element < specRef.getNumOfElements(); element++) {
+          specRef.setArrayElement(element);
           specRef.setSpeciesRate(index, -value);
         }
       }
@@ -162,7 +181,8 @@ public class ReactionNode extends VariableNode {
 
     if (products != null) {
       for (SpeciesReferenceNode specRef : products) {
-        for (HierarchicalNode subNode : specRef) {
+        for (int element = 0; element < specRef.getNumOfElements(); element++) {
+          specRef.setArrayElement(element);
           specRef.setSpeciesRate(index, value);
         }
       }
@@ -248,7 +268,8 @@ public class ReactionNode extends VariableNode {
       updatedStates = new ArrayList<>();
     }
     for (SpeciesReferenceNode specRef : specRefs) {
-      for (HierarchicalNode subNode : specRef) {
+      for (int element = 0; element < specRef.getNumOfElements(); element++) {
+        specRef.setArrayElement(element);
         HierarchicalState state = specRef.updateSpecies(index, multiplier);
         if (getUpdates) {
           updatedStates.add(state);
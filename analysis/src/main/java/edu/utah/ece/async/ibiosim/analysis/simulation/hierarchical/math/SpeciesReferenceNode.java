@@ -66,12 +66,14 @@ public class SpeciesReferenceNode extends VariableNode {
   }
 
   /**
+   * Gets the state of the species that this species reference points to. If the species is an
+   * array, the state is the element selected by the current array element of the reference.
    *
    * @param index
-   * @param value
+   *          - the model index.
+   * @return the species state.
    */
-  public void setSpeciesRate(int index, double value) {
-    SpeciesNode speciesNode = getSpecies();
+  public HierarchicalState getSpeciesState(int index) {
     HierarchicalState speciesState = species.getState().getChild(index);
 
     if (indexMap != null && indexMap.containsKey(IndexType.SPECIESREFERENCE)) {
@@ -82,6 +84,17 @@ public class SpeciesReferenceNode extends VariableNode {
         speciesState = speciesState.getChild(speciesIndex);
       }
     }
+    return speciesState;
+  }
+
+  /**
+   *
+   * @param index
+   * @param value
+   */
+  public void setSpeciesRate(int index, double value) {
+    SpeciesNode speciesNode = getSpecies();
+    HierarchicalState speciesState = getSpeciesState(index);
     if (!speciesState.isBoundaryCondition()) {
       double stoichiometry = getValue(index);
       double currentRate = speciesNode.getState().getChild(index).getRateValue();
@@ -98,16 +111,7 @@ public class SpeciesReferenceNode extends VariableNode {
    */
   public HierarchicalState updateSpecies(int index, int multiplier) {
     double stoichiometry = getValue(index);
-    HierarchicalState speciesState = species.getState().getChild(index);
-
-    if (indexMap != null && indexMap.containsKey(IndexType.SPECIESREFERENCE)) {
-      List<HierarchicalNode> indexMath = indexMap.get(IndexType.SPECIESREFERENCE);
-
-      for (int i = indexMath.size() - 1; i >= 0; i--) {
-        int speciesIndex = (int) Evaluator.evaluateExpressionRecursive(indexMath.get(i), index);
-        speciesState = speciesState.getChild(speciesIndex);
-      }
-    }
+    HierarchicalState speciesState = getSpeciesState(index);
     if (!speciesState.isBoundaryCondition()) {
       speciesState.setStateValue(speciesState.getValue() + multiplier * stoichiometry);
     }
@@ -122,15 +126,7 @@ public class SpeciesReferenceNode extends VariableNode {
    */
   public boolean hasEnoughMolecules(int index) {
 
-    HierarchicalState speciesState = species.getState().getChild(index);
-    if (indexMap != null && indexMap.containsKey(IndexType.SPECIESREFERENCE)) {
-      List<HierarchicalNode> indexMath = indexMap.get(IndexType.SPECIESREFERENCE);
-
-      for (int i = indexMath.size() - 1; i >= 0; i--) {
-        int speciesIndex = (int) Evaluator.evaluateExpressionRecursive(indexMath.get(i), index);
-        speciesState = speciesState.getChild(speciesIndex);
-      }
-    }
+    HierarchicalState speciesState = getSpeciesState(index);
     if (speciesState.getValue() < getRootState(index).getValue()) { return false; }
 
     return true;
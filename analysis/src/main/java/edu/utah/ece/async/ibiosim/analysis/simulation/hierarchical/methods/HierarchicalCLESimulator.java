@@ -0,0 +1,416 @@
+/*******************************************************************************
+ * 
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ * 
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Hierarchical chemical Langevin simulator. The state is advanced with fixed steps of the maximum
+ * time step, bounded by the print times. At each step, the drift is the same right-hand side as the
+ * ODE simulator, and each reaction adds a Wiener increment scaled by the square root of its
+ * propensity along its column of the stoichiometry matrix. The kinetic law of a reversible reaction
+ * is split into a forward and a reverse propensity, a+ and a-, and the reaction adds
+ * sqrt(a+) dW1 - sqrt(a-) dW2 with independent increments. The stoichiometry matrix is built once,
+ * over the flat state array of the simulator, and two Gaussian numbers per reaction are drawn at
+ * each step.
+ *
+ * <p>
+ * The Milstein stepper adds the derivative-free Milstein correction of each direction of a reaction
+ * to its own noise term, neglecting the iterated integrals between different noise terms. Species
+ * amounts are truncated at zero after every step. A reversible kinetic law that cannot be split into
+ * a difference of terms is treated as a forward propensity.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class HierarchicalCLESimulator extends HierarchicalSimulation {
+
+  /**
+   * The scheme used to advance the state.
+   */
+  public static enum Stepper {
+    EULER_MARUYAMA, MILSTEIN;
+  }
+
+  private final VectorWrapper vectorWrapper;
+  private final boolean print;
+  private final List<LangevinReaction> reactions;
+  private Stepper stepper;
+  private boolean[] isSpecies;
+  private double[] noise;
+  private double[] diffusion;
+
+  /**
+   * A column of the stoichiometry matrix, for a reaction of a model instance or an element of an
+   * array reaction.
+   */
+  private static final class LangevinReaction {
+    private final ReactionNode reaction;
+    private final int index;
+    private final int element;
+    private final int[] positions;
+    private final double[] coefficients;
+
+    private LangevinReaction(ReactionNode reaction, int index, int element, Map<Integer, Double> column) {
+      this.reaction = reaction;
+      this.index = index;
+      this.element = element;
+      this.positions = new int[column.size()];
+      this.coefficients = new double[column.size()];
+      int i = 0;
+      for (Map.Entry<Integer, Double> entry : column.entrySet()) {
+        positions[i] = entry.getKey();
+        coefficients[i] = entry.getValue();
+        i++;
+      }
+    }
+
+    /**
+     * Gets the forward propensity. Without a reverse rate, this is the propensity computed with the
+     * rates.
+     */
+    private double getForwardPropensity() {
+      if (reaction.getReverseRate() == null) { return reaction.getElementState(index, element).getValue(); }
+      reaction.setArrayElement(element);
+      return Evaluator.evaluateExpressionRecursive(reaction.getForwardRate(), index);
+    }
+
+    /**
+     * Gets the reverse propensity. The reverse rate of a split reaction is negated, so that the sum
+     * of the forward and reverse rates is the net rate.
+     */
+    private double getReversePropensity() {
+      if (reaction.getReverseRate() == null) { return 0; }
+      reaction.setArrayElement(element);
+      return -Evaluator.evaluateExpressionRecursive(reaction.getReverseRate(), index);
+    }
+
+    private void apply(double[] values, double amount) {
+      for (int i = 0; i < positions.length; i++) {
+        values[positions[i]] += coefficients[i] * amount;
+      }
+    }
+
+    /**
+     * Evaluates the forward or reverse propensity after moving the state along the column, and
+     * restores the state.
+     */
+    private double evaluatePropensity(double[] values, double amount, boolean forward) {
+      apply(values, amount);
+      reaction.setArrayElement(element);
+      double movedPropensity;
+      if (forward) {
+        movedPropensity = Evaluator.evaluateExpressionRecursive(reaction.getForwardRate(), index);
+      } else {
+        movedPropensity = -Evaluator.evaluateExpressionRecursive(reaction.getReverseRate(), index);
+      }
+      apply(values, -amount);
+      return movedPropensity;
+    }
+  }
+
+  /**
+   * Creates an instance of a chemical Langevin simulator that uses the Euler-Maruyama stepper.
+   *
+   * @param properties
+   *          - the analysis properties.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalCLESimulator(AnalysisProperties properties) throws IOException, XMLStreamException, BioSimException {
+    super(properties, SimType.HODE);
+    this.splitReversibleReactions = true;
+    this.vectorWrapper = new VectorWrapper();
+    this.isInitialized = false;
+    this.print = true;
+    this.reactions = new ArrayList<>();
+    this.stepper = Stepper.EULER_MARUYAMA;
+  }
+
+  /**
+   * Creates an instance of a chemical Langevin simulator from a compiled model.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param print
+   *          - whether to save the output.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalCLESimulator(CompiledModel compiledModel, boolean print) throws IOException, XMLStreamException, BioSimException {
+    super(compiledModel, SimType.HODE);
+    this.splitReversibleReactions = true;
+    this.vectorWrapper = new VectorWrapper();
+    this.isInitialized = false;
+    this.print = print;
+    this.reactions = new ArrayList<>();
+    this.stepper = Stepper.EULER_MARUYAMA;
+  }
+
+  @Override
+  public void cancel() {
+    this.cancel = true;
+  }
+
+  /**
+   * Sets the scheme used to advance the state.
+   *
+   * @param stepper
+   *          - the stepper.
+   */
+  public void setStepper(Stepper stepper) {
+    this.stepper = stepper;
+  }
+
+  /**
+   * Initializes the simulator.
+   *
+   * @param runNumber
+   *          - the run index.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public void initialize(int runNumber) throws IOException, XMLStreamException, BioSimException {
+    if (!isInitialized) {
+      currProgress = 0;
+      SimulationProperties simProperties = properties.getSimulationProperties();
+      setCurrentTime(simProperties.getInitialTime());
+      ModelSetup.setupModels(this, ModelType.HODE, vectorWrapper);
+      vectorWrapper.initStateValues();
+      computeFixedPoint();
+      createStoichiometryMatrix();
+
+      if (hasEvents()) {
+        triggeredEventList = new PriorityQueue<>(1);
+        computeEvents();
+      }
+      if (print) {
+        setupForOutput(runNumber);
+      } else {
+        setCurrentRun(runNumber);
+      }
+      isInitialized = true;
+    }
+  }
+
+  @Override
+  public void simulate() throws IOException, XMLStreamException, BioSimException {
+    if (!isInitialized) {
+      initialize(1);
+    }
+
+    SimulationProperties simProperties = properties.getSimulationProperties();
+    double timeLimit = simProperties.getTimeLimit();
+    double maxTimeStep = simProperties.getMaxTimeStep();
+    while (currentTime.getState().getValue() < timeLimit && !cancel) {
+      double time = currentTime.getState().getValue();
+      double nextEndTime = getRoundedDouble(time + maxTimeStep);
+      if (print && nextEndTime > printTime) {
+        nextEndTime = printTime;
+      }
+      if (nextEndTime > timeLimit) {
+        nextEndTime = timeLimit;
+      }
+      if (nextEndTime > time) {
+        step(nextEndTime - time);
+      }
+      setCurrentTime(nextEndTime);
+      computeAssignmentRules();
+      if (hasEvents()) {
+        computeEvents();
+      }
+      if (print) {
+        printToFile();
+      }
+    }
+    if (print) {
+      printToFile();
+    }
+  }
+
+  @Override
+  public void setupForNewRun(int newRun) throws IOException {
+    if (print) {
+      closeWriter();
+    }
+    setCurrentTime(properties.getSimulationProperties().getInitialTime());
+    restoreInitialState();
+    computeFixedPoint();
+    printTime = 0;
+    if (print) {
+      setupForOutput(newRun);
+    } else {
+      setCurrentRun(newRun);
+    }
+  }
+
+  @Override
+  public void printStatisticsTSD() {}
+
+  private void createStoichiometryMatrix() throws BioSimException {
+    isSpecies = new boolean[vectorWrapper.getSize()];
+    for (HierarchicalModel hierarchicalModel : modules) {
+      int index = hierarchicalModel.getIndex();
+      for (ReactionNode reaction : hierarchicalModel.getListOfReactions()) {
+        for (int element = 0; element < reaction.getNumOfElements(); element++) {
+          reaction.setArrayElement(element);
+          Map<Integer, Double> column = new LinkedHashMap<>();
+          addToColumn(column, reaction, reaction.getListOfReactants(), index, -1);
+          addToColumn(column, reaction, reaction.getListOfProducts(), index, 1);
+          reactions.add(new LangevinReaction(reaction, index, element, column));
+        }
+      }
+    }
+    noise = new double[2 * reactions.size()];
+    diffusion = new double[reactions.size()];
+  }
+
+  private void addToColumn(Map<Integer, Double> column, ReactionNode reaction, List<SpeciesReferenceNode> speciesReferences, int index, int sign) throws BioSimException {
+    if (speciesReferences == null) { return; }
+    for (SpeciesReferenceNode speciesReference : speciesReferences) {
+      for (int element = 0; element < speciesReference.getNumOfElements(); element++) {
+        speciesReference.setArrayElement(element);
+        HierarchicalState speciesState = speciesReference.getSpeciesState(index);
+        if (speciesState.isBoundaryCondition()) {
+          continue;
+        }
+        if (!(speciesState instanceof VectorState)) { throw new BioSimException("Species of reaction " + reaction.getName() + " are not part of the state vector.", "Error in model setup"); }
+        int position = ((VectorState) speciesState).getIndex();
+        isSpecies[position] = true;
+        column.merge(position, sign * speciesReference.getValue(index), Double::sum);
+      }
+    }
+  }
+
+  /**
+   * Advances the state by one step.
+   *
+   * @param dt
+   *          - the step size.
+   */
+  private void step(double dt) throws BioSimException {
+    double[] values = vectorWrapper.getValues();
+    double[] rates = vectorWrapper.getRates();
+    double sqrtDt = Math.sqrt(dt);
+
+    computeRates();
+    getGaussians(noise);
+    for (int j = 0; j < diffusion.length; j++) {
+      LangevinReaction reaction = reactions.get(j);
+      diffusion[j] = getNoise(reaction, values, reaction.getForwardPropensity(), noise[2 * j] * sqrtDt, dt, true);
+      if (reaction.reaction.getReverseRate() != null) {
+        diffusion[j] -= getNoise(reaction, values, reaction.getReversePropensity(), noise[2 * j + 1] * sqrtDt, dt, false);
+      }
+    }
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] += rates[i] * dt;
+    }
+    for (int j = 0; j < diffusion.length; j++) {
+      reactions.get(j).apply(values, diffusion[j]);
+    }
+    for (int i = 0; i < values.length; i++) {
+      if (isSpecies[i] && values[i] < 0) {
+        values[i] = 0;
+      }
+    }
+  }
+
+  /**
+   * Gets the noise term of one direction of a reaction, which moves the state along the column of
+   * the reaction for the forward direction and against it for the reverse direction. The Milstein
+   * correction evaluates the propensity at a state moved along the column, which may leave the
+   * domain of the rate law, so the moved propensity is cut off at zero.
+   *
+   * @throws BioSimException
+   *           - if the propensity of the current state is negative.
+   */
+  private double getNoise(LangevinReaction reaction, double[] values, double propensity, double increment, double dt, boolean forward) throws BioSimException {
+    if (propensity < 0) { throw new BioSimException("The " + (forward ? "forward" : "reverse") + " propensity of reaction " + reaction.reaction.getName() + " is negative (" + propensity + ") at time " + currentTime.getState().getValue() + ".", "Error in chemical Langevin simulation"); }
+    double scale = Math.sqrt(propensity);
+    double term = scale * increment;
+    if (stepper == Stepper.MILSTEIN && scale > 0) {
+      double sqrtDt = Math.sqrt(dt);
+      double direction = forward ? 1 : -1;
+      double movedScale = Math.sqrt(Math.max(0, reaction.evaluatePropensity(values, direction * scale * sqrtDt, forward)));
+      term += 0.5 * (movedScale - scale) * (increment * increment - dt) / sqrtDt;
+    }
+    return term;
+  }
+
+  private void computeRates() {
+    if (computeRatesInSinglePass(this::computePropensities)) { return; }
+    boolean changed = true;
+
+    while (changed) {
+      changed = false;
+      resetRateValues();
+      for (HierarchicalModel hierarchicalModel : modules) {
+        if (hierarchicalModel.getListOfAssignmentRules() != null) {
+          for (FunctionNode node : hierarchicalModel.getListOfAssignmentRules()) {
+            for (int element = 0; element < node.getNumOfElements(); element++) {
+              node.setArrayElement(element);
+              changed = changed | node.updateVariable(hierarchicalModel.getIndex());
+            }
+          }
+        }
+      }
+      changed |= computeRateRules();
+      for (HierarchicalModel hierarchicalModel : modules) {
+        changed |= hierarchicalModel.computePropensities(true);
+      }
+    }
+  }
+
+  private void computePropensities() {
+    for (HierarchicalModel hierarchicalModel : modules) {
+      hierarchicalModel.computePropensities(true);
+    }
+  }
+}
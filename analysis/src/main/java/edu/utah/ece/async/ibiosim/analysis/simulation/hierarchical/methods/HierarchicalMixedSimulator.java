@@ -14,37 +14,104 @@
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.exception.NumberIsTooSmallException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.events.EventHandler;
+import org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator;
 import org.sbml.jsbml.Model;
 
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 /**
- * Hierarchical simulator that allows the coupling of ODE simulation and FBA.
+ * Hierarchical simulator that couples ODE simulation, SSA and FBA on one clock. The reactions are
+ * partitioned into fast reactions, whose reactants and products all have high copy numbers and whose
+ * propensities are high, and slow reactions. Fast reactions are integrated as ODEs, while slow
+ * reactions fire one at a time as in the SSA. The reactions of submodels annotated as discrete are
+ * always slow.
+ *
+ * <p>
+ * The firing times of the slow reactions are found by integrating the total propensity of the
+ * slow reactions together with the ODEs. A slow reaction fires when the integrated propensity
+ * reaches an exponentially distributed threshold, which is located by the root finding of the
+ * integrator, so the propensities can change continuously between firings. The partition is
+ * updated after every slow reaction and at every print step, so reactions move between the ODE
+ * and the SSA parts as the copy numbers change.
+ *
+ * <p>
+ * Submodels annotated as flux balance models are solved by FBA every {@code dt} time units, where
+ * {@code dt} is a top-level parameter, or every print interval if there is no such parameter. The
+ * integration stops at every FBA time, and in between the fluxes are applied as constant reaction
+ * rates to the species they consume and produce.
  *
  * @author Leandro Watanabe
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public final class HierarchicalMixedSimulator extends HierarchicalSimulation {
+public final class HierarchicalMixedSimulator extends HierarchicalSimulation implements FirstOrderDifferentialEquations {
+
+  private static final double DEFAULT_COPY_NUMBER_THRESHOLD = 100;
+  private static final double DEFAULT_PROPENSITY_THRESHOLD = 10;
 
+  private final HighamHall54Integrator odecalc;
+  private final VectorWrapper vectorWrapper;
+  private final boolean print;
+  private final List<HybridReaction> reactions;
+  private final List<HybridReaction> fluxReactions;
+  private final List<HierarchicalFBASimulator> fbaSims;
+  private double copyNumberThreshold;
+  private double propensityThreshold;
+  private double[] augmentedState;
+  private double slowPropensity;
+  private double fbaInterval;
   private double fbaTime;
-  private HierarchicalFBASimulator fbaSim;
-  private HierarchicalODERKSimulator odeSim;
-  private VectorWrapper wrapper;
-  // private HierarchicalSimulation ssaSim;
+  private double firingThreshold;
+  private boolean slowReactionFired;
+  private boolean eventTriggered;
+
+  /**
+   * A reaction of a model instance, or an element of an array reaction.
+   */
+  private static final class HybridReaction {
+    private final ReactionNode reaction;
+    private final int index;
+    private final int element;
+    private final boolean isDiscrete;
+    private boolean isFast;
+
+    private HybridReaction(ReactionNode reaction, int index, int element, boolean isDiscrete) {
+      this.reaction = reaction;
+      this.index = index;
+      this.element = element;
+      this.isDiscrete = isDiscrete;
+      this.isFast = false;
+    }
+
+    private double getPropensity() {
+      return reaction.getElementState(index, element).getValue();
+    }
+  }
 
   /**
    * Creates an instance of a mixed simulator.
@@ -60,6 +127,71 @@ public final class HierarchicalMixedSimulator extends HierarchicalSimulation {
    */
   public HierarchicalMixedSimulator(AnalysisProperties properties) throws IOException, XMLStreamException, BioSimException {
     super(properties, SimType.MIXED);
+
+    SimulationProperties simProperties = properties.getSimulationProperties();
+    this.vectorWrapper = new VectorWrapper();
+    this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
+    this.isInitialized = false;
+    this.print = true;
+    this.reactions = new ArrayList<>();
+    this.fluxReactions = new ArrayList<>();
+    this.fbaSims = new ArrayList<>();
+    this.copyNumberThreshold = DEFAULT_COPY_NUMBER_THRESHOLD;
+    this.propensityThreshold = DEFAULT_PROPENSITY_THRESHOLD;
+  }
+
+  /**
+   * Creates an instance of a mixed simulator from a compiled model.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param print
+   *          - whether to save the output.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalMixedSimulator(CompiledModel compiledModel, boolean print) throws IOException, XMLStreamException, BioSimException {
+    super(compiledModel, SimType.MIXED);
+
+    SimulationProperties simProperties = properties.getSimulationProperties();
+    this.vectorWrapper = new VectorWrapper();
+    this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
+    this.isInitialized = false;
+    this.print = print;
+    this.reactions = new ArrayList<>();
+    this.fluxReactions = new ArrayList<>();
+    this.fbaSims = new ArrayList<>();
+    this.copyNumberThreshold = DEFAULT_COPY_NUMBER_THRESHOLD;
+    this.propensityThreshold = DEFAULT_PROPENSITY_THRESHOLD;
+  }
+
+  @Override
+  public void cancel() {
+    this.cancel = true;
+  }
+
+  /**
+   * Sets the smallest copy number of the reactants and products of a fast reaction.
+   *
+   * @param copyNumberThreshold
+   *          - the copy number threshold.
+   */
+  public void setCopyNumberThreshold(double copyNumberThreshold) {
+    this.copyNumberThreshold = copyNumberThreshold;
+  }
+
+  /**
+   * Sets the smallest propensity of a fast reaction.
+   *
+   * @param propensityThreshold
+   *          - the propensity threshold.
+   */
+  public void setPropensityThreshold(double propensityThreshold) {
+    this.propensityThreshold = propensityThreshold;
   }
 
   /**
@@ -77,115 +209,357 @@ public final class HierarchicalMixedSimulator extends HierarchicalSimulation {
   public void initialize(int runNumber) throws IOException, XMLStreamException, BioSimException {
     if (!isInitialized) {
       currProgress = 0;
-      setCurrentTime(0);
-      this.wrapper = new VectorWrapper();
-
-      ModelSetup.setupModels(this, ModelType.HODE, wrapper);
+      SimulationProperties simProperties = properties.getSimulationProperties();
+      setCurrentTime(simProperties.getInitialTime());
+      ModelSetup.setupModels(this, ModelType.HODE, vectorWrapper);
+      vectorWrapper.initStateValues();
       computeFixedPoint();
 
-      setupForOutput(runNumber);
+      for (HierarchicalModel hierarchicalModel : modules) {
+        ModelType modelType = hierarchicalModel.getModelType();
+        List<HybridReaction> listOfReactions = modelType == ModelType.HFBA ? fluxReactions : reactions;
+        for (ReactionNode reaction : hierarchicalModel.getListOfReactions()) {
+          for (int element = 0; element < reaction.getNumOfElements(); element++) {
+            listOfReactions.add(new HybridReaction(reaction, hierarchicalModel.getIndex(), element, modelType == ModelType.HSSA));
+          }
+        }
+      }
+      double dt = getTopLevelValue("dt");
+      fbaInterval = dt > 0 ? dt : simProperties.getPrintInterval();
+      fbaTime = simProperties.getInitialTime();
+      augmentedState = new double[vectorWrapper.getSize() + 1];
+      firingThreshold = Math.log(1 / getRandom());
+      odecalc.addEventHandler(new SlowReactionHandler(), simProperties.getPrintInterval(), 1e-20, 10000);
+
+      if (hasEvents()) {
+        odecalc.addEventHandler(new HybridEventHandler(), simProperties.getPrintInterval(), 1e-20, 10000);
+        triggeredEventList = new PriorityQueue<>(1);
+        computeEvents();
+      }
+      if (print) {
+        setupForOutput(runNumber);
+      } else {
+        setCurrentRun(runNumber);
+      }
       isInitialized = true;
     }
-
   }
 
   @Override
   public void simulate() throws IOException, XMLStreamException, BioSimException {
-
     if (!isInitialized) {
-      initialize(getCurrentRun());
+      initialize(1);
     }
-    double nextEndTime = currentTime.getState().getValue();
-    fbaTime = nextEndTime;
-    double dt = getTopLevelValue("dt");
+
     SimulationProperties simProperties = properties.getSimulationProperties();
     double timeLimit = simProperties.getTimeLimit();
     double maxTimeStep = simProperties.getMaxTimeStep();
-    while (nextEndTime < timeLimit) {
-      nextEndTime = nextEndTime + maxTimeStep;
+    int size = vectorWrapper.getSize();
+    double[] values = vectorWrapper.getValues();
+    partitionReactions();
 
-      if (nextEndTime > fbaTime) {
-        nextEndTime = fbaTime;
+    while (currentTime.getState().getValue() < timeLimit && !cancel) {
+      double time = currentTime.getState().getValue();
+      if (!fbaSims.isEmpty() && time >= fbaTime) {
+        computeFluxBalance();
+        fbaTime = getRoundedDouble(time + fbaInterval);
       }
-
-      if (nextEndTime > printTime) {
+      double nextEndTime = getRoundedDouble(time + maxTimeStep);
+      if (print && nextEndTime > printTime) {
         nextEndTime = printTime;
       }
-
+      if (!fbaSims.isEmpty() && nextEndTime > fbaTime) {
+        nextEndTime = fbaTime;
+      }
       if (nextEndTime > timeLimit) {
         nextEndTime = timeLimit;
       }
 
-      simProperties.setTimeLimit(nextEndTime);
-
-      if (nextEndTime <= fbaTime) {
-        fbaSim.simulate();
-
-        fbaTime = nextEndTime + dt;
+      System.arraycopy(values, 0, augmentedState, 0, size);
+      slowReactionFired = false;
+      eventTriggered = false;
+      double reachedTime;
+      try {
+        reachedTime = odecalc.integrate(this, time, augmentedState, nextEndTime, augmentedState);
+      }
+      catch (NumberIsTooSmallException e) {
+        reachedTime = nextEndTime;
+      }
+      catch (MaxCountExceededException e) {
+        reachedTime = nextEndTime;
       }
+      System.arraycopy(augmentedState, 0, values, 0, size);
+      setCurrentTime(reachedTime);
       computeAssignmentRules();
-      odeSim.simulate();
-      setCurrentTime(nextEndTime);
+
+      if (slowReactionFired) {
+        fireSlowReaction();
+        augmentedState[size] = 0;
+        firingThreshold = Math.log(1 / getRandom());
+      }
+      if (hasEvents() && (slowReactionFired || eventTriggered)) {
+        if (eventTriggered) {
+          for (HierarchicalModel hierarchicalModel : modules) {
+            int index = hierarchicalModel.getIndex();
+            for (EventNode event : hierarchicalModel.getListOfEvents()) {
+              for (int element = 0; element < event.getNumOfElements(); element++) {
+                event.setArrayElement(element);
+                if (event.getMaxDisabledTime(index) > reachedTime) {
+                  event.setMaxDisabledTime(index, reachedTime);
+                }
+              }
+            }
+          }
+        }
+        computeEvents();
+        computeAssignmentRules();
+      }
+      if (slowReactionFired || eventTriggered || reachedTime >= printTime) {
+        partitionReactions();
+      }
+      if (print) {
+        printToFile();
+      }
+    }
+    if (print) {
       printToFile();
     }
-
-    // Restore
-    simProperties.setTimeLimit(timeLimit);
-    closeWriter();
   }
 
   @Override
-  public void cancel() {}
+  public void setupForNewRun(int newRun) throws IOException {
+    if (print) {
+      closeWriter();
+    }
+    setCurrentTime(properties.getSimulationProperties().getInitialTime());
+    restoreInitialState();
+    computeFixedPoint();
+    augmentedState[vectorWrapper.getSize()] = 0;
+    fbaTime = properties.getSimulationProperties().getInitialTime();
+    firingThreshold = Math.log(1 / getRandom());
+    printTime = 0;
+    if (print) {
+      setupForOutput(newRun);
+    } else {
+      setCurrentRun(newRun);
+    }
+  }
 
   @Override
-  public void setupForNewRun(int newRun) {
-    fbaTime = 0;
-  }
+  public void printStatisticsTSD() {}
 
   /**
-   * Sets the ODE part of the simulator.
+   * Sets the FBA part of the simulator.
    *
-   * @param topmodel
-   * @param odeModels
-   * @throws IOException
-   * @throws XMLStreamException
-   * @throws BioSimException
+   * @param model
+   *          - the hierarchical model of the flux balance submodel.
+   * @param fbaModel
+   *          - the SBML model with the flux bounds and objective.
    */
-  public void createODESim(HierarchicalModel topmodel, List<HierarchicalModel> odeModels) throws IOException, XMLStreamException, BioSimException {
-    odeSim = new HierarchicalODERKSimulator(this.properties, false);
-    odeSim.setTopmodel(topmodel);
-    odeSim.setListOfHierarchicalModels(odeModels);
+  public void createFBASim(HierarchicalModel model, Model fbaModel) {
+    HierarchicalFBASimulator fbaSim = new HierarchicalFBASimulator(this, model);
+    fbaSim.setFBA(fbaModel);
+    fbaSims.add(fbaSim);
   }
 
   /**
-   * Sets the SSA part of the simulator.
+   * Checks if a reaction of the top-level model is currently integrated as an ODE.
    *
-   * @param topmodel
-   * @param submodels
+   * @param reaction
+   *          - the id of the reaction.
+   * @return true if every element of the reaction is fast.
    */
-  public void createSSASim(HierarchicalModel topmodel, Map<String, HierarchicalModel> submodels) {
-    // TODO:
+  boolean isFast(String reaction) {
+    boolean isFast = false;
+    for (HybridReaction hybridReaction : reactions) {
+      if (hybridReaction.index == topmodel.getIndex() && hybridReaction.reaction.getName().equals(reaction)) {
+        if (!hybridReaction.isFast) { return false; }
+        isFast = true;
+      }
+    }
+    return isFast;
+  }
+
+  @Override
+  public int getDimension() {
+    return vectorWrapper.getSize() + 1;
+  }
+
+  @Override
+  public void computeDerivatives(double t, double[] y, double[] yDot) throws MaxCountExceededException, DimensionMismatchException {
+    if (Double.isNaN(t)) { throw new MaxCountExceededException(t); }
+    int size = vectorWrapper.getSize();
+    setState(t, y);
+    computeRates();
+    System.arraycopy(vectorWrapper.getRates(), 0, yDot, 0, size);
+    yDot[size] = slowPropensity;
+  }
+
+  private void setState(double t, double[] y) {
+    setCurrentTime(t);
+    System.arraycopy(y, 0, vectorWrapper.getValues(), 0, vectorWrapper.getSize());
   }
 
   /**
-   * Sets the FBA part of the simulator.
-   *
-   * @param topmodel
-   * @param model
+   * Computes the rates of the ODE part, which only include the fast reactions and the fluxes, and the
+   * total propensity of the slow reactions.
    */
-  public void createFBASim(HierarchicalModel topmodel, Model model) {
-    fbaSim = new HierarchicalFBASimulator(this, topmodel);
-    fbaSim.setFBA(model);
+  private void computeRates() {
+    if (computeRatesInSinglePass(this::computePropensities)) { return; }
+    boolean changed = true;
+
+    while (changed) {
+      changed = false;
+      resetRateValues();
+      for (HierarchicalModel hierarchicalModel : modules) {
+        if (hierarchicalModel.getListOfAssignmentRules() != null) {
+          for (FunctionNode node : hierarchicalModel.getListOfAssignmentRules()) {
+            for (int element = 0; element < node.getNumOfElements(); element++) {
+              node.setArrayElement(element);
+              changed = changed | node.updateVariable(hierarchicalModel.getIndex());
+            }
+          }
+        }
+      }
+      changed |= computeRateRules();
+      changed |= computePropensities();
+    }
   }
 
-  @Override
-  public void printStatisticsTSD() {
-    // TODO Auto-generated method stub
+  private boolean computePropensities() {
+    boolean changed = false;
+    slowPropensity = 0;
+    for (HybridReaction hybridReaction : reactions) {
+      hybridReaction.reaction.setArrayElement(hybridReaction.element);
+      changed = changed | hybridReaction.reaction.computePropensity(hybridReaction.index, hybridReaction.isFast);
+      if (!hybridReaction.isFast) {
+        slowPropensity += hybridReaction.getPropensity();
+      }
+    }
+    for (HybridReaction fluxReaction : fluxReactions) {
+      fluxReaction.reaction.setArrayElement(fluxReaction.element);
+      fluxReaction.reaction.updateSpeciesRate(fluxReaction.index);
+    }
+    return changed;
+  }
 
+  /**
+   * Solves every flux balance submodel for the current state and updates the fluxes.
+   */
+  private void computeFluxBalance() {
+    for (HierarchicalFBASimulator fbaSim : fbaSims) {
+      fbaSim.simulate();
+    }
+    computeAssignmentRules();
   }
 
-  VectorWrapper getVectorWrapper() {
-    return this.wrapper;
+  /**
+   * Assigns every reaction to the ODE or the SSA part based on its current propensity and the copy
+   * numbers of its reactants and products.
+   */
+  private void partitionReactions() {
+    computeRates();
+    for (HybridReaction hybridReaction : reactions) {
+      ReactionNode reaction = hybridReaction.reaction;
+      reaction.setArrayElement(hybridReaction.element);
+      hybridReaction.isFast = !hybridReaction.isDiscrete && hybridReaction.getPropensity() >= propensityThreshold && hasHighCopyNumbers(reaction.getListOfReactants(), hybridReaction.index) && hasHighCopyNumbers(reaction.getListOfProducts(), hybridReaction.index);
+    }
+  }
+
+  private boolean hasHighCopyNumbers(List<SpeciesReferenceNode> speciesReferences, int index) {
+    if (speciesReferences == null) { return true; }
+    for (SpeciesReferenceNode speciesReference : speciesReferences) {
+      for (int element = 0; element < speciesReference.getNumOfElements(); element++) {
+        speciesReference.setArrayElement(element);
+        HierarchicalState speciesState = speciesReference.getSpeciesState(index);
+        if (!speciesState.isBoundaryCondition() && speciesState.getValue() < copyNumberThreshold) { return false; }
+      }
+    }
+    return true;
+  }
+
+  private void fireSlowReaction() {
+    computeRates();
+    double threshold = slowPropensity * getRandom();
+    double sum = 0;
+    for (HybridReaction hybridReaction : reactions) {
+      if (!hybridReaction.isFast) {
+        double propensity = hybridReaction.getPropensity();
+        sum += propensity;
+        if (sum >= threshold && propensity > 0) {
+          hybridReaction.reaction.setArrayElement(hybridReaction.element);
+          hybridReaction.reaction.fireReaction(hybridReaction.index, sum - threshold);
+          computeAssignmentRules();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the integration when the integrated propensity of the slow reactions reaches the firing
+   * threshold.
+   */
+  private class SlowReactionHandler implements EventHandler {
+
+    @Override
+    public void init(double t0, double[] y0, double t) {}
+
+    @Override
+    public double g(double t, double[] y) {
+      return y[y.length - 1] - firingThreshold;
+    }
+
+    @Override
+    public Action eventOccurred(double t, double[] y, boolean increasing) {
+      slowReactionFired = true;
+      return EventHandler.Action.STOP;
+    }
+
+    @Override
+    public void resetState(double t, double[] y) {}
   }
 
+  /**
+   * Stops the integration when an event is triggered or a triggered event is due.
+   */
+  private class HybridEventHandler implements EventHandler {
+
+    private double value = -1;
+
+    @Override
+    public void init(double t0, double[] y0, double t) {}
+
+    @Override
+    public double g(double t, double[] y) {
+      double returnValue = -value;
+      setState(t, y);
+      computeRates();
+      for (HierarchicalModel modelstate : modules) {
+        int index = modelstate.getIndex();
+        for (EventNode event : modelstate.getListOfEvents()) {
+          for (int element = 0; element < event.getNumOfElements(); element++) {
+            event.setArrayElement(element);
+            if (event.isTriggeredAtTime(t, index)) {
+              returnValue = value;
+            }
+          }
+        }
+      }
+      if (!triggeredEventList.isEmpty() && triggeredEventList.peek().getFireTime() <= t) {
+        returnValue = value;
+      }
+      return returnValue;
+    }
+
+    @Override
+    public Action eventOccurred(double t, double[] y, boolean increasing) {
+      value = -value;
+      eventTriggered = true;
+      return EventHandler.Action.STOP;
+    }
+
+    @Override
+    public void resetState(double t, double[] y) {}
+  }
 }
@@ -32,8 +32,9 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalM
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.RatePartition;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
@@ -50,6 +51,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
   private final HighamHall54Integrator odecalc;
   private final VectorWrapper vectorWrapper;
   private final boolean print;
+  private boolean parallelRates;
+  private RatePartition ratePartition;
 
   /**
    * Creates an instance of an ODE simulator.
@@ -71,6 +74,7 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
     this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
     this.isInitialized = false;
     this.print = true;
+    this.parallelRates = true;
   }
 
   /**
@@ -95,6 +99,32 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
     this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
     this.isInitialized = false;
     this.print = print;
+    this.parallelRates = true;
+  }
+
+  /**
+   * Creates an instance of an ODE simulator from a compiled model.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param print
+   *          - whether to save the output.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalODERKSimulator(CompiledModel compiledModel, boolean print) throws IOException, XMLStreamException, BioSimException {
+    super(compiledModel, SimType.HODE);
+
+    SimulationProperties simProperties = properties.getSimulationProperties();
+    this.vectorWrapper = new VectorWrapper();
+    this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
+    this.isInitialized = false;
+    this.print = print;
+    this.parallelRates = true;
   }
 
   @Override
@@ -102,6 +132,18 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
     this.cancel = true;
   }
 
+  /**
+   * Sets whether the propensities of independent submodels can be computed in parallel when the right-hand
+   * side is evaluated. Models that are too small, or that cannot be split safely, are always evaluated
+   * serially.
+   *
+   * @param parallelRates
+   *          - whether the parallel evaluation is allowed.
+   */
+  public void setParallelRates(boolean parallelRates) {
+    this.parallelRates = parallelRates;
+  }
+
   /**
    * Initializes the simulator.
    *
@@ -155,7 +197,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
       // }
       nextEndTime = getRoundedDouble(currentTime.getState().getValue() + maxTimeStep);
 
-      if (nextEndTime > printTime) {
+      // without output the integration runs straight to the time limit, since the print time never advances
+      if (print && nextEndTime > printTime) {
         nextEndTime = printTime;
       }
       if (nextEndTime > timeLimit) {
@@ -195,7 +238,23 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
   @Override
   public void printStatisticsTSD() {}
 
+  private void computePropensities() {
+    if (parallelRates) {
+      if (ratePartition == null) {
+        ratePartition = new RatePartition(modules);
+      }
+      ratePartition.computePropensities();
+    } else {
+      for (HierarchicalModel hierarchicalModel : modules) {
+        hierarchicalModel.computePropensities(true);
+      }
+    }
+  }
+
   private void computeRates() {
+    // when the assignment rules are acyclic, none reads a reaction and no rate of change is used, the rules,
+    // propensities and rate rules are evaluated once each; otherwise they are re-evaluated until nothing changes
+    if (computeRatesInSinglePass(this::computePropensities)) { return; }
     boolean changed = true;
 
     while (changed) {
@@ -205,7 +264,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
         int index = hierarchicalModel.getIndex();
         if (hierarchicalModel.getListOfAssignmentRules() != null) {
           for (FunctionNode node : hierarchicalModel.getListOfAssignmentRules()) {
-            for (HierarchicalNode subNode : node) {
+            for (int element = 0; element < node.getNumOfElements(); element++) {
+              node.setArrayElement(element);
               changed = changed | node.updateVariable(hierarchicalModel.getIndex());
             }
           }
@@ -213,7 +273,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
 
         if (hierarchicalModel.getListOfRateRules() != null) {
           for (FunctionNode rateRule : hierarchicalModel.getListOfRateRules()) {
-            for (HierarchicalNode subNode : rateRule) {
+            for (int element = 0; element < rateRule.getNumOfElements(); element++) {
+              rateRule.setArrayElement(element);
               changed = changed | rateRule.updateRate(index);
             }
           }
@@ -224,6 +285,16 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
 
   }
 
+  /**
+   * Gets the values of the state vector that is integrated by the simulator. The array is only available after
+   * the simulator has been initialized.
+   *
+   * @return the values of the state vector.
+   */
+  public double[] getStateValues() {
+    return vectorWrapper.getValues();
+  }
+
   @Override
   public int getDimension() {
     return vectorWrapper.getSize();
@@ -254,7 +325,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
       for (HierarchicalModel modelstate : modules) {
         int index = modelstate.getIndex();
         for (EventNode event : modelstate.getListOfEvents()) {
-          for (HierarchicalNode subNode : event) {
+          for (int element = 0; element < event.getNumOfElements(); element++) {
+            event.setArrayElement(element);
             if (event.isTriggeredAtTime(t, index)) {
               returnValue = value;
             }
@@ -273,7 +345,8 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
       for (HierarchicalModel modelstate : modules) {
         int index = modelstate.getIndex();
         for (EventNode event : modelstate.getListOfEvents()) {
-          for (HierarchicalNode subNode : event) {
+          for (int element = 0; element < event.getNumOfElements(); element++) {
+            event.setArrayElement(element);
             if (event.getMaxDisabledTime(index) > t) {
               event.setMaxDisabledTime(index, t);
             }
@@ -23,9 +23,10 @@ import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc.TrajectoryObserver;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
@@ -40,6 +41,9 @@ import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
   private final boolean print;
   private double totalPropensity;
+  private int firedReactionIndex;
+  private ReactionNode lastFiredReaction;
+  private TrajectoryObserver observer;
 
   /**
    * Creates an instance of a SSA simulator.
@@ -79,6 +83,25 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
 
   }
 
+  /**
+   * Creates an instance of a SSA simulator from a compiled model.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param print
+   *          - whether to save the output.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalSSADirectSimulator(CompiledModel compiledModel, boolean print) throws IOException, XMLStreamException, BioSimException {
+    super(compiledModel, SimType.HSSA);
+    this.print = print;
+  }
+
   /**
    * Initializes the simulator.
    *
@@ -106,7 +129,11 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
         computeEvents();
       }
 
-      setupForOutput(runNumber);
+      if (print) {
+        setupForOutput(runNumber);
+      } else {
+        setCurrentRun(runNumber);
+      }
       isInitialized = true;
     }
 
@@ -123,7 +150,22 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
     setCurrentTime(simProperties.getInitialTime());
     restoreInitialState();
     computeFixedPoint();
-    setupForOutput(newRun);
+    if (print) {
+      setupForOutput(newRun);
+    } else {
+      setCurrentRun(newRun);
+    }
+  }
+
+  /**
+   * Sets an observer that is notified of every state of the trajectory. The simulation of a
+   * trajectory stops as soon as the observer no longer needs it.
+   *
+   * @param observer
+   *          - the trajectory observer, or null to remove it.
+   */
+  public void setTrajectoryObserver(TrajectoryObserver observer) {
+    this.observer = observer;
   }
 
   @Override
@@ -140,8 +182,10 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
 
     printTime = simProperties.getOutputStartTime();
     previousTime = 0;
+    lastFiredReaction = null;
+    boolean decided = observer != null && observer.observe(currentTime.getState().getValue());
 
-    while (currentTime.getState().getValue() < timeLimit) {
+    while (!decided && currentTime.getState().getValue() < timeLimit) {
       // if (!HierarchicalUtilities.evaluateConstraints(constraintList))
       // {
       // return;
@@ -184,16 +228,25 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
       } else {
         update(false, true, false, r2, previousTime);
       }
+      if (observer != null) {
+        decided = observer.observe(currentTime);
+      }
     }
 
-    if (!cancel) {
+    if (!cancel && !decided) {
       setCurrentTime(timeLimit);
       update(false, true, true, r2, previousTime);
       if (print) {
         printToFile();
       }
+      if (observer != null) {
+        observer.observe(timeLimit);
+        observer.finish(timeLimit);
+      }
+    }
+    if (print) {
+      closeWriter();
     }
-    closeWriter();
   }
 
   @Override
@@ -202,8 +255,9 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
   }
 
   private void update(boolean reaction, boolean rateRule, boolean events, double r2, double previousTime) {
+    ReactionNode firedReaction = null;
     if (reaction) {
-      selectAndPerformReaction(r2);
+      firedReaction = selectAndPerformReaction(r2);
     }
     if (rateRule) {
       fireRateRules(previousTime);
@@ -211,7 +265,13 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
     if (events) {
       computeEvents();
     }
-    computeAssignmentRules();
+    if (firedReaction != null && !rateRule && !events) {
+      computeAssignmentRules(firedReaction, firedReactionIndex);
+      lastFiredReaction = firedReaction;
+    } else {
+      computeAssignmentRules();
+      lastFiredReaction = null;
+    }
   }
 
   private void computePropensities() {
@@ -223,9 +283,10 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
       for (ReactionNode node : model.getListOfReactions()) {
         reactionPropensity = 0;
         HierarchicalState reactionState = node.getState().getChild(index);
-        for (HierarchicalNode subNode : node) {
+        for (int element = 0; element < node.getNumOfElements(); element++) {
+          node.setArrayElement(element);
           node.computePropensity(index, computeRateOfChange);
-          reactionPropensity += node.getValue(index);
+          reactionPropensity += node.getElementState(index, element).getValue();
         }
         if (node.isArray()) {
           reactionState.setStateValue(reactionPropensity);
@@ -239,7 +300,7 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
 
   private void fireRateRules(double previousTime) {}
 
-  private void selectAndPerformReaction(double r2) {
+  private ReactionNode selectAndPerformReaction(double r2) {
     double sum = 0;
     double threshold = totalPropensity * r2;
     HierarchicalModel selectedModel = null;
@@ -258,20 +319,26 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
       sum += reactionPropensity;
       if (sum >= threshold) {
         sum = sum - reactionPropensity;
-        for (HierarchicalNode subNode : node) {
-          sum += node.getValue(index);
+        for (int element = 0; element < node.getNumOfElements(); element++) {
+          sum += node.getElementState(index, element).getValue();
           if (sum >= threshold) {
+            node.setArrayElement(element);
             node.fireReaction(index, sum - threshold);
-            return;
+            firedReactionIndex = index;
+            return node;
           }
         }
       }
     }
-
+    return null;
   }
 
   private double getNextEventTime() {
-    checkEvents();
+    if (lastFiredReaction != null) {
+      checkEvents(lastFiredReaction, firedReactionIndex);
+    } else {
+      checkEvents();
+    }
     if (triggeredEventList != null && !triggeredEventList.isEmpty()) { return triggeredEventList.peek().getFireTime(); }
     return Double.POSITIVE_INFINITY;
   }
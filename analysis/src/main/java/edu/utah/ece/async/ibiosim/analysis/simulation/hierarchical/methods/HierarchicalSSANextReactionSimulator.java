@@ -48,6 +48,8 @@ import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation {
   private final boolean print;
   private double totalPropensity;
+  private int firedReactionIndex;
+  private ReactionNode lastFiredReaction;
   private Map<HierarchicalState, List<DependencyNode>> dependencyGraph;
 
   /**
@@ -150,6 +152,7 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
 
     printTime = simProperties.getOutputStartTime();
     previousTime = 0;
+    lastFiredReaction = null;
 
     computePropensities();
 
@@ -297,8 +300,9 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
   }
 
   private void update(boolean reaction, boolean rateRule, boolean events, double r2, double previousTime) {
+    ReactionNode firedReaction = null;
     if (reaction) {
-      selectAndPerformReaction(r2);
+      firedReaction = selectAndPerformReaction(r2);
     }
     if (rateRule) {
       fireRateRules(previousTime);
@@ -307,6 +311,11 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
       computeEvents();
     }
     computeAssignmentRules();
+    if (firedReaction != null && !rateRule && !events) {
+      lastFiredReaction = firedReaction;
+    } else {
+      lastFiredReaction = null;
+    }
   }
 
   private void computePropensities() {
@@ -319,7 +328,7 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
 
   private void fireRateRules(double previousTime) {}
 
-  private void selectAndPerformReaction(double r2) {
+  private ReactionNode selectAndPerformReaction(double r2) {
     double sum = 0;
     double threshold = totalPropensity * r2;
     HierarchicalModel selectedModel = null;
@@ -332,7 +341,7 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
         break;
       }
     }
-    if (selectedModel == null) { return; }
+    if (selectedModel == null) { return null; }
 
     int index = selectedModel.getIndex();
     sum = 0;
@@ -347,14 +356,17 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
     }
 
     if (selectedReaction != null) {
-      for (HierarchicalNode subNode : selectedReaction) {
-        sum += selectedReaction.getValue(index);
+      for (int element = 0; element < selectedReaction.getNumOfElements(); element++) {
+        sum += selectedReaction.getElementState(index, element).getValue();
         if (sum >= threshold) {
+          selectedReaction.setArrayElement(element);
           performReaction(selectedModel, selectedReaction, sum - threshold, index);
-          break;
+          firedReactionIndex = index;
+          return selectedReaction;
         }
       }
     }
+    return null;
   }
 
   private void performReaction(HierarchicalModel model, ReactionNode reactionNode, double threshold, int index) {
@@ -414,7 +426,11 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
   }
 
   private double getNextEventTime() {
-    checkEvents();
+    if (lastFiredReaction != null) {
+      checkEvents(lastFiredReaction, firedReactionIndex);
+    } else {
+      checkEvents();
+    }
     if (triggeredEventList != null && !triggeredEventList.isEmpty()) { return triggeredEventList.peek().getFireTime(); }
     return Double.POSITIVE_INFINITY;
   }
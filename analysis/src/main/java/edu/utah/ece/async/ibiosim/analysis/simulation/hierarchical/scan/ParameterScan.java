@@ -0,0 +1,205 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The points of a parameter scan. Every scanned parameter takes its values from a range and
+ * belongs to a level. The parameters of the same level are scanned together, so the n-th point of
+ * a level uses the n-th value of every range in it, or the last value of a range that is shorter
+ * than the others. The levels are nested, the first level being the outermost one, which is how
+ * the sweeps of the model editor and the nested repeated tasks of SED-ML are run.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ParameterScan {
+
+  private final List<String> parameters;
+  private final TreeMap<Integer, Level> levels;
+
+  /**
+   * The ranges of the parameters that are scanned together.
+   */
+  private static final class Level {
+    private final List<Integer> positions;
+    private final List<double[]> ranges;
+    private int size;
+
+    private Level() {
+      this.positions = new ArrayList<>();
+      this.ranges = new ArrayList<>();
+      this.size = 0;
+    }
+  }
+
+  public ParameterScan() {
+    this.parameters = new ArrayList<>();
+    this.levels = new TreeMap<>();
+  }
+
+  /**
+   * Creates a scan from the parameter changes of the model editor, as saved in the .sim file of an
+   * analysis. Each change is the id of a parameter, the kind of change and either a value or a
+   * sweep of the form (start,stop,step,level), separated by spaces, for example
+   * "k1 Sweep (0,1,0.1,1)".
+   *
+   * @param changes
+   *          - the parameter changes.
+   * @return the scan of the swept parameters.
+   */
+  public static ParameterScan parse(List<String> changes) {
+    ParameterScan scan = new ParameterScan();
+    for (String change : changes) {
+      String trimmed = change.trim();
+      int first = trimmed.indexOf(' ');
+      if (first < 0) {
+        continue;
+      }
+      String value = trimmed.substring(trimmed.lastIndexOf(' ') + 1);
+      if (value.startsWith("(")) {
+        scan.addSweep(trimmed.substring(0, first), value);
+      }
+    }
+    return scan;
+  }
+
+  /**
+   * Adds a sweep of the form (start,stop,step,level). The values go from start to stop in
+   * increments of step. The number of values is computed up front and every value is start + i *
+   * step, so rounding neither drops the stop value nor accumulates along the sweep.
+   *
+   * @param id
+   *          - the id of the parameter.
+   * @param sweep
+   *          - the sweep.
+   */
+  public void addSweep(String id, String sweep) {
+    String[] fields = sweep.replace("(", "").replace(")", "").split(",");
+    if (fields.length != 4) {
+      throw new IllegalArgumentException("Sweep " + sweep + " of " + id + " is not of the form (start,stop,step,level).");
+    }
+    double start = Double.parseDouble(fields[0].trim());
+    double stop = Double.parseDouble(fields[1].trim());
+    double step = Double.parseDouble(fields[2].trim());
+    int level = Integer.parseInt(fields[3].trim());
+
+    int count = 1;
+    if (step > 0 && stop > start) {
+      count += (int) Math.floor((stop - start) / step + 1e-9);
+    }
+    double[] range = new double[count];
+    for (int i = 0; i < count; i++) {
+      range[i] = start + i * step;
+    }
+    addRange(id, range, level);
+  }
+
+  /**
+   * Adds a range of values for a parameter.
+   *
+   * @param id
+   *          - the id of the parameter.
+   * @param values
+   *          - the values of the parameter.
+   * @param level
+   *          - the level of the range. Lower levels are outer loops of the scan.
+   */
+  public void addRange(String id, double[] values, int level) {
+    if (parameters.contains(id)) {
+      throw new IllegalArgumentException("Parameter " + id + " is scanned more than once.");
+    }
+    if (values.length == 0) {
+      throw new IllegalArgumentException("Range of parameter " + id + " is empty.");
+    }
+    Level scanLevel = getLevel(level);
+    scanLevel.positions.add(parameters.size());
+    scanLevel.ranges.add(values.clone());
+    scanLevel.size = Math.max(scanLevel.size, values.length);
+    parameters.add(id);
+  }
+
+  /**
+   * Makes a level repeat at least a number of times, even if it does not change any parameter.
+   *
+   * @param level
+   *          - the level.
+   * @param iterations
+   *          - the number of iterations of the level.
+   */
+  public void addIterations(int level, int iterations) {
+    if (iterations <= 0) {
+      throw new IllegalArgumentException("Level " + level + " must have at least one iteration.");
+    }
+    Level scanLevel = getLevel(level);
+    scanLevel.size = Math.max(scanLevel.size, iterations);
+  }
+
+  private Level getLevel(int level) {
+    Level scanLevel = levels.get(level);
+    if (scanLevel == null) {
+      scanLevel = new Level();
+      levels.put(level, scanLevel);
+    }
+    return scanLevel;
+  }
+
+  /**
+   * @return the ids of the scanned parameters, in the order of the values of a point.
+   */
+  public List<String> getParameters() {
+    return Collections.unmodifiableList(parameters);
+  }
+
+  /**
+   * @return the number of points of the scan.
+   */
+  public int getNumOfPoints() {
+    if (levels.isEmpty()) {
+      return 0;
+    }
+    int points = 1;
+    for (Level level : levels.values()) {
+      points = Math.multiplyExact(points, level.size);
+    }
+    return points;
+  }
+
+  /**
+   * Gets the values of the parameters at a point.
+   *
+   * @param point
+   *          - the point, between zero and the number of points.
+   * @return the values in the order of the parameters.
+   */
+  public double[] getPoint(int point) {
+    double[] values = new double[parameters.size()];
+    int remainder = point;
+    for (Map.Entry<Integer, Level> entry : levels.descendingMap().entrySet()) {
+      Level level = entry.getValue();
+      int step = remainder % level.size;
+      remainder = remainder / level.size;
+      for (int i = 0; i < level.positions.size(); i++) {
+        double[] range = level.ranges.get(i);
+        values[level.positions.get(i)] = range[Math.min(step, range.length - 1)];
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.util.Map;
+
+import org.jlibsedml.AbstractTask;
+import org.jlibsedml.FunctionalRange;
+import org.jlibsedml.Parameter;
+import org.jlibsedml.Range;
+import org.jlibsedml.RepeatedTask;
+import org.jlibsedml.SedML;
+import org.jlibsedml.SetValue;
+import org.jlibsedml.SubTask;
+import org.jlibsedml.Task;
+import org.jlibsedml.modelsupport.SBMLSupport;
+import org.jmathml.EvaluationContext;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Converts SED-ML repeated tasks into parameter scans. Each repeated task becomes a level of the
+ * scan, and a repeated task whose subtask is another repeated task becomes a nested level. The
+ * changes of a repeated task are evaluated at every iteration of its master range and set the
+ * initial values of the targeted parameters, species or compartments.
+ *
+ * <p>
+ * Every point of the scan starts from the initial state of the model, so the state is reset
+ * between iterations whether or not the repeated task asks for it. Functional ranges, changes that
+ * refer to model variables and repeated tasks with more than one subtask are not supported.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class SEDMLScan {
+
+  private SEDMLScan() {}
+
+  /**
+   * Gets the task that is repeated, following nested repeated tasks down to a simulation task.
+   *
+   * @param sedml
+   *          - the SED-ML model.
+   * @param task
+   *          - the repeated task.
+   * @return the task with the model and simulation of the scan.
+   * @throws BioSimException
+   *           - if the repeated task is not supported.
+   */
+  public static Task getBaseTask(SedML sedml, RepeatedTask task) throws BioSimException {
+    AbstractTask subTask = getSubTask(sedml, task);
+    if (subTask instanceof RepeatedTask) {
+      return getBaseTask(sedml, (RepeatedTask) subTask);
+    }
+    return (Task) subTask;
+  }
+
+  /**
+   * Creates the parameter scan of a repeated task.
+   *
+   * @param sedml
+   *          - the SED-ML model.
+   * @param task
+   *          - the repeated task.
+   * @return the parameter scan.
+   * @throws BioSimException
+   *           - if the repeated task is not supported.
+   */
+  public static ParameterScan create(SedML sedml, RepeatedTask task) throws BioSimException {
+    ParameterScan scan = new ParameterScan();
+    addLevel(sedml, task, scan, 1);
+    return scan;
+  }
+
+  private static void addLevel(SedML sedml, RepeatedTask task, ParameterScan scan, int level) throws BioSimException {
+    Map<String, Range> ranges = task.getRanges();
+    Range master = ranges.get(task.getRange());
+    if (master == null) {
+      throw new BioSimException("Repeated task " + task.getId() + " has no range " + task.getRange() + ".", "Error in parameter scan");
+    }
+    for (Range range : ranges.values()) {
+      if (range instanceof FunctionalRange) {
+        throw new BioSimException("Functional range " + range.getId() + " of repeated task " + task.getId() + " is not supported.", "Error in parameter scan");
+      }
+    }
+
+    SBMLSupport support = new SBMLSupport();
+    int iterations = master.getNumElements();
+    // a repeated task without changes still repeats its subtask once per element of the master range
+    scan.addIterations(level, iterations);
+    for (SetValue setValue : task.getChanges()) {
+      String id = support.getIdFromXPathIdentifer(setValue.getTargetXPath().getTargetAsString());
+      if (id == null) {
+        throw new BioSimException("Target " + setValue.getTargetXPath().getTargetAsString() + " of repeated task " + task.getId() + " is not supported.", "Error in parameter scan");
+      }
+      if (!setValue.getListOfVariables().isEmpty()) {
+        throw new BioSimException("Change of " + id + " in repeated task " + task.getId() + " refers to model variables.", "Error in parameter scan");
+      }
+      double[] values = new double[iterations];
+      for (int i = 0; i < iterations; i++) {
+        EvaluationContext context = new EvaluationContext();
+        for (Range range : ranges.values()) {
+          context.setValueFor(range.getId(), range.getElementAt(Math.min(i, range.getNumElements() - 1)));
+        }
+        for (Parameter parameter : setValue.getListOfParameters()) {
+          context.setValueFor(parameter.getId(), parameter.getValue());
+        }
+        values[i] = setValue.getMath().evaluate(context).getValue();
+      }
+      scan.addRange(id, values, level);
+    }
+
+    AbstractTask subTask = getSubTask(sedml, task);
+    if (subTask instanceof RepeatedTask) {
+      addLevel(sedml, (RepeatedTask) subTask, scan, level + 1);
+    }
+  }
+
+  private static AbstractTask getSubTask(SedML sedml, RepeatedTask task) throws BioSimException {
+    if (task.getSubTasks().size() != 1) {
+      throw new BioSimException("Repeated task " + task.getId() + " must have exactly one subtask.", "Error in parameter scan");
+    }
+    SubTask subTask = task.getSubTasks().values().iterator().next();
+    AbstractTask abstractTask = sedml.getTaskWithId(subTask.getTaskId());
+    if (!(abstractTask instanceof Task) && !(abstractTask instanceof RepeatedTask)) {
+      throw new BioSimException("Subtask " + subTask.getTaskId() + " of repeated task " + task.getId() + " is not supported.", "Error in parameter scan");
+    }
+    return abstractTask;
+  }
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jlibsedml.Curve;
+import org.jlibsedml.DataGenerator;
+import org.jlibsedml.DataSet;
+import org.jlibsedml.Output;
+import org.jlibsedml.Parameter;
+import org.jlibsedml.Plot2D;
+import org.jlibsedml.Report;
+import org.jlibsedml.SedML;
+import org.jlibsedml.Variable;
+import org.jlibsedml.modelsupport.SBMLSupport;
+import org.jmathml.EvaluationContext;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalMemoryWriter;
+
+/**
+ * Evaluates the SED-ML data generators of a repeated task on the results of each point of its
+ * parameter scan. Every report and 2D plot whose data generators only refer to the repeated task
+ * is written to a comma-separated file named after the output, with one row per point and time,
+ * so no time-series file is written for the points.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SEDMLScanReport implements ScanListener, Closeable {
+
+  private final Map<String, List<DataGenerator>> outputs;
+  private final Map<String, Writer> writers;
+  private final SBMLSupport support;
+
+  /**
+   * Creates a report for the outputs of a repeated task.
+   *
+   * @param sedml
+   *          - the SED-ML model.
+   * @param taskId
+   *          - the id of the repeated task.
+   * @param parameters
+   *          - the ids of the scanned parameters.
+   * @param directory
+   *          - the directory where the output files are written to.
+   * @throws IOException
+   *           - if an output file cannot be created.
+   */
+  public SEDMLScanReport(SedML sedml, String taskId, List<String> parameters, String directory) throws IOException {
+    this.outputs = new LinkedHashMap<>();
+    this.writers = new LinkedHashMap<>();
+    this.support = new SBMLSupport();
+
+    for (Output output : sedml.getOutputs()) {
+      List<String> references = new ArrayList<>();
+      if (output.isReport()) {
+        for (DataSet dataSet : ((Report) output).getListOfDataSets()) {
+          references.add(dataSet.getDataReference());
+        }
+      } else if (output.isPlot2d()) {
+        for (Curve curve : ((Plot2D) output).getListOfCurves()) {
+          references.add(curve.getXDataReference());
+          references.add(curve.getYDataReference());
+        }
+      }
+      List<DataGenerator> dataGenerators = getDataGenerators(sedml, taskId, references);
+      if (dataGenerators != null) {
+        outputs.put(output.getId(), dataGenerators);
+      }
+    }
+
+    for (Map.Entry<String, List<DataGenerator>> entry : outputs.entrySet()) {
+      Writer writer = new BufferedWriter(new FileWriter(directory + File.separator + entry.getKey() + ".csv"));
+      writers.put(entry.getKey(), writer);
+      StringBuilder header = new StringBuilder("point");
+      for (String parameter : parameters) {
+        header.append(',').append(parameter);
+      }
+      for (DataGenerator dataGenerator : entry.getValue()) {
+        header.append(',').append(dataGenerator.getId());
+      }
+      writer.write(header.toString());
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * @return the ids of the outputs written by this report.
+   */
+  public List<String> getOutputs() {
+    return new ArrayList<>(outputs.keySet());
+  }
+
+  @Override
+  public void pointCompleted(int point, double[] values, HierarchicalMemoryWriter results) throws IOException {
+    for (Map.Entry<String, List<DataGenerator>> entry : outputs.entrySet()) {
+      Writer writer = writers.get(entry.getKey());
+      List<DataGenerator> dataGenerators = entry.getValue();
+      for (int row = 0; row < results.getNumOfRows(); row++) {
+        StringBuilder line = new StringBuilder();
+        line.append(point);
+        for (double value : values) {
+          line.append(',').append(value);
+        }
+        for (DataGenerator dataGenerator : dataGenerators) {
+          line.append(',').append(evaluate(dataGenerator, results, row));
+        }
+        writer.write(line.toString());
+        writer.write('\n');
+      }
+      writer.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Writer writer : writers.values()) {
+      writer.close();
+    }
+  }
+
+  private double evaluate(DataGenerator dataGenerator, HierarchicalMemoryWriter results, int row) {
+    EvaluationContext context = new EvaluationContext();
+    for (Parameter parameter : dataGenerator.getListOfParameters()) {
+      context.setValueFor(parameter.getId(), parameter.getValue());
+    }
+    for (Variable variable : dataGenerator.getListOfVariables()) {
+      double value;
+      if (variable.isVariable()) {
+        int column = results.getColumn(support.getIdFromXPathIdentifer(variable.getTarget()));
+        value = column < 0 ? Double.NaN : results.getValue(row, column);
+      } else {
+        value = results.getTime(row);
+      }
+      context.setValueFor(variable.getId(), value);
+    }
+    return dataGenerator.getMath().evaluate(context).getValue();
+  }
+
+  /**
+   * Gets the data generators of an output, or null if any of them refers to another task.
+   */
+  private static List<DataGenerator> getDataGenerators(SedML sedml, String taskId, List<String> references) {
+    if (references.isEmpty()) {
+      return null;
+    }
+    List<DataGenerator> dataGenerators = new ArrayList<>();
+    for (String reference : references) {
+      DataGenerator dataGenerator = sedml.getDataGeneratorWithId(reference);
+      if (dataGenerator == null) {
+        return null;
+      }
+      for (Variable variable : dataGenerator.getListOfVariables()) {
+        if (!taskId.equals(variable.getReference())) {
+          return null;
+        }
+      }
+      if (!dataGenerators.contains(dataGenerator)) {
+        dataGenerators.add(dataGenerator);
+      }
+    }
+    return dataGenerators;
+  }
+}
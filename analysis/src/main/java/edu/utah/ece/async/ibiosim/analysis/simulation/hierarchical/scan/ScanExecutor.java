@@ -0,0 +1,183 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalMemoryWriter;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Runs the points of a parameter scan. The model is compiled once and every point is simulated by
+ * a new hierarchical simulator that overrides the initial values of the scanned parameters. The
+ * results of a point are kept in memory and handed to a listener, in the order of the points,
+ * instead of being written to a time-series file. Points are simulated in parallel, and at most a
+ * fixed number of points can be done or in progress ahead of the listener, which bounds the memory
+ * held by the scan.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ScanExecutor {
+
+  private final CompiledModel compiledModel;
+  private final int numberOfThreads;
+  private final int window;
+
+  /**
+   * Creates a scan executor that uses a thread for each available processor.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   */
+  public ScanExecutor(CompiledModel compiledModel) {
+    this(compiledModel, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a scan executor.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param numberOfThreads
+   *          - the number of points simulated concurrently.
+   */
+  public ScanExecutor(CompiledModel compiledModel, int numberOfThreads) {
+    this.compiledModel = compiledModel;
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    this.window = 2 * this.numberOfThreads;
+  }
+
+  /**
+   * Simulates every point of the scan.
+   *
+   * @param scan
+   *          - the parameter scan.
+   * @param listener
+   *          - the listener that receives the results of the points.
+   * @throws IOException
+   *           - if there is a problem with the model file or the listener.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occurs in the simulation.
+   */
+  public void run(final ParameterScan scan, ScanListener listener) throws IOException, XMLStreamException, BioSimException {
+    final int numOfPoints = scan.getNumOfPoints();
+    final HierarchicalMemoryWriter[] results = new HierarchicalMemoryWriter[numOfPoints];
+    final AtomicInteger nextPoint = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean();
+    final Semaphore permits = new Semaphore(window);
+    final LinkedBlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    List<Future<Void>> workers = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < numberOfThreads; i++) {
+        workers.add(executor.submit(() -> {
+          while (!done.get()) {
+            permits.acquire();
+            int index = nextPoint.getAndIncrement();
+            if (index >= numOfPoints) {
+              permits.release();
+              break;
+            }
+            results[index] = simulate(scan.getParameters(), scan.getPoint(index));
+            finished.put(index);
+          }
+          return null;
+        }));
+      }
+
+      boolean[] arrived = new boolean[numOfPoints];
+      int completed = 0;
+      while (completed < numOfPoints) {
+        Integer index = finished.poll(100, TimeUnit.MILLISECONDS);
+        if (index == null) {
+          checkWorkers(workers);
+          continue;
+        }
+        arrived[index] = true;
+        while (completed < numOfPoints && arrived[completed]) {
+          listener.pointCompleted(completed, scan.getPoint(completed), results[completed]);
+          results[completed] = null;
+          permits.release();
+          completed++;
+        }
+      }
+      checkWorkers(workers);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BioSimException("Parameter scan was interrupted.", "Error in parameter scan");
+    }
+    finally {
+      done.set(true);
+      executor.shutdownNow();
+    }
+  }
+
+  private HierarchicalMemoryWriter simulate(List<String> parameters, double[] point) throws IOException, XMLStreamException, BioSimException {
+    HierarchicalSimulation sim;
+    if (compiledModel.getProperties().isOde()) {
+      HierarchicalODERKSimulator odeSim = new HierarchicalODERKSimulator(compiledModel, true);
+      odeSim.setParallelRates(false);
+      sim = odeSim;
+    } else {
+      sim = new HierarchicalSSADirectSimulator(compiledModel, true);
+    }
+    HierarchicalMemoryWriter writer = new HierarchicalMemoryWriter();
+    sim.setWriter(writer);
+    for (int i = 0; i < parameters.size(); i++) {
+      sim.overrideInitialValue(parameters.get(i), point[i]);
+    }
+    sim.simulate();
+    return writer;
+  }
+
+  private static void checkWorkers(List<Future<Void>> workers) throws IOException, XMLStreamException, BioSimException, InterruptedException {
+    for (Future<Void> worker : workers) {
+      if (worker.isDone()) {
+        try {
+          worker.get();
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) { throw (IOException) cause; }
+          if (cause instanceof XMLStreamException) { throw (XMLStreamException) cause; }
+          if (cause instanceof BioSimException) { throw (BioSimException) cause; }
+          if (cause instanceof InterruptedException) { throw (InterruptedException) cause; }
+          throw new IllegalStateException(cause);
+        }
+      }
+    }
+  }
+}
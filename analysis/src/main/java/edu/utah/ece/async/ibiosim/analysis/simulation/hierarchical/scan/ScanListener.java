@@ -0,0 +1,42 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.io.IOException;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalMemoryWriter;
+
+/**
+ * Receives the results of the points of a parameter scan.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public interface ScanListener {
+
+  /**
+   * Called once for every point of the scan, in the order of the points. The results are only
+   * valid for the duration of the call.
+   *
+   * @param point
+   *          - the point.
+   * @param values
+   *          - the values of the scanned parameters at the point.
+   * @param results
+   *          - the time series of the point.
+   * @throws IOException
+   *           - if the results cannot be written out.
+   */
+  void pointCompleted(int point, double[] values, HierarchicalMemoryWriter results) throws IOException;
+}
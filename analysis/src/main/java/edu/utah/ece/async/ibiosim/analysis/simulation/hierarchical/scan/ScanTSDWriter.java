@@ -0,0 +1,92 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalMemoryWriter;
+
+/**
+ * Writes the results of every point of a parameter scan to a time-series file, in the layout used
+ * by the sweeps of the model editor. The file of a point is run-1.tsd in a subdirectory named after
+ * the values of the scanned parameters, for example k1_0_5_k2_1_0 for k1 = 0.5 and k2 = 1.0.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ScanTSDWriter implements ScanListener {
+
+  private final String directory;
+  private final List<String> parameters;
+
+  /**
+   * Creates a writer for the points of a scan.
+   *
+   * @param parameters
+   *          - the ids of the scanned parameters.
+   * @param directory
+   *          - the directory where the subdirectories of the points are created.
+   */
+  public ScanTSDWriter(List<String> parameters, String directory) {
+    this.parameters = parameters;
+    this.directory = directory;
+  }
+
+  /**
+   * Gets the name of the subdirectory of a point.
+   *
+   * @param parameters
+   *          - the ids of the scanned parameters.
+   * @param values
+   *          - the values of the parameters at the point.
+   * @return the name of the subdirectory.
+   */
+  public static String getDirectoryName(List<String> parameters, double[] values) {
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < parameters.size(); i++) {
+      if (i > 0) {
+        name.append('_');
+      }
+      name.append(parameters.get(i)).append('=').append(values[i]);
+    }
+    return name.toString().replace("/", "_").replace("=", "_").replace("-", "_").replace(".", "_");
+  }
+
+  @Override
+  public void pointCompleted(int point, double[] values, HierarchicalMemoryWriter results) throws IOException {
+    File pointDirectory = new File(directory, getDirectoryName(parameters, values));
+    if (!pointDirectory.exists() && !pointDirectory.mkdirs()) { throw new IOException("Could not create " + pointDirectory.getPath() + "."); }
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(pointDirectory, "run-1.tsd")))) {
+      writer.write("((\"time\"");
+      for (String id : results.getIds()) {
+        writer.write(",\"" + id + "\"");
+      }
+      writer.write(")");
+      int numOfColumns = results.getIds().size();
+      for (int row = 0; row < results.getNumOfRows(); row++) {
+        writer.write(",\n(");
+        writer.write(String.valueOf(results.getTime(row)));
+        for (int column = 0; column < numOfColumns; column++) {
+          writer.write("," + results.getValue(row, column));
+        }
+        writer.write(")");
+      }
+      writer.write(")");
+    }
+  }
+}
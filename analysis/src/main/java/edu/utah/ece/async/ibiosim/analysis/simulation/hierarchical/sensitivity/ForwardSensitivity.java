@@ -0,0 +1,249 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Local sensitivity analysis based on the forward sensitivity equations. For every parameter p, the
+ * sensitivity S = dy/dp of the state vector is integrated alongside the state with
+ * dS/dt = J S + df/dp. The right-hand side of each sensitivity system is the directional derivative of the
+ * model right-hand side along (S, 1), which is approximated by a single difference quotient, so only one
+ * extra evaluation of the hierarchical model is needed per parameter and no Jacobian is formed.
+ *
+ * <p>
+ * The parameters must be top-level constants. The initial values do not depend on the parameters, so
+ * initial assignments that read a parameter are not differentiated, and models with events are not
+ * supported since the sensitivities jump when an event fires.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ForwardSensitivity {
+
+  private static final double UNIT_ROUNDOFF = Math.ulp(1.0);
+
+  private final CompiledModel compiledModel;
+  private final List<String> parameters;
+  private final List<String> outputs;
+
+  private HierarchicalODERKSimulator sim;
+  private double[] parameterValues;
+  private double[] scratch;
+  private double[] base;
+  private double[] perturbed;
+  private double absError;
+  private double relError;
+
+  /**
+   * Creates a forward sensitivity analysis.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param parameters
+   *          - the ids of the top-level parameters.
+   * @param outputs
+   *          - the ids of the top-level variables whose sensitivities are reported.
+   */
+  public ForwardSensitivity(CompiledModel compiledModel, List<String> parameters, List<String> outputs) {
+    this.compiledModel = compiledModel;
+    this.parameters = parameters;
+    this.outputs = outputs;
+  }
+
+  /**
+   * Integrates the model and its sensitivities and writes one row per print interval. The columns are the
+   * time, the value of every output, and the sensitivity d(output)/d(parameter) of every output to every
+   * parameter.
+   *
+   * @param writer
+   *          - where the comma-separated table is written to. Rows are flushed as soon as they are computed.
+   * @throws IOException
+   *           - if there is a problem with the model file or the output.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if the model or the parameters are not supported.
+   */
+  public void run(Writer writer) throws IOException, XMLStreamException, BioSimException {
+    SimulationProperties simProperties = compiledModel.getProperties().getSimulationProperties();
+    sim = new HierarchicalODERKSimulator(compiledModel, false);
+    sim.setParallelRates(false);
+    sim.initialize(1);
+    if (sim.hasEvents()) { throw new BioSimException("Forward sensitivities are not supported for models with events.", "Error in sensitivity analysis"); }
+
+    int m = parameters.size();
+    parameterValues = new double[m];
+    for (int j = 0; j < m; j++) {
+      String parameter = parameters.get(j);
+      HierarchicalNode node = sim.getTopmodel().getNode(parameter);
+      if (node == null || node.getState() == null) { throw new BioSimException(parameter + " is not a top-level parameter.", "Error in sensitivity analysis"); }
+      if (node.getState().getChild(0) instanceof VectorState) { throw new BioSimException(parameter + " is not a constant parameter.", "Error in sensitivity analysis"); }
+      parameterValues[j] = sim.getTopLevelValue(parameter);
+    }
+    for (String output : outputs) {
+      if (sim.getTopmodel().getNode(output) == null) { throw new BioSimException(output + " is not a top-level variable.", "Error in sensitivity analysis"); }
+    }
+
+    int n = sim.getDimension();
+    absError = simProperties.getAbsError();
+    relError = simProperties.getRelError();
+    scratch = new double[n];
+    base = new double[n];
+    perturbed = new double[n];
+
+    double[] z = new double[n * (m + 1)];
+    System.arraycopy(sim.getStateValues(), 0, z, 0, n);
+
+    writeHeader(writer);
+    HighamHall54Integrator integrator = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), absError, relError);
+    AugmentedSystem system = new AugmentedSystem(n, m);
+    double time = simProperties.getInitialTime();
+    double timeLimit = simProperties.getTimeLimit();
+    double printInterval = simProperties.getPrintInterval();
+    double printTime = simProperties.getOutputStartTime();
+    long step = 0;
+    while (printTime <= timeLimit) {
+      if (printTime > time) {
+        integrator.integrate(system, time, z, printTime, z);
+        time = printTime;
+      }
+      writeRow(writer, time, z, n, m);
+      step++;
+      printTime = simProperties.getOutputStartTime() + step * printInterval;
+    }
+    writer.flush();
+  }
+
+  private void writeHeader(Writer writer) throws IOException {
+    StringBuilder header = new StringBuilder("time");
+    for (String output : outputs) {
+      header.append(',').append(output);
+    }
+    for (String output : outputs) {
+      for (String parameter : parameters) {
+        header.append(",d(").append(output).append(")/d(").append(parameter).append(')');
+      }
+    }
+    writer.write(header.toString());
+    writer.write('\n');
+  }
+
+  private void writeRow(Writer writer, double time, double[] z, int n, int m) throws IOException {
+    int k = outputs.size();
+    double[] values = new double[k];
+    double[][] sensitivities = new double[k][m];
+
+    // the sensitivity of a variable that is not in the state vector, for example one defined by an
+    // assignment rule, is the directional derivative of its value along (S, 1)
+    System.arraycopy(z, 0, scratch, 0, n);
+    sim.computeDerivatives(time, scratch, base);
+    for (int i = 0; i < k; i++) {
+      values[i] = sim.getTopLevelValue(outputs.get(i));
+    }
+    for (int j = 0; j < m; j++) {
+      double delta = perturb(z, n, j, time);
+      for (int i = 0; i < k; i++) {
+        sensitivities[i][j] = (sim.getTopLevelValue(outputs.get(i)) - values[i]) / delta;
+      }
+      sim.setTopLevelValue(parameters.get(j), parameterValues[j]);
+    }
+
+    StringBuilder row = new StringBuilder();
+    row.append(time);
+    for (int i = 0; i < k; i++) {
+      row.append(',').append(values[i]);
+    }
+    for (int i = 0; i < k; i++) {
+      for (int j = 0; j < m; j++) {
+        row.append(',').append(sensitivities[i][j]);
+      }
+    }
+    writer.write(row.toString());
+    writer.write('\n');
+    writer.flush();
+  }
+
+  /**
+   * Evaluates the model right-hand side at (y + delta S, p + delta) for the given parameter, storing the result
+   * in the perturbed array. The parameter is left perturbed.
+   *
+   * @return the step delta.
+   */
+  private double perturb(double[] z, int n, int parameter, double time) {
+    int offset = n * (parameter + 1);
+    double norm = 0;
+    for (int i = 0; i < n; i++) {
+      double weighted = z[offset + i] / (relError * Math.abs(z[i]) + absError);
+      norm += weighted * weighted;
+    }
+    norm = n > 0 ? Math.sqrt(norm / n) : 0;
+    double value = parameterValues[parameter];
+    double scale = value != 0 ? Math.abs(value) : 1;
+    double delta = Math.sqrt(Math.max(relError, UNIT_ROUNDOFF)) / Math.max(1 / scale, norm);
+    for (int i = 0; i < n; i++) {
+      scratch[i] = z[i] + delta * z[offset + i];
+    }
+    sim.setTopLevelValue(parameters.get(parameter), value + delta);
+    sim.computeDerivatives(time, scratch, perturbed);
+    return delta;
+  }
+
+  private class AugmentedSystem implements FirstOrderDifferentialEquations {
+
+    private final int n;
+    private final int m;
+
+    AugmentedSystem(int n, int m) {
+      this.n = n;
+      this.m = m;
+    }
+
+    @Override
+    public int getDimension() {
+      return n * (m + 1);
+    }
+
+    @Override
+    public void computeDerivatives(double t, double[] z, double[] zDot) throws MaxCountExceededException, DimensionMismatchException {
+      System.arraycopy(z, 0, scratch, 0, n);
+      sim.computeDerivatives(t, scratch, base);
+      System.arraycopy(base, 0, zDot, 0, n);
+      for (int j = 0; j < m; j++) {
+        double delta = perturb(z, n, j, t);
+        int offset = n * (j + 1);
+        for (int i = 0; i < n; i++) {
+          zDot[offset + i] = (perturbed[i] - base[i]) / delta;
+        }
+        sim.setTopLevelValue(parameters.get(j), parameterValues[j]);
+      }
+    }
+  }
+}
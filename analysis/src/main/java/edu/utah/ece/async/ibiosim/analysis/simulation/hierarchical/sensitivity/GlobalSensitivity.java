@@ -0,0 +1,299 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Global sensitivity analysis over a box of parameter values. The Morris method screens the parameters with
+ * elementary effects along random one-at-a-time trajectories, and the Sobol method estimates the first-order
+ * and total variance-based indices with the Saltelli sampling scheme and the Jansen estimator. In both cases
+ * all the points are generated first and simulated as a single batch by a {@link ParameterPointExecutor}.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class GlobalSensitivity {
+
+  private final ParameterPointExecutor executor;
+  private final double[] lowerBounds;
+  private final double[] upperBounds;
+  private final Random random;
+
+  /**
+   * Creates a global sensitivity analysis.
+   *
+   * @param executor
+   *          - the executor that simulates the parameter points.
+   * @param lowerBounds
+   *          - the lower bound of every parameter.
+   * @param upperBounds
+   *          - the upper bound of every parameter.
+   * @param seed
+   *          - the seed used to sample the parameter points.
+   */
+  public GlobalSensitivity(ParameterPointExecutor executor, double[] lowerBounds, double[] upperBounds, long seed) {
+    if (lowerBounds.length != executor.getParameters().size() || upperBounds.length != executor.getParameters().size()) { throw new IllegalArgumentException("There must be one lower and one upper bound per parameter."); }
+    this.executor = executor;
+    this.lowerBounds = lowerBounds;
+    this.upperBounds = upperBounds;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Runs the Morris screening. The statistics are computed in the unit hypercube, so the elementary effects
+   * of parameters with different ranges can be compared.
+   *
+   * @param trajectories
+   *          - the number of trajectories.
+   * @param levels
+   *          - the number of levels of the grid, which must be even.
+   * @param writer
+   *          - where the comma-separated mu, mu* and sigma of every output and parameter are written to, or
+   *          null.
+   * @return the indices, in the order mu, mu* and sigma.
+   * @throws IOException
+   *           - if there is a problem with the model file or the output.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occurs in the simulation.
+   */
+  public Indices morris(int trajectories, int levels, Writer writer) throws IOException, XMLStreamException, BioSimException {
+    if (levels < 2 || levels % 2 != 0) { throw new IllegalArgumentException("The number of levels must be even."); }
+    int k = lowerBounds.length;
+    double delta = levels / (2.0 * (levels - 1));
+    double[][] unitPoints = new double[trajectories * (k + 1)][];
+    int[] changed = new int[trajectories * (k + 1)];
+    double[] step = new double[trajectories * (k + 1)];
+
+    for (int r = 0; r < trajectories; r++) {
+      int start = r * (k + 1);
+      double[] x = new double[k];
+      boolean[] increasing = new boolean[k];
+      for (int i = 0; i < k; i++) {
+        x[i] = random.nextInt(levels / 2) / (double) (levels - 1);
+        increasing[i] = random.nextBoolean();
+        if (!increasing[i]) {
+          x[i] += delta;
+        }
+      }
+      unitPoints[start] = x.clone();
+      int[] order = permutation(k);
+      for (int s = 0; s < k; s++) {
+        int i = order[s];
+        x[i] += increasing[i] ? delta : -delta;
+        unitPoints[start + s + 1] = x.clone();
+        changed[start + s + 1] = i;
+        step[start + s + 1] = increasing[i] ? delta : -delta;
+      }
+    }
+
+    double[][] results = executor.evaluate(scale(unitPoints), null);
+    int numOfOutputs = executor.getOutputs().size();
+    double[][][] values = new double[numOfOutputs][k][3];
+    for (int o = 0; o < numOfOutputs; o++) {
+      double[] sum = new double[k], absSum = new double[k], squareSum = new double[k];
+      for (int r = 0; r < trajectories; r++) {
+        int start = r * (k + 1);
+        for (int s = 1; s <= k; s++) {
+          int i = changed[start + s];
+          double effect = (results[start + s][o] - results[start + s - 1][o]) / step[start + s];
+          sum[i] += effect;
+          absSum[i] += Math.abs(effect);
+          squareSum[i] += effect * effect;
+        }
+      }
+      for (int i = 0; i < k; i++) {
+        double mean = sum[i] / trajectories;
+        values[o][i][0] = mean;
+        values[o][i][1] = absSum[i] / trajectories;
+        values[o][i][2] = trajectories > 1 ? Math.sqrt(Math.max(0, (squareSum[i] - trajectories * mean * mean) / (trajectories - 1))) : 0;
+      }
+    }
+
+    Indices indices = new Indices(executor.getOutputs(), executor.getParameters(), new String[] { "mu", "mu_star", "sigma" }, values);
+    if (writer != null) {
+      indices.write(writer);
+    }
+    return indices;
+  }
+
+  /**
+   * Estimates the first-order and total Sobol indices. The model is simulated at samples * (k + 2) points,
+   * where k is the number of parameters.
+   *
+   * @param samples
+   *          - the number of base samples.
+   * @param writer
+   *          - where the comma-separated first-order and total indices of every output and parameter are
+   *          written to, or null.
+   * @return the indices, in the order first-order and total.
+   * @throws IOException
+   *           - if there is a problem with the model file or the output.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occurs in the simulation.
+   */
+  public Indices sobol(int samples, Writer writer) throws IOException, XMLStreamException, BioSimException {
+    int k = lowerBounds.length;
+    double[][] unitPoints = new double[samples * (k + 2)][];
+    for (int j = 0; j < samples; j++) {
+      double[] a = new double[k], b = new double[k];
+      for (int i = 0; i < k; i++) {
+        a[i] = random.nextDouble();
+        b[i] = random.nextDouble();
+      }
+      unitPoints[j] = a;
+      unitPoints[samples + j] = b;
+      for (int i = 0; i < k; i++) {
+        double[] ab = a.clone();
+        ab[i] = b[i];
+        unitPoints[(2 + i) * samples + j] = ab;
+      }
+    }
+
+    double[][] results = executor.evaluate(scale(unitPoints), null);
+    int numOfOutputs = executor.getOutputs().size();
+    double[][][] values = new double[numOfOutputs][k][2];
+    for (int o = 0; o < numOfOutputs; o++) {
+      double mean = 0;
+      for (int j = 0; j < 2 * samples; j++) {
+        mean += results[j][o];
+      }
+      mean /= 2 * samples;
+      double variance = 0;
+      for (int j = 0; j < 2 * samples; j++) {
+        double difference = results[j][o] - mean;
+        variance += difference * difference;
+      }
+      variance /= 2 * samples - 1;
+      for (int i = 0; i < k; i++) {
+        double first = 0, total = 0;
+        for (int j = 0; j < samples; j++) {
+          double fA = results[j][o], fB = results[samples + j][o], fAB = results[(2 + i) * samples + j][o];
+          first += fB * (fAB - fA);
+          total += (fA - fAB) * (fA - fAB);
+        }
+        values[o][i][0] = variance > 0 ? first / samples / variance : 0;
+        values[o][i][1] = variance > 0 ? total / (2 * samples) / variance : 0;
+      }
+    }
+
+    Indices indices = new Indices(executor.getOutputs(), executor.getParameters(), new String[] { "first_order", "total" }, values);
+    if (writer != null) {
+      indices.write(writer);
+    }
+    return indices;
+  }
+
+  private double[][] scale(double[][] unitPoints) {
+    double[][] points = new double[unitPoints.length][];
+    for (int j = 0; j < unitPoints.length; j++) {
+      points[j] = new double[unitPoints[j].length];
+      for (int i = 0; i < points[j].length; i++) {
+        points[j][i] = lowerBounds[i] + unitPoints[j][i] * (upperBounds[i] - lowerBounds[i]);
+      }
+    }
+    return points;
+  }
+
+  private int[] permutation(int k) {
+    int[] order = new int[k];
+    for (int i = 0; i < k; i++) {
+      order[i] = i;
+    }
+    for (int i = k - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+    return order;
+  }
+
+  /**
+   * Sensitivity indices of every output with respect to every parameter.
+   */
+  public static class Indices {
+    private final List<String> outputs;
+    private final List<String> parameters;
+    private final String[] names;
+    private final double[][][] values;
+
+    private Indices(List<String> outputs, List<String> parameters, String[] names, double[][][] values) {
+      this.outputs = outputs;
+      this.parameters = parameters;
+      this.names = names;
+      this.values = values;
+    }
+
+    /**
+     * Gets an index.
+     *
+     * @param output
+     *          - the position of the output.
+     * @param parameter
+     *          - the position of the parameter.
+     * @param index
+     *          - the position of the index.
+     * @return the value of the index.
+     */
+    public double getValue(int output, int parameter, int index) {
+      return values[output][parameter][index];
+    }
+
+    /**
+     * @return the names of the indices.
+     */
+    public String[] getNames() {
+      return names;
+    }
+
+    /**
+     * Writes the indices as a comma-separated table with one row per output and parameter.
+     *
+     * @param writer
+     *          - where the table is written to.
+     * @throws IOException
+     *           - if there is a problem with the output.
+     */
+    public void write(Writer writer) throws IOException {
+      StringBuilder table = new StringBuilder("output,parameter");
+      for (String name : names) {
+        table.append(',').append(name);
+      }
+      table.append('\n');
+      for (int o = 0; o < outputs.size(); o++) {
+        for (int i = 0; i < parameters.size(); i++) {
+          table.append(outputs.get(o)).append(',').append(parameters.get(i));
+          for (double value : values[o][i]) {
+            table.append(',').append(value);
+          }
+          table.append('\n');
+        }
+      }
+      writer.write(table.toString());
+      writer.flush();
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Evaluates a model at a batch of parameter points. Every point is simulated with the hierarchical ODE
+ * simulator up to the time limit, starting from the compiled model so that the SBML is parsed only once, and
+ * the values of the outputs at the time limit are collected. Points are simulated in parallel and the rows
+ * are written in the order of the points as soon as all the preceding points are done.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ParameterPointExecutor {
+
+  private final CompiledModel compiledModel;
+  private final List<String> parameters;
+  private final List<String> outputs;
+  private final int numberOfThreads;
+
+  /**
+   * Creates a parameter point executor.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param parameters
+   *          - the ids of the top-level parameters that are set at each point.
+   * @param outputs
+   *          - the ids of the top-level variables that are collected at the time limit.
+   * @param numberOfThreads
+   *          - the number of points simulated concurrently.
+   */
+  public ParameterPointExecutor(CompiledModel compiledModel, List<String> parameters, List<String> outputs, int numberOfThreads) {
+    this.compiledModel = compiledModel;
+    this.parameters = parameters;
+    this.outputs = outputs;
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+  }
+
+  /**
+   * @return the ids of the parameters.
+   */
+  public List<String> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * @return the ids of the outputs.
+   */
+  public List<String> getOutputs() {
+    return outputs;
+  }
+
+  /**
+   * Simulates the model at every point.
+   *
+   * @param points
+   *          - the parameter values, one row per point in the order of the parameters.
+   * @param writer
+   *          - where the comma-separated points and outputs are written to, or null.
+   * @return the values of the outputs, one row per point.
+   * @throws IOException
+   *           - if there is a problem with the model file or the output.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occurs in the simulation.
+   */
+  public double[][] evaluate(final double[][] points, Writer writer) throws IOException, XMLStreamException, BioSimException {
+    final double[][] results = new double[points.length][];
+    final AtomicInteger nextPoint = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean();
+    final LinkedBlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    List<Future<Void>> workers = new ArrayList<>();
+
+    if (writer != null) {
+      writeHeader(writer);
+    }
+    try {
+      for (int i = 0; i < numberOfThreads; i++) {
+        workers.add(executor.submit(() -> {
+          int index;
+          while (!done.get() && (index = nextPoint.getAndIncrement()) < points.length) {
+            results[index] = simulate(points[index]);
+            finished.put(index);
+          }
+          return null;
+        }));
+      }
+
+      boolean[] arrived = new boolean[points.length];
+      int written = 0;
+      while (written < points.length) {
+        Integer index = finished.poll(100, TimeUnit.MILLISECONDS);
+        if (index == null) {
+          checkWorkers(workers);
+          continue;
+        }
+        arrived[index] = true;
+        while (written < points.length && arrived[written]) {
+          if (writer != null) {
+            writeRow(writer, written, points[written], results[written]);
+          }
+          written++;
+        }
+      }
+      checkWorkers(workers);
+      return results;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BioSimException("Parameter sweep was interrupted.", "Error in sensitivity analysis");
+    }
+    finally {
+      done.set(true);
+      executor.shutdownNow();
+    }
+  }
+
+  private double[] simulate(double[] point) throws IOException, XMLStreamException, BioSimException {
+    HierarchicalODERKSimulator sim = new HierarchicalODERKSimulator(compiledModel, false);
+    sim.setParallelRates(false);
+    for (int j = 0; j < parameters.size(); j++) {
+      sim.overrideInitialValue(parameters.get(j), point[j]);
+    }
+    sim.simulate();
+    double[] values = new double[outputs.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = sim.getTopLevelValue(outputs.get(i));
+    }
+    return values;
+  }
+
+  private void writeHeader(Writer writer) throws IOException {
+    StringBuilder header = new StringBuilder("point");
+    for (String parameter : parameters) {
+      header.append(',').append(parameter);
+    }
+    for (String output : outputs) {
+      header.append(',').append(output);
+    }
+    writer.write(header.toString());
+    writer.write('\n');
+    writer.flush();
+  }
+
+  private static void writeRow(Writer writer, int index, double[] point, double[] values) throws IOException {
+    StringBuilder row = new StringBuilder();
+    row.append(index);
+    for (double value : point) {
+      row.append(',').append(value);
+    }
+    for (double value : values) {
+      row.append(',').append(value);
+    }
+    writer.write(row.toString());
+    writer.write('\n');
+    writer.flush();
+  }
+
+  private static void checkWorkers(List<Future<Void>> workers) throws IOException, XMLStreamException, BioSimException, InterruptedException {
+    for (Future<Void> worker : workers) {
+      if (worker.isDone()) {
+        try {
+          worker.get();
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) { throw (IOException) cause; }
+          if (cause instanceof XMLStreamException) { throw (XMLStreamException) cause; }
+          if (cause instanceof BioSimException) { throw (BioSimException) cause; }
+          throw new IllegalStateException(cause);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+
+/**
+ * A time-bounded path property of the form {@code phi U[lower,upper] psi}, optionally negated.
+ * Eventually and globally properties are expressed through the until operator. The property is
+ * checked online against a piecewise-constant trajectory, so a verdict is usually reached before the
+ * trajectory hits the time limit.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class BoundedProperty {
+
+  private static final Pattern BOUNDS = Pattern.compile("\\s*\\b([FGU])\\s*\\[([^,\\]]+),([^\\]]+)\\]\\s*");
+  private static final Pattern ATOM = Pattern.compile("\\s*\\(?\\s*([A-Za-z_]\\w*)\\s*(<=|>=|==|!=|<|>|=)\\s*([^\\s)]+)\\s*\\)?\\s*");
+
+  private final StatePredicate phi;
+  private final StatePredicate psi;
+  private final double lower;
+  private final double upper;
+  private final boolean negated;
+
+  private BoundedProperty(StatePredicate phi, StatePredicate psi, double lower, double upper, boolean negated) {
+    if (lower < 0 || upper < lower) { throw new IllegalArgumentException("Invalid time bounds [" + lower + "," + upper + "]"); }
+    this.phi = phi;
+    this.psi = psi;
+    this.lower = lower;
+    this.upper = upper;
+    this.negated = negated;
+  }
+
+  /**
+   * Creates the property {@code phi U[lower,upper] psi}.
+   *
+   * @param phi
+   *          - the predicate that must hold until psi holds.
+   * @param psi
+   *          - the goal predicate.
+   * @param lower
+   *          - the lower time bound.
+   * @param upper
+   *          - the upper time bound.
+   * @return the property.
+   */
+  public static BoundedProperty until(StatePredicate phi, StatePredicate psi, double lower, double upper) {
+    return new BoundedProperty(phi, psi, lower, upper, false);
+  }
+
+  /**
+   * Creates the property {@code F[lower,upper] psi}.
+   *
+   * @param psi
+   *          - the goal predicate.
+   * @param lower
+   *          - the lower time bound.
+   * @param upper
+   *          - the upper time bound.
+   * @return the property.
+   */
+  public static BoundedProperty eventually(StatePredicate psi, double lower, double upper) {
+    return new BoundedProperty(StatePredicate.TRUE, psi, lower, upper, false);
+  }
+
+  /**
+   * Creates the property {@code G[lower,upper] phi}.
+   *
+   * @param phi
+   *          - the invariant.
+   * @param lower
+   *          - the lower time bound.
+   * @param upper
+   *          - the upper time bound.
+   * @return the property.
+   */
+  public static BoundedProperty globally(StatePredicate phi, double lower, double upper) {
+    return new BoundedProperty(StatePredicate.TRUE, phi.negate(), lower, upper, true);
+  }
+
+  /**
+   * Parses a property written as {@code F[lower,upper] psi}, {@code G[lower,upper] phi} or
+   * {@code phi U[lower,upper] psi}, where each predicate is either {@code true} or compares a
+   * top-level variable against a constant, e.g. {@code F[0,100] (S2 >= 50)}.
+   *
+   * @param property
+   *          - the property string.
+   * @return the property.
+   */
+  public static BoundedProperty parse(String property) {
+    Matcher bounds = BOUNDS.matcher(property);
+    if (!bounds.find()) { throw new IllegalArgumentException("Expected a bounded F, G or U operator in " + property); }
+    double lower = Double.parseDouble(bounds.group(2).trim());
+    double upper = Double.parseDouble(bounds.group(3).trim());
+    String before = property.substring(0, bounds.start());
+    StatePredicate after = parsePredicate(property.substring(bounds.end()));
+    switch (bounds.group(1)) {
+    case "U":
+      return until(parsePredicate(before), after, lower, upper);
+    case "F":
+      if (!before.trim().isEmpty()) { break; }
+      return eventually(after, lower, upper);
+    default:
+      if (!before.trim().isEmpty()) { break; }
+      return globally(after, lower, upper);
+    }
+    throw new IllegalArgumentException("Unexpected " + before.trim() + " before " + bounds.group(1));
+  }
+
+  private static StatePredicate parsePredicate(String predicate) {
+    if (predicate.trim().equalsIgnoreCase("true")) { return StatePredicate.TRUE; }
+    Matcher atom = ATOM.matcher(predicate);
+    if (!atom.matches()) { throw new IllegalArgumentException("Cannot parse the predicate " + predicate.trim()); }
+    return StatePredicate.compare(atom.group(1), atom.group(2), Double.parseDouble(atom.group(3)));
+  }
+
+  /**
+   * @return the upper time bound of the property.
+   */
+  public double getUpperBound() {
+    return upper;
+  }
+
+  /**
+   * Creates a monitor that checks this property over the trajectories of the given simulation.
+   *
+   * @param sim
+   *          - the simulation being observed.
+   * @return a new monitor.
+   */
+  public Monitor createMonitor(HierarchicalSimulation sim) {
+    return new Monitor(sim);
+  }
+
+  /**
+   * Checks one trajectory at a time. The monitor must be reset before every trajectory.
+   */
+  public final class Monitor implements TrajectoryObserver {
+
+    private final HierarchicalSimulation sim;
+    private boolean decided;
+    private boolean satisfied;
+    private boolean phiSoFar;
+    private boolean pending;
+
+    private Monitor(HierarchicalSimulation sim) {
+      this.sim = sim;
+      reset();
+    }
+
+    /**
+     * Prepares the monitor for a new trajectory.
+     */
+    public void reset() {
+      decided = false;
+      satisfied = false;
+      phiSoFar = true;
+      pending = false;
+    }
+
+    @Override
+    public boolean observe(double time) {
+      if (decided) { return true; }
+
+      // The previous state satisfied psi and phi before the lower bound and lasted past it.
+      if (pending && time > lower) { return decide(true); }
+      if (!phiSoFar || time > upper) { return decide(false); }
+
+      boolean phiHolds = phi.evaluate(sim);
+      if (psi.evaluate(sim)) {
+        if (time >= lower) { return decide(true); }
+        pending = phiHolds;
+      } else {
+        pending = false;
+      }
+      phiSoFar = phiHolds;
+      return false;
+    }
+
+    @Override
+    public void finish(double time) {
+      if (!decided) {
+        decide(pending && time >= lower);
+      }
+    }
+
+    /**
+     * @return true if the trajectory satisfied the property.
+     */
+    public boolean isSatisfied() {
+      return satisfied != negated;
+    }
+
+    private boolean decide(boolean value) {
+      decided = true;
+      satisfied = value;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+
+/**
+ * A condition over the current state of a hierarchical simulation.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+@FunctionalInterface
+public interface StatePredicate {
+
+  /**
+   * Predicate that holds in every state.
+   */
+  public static final StatePredicate TRUE = sim -> true;
+
+  /**
+   * Evaluates the predicate.
+   *
+   * @param sim
+   *          - the simulation whose current state is checked.
+   * @return true if the current state satisfies the predicate.
+   */
+  boolean evaluate(HierarchicalSimulation sim);
+
+  /**
+   * Creates a predicate comparing a top-level variable against a constant.
+   *
+   * @param variable
+   *          - the id of the top-level variable.
+   * @param relation
+   *          - one of {@code <}, {@code <=}, {@code >}, {@code >=}, {@code ==} or {@code !=}.
+   * @param value
+   *          - the constant to compare to.
+   * @return the predicate.
+   */
+  public static StatePredicate compare(String variable, String relation, double value) {
+    switch (relation) {
+    case "<":
+      return sim -> sim.getTopLevelValue(variable) < value;
+    case "<=":
+      return sim -> sim.getTopLevelValue(variable) <= value;
+    case ">":
+      return sim -> sim.getTopLevelValue(variable) > value;
+    case ">=":
+      return sim -> sim.getTopLevelValue(variable) >= value;
+    case "==":
+    case "=":
+      return sim -> sim.getTopLevelValue(variable) == value;
+    case "!=":
+      return sim -> sim.getTopLevelValue(variable) != value;
+    default:
+      throw new IllegalArgumentException("Unknown relation " + relation);
+    }
+  }
+
+  /**
+   * @param other
+   *          - the other predicate.
+   * @return a predicate that holds when both this and the other predicate hold.
+   */
+  default StatePredicate and(StatePredicate other) {
+    return sim -> evaluate(sim) && other.evaluate(sim);
+  }
+
+  /**
+   * @param other
+   *          - the other predicate.
+   * @return a predicate that holds when this or the other predicate holds.
+   */
+  default StatePredicate or(StatePredicate other) {
+    return sim -> evaluate(sim) || other.evaluate(sim);
+  }
+
+  /**
+   * @return a predicate that holds when this predicate does not.
+   */
+  default StatePredicate negate() {
+    return sim -> !evaluate(sim);
+  }
+}
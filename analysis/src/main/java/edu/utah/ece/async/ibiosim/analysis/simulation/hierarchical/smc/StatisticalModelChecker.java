@@ -0,0 +1,322 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Statistical model checker that checks a bounded property over stochastic trajectories generated by
+ * the hierarchical SSA. Trajectories are simulated in parallel, each worker owning its own simulator,
+ * and the property is monitored online so that no output is written and a trajectory is abandoned as
+ * soon as its verdict is known.
+ * <p>
+ * Samples are consumed in the order they were drawn rather than the order they finish, so the
+ * sequential test is not biased towards trajectories that happen to be decided quickly, and the
+ * result only depends on the random seed.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class StatisticalModelChecker {
+
+  private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+  private final AnalysisProperties properties;
+  private final BoundedProperty property;
+  private final int numberOfThreads;
+  private final AtomicBoolean done;
+  private volatile boolean cancel;
+
+  /**
+   * Outcome of a hypothesis test.
+   */
+  public static enum Hypothesis {
+    ACCEPTED, REJECTED, UNDECIDED;
+  }
+
+  /**
+   * Creates a statistical model checker.
+   *
+   * @param properties
+   *          - the analysis properties of the model.
+   * @param property
+   *          - the property to check.
+   * @param numberOfThreads
+   *          - the number of trajectories simulated concurrently.
+   */
+  public StatisticalModelChecker(AnalysisProperties properties, BoundedProperty property, int numberOfThreads) {
+    this.properties = properties;
+    this.property = property;
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    this.done = new AtomicBoolean();
+  }
+
+  /**
+   * Estimates the probability of the property such that the estimate is within epsilon of the true
+   * probability with confidence 1 - delta. The number of samples is given by the Chernoff-Hoeffding
+   * (Okamoto) bound.
+   *
+   * @param epsilon
+   *          - the approximation error.
+   * @param delta
+   *          - the confidence parameter.
+   * @return the result of the estimation.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occurs in the simulation.
+   */
+  public Result estimate(double epsilon, double delta) throws IOException, XMLStreamException, BioSimException {
+    final long samples = (long) Math.ceil(Math.log(2 / delta) / (2 * epsilon * epsilon));
+    return sample(samples, new StoppingRule() {
+      @Override
+      public Hypothesis accept(long count, long successes) {
+        return Hypothesis.UNDECIDED;
+      }
+    });
+  }
+
+  /**
+   * Tests whether the probability of the property is at least theta using Wald's sequential
+   * probability ratio test with the indifference region [theta - indifference, theta +
+   * indifference].
+   *
+   * @param theta
+   *          - the probability threshold.
+   * @param indifference
+   *          - the half-width of the indifference region.
+   * @param alpha
+   *          - the probability of rejecting the hypothesis when it holds.
+   * @param beta
+   *          - the probability of accepting the hypothesis when it does not hold.
+   * @param maxSamples
+   *          - upper limit on the number of trajectories.
+   * @return the result of the test.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occurs in the simulation.
+   */
+  public Result test(double theta, double indifference, double alpha, double beta, long maxSamples) throws IOException, XMLStreamException, BioSimException {
+    final double p0 = theta + indifference;
+    final double p1 = theta - indifference;
+    if (p1 <= 0 || p0 >= 1) { throw new IllegalArgumentException("The indifference region must lie strictly between 0 and 1."); }
+    final double successRatio = Math.log(p1 / p0);
+    final double failureRatio = Math.log((1 - p1) / (1 - p0));
+    final double acceptBound = Math.log(beta / (1 - alpha));
+    final double rejectBound = Math.log((1 - beta) / alpha);
+    return sample(maxSamples, new StoppingRule() {
+      @Override
+      public Hypothesis accept(long count, long successes) {
+        double ratio = successes * successRatio + (count - successes) * failureRatio;
+        if (ratio <= acceptBound) { return Hypothesis.ACCEPTED; }
+        if (ratio >= rejectBound) { return Hypothesis.REJECTED; }
+        return Hypothesis.UNDECIDED;
+      }
+    });
+  }
+
+  /**
+   * Stops the running check.
+   */
+  public void cancel() {
+    cancel = true;
+    done.set(true);
+  }
+
+  private Result sample(long maxSamples, StoppingRule rule) throws IOException, XMLStreamException, BioSimException {
+    if (properties.getSimulationProperties().getTimeLimit() < property.getUpperBound()) { throw new BioSimException("The time limit is smaller than the time bound of the property.", "Error in statistical model checking"); }
+    // No trajectory needs to be simulated beyond the time bound of the property.
+    AnalysisProperties checkProperties = new AnalysisProperties(properties);
+    SimulationProperties simProperties = checkProperties.getSimulationProperties();
+    simProperties.setTimeLimit(property.getUpperBound());
+    // The model is parsed once and shared by all workers.
+    final CompiledModel compiledModel = CompiledModel.compile(checkProperties);
+
+    final long seed = simProperties.getRndSeed();
+    final AtomicLong nextSample = new AtomicLong();
+    final LinkedBlockingQueue<long[]> results = new LinkedBlockingQueue<>();
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    List<Future<Void>> workers = new ArrayList<>();
+    done.set(false);
+    cancel = false;
+
+    try {
+      for (int i = 0; i < numberOfThreads; i++) {
+        workers.add(executor.submit(() -> {
+          HierarchicalSSADirectSimulator sim = new HierarchicalSSADirectSimulator(compiledModel, false);
+          BoundedProperty.Monitor monitor = property.createMonitor(sim);
+          sim.setTrajectoryObserver(monitor);
+          boolean initialized = false;
+          long index;
+          while (!done.get() && (index = nextSample.getAndIncrement()) < maxSamples) {
+            int run = (int) index + 1;
+            // Seeded first, as initial assignments and the fixed point may draw random numbers.
+            sim.setRandomSeed(seed + index * SEED_INCREMENT);
+            if (initialized) {
+              sim.setupForNewRun(run);
+            } else {
+              sim.initialize(run);
+              initialized = true;
+            }
+            monitor.reset();
+            sim.simulate();
+            if (done.get()) {
+              break;
+            }
+            results.put(new long[] { index, monitor.isSatisfied() ? 1 : 0 });
+          }
+          return null;
+        }));
+      }
+
+      // Results arrive out of order; buffer them so they are consumed by index.
+      boolean[] arrived = new boolean[1024];
+      boolean[] satisfied = new boolean[1024];
+      long count = 0, successes = 0;
+      Hypothesis hypothesis = Hypothesis.UNDECIDED;
+      while (count < maxSamples && hypothesis == Hypothesis.UNDECIDED && !cancel) {
+        checkWorkers(workers);
+        long[] result = results.poll(100, TimeUnit.MILLISECONDS);
+        if (result == null) {
+          continue;
+        }
+        int offset = (int) (result[0] - count);
+        if (offset >= arrived.length) {
+          int length = Math.max(arrived.length * 2, offset + 1);
+          arrived = copyShifted(arrived, 0, length);
+          satisfied = copyShifted(satisfied, 0, length);
+        }
+        arrived[offset] = true;
+        satisfied[offset] = result[1] == 1;
+        int consumed = 0;
+        while (consumed < arrived.length && arrived[consumed] && hypothesis == Hypothesis.UNDECIDED) {
+          count++;
+          if (satisfied[consumed]) {
+            successes++;
+          }
+          consumed++;
+          hypothesis = rule.accept(count, successes);
+        }
+        if (consumed > 0) {
+          arrived = copyShifted(arrived, consumed, arrived.length);
+          satisfied = copyShifted(satisfied, consumed, satisfied.length);
+        }
+      }
+      done.set(true);
+      checkWorkers(workers);
+      return new Result(count, successes, hypothesis);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BioSimException("Statistical model checking was interrupted.", "Error in statistical model checking");
+    }
+    finally {
+      done.set(true);
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean[] copyShifted(boolean[] array, int shift, int length) {
+    boolean[] copy = new boolean[length];
+    System.arraycopy(array, shift, copy, 0, array.length - shift);
+    return copy;
+  }
+
+  private static void checkWorkers(List<Future<Void>> workers) throws IOException, XMLStreamException, BioSimException, InterruptedException {
+    for (Future<Void> worker : workers) {
+      if (worker.isDone()) {
+        try {
+          worker.get();
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) { throw (IOException) cause; }
+          if (cause instanceof XMLStreamException) { throw (XMLStreamException) cause; }
+          if (cause instanceof BioSimException) { throw (BioSimException) cause; }
+          throw new IllegalStateException(cause);
+        }
+      }
+    }
+  }
+
+  private static interface StoppingRule {
+    Hypothesis accept(long count, long successes);
+  }
+
+  /**
+   * Result of a statistical model checking run.
+   */
+  public static class Result {
+    private final long samples;
+    private final long successes;
+    private final Hypothesis hypothesis;
+
+    private Result(long samples, long successes, Hypothesis hypothesis) {
+      this.samples = samples;
+      this.successes = successes;
+      this.hypothesis = hypothesis;
+    }
+
+    /**
+     * @return the number of trajectories that were used.
+     */
+    public long getNumberOfSamples() {
+      return samples;
+    }
+
+    /**
+     * @return the number of trajectories that satisfied the property.
+     */
+    public long getNumberOfSuccesses() {
+      return successes;
+    }
+
+    /**
+     * @return the estimated probability of the property.
+     */
+    public double getProbability() {
+      return samples == 0 ? Double.NaN : (double) successes / samples;
+    }
+
+    /**
+     * @return the outcome of the hypothesis test, or UNDECIDED for an estimation.
+     */
+    public Hypothesis getHypothesis() {
+      return hypothesis;
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * 
+ *
  * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
  * for the latest version of iBioSim.
  *
@@ -9,18 +9,33 @@
  * under the terms of the Apache License. A copy of the license agreement is provided
  * in the file named "LICENSE.txt" included with this software distribution
  * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
- * 
+ *
  *******************************************************************************/
-package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc;
 
 /**
- * Hierarchical Hybrid Simulator.
+ * Receives the states of a trajectory while it is being simulated.
  *
- * @author Leandro Watanabe
- * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public final class HierarchicalHybridSimulator {
+public interface TrajectoryObserver {
+
+  /**
+   * Observes the current state of the simulation, which holds from the given time until the next
+   * observation.
+   *
+   * @param time
+   *          - the time at which the current state was entered.
+   * @return true if the trajectory no longer needs to be simulated.
+   */
+  boolean observe(double time);
 
+  /**
+   * Notifies that the trajectory ended.
+   *
+   * @param time
+   *          - the end time of the trajectory.
+   */
+  void finish(double time);
 }
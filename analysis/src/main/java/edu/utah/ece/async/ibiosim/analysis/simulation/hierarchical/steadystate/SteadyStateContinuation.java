@@ -0,0 +1,157 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Natural-parameter continuation of the steady states of a deterministic model. The steady state is found at
+ * the first value of the parameter, and every following point is predicted from the last two with a secant
+ * step and corrected by the solver, which keeps reusing the same factorization of the Jacobian while it
+ * converges fast enough. A point that fails to converge is retried with half the step.
+ *
+ * <p>
+ * The parameter is the only coordinate of the continuation, so a branch cannot be followed around a fold.
+ * When the step becomes too small the branch has ended, and tracing the range in the opposite direction from
+ * the other end recovers the other branch of a bistable system.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SteadyStateContinuation {
+
+  private static final int MAX_HALVINGS = 10;
+
+  private final CompiledModel compiledModel;
+  private final String parameter;
+  private final List<String> outputs;
+
+  /**
+   * Creates a continuation.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @param parameter
+   *          - the id of the top-level constant that is varied.
+   * @param outputs
+   *          - the ids of the top-level variables that are reported.
+   */
+  public SteadyStateContinuation(CompiledModel compiledModel, String parameter, List<String> outputs) {
+    this.compiledModel = compiledModel;
+    this.parameter = parameter;
+    this.outputs = outputs;
+  }
+
+  /**
+   * Traces the steady states from the start to the stop value of the parameter and writes one row per point.
+   * The columns are the parameter and the value of every output. Besides the requested points, the rows include
+   * the intermediate points that were needed when the step was reduced.
+   *
+   * @param start
+   *          - the first value of the parameter.
+   * @param stop
+   *          - the last value of the parameter.
+   * @param numOfSteps
+   *          - the number of steps between start and stop.
+   * @param writer
+   *          - where the comma-separated table is written to. Rows are flushed as soon as they are computed.
+   * @return true if the branch was followed up to the stop value, or false if it ended before.
+   * @throws IOException
+   *           - if there is a problem with the model file or the output.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if the model or the parameter is not supported, or there is no steady state at the start value.
+   */
+  public boolean run(double start, double stop, int numOfSteps, Writer writer) throws IOException, XMLStreamException, BioSimException {
+    if (numOfSteps < 1) { throw new IllegalArgumentException("The number of steps must be positive."); }
+    SteadyStateSystem system = new SteadyStateSystem(compiledModel);
+    system.checkParameter(parameter);
+    for (String output : outputs) {
+      system.getTopLevelValue(output);
+    }
+    double tolerance = compiledModel.getProperties().getSimulationProperties().getAbsError();
+    SteadyStateSolver solver = new SteadyStateSolver(system, tolerance);
+
+    writeHeader(writer);
+    double[] x = system.getValues();
+    system.setParameter(parameter, start);
+    if (!solver.solve(x)) { throw new BioSimException("No steady state was found for " + parameter + " = " + start + ".", "Error in steady-state analysis"); }
+    writeRow(writer, system, start, x);
+
+    int n = x.length;
+    double nominal = (stop - start) / numOfSteps;
+    double step = nominal;
+    double value = start;
+    double[] previous = null;
+    double previousValue = start;
+    double[] guess = new double[n];
+    int halvings = 0;
+    while (Math.abs(stop - value) > Math.abs(nominal) * 1e-9) {
+      double next = Math.abs(stop - value) < Math.abs(step) ? stop : value + step;
+      for (int i = 0; i < n; i++) {
+        guess[i] = previous == null ? x[i] : x[i] + (x[i] - previous[i]) * (next - value) / (value - previousValue);
+        if (system.isSpecies(i) && guess[i] < 0) {
+          guess[i] = 0;
+        }
+      }
+      system.setParameter(parameter, next);
+      if (solver.correct(guess)) {
+        previous = x.clone();
+        previousValue = value;
+        System.arraycopy(guess, 0, x, 0, n);
+        value = next;
+        writeRow(writer, system, value, x);
+        halvings = 0;
+        step = Math.abs(step * 2) > Math.abs(nominal) ? nominal : step * 2;
+      } else if (++halvings > MAX_HALVINGS) {
+        system.setParameter(parameter, value);
+        system.evaluate(x, guess);
+        return false;
+      } else {
+        step /= 2;
+      }
+    }
+    return true;
+  }
+
+  private void writeHeader(Writer writer) throws IOException {
+    StringBuilder header = new StringBuilder(parameter);
+    for (String output : outputs) {
+      header.append(',').append(output);
+    }
+    writer.write(header.toString());
+    writer.write('\n');
+  }
+
+  private void writeRow(Writer writer, SteadyStateSystem system, double value, double[] x) throws IOException, BioSimException {
+    double[] fx = new double[x.length];
+    system.evaluate(x, fx);
+    StringBuilder row = new StringBuilder();
+    row.append(value);
+    for (String output : outputs) {
+      row.append(',').append(system.getTopLevelValue(output));
+    }
+    writer.write(row.toString());
+    writer.write('\n');
+    writer.flush();
+  }
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Finds the roots of a {@link SteadyStateSystem}. The solver first tries a damped Newton iteration from the
+ * initial guess. When the Jacobian is singular or the iteration stalls, which happens far from a steady state,
+ * it falls back to pseudo-transient continuation: the model is integrated with implicit Euler steps whose size
+ * grows as the residual decreases, so the iteration follows the trajectory of the model into the basin of a
+ * stable steady state and turns into Newton once the steps are large.
+ *
+ * <p>
+ * The last factorization of the Jacobian is kept, so a sequence of nearby systems, such as the points of a
+ * parameter continuation, can be corrected with {@link #correct(double[])} without recomputing the Jacobian
+ * until the convergence slows down.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SteadyStateSolver {
+
+  private static final double MIN_DAMPING = 1.0 / 1024;
+  private static final double SLOW_CONTRACTION = 0.5;
+
+  private final SteadyStateSystem system;
+  private final int n;
+  private final RealMatrix jacobian;
+  private final double[] fx;
+  private final double[] trial;
+  private final double[] ftrial;
+  private final double[] guess;
+  private DecompositionSolver factorization;
+  private int numOfFactorizations;
+
+  private double tolerance;
+  private int maxIterations = 50;
+  private int maxPseudoTransientSteps = 1000;
+  private double initialPseudoTimeStep = 1e-3;
+  private double maxPseudoTimeStep = 1e12;
+
+  /**
+   * Creates a solver.
+   *
+   * @param system
+   *          - the steady-state system.
+   * @param tolerance
+   *          - the largest absolute residual of a steady state.
+   */
+  public SteadyStateSolver(SteadyStateSystem system, double tolerance) {
+    this.system = system;
+    this.tolerance = tolerance;
+    this.n = system.getDimension();
+    this.jacobian = new Array2DRowRealMatrix(n, n);
+    this.fx = new double[n];
+    this.trial = new double[n];
+    this.ftrial = new double[n];
+    this.guess = new double[n];
+  }
+
+  /**
+   * Sets the largest absolute residual of a steady state.
+   *
+   * @param tolerance
+   *          - the tolerance.
+   */
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Sets the maximum number of Newton iterations of a solve or a correction.
+   *
+   * @param maxIterations
+   *          - the maximum number of iterations.
+   */
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * Sets the maximum number of pseudo-transient steps.
+   *
+   * @param maxPseudoTransientSteps
+   *          - the maximum number of steps.
+   */
+  public void setMaxPseudoTransientSteps(int maxPseudoTransientSteps) {
+    this.maxPseudoTransientSteps = maxPseudoTransientSteps;
+  }
+
+  /**
+   * Sets the first pseudo-time step and the bound on the later ones.
+   *
+   * @param initialPseudoTimeStep
+   *          - the first step.
+   * @param maxPseudoTimeStep
+   *          - the largest step.
+   */
+  public void setPseudoTimeSteps(double initialPseudoTimeStep, double maxPseudoTimeStep) {
+    this.initialPseudoTimeStep = initialPseudoTimeStep;
+    this.maxPseudoTimeStep = maxPseudoTimeStep;
+  }
+
+  /**
+   * Gets the number of times the Jacobian has been computed and factorized.
+   *
+   * @return the number of factorizations.
+   */
+  public int getNumOfFactorizations() {
+    return numOfFactorizations;
+  }
+
+  /**
+   * Finds a steady state, starting from the given guess.
+   *
+   * @param x
+   *          - the initial guess, which is replaced by the steady state.
+   * @return true if a steady state was found, or false if x is left at the last iterate.
+   */
+  public boolean solve(double[] x) {
+    System.arraycopy(x, 0, guess, 0, n);
+    if (newton(x, false)) { return true; }
+    System.arraycopy(guess, 0, x, 0, n);
+    return pseudoTransient(x);
+  }
+
+  /**
+   * Corrects a guess that is close to a steady state with a Newton iteration that reuses the last factorization
+   * of the Jacobian, and only refactorizes when the residual does not decrease fast enough.
+   *
+   * @param x
+   *          - the guess, which is replaced by the steady state.
+   * @return true if a steady state was found.
+   */
+  public boolean correct(double[] x) {
+    return newton(x, factorization != null);
+  }
+
+  private boolean newton(double[] x, boolean reuse) {
+    system.evaluate(x, fx);
+    double norm = norm(fx);
+    boolean fresh = !reuse;
+    if (fresh && !factorize(x)) { return false; }
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+      if (norm <= tolerance && isAdmissible(x)) { return true; }
+      double[] step = factorization.solve(new ArrayRealVector(fx, false)).toArray();
+      double damping = 1;
+      double trialNorm = Double.POSITIVE_INFINITY;
+      while (damping >= MIN_DAMPING) {
+        for (int i = 0; i < n; i++) {
+          trial[i] = x[i] - damping * step[i];
+        }
+        system.evaluate(trial, ftrial);
+        trialNorm = norm(ftrial);
+        if (trialNorm <= (1 - 1e-4 * damping) * norm) {
+          break;
+        }
+        damping /= 2;
+      }
+      if (damping < MIN_DAMPING) {
+        // a stale Jacobian gives a poor direction, so it is only a failure with a fresh one
+        if (fresh || !factorize(x)) { return false; }
+        fresh = true;
+        continue;
+      }
+      double contraction = trialNorm / norm;
+      System.arraycopy(trial, 0, x, 0, n);
+      System.arraycopy(ftrial, 0, fx, 0, n);
+      norm = trialNorm;
+      fresh = false;
+      if (contraction > SLOW_CONTRACTION && norm > tolerance) {
+        if (!factorize(x)) { return false; }
+        fresh = true;
+      }
+    }
+    system.evaluate(x, fx);
+    return norm(fx) <= tolerance && isAdmissible(x);
+  }
+
+  /**
+   * Takes implicit Euler steps (I/dt - J) dx = f(x) on the differential equations, keeping the conservation
+   * laws exactly, and grows the step with the ratio of successive residuals. Once the steps are large, the
+   * iteration is Newton's method.
+   */
+  private boolean pseudoTransient(double[] x) {
+    system.evaluate(x, fx);
+    double norm = norm(fx);
+    double dt = initialPseudoTimeStep;
+    for (int step = 0; step < maxPseudoTransientSteps; step++) {
+      if (norm <= tolerance) { return true; }
+      system.computeJacobian(x, fx, jacobian);
+      RealMatrix matrix = jacobian.scalarMultiply(-1);
+      for (int i = 0; i < n; i++) {
+        if (!system.isAlgebraic(i)) {
+          matrix.addToEntry(i, i, 1 / dt);
+        }
+      }
+      DecompositionSolver solver = new LUDecomposition(matrix).getSolver();
+      if (!solver.isNonSingular()) {
+        dt /= 10;
+        continue;
+      }
+      double[] delta = solver.solve(new ArrayRealVector(fx, false)).toArray();
+      for (int i = 0; i < n; i++) {
+        trial[i] = x[i] + delta[i];
+        if (system.isSpecies(i) && !system.isAlgebraic(i) && trial[i] < 0) {
+          trial[i] = 0;
+        }
+      }
+      system.evaluate(trial, ftrial);
+      double trialNorm = norm(ftrial);
+      if (Double.isNaN(trialNorm)) {
+        dt /= 10;
+        system.evaluate(x, fx);
+        continue;
+      }
+      System.arraycopy(trial, 0, x, 0, n);
+      System.arraycopy(ftrial, 0, fx, 0, n);
+      dt = Math.min(maxPseudoTimeStep, dt * norm / Math.max(trialNorm, Double.MIN_NORMAL));
+      norm = trialNorm;
+    }
+    return norm <= tolerance;
+  }
+
+  private boolean factorize(double[] x) {
+    system.computeJacobian(x, fx, jacobian);
+    numOfFactorizations++;
+    DecompositionSolver solver = new LUDecomposition(jacobian).getSolver();
+    if (!solver.isNonSingular()) {
+      factorization = null;
+      return false;
+    }
+    factorization = solver;
+    return true;
+  }
+
+  /**
+   * Checks that no species is negative beyond the tolerance, since Newton can converge to a root of the
+   * equations that is not a physical steady state.
+   */
+  private boolean isAdmissible(double[] x) {
+    for (int i = 0; i < n; i++) {
+      if (system.isSpecies(i) && x[i] < -tolerance) { return false; }
+    }
+    return true;
+  }
+
+  private static double norm(double[] values) {
+    double norm = 0;
+    for (double value : values) {
+      if (Double.isNaN(value)) { return Double.NaN; }
+      norm = Math.max(norm, Math.abs(value));
+    }
+    return norm;
+  }
+}
@@ -0,0 +1,644 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SymbolicJacobian;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * The nonlinear system f(x) = 0 whose roots are the steady states of a deterministic hierarchical model. The
+ * unknowns are the species that are changed by a reaction and the variables that have a rate rule, and f is
+ * the right-hand side of the ODE simulator restricted to them. Everything else in the state vector is held at
+ * its initial value.
+ *
+ * <p>
+ * The Jacobian is computed from the symbolic derivatives of the rates when the model can be differentiated,
+ * see {@link SymbolicJacobian}. Otherwise, its sparsity pattern is read from the reaction network: a reaction
+ * rate depends on the states read by its kinetic law, following assignment rules transitively, and it only
+ * changes its reactants and products. The columns are grouped so that no two columns in a group touch the
+ * same row, and the Jacobian is approximated with one difference quotient per group instead of one per
+ * unknown.
+ *
+ * <p>
+ * A closed network usually conserves some weighted sums of its species, which makes the Jacobian singular.
+ * The conservation laws are found from the left null space of the stoichiometry matrix, and for every law
+ * the equation of one of its species is replaced by the law itself, with the total taken from the initial
+ * state. The replaced equations are algebraic and the others are differential.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SteadyStateSystem {
+
+  private static final double SQRT_UNIT_ROUNDOFF = Math.sqrt(Math.ulp(1.0));
+
+  private final HierarchicalODERKSimulator sim;
+  private final double time;
+  private final double[] values;
+  private final double[] rates;
+  private final int[] positions;
+  private final int[] unknownOfPosition;
+  private final boolean[] isSpecies;
+  private final int[][] columnRows;
+  private final int[][] colors;
+  private final int[] conservedRows;
+  private final double[][] conservedCoefficients;
+  private final double[] conservedTotals;
+  private final boolean[] isAlgebraic;
+  private final SymbolicJacobian symbolicJacobian;
+
+  /**
+   * Creates the steady-state system of a model.
+   *
+   * @param compiledModel
+   *          - the compiled model.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if the model has events or arrays, or its rates depend on time.
+   */
+  public SteadyStateSystem(CompiledModel compiledModel) throws IOException, XMLStreamException, BioSimException {
+    sim = new HierarchicalODERKSimulator(compiledModel, false);
+    sim.setParallelRates(false);
+    sim.initialize(1);
+    if (sim.hasEvents()) { throw new BioSimException("Steady-state analysis is not supported for models with events.", "Error in steady-state analysis"); }
+    for (HierarchicalModel model : sim.getListOfHierarchicalModels()) {
+      if (model.getListOfArrays() != null && !model.getListOfArrays().isEmpty()) { throw new BioSimException("Steady-state analysis is not supported for models with arrays.", "Error in steady-state analysis"); }
+    }
+
+    time = compiledModel.getProperties().getSimulationProperties().getInitialTime();
+    values = sim.getStateValues().clone();
+    rates = new double[values.length];
+
+    // the unknowns are the states written by reactions and rate rules
+    IdentityHashMap<HierarchicalState, Integer> unknowns = new IdentityHashMap<>();
+    List<HierarchicalState> listOfUnknowns = new ArrayList<>();
+    List<Boolean> listOfSpecies = new ArrayList<>();
+    for (HierarchicalModel model : sim.getListOfHierarchicalModels()) {
+      int index = model.getIndex();
+      if (model.getListOfReactions() != null) {
+        for (ReactionNode reaction : model.getListOfReactions()) {
+          addSpecies(reaction.getListOfReactants(), index, unknowns, listOfUnknowns, listOfSpecies);
+          addSpecies(reaction.getListOfProducts(), index, unknowns, listOfUnknowns, listOfSpecies);
+        }
+      }
+      if (model.getListOfRateRules() != null) {
+        for (FunctionNode rule : model.getListOfRateRules()) {
+          addUnknown(rule.getVariable().getState().getChild(index), false, unknowns, listOfUnknowns, listOfSpecies);
+        }
+      }
+    }
+
+    int n = listOfUnknowns.size();
+    positions = new int[n];
+    isSpecies = new boolean[n];
+    unknownOfPosition = new int[values.length];
+    for (int p = 0; p < values.length; p++) {
+      unknownOfPosition[p] = -1;
+    }
+    for (int i = 0; i < n; i++) {
+      positions[i] = ((VectorState) listOfUnknowns.get(i)).getIndex();
+      isSpecies[i] = listOfSpecies.get(i);
+      unknownOfPosition[positions[i]] = i;
+    }
+
+    // the states read by the assignment rules and the reaction fluxes, used to follow the dependencies of a
+    // rate transitively, since a rate rule may read the flux of a reaction
+    IdentityHashMap<HierarchicalState, List<HierarchicalState>> ruleReads = new IdentityHashMap<>();
+    for (HierarchicalModel model : sim.getListOfHierarchicalModels()) {
+      if (model.getListOfReactions() != null) {
+        for (ReactionNode reaction : model.getListOfReactions()) {
+          List<HierarchicalState> read = new ArrayList<>();
+          boolean isVolatile = collectReads(reaction.getForwardRate(), model.getIndex(), read);
+          isVolatile |= collectReads(reaction.getReverseRate(), model.getIndex(), read);
+          ruleReads.put(reaction.getState().getChild(model.getIndex()), isVolatile ? null : read);
+        }
+      }
+      if (model.getListOfAssignmentRules() != null) {
+        for (FunctionNode rule : model.getListOfAssignmentRules()) {
+          List<HierarchicalState> read = new ArrayList<>();
+          if (collectReads(rule.getMath(), model.getIndex(), read)) {
+            read = null;
+          }
+          ruleReads.put(rule.getVariable().getState().getChild(model.getIndex()), read);
+        }
+      }
+    }
+
+    HierarchicalState timeState = sim.getCurrentTime().getState().getChild(0);
+    BitSet[] rowColumns = new BitSet[n];
+    for (int i = 0; i < n; i++) {
+      rowColumns[i] = new BitSet(n);
+    }
+    List<double[]> stoichiometry = new ArrayList<>();
+    for (HierarchicalModel model : sim.getListOfHierarchicalModels()) {
+      int index = model.getIndex();
+      if (model.getListOfReactions() != null) {
+        for (ReactionNode reaction : model.getListOfReactions()) {
+          List<HierarchicalState> read = new ArrayList<>();
+          boolean isVolatile = collectReads(reaction.getForwardRate(), index, read);
+          isVolatile |= collectReads(reaction.getReverseRate(), index, read);
+          BitSet columns = getColumns(read, isVolatile, n, unknowns, ruleReads, timeState);
+          double[] column = new double[n];
+          addRows(reaction.getListOfReactants(), index, -1, columns, unknowns, rowColumns, column);
+          addRows(reaction.getListOfProducts(), index, 1, columns, unknowns, rowColumns, column);
+          stoichiometry.add(column);
+        }
+      }
+      if (model.getListOfRateRules() != null) {
+        for (FunctionNode rule : model.getListOfRateRules()) {
+          HierarchicalNode variable = rule.getVariable();
+          List<HierarchicalState> read = new ArrayList<>();
+          boolean isVolatile = collectReads(rule.getMath(), index, read);
+          read.add(variable.getState().getChild(index));
+          if (variable.getCompartment() != null) {
+            read.add(variable.getCompartment().getState().getChild(index));
+          }
+          Integer row = unknowns.get(variable.getState().getChild(index));
+          if (row != null) {
+            rowColumns[row].or(getColumns(read, isVolatile, n, unknowns, ruleReads, timeState));
+          }
+        }
+      }
+    }
+
+    // every conservation law replaces the equation of its leading species
+    List<Integer> leadingSpecies = new ArrayList<>();
+    double[][] laws = getConservationLaws(stoichiometry, n, leadingSpecies);
+    conservedRows = new int[laws.length];
+    conservedCoefficients = laws;
+    conservedTotals = new double[laws.length];
+    isAlgebraic = new boolean[n];
+    for (int k = 0; k < laws.length; k++) {
+      conservedRows[k] = leadingSpecies.get(k);
+      isAlgebraic[conservedRows[k]] = true;
+      for (int j = 0; j < n; j++) {
+        conservedTotals[k] += laws[k][j] * values[positions[j]];
+      }
+    }
+
+    List<List<Integer>> listOfColumnRows = new ArrayList<>(n);
+    for (int j = 0; j < n; j++) {
+      listOfColumnRows.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < n; i++) {
+      if (!isAlgebraic[i]) {
+        for (int j = rowColumns[i].nextSetBit(0); j >= 0; j = rowColumns[i].nextSetBit(j + 1)) {
+          listOfColumnRows.get(j).add(i);
+        }
+      }
+    }
+    columnRows = new int[n][];
+    for (int j = 0; j < n; j++) {
+      List<Integer> rows = listOfColumnRows.get(j);
+      columnRows[j] = new int[rows.size()];
+      for (int k = 0; k < rows.size(); k++) {
+        columnRows[j][k] = rows.get(k);
+      }
+    }
+    colors = colorColumns(columnRows, n);
+
+    SymbolicJacobian jacobian = new SymbolicJacobian(sim.getListOfHierarchicalModels(), sim.getCurrentTime(), values.length);
+    symbolicJacobian = jacobian.isSupported() ? jacobian : null;
+  }
+
+  /**
+   * Gets the number of unknowns.
+   *
+   * @return the dimension of the system.
+   */
+  public int getDimension() {
+    return positions.length;
+  }
+
+  /**
+   * Checks if the Jacobian is computed from symbolic derivatives instead of finite differences.
+   *
+   * @return true if the model could be differentiated.
+   */
+  public boolean hasSymbolicJacobian() {
+    return symbolicJacobian != null;
+  }
+
+  /**
+   * Gets the number of groups of columns that are perturbed together when the Jacobian is approximated, which is
+   * the number of evaluations of the model per Jacobian.
+   *
+   * @return the number of column groups.
+   */
+  public int getNumOfColors() {
+    return colors.length;
+  }
+
+  /**
+   * Gets the number of conservation laws that replace species equations.
+   *
+   * @return the number of conservation laws.
+   */
+  public int getNumOfConservationLaws() {
+    return conservedRows.length;
+  }
+
+  /**
+   * Checks if an equation is a conservation law instead of the rate of change of its unknown.
+   *
+   * @param i
+   *          - the index of the equation.
+   * @return true if the equation is algebraic.
+   */
+  public boolean isAlgebraic(int i) {
+    return isAlgebraic[i];
+  }
+
+  /**
+   * Checks if an unknown is the amount of a species, which must not be negative.
+   *
+   * @param i
+   *          - the index of the unknown.
+   * @return true if the unknown is a species.
+   */
+  public boolean isSpecies(int i) {
+    return isSpecies[i];
+  }
+
+  /**
+   * Gets the current values of the unknowns, which are the initial values of the model until the system is
+   * evaluated.
+   *
+   * @return a copy of the unknowns.
+   */
+  public double[] getValues() {
+    double[] x = new double[positions.length];
+    for (int i = 0; i < positions.length; i++) {
+      x[i] = values[positions[i]];
+    }
+    return x;
+  }
+
+  /**
+   * Evaluates the system. The model is left at the given point, so the value of any variable at x can be read
+   * afterwards with {@link #getTopLevelValue(String)}.
+   *
+   * @param x
+   *          - the values of the unknowns.
+   * @param fx
+   *          - where the residual is stored.
+   */
+  public void evaluate(double[] x, double[] fx) {
+    for (int i = 0; i < positions.length; i++) {
+      values[positions[i]] = x[i];
+    }
+    sim.computeDerivatives(time, values, rates);
+    for (int i = 0; i < positions.length; i++) {
+      fx[i] = rates[positions[i]];
+    }
+    for (int k = 0; k < conservedRows.length; k++) {
+      double sum = -conservedTotals[k];
+      for (int j = 0; j < x.length; j++) {
+        sum += conservedCoefficients[k][j] * x[j];
+      }
+      fx[conservedRows[k]] = sum;
+    }
+  }
+
+  /**
+   * Computes the Jacobian at x, from the symbolic derivatives if they are available or with forward differences
+   * otherwise. Entries outside of the sparsity pattern are set to zero.
+   *
+   * @param x
+   *          - the values of the unknowns. The array is restored before returning.
+   * @param fx
+   *          - the residual at x.
+   * @param jacobian
+   *          - where the Jacobian is stored.
+   */
+  public void computeJacobian(double[] x, double[] fx, RealMatrix jacobian) {
+    int n = x.length;
+    double[] perturbed = new double[n];
+    double[] steps = new double[n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        jacobian.setEntry(i, j, 0);
+      }
+    }
+    if (symbolicJacobian != null) {
+      evaluate(x, perturbed);
+      symbolicJacobian.compute();
+      int[] rowPointers = symbolicJacobian.getRowPointers();
+      int[] columnIndices = symbolicJacobian.getColumnIndices();
+      double[] entries = symbolicJacobian.getValues();
+      for (int i = 0; i < n; i++) {
+        for (int k = rowPointers[positions[i]]; k < rowPointers[positions[i] + 1]; k++) {
+          int j = unknownOfPosition[columnIndices[k]];
+          if (j >= 0) {
+            jacobian.setEntry(i, j, entries[k]);
+          }
+        }
+      }
+      setConservationLaws(jacobian);
+      return;
+    }
+    for (int[] color : colors) {
+      for (int j : color) {
+        double value = x[j];
+        double step = SQRT_UNIT_ROUNDOFF * Math.max(Math.abs(value), 1);
+        x[j] = value + step;
+        steps[j] = x[j] - value;
+      }
+      evaluate(x, perturbed);
+      for (int j : color) {
+        x[j] -= steps[j];
+        for (int i : columnRows[j]) {
+          jacobian.setEntry(i, j, (perturbed[i] - fx[i]) / steps[j]);
+        }
+      }
+    }
+    setConservationLaws(jacobian);
+    evaluate(x, perturbed);
+  }
+
+  private void setConservationLaws(RealMatrix jacobian) {
+    for (int k = 0; k < conservedRows.length; k++) {
+      for (int j = 0; j < positions.length; j++) {
+        jacobian.setEntry(conservedRows[k], j, conservedCoefficients[k][j]);
+      }
+    }
+  }
+
+  /**
+   * Changes the value of a top-level constant parameter.
+   *
+   * @param parameter
+   *          - the id of the parameter.
+   * @param value
+   *          - the new value.
+   * @throws BioSimException
+   *           - if the id is not a constant top-level parameter.
+   */
+  public void setParameter(String parameter, double value) throws BioSimException {
+    checkParameter(parameter);
+    sim.setTopLevelValue(parameter, value);
+    if (symbolicJacobian != null) {
+      symbolicJacobian.updateConstants();
+    }
+  }
+
+  /**
+   * Checks that an id can be changed by {@link #setParameter(String, double)}.
+   *
+   * @param parameter
+   *          - the id of the parameter.
+   * @throws BioSimException
+   *           - if the id is not a constant top-level parameter.
+   */
+  public void checkParameter(String parameter) throws BioSimException {
+    HierarchicalNode node = sim.getTopmodel().getNode(parameter);
+    if (node == null || node.getState() == null) { throw new BioSimException(parameter + " is not a top-level parameter.", "Error in steady-state analysis"); }
+    if (node.getState().getChild(0) instanceof VectorState) { throw new BioSimException(parameter + " is not a constant parameter.", "Error in steady-state analysis"); }
+  }
+
+  /**
+   * Gets the value of a top-level variable at the last point where the system was evaluated.
+   *
+   * @param variable
+   *          - the id of the variable.
+   * @return the value of the variable.
+   * @throws BioSimException
+   *           - if the id is not a top-level variable.
+   */
+  public double getTopLevelValue(String variable) throws BioSimException {
+    if (sim.getTopmodel().getNode(variable) == null) { throw new BioSimException(variable + " is not a top-level variable.", "Error in steady-state analysis"); }
+    return sim.getTopLevelValue(variable);
+  }
+
+  private static void addSpecies(List<SpeciesReferenceNode> specRefs, int index, IdentityHashMap<HierarchicalState, Integer> unknowns, List<HierarchicalState> listOfUnknowns, List<Boolean> listOfSpecies) {
+    if (specRefs == null) { return; }
+    for (SpeciesReferenceNode specRef : specRefs) {
+      HierarchicalState state = specRef.getSpeciesState(index);
+      if (!state.isBoundaryCondition()) {
+        addUnknown(state, true, unknowns, listOfUnknowns, listOfSpecies);
+      }
+    }
+  }
+
+  private static void addUnknown(HierarchicalState state, boolean species, IdentityHashMap<HierarchicalState, Integer> unknowns, List<HierarchicalState> listOfUnknowns, List<Boolean> listOfSpecies) {
+    if (!unknowns.containsKey(state) && state instanceof VectorState) {
+      unknowns.put(state, listOfUnknowns.size());
+      listOfUnknowns.add(state);
+      listOfSpecies.add(species);
+    }
+  }
+
+  private static void addRows(List<SpeciesReferenceNode> specRefs, int index, int sign, BitSet columns, IdentityHashMap<HierarchicalState, Integer> unknowns, BitSet[] rowColumns, double[] column) {
+    if (specRefs == null) { return; }
+    for (SpeciesReferenceNode specRef : specRefs) {
+      Integer row = unknowns.get(specRef.getSpeciesState(index));
+      if (row != null) {
+        rowColumns[row].or(columns);
+        column[row] += sign * specRef.getValue(index);
+      }
+    }
+  }
+
+  /**
+   * Gets the unknowns that the given reads depend on, following assignment rules. A read of a random value,
+   * a delay or a rule that reads one depends on every unknown.
+   */
+  private static BitSet getColumns(List<HierarchicalState> read, boolean isVolatile, int n, IdentityHashMap<HierarchicalState, Integer> unknowns, IdentityHashMap<HierarchicalState, List<HierarchicalState>> ruleReads, HierarchicalState timeState) throws BioSimException {
+    BitSet columns = new BitSet(n);
+    IdentityHashMap<HierarchicalState, Boolean> visited = new IdentityHashMap<>();
+    LinkedList<HierarchicalState> unprocessed = new LinkedList<>(read);
+    while (!isVolatile && !unprocessed.isEmpty()) {
+      HierarchicalState state = unprocessed.pop();
+      if (visited.put(state, true) != null) {
+        continue;
+      }
+      if (state == timeState) { throw new BioSimException("Steady-state analysis is not supported for rates that depend on time.", "Error in steady-state analysis"); }
+      Integer column = unknowns.get(state);
+      if (column != null) {
+        columns.set(column);
+      }
+      if (ruleReads.containsKey(state)) {
+        List<HierarchicalState> ruleRead = ruleReads.get(state);
+        if (ruleRead == null) {
+          isVolatile = true;
+        } else {
+          unprocessed.addAll(ruleRead);
+        }
+      }
+    }
+    if (isVolatile) {
+      columns.set(0, n);
+    }
+    return columns;
+  }
+
+  /**
+   * Collects the states read by the given math, including the compartments of the species.
+   *
+   * @return true if the math depends on a random value or a delay.
+   */
+  private static boolean collectReads(HierarchicalNode math, int index, List<HierarchicalState> read) {
+    boolean isVolatile = false;
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    if (math != null) {
+      unprocessed.push(math);
+    }
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.isName()) {
+        if (node.getState() != null) {
+          read.add(node.getState().getChild(index));
+        }
+        HierarchicalNode compartment = node.getCompartment();
+        if (compartment != null && compartment.getState() != null) {
+          read.add(compartment.getState().getChild(index));
+        }
+      } else if (node.getType() == Type.FUNCTION || node.getType() == Type.FUNCTION_DELAY || node.getType() == Type.FUNCTION_RATEOF) {
+        isVolatile = true;
+      }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+    return isVolatile;
+  }
+
+  /**
+   * Computes a basis of the conservation laws, which are the vectors l with l N = 0 for the stoichiometry
+   * matrix N. The basis is read from the reduced row echelon form of the transpose of N, so every law has a
+   * coefficient of one on a different species that no other law uses, which is added to the given list.
+   */
+  private double[][] getConservationLaws(List<double[]> stoichiometry, int n, List<Integer> leadingSpecies) {
+    int m = stoichiometry.size();
+    double[][] a = new double[m][];
+    double scale = 0;
+    for (int r = 0; r < m; r++) {
+      a[r] = stoichiometry.get(r).clone();
+      for (int j = 0; j < n; j++) {
+        if (!isSpecies[j]) {
+          a[r][j] = 0;
+        }
+        scale = Math.max(scale, Math.abs(a[r][j]));
+      }
+    }
+    double tolerance = 1e-10 * Math.max(scale, 1);
+    int[] pivotColumns = new int[Math.min(m, n)];
+    boolean[] isPivot = new boolean[n];
+    int rank = 0;
+    for (int j = 0; j < n && rank < m; j++) {
+      int pivot = rank;
+      for (int r = rank + 1; r < m; r++) {
+        if (Math.abs(a[r][j]) > Math.abs(a[pivot][j])) {
+          pivot = r;
+        }
+      }
+      if (Math.abs(a[pivot][j]) <= tolerance) {
+        continue;
+      }
+      double[] swap = a[pivot];
+      a[pivot] = a[rank];
+      a[rank] = swap;
+      double value = a[rank][j];
+      for (int c = 0; c < n; c++) {
+        a[rank][c] /= value;
+      }
+      for (int r = 0; r < m; r++) {
+        if (r != rank && a[r][j] != 0) {
+          double factor = a[r][j];
+          for (int c = 0; c < n; c++) {
+            a[r][c] -= factor * a[rank][c];
+          }
+        }
+      }
+      pivotColumns[rank++] = j;
+      isPivot[j] = true;
+    }
+
+    List<double[]> laws = new ArrayList<>();
+    for (int j = 0; j < n; j++) {
+      if (isSpecies[j] && !isPivot[j]) {
+        double[] law = new double[n];
+        law[j] = 1;
+        for (int r = 0; r < rank; r++) {
+          law[pivotColumns[r]] = Math.abs(a[r][j]) > tolerance ? -a[r][j] : 0;
+        }
+        laws.add(law);
+        leadingSpecies.add(j);
+      }
+    }
+    return laws.toArray(new double[laws.size()][]);
+  }
+
+  /**
+   * Greedily groups the columns so that the columns of a group do not share any row.
+   */
+  private static int[][] colorColumns(int[][] columnRows, int n) {
+    List<BitSet> usedRows = new ArrayList<>();
+    List<List<Integer>> listOfColors = new ArrayList<>();
+    for (int j = 0; j < n; j++) {
+      int color = 0;
+      while (color < usedRows.size() && intersects(usedRows.get(color), columnRows[j])) {
+        color++;
+      }
+      if (color == usedRows.size()) {
+        usedRows.add(new BitSet(n));
+        listOfColors.add(new ArrayList<Integer>());
+      }
+      for (int i : columnRows[j]) {
+        usedRows.get(color).set(i);
+      }
+      listOfColors.get(color).add(j);
+    }
+    int[][] colors = new int[listOfColors.size()][];
+    for (int c = 0; c < colors.length; c++) {
+      List<Integer> columns = listOfColors.get(c);
+      colors[c] = new int[columns.size()];
+      for (int k = 0; k < columns.size(); k++) {
+        colors[c][k] = columns.get(k);
+      }
+    }
+    return colors;
+  }
+
+  private static boolean intersects(BitSet rows, int[] columnRows) {
+    for (int i : columnRows) {
+      if (rows.get(i)) { return true; }
+    }
+    return false;
+  }
+}
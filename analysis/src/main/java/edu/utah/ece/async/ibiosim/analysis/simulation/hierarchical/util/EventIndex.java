@@ -0,0 +1,264 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Maps each state to the event triggers that read it. The value of a trigger can only change when one of the
+ * states it reads changes, so after a reaction fires only the triggers that read the species of the reaction,
+ * or a variable assigned by a rule downstream of those species, need to be checked.
+ *
+ * <p>
+ * Triggers that read time, random values, delays or the value of a reaction are checked every time. Like the
+ * rule scheduler, an array is a single state for all of its elements.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class EventIndex {
+
+  private final EventNode[] events;
+  private final int[] indices;
+  private final BitSet alwaysChecked;
+  private final IdentityHashMap<HierarchicalState, BitSet> readers;
+  private final IdentityHashMap<HierarchicalState, List<HierarchicalState>> ruleOutputs;
+  private final Map<ReactionNode, Map<Integer, BitSet>> reactionEvents;
+
+  /**
+   * Builds the event index of the given models.
+   *
+   * @param models
+   *          - the hierarchical models of the simulation.
+   * @param time
+   *          - the simulation time node.
+   */
+  public EventIndex(List<HierarchicalModel> models, VariableNode time) {
+    List<EventNode> listOfEvents = new ArrayList<>();
+    List<Integer> listOfIndices = new ArrayList<>();
+    ruleOutputs = new IdentityHashMap<>();
+    List<HierarchicalState> volatileStates = new ArrayList<>();
+    HierarchicalState timeState = time.getState().getChild(0);
+    volatileStates.add(timeState);
+
+    for (HierarchicalModel model : models) {
+      int index = model.getIndex();
+      if (model.getListOfEvents() != null) {
+        for (EventNode event : model.getListOfEvents()) {
+          listOfEvents.add(event);
+          listOfIndices.add(index);
+        }
+      }
+      if (model.getListOfAssignmentRules() != null) {
+        for (FunctionNode rule : model.getListOfAssignmentRules()) {
+          HierarchicalState written = getState(rule.getVariable(), index);
+          if (written == null) {
+            continue;
+          }
+          List<HierarchicalState> read = new ArrayList<>();
+          if (collectReads(rule.getMath(), index, read)) {
+            volatileStates.add(written);
+          }
+          for (HierarchicalState state : read) {
+            List<HierarchicalState> outputs = ruleOutputs.get(state);
+            if (outputs == null) {
+              outputs = new ArrayList<>();
+              ruleOutputs.put(state, outputs);
+            }
+            outputs.add(written);
+          }
+        }
+      }
+    }
+
+    int n = listOfEvents.size();
+    this.events = new EventNode[n];
+    this.indices = new int[n];
+    this.alwaysChecked = new BitSet(n);
+    this.readers = new IdentityHashMap<>();
+    this.reactionEvents = new HashMap<>();
+
+    for (int i = 0; i < n; i++) {
+      events[i] = listOfEvents.get(i);
+      indices[i] = listOfIndices.get(i);
+      List<HierarchicalState> read = new ArrayList<>();
+      if (collectReads(events[i], indices[i], read)) {
+        alwaysChecked.set(i);
+      }
+      for (HierarchicalState state : read) {
+        BitSet positions = readers.get(state);
+        if (positions == null) {
+          positions = new BitSet(n);
+          readers.put(state, positions);
+        }
+        positions.set(i);
+      }
+    }
+
+    // a trigger that reads time or a random value, directly or through assignment rules, is always checked
+    for (HierarchicalState state : getDownstreamStates(volatileStates)) {
+      BitSet positions = readers.get(state);
+      if (positions != null) {
+        alwaysChecked.or(positions);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of indexed events.
+   *
+   * @return the number of events.
+   */
+  public int getNumberOfEvents() {
+    return events.length;
+  }
+
+  /**
+   * Gets the event at the given position.
+   *
+   * @param position
+   *          - the position of the event in the index.
+   * @return the event node.
+   */
+  public EventNode getEvent(int position) {
+    return events[position];
+  }
+
+  /**
+   * Gets the model index of the event at the given position.
+   *
+   * @param position
+   *          - the position of the event in the index.
+   * @return the model index.
+   */
+  public int getIndex(int position) {
+    return indices[position];
+  }
+
+  /**
+   * Gets the events whose trigger can change when the given reaction fires. The positions are in the same
+   * order in which the events are checked when every trigger is evaluated.
+   *
+   * @param reaction
+   *          - the reaction that has fired.
+   * @param index
+   *          - the index of the model the reaction belongs to.
+   * @return the positions of the affected events.
+   */
+  public BitSet getAffectedEvents(ReactionNode reaction, int index) {
+    Map<Integer, BitSet> affectedByIndex = reactionEvents.get(reaction);
+    if (affectedByIndex == null) {
+      affectedByIndex = new HashMap<>();
+      reactionEvents.put(reaction, affectedByIndex);
+    }
+    BitSet affected = affectedByIndex.get(index);
+    if (affected == null) {
+      List<HierarchicalState> changed = new ArrayList<>();
+      addSpecies(changed, reaction.getListOfReactants(), index);
+      addSpecies(changed, reaction.getListOfProducts(), index);
+      affected = (BitSet) alwaysChecked.clone();
+      for (HierarchicalState state : getDownstreamStates(changed)) {
+        BitSet positions = readers.get(state);
+        if (positions != null) {
+          affected.or(positions);
+        }
+      }
+      affectedByIndex.put(index, affected);
+    }
+    return affected;
+  }
+
+  private List<HierarchicalState> getDownstreamStates(List<HierarchicalState> sources) {
+    IdentityHashMap<HierarchicalState, Boolean> visited = new IdentityHashMap<>();
+    LinkedList<HierarchicalState> unprocessed = new LinkedList<>(sources);
+    List<HierarchicalState> downstream = new ArrayList<>();
+    while (!unprocessed.isEmpty()) {
+      HierarchicalState state = unprocessed.pop();
+      if (visited.put(state, Boolean.TRUE) != null) {
+        continue;
+      }
+      downstream.add(state);
+      List<HierarchicalState> outputs = ruleOutputs.get(state);
+      if (outputs != null) {
+        unprocessed.addAll(outputs);
+      }
+    }
+    return downstream;
+  }
+
+  private static void addSpecies(List<HierarchicalState> changed, List<SpeciesReferenceNode> speciesReferences, int index) {
+    if (speciesReferences != null) {
+      for (SpeciesReferenceNode speciesReference : speciesReferences) {
+        HierarchicalState state = getState(speciesReference.getSpecies(), index);
+        if (state != null) {
+          changed.add(state);
+        }
+      }
+    }
+  }
+
+  private static HierarchicalState getState(HierarchicalNode node, int index) {
+    if (node == null || node.getState() == null) { return null; }
+    return node.getState().getChild(index);
+  }
+
+  /**
+   * Collects the states read by the given math.
+   *
+   * @return true if the math depends on a random value, a delay or a reaction, so its value can change
+   *         without any of the states it reads changing.
+   */
+  private static boolean collectReads(HierarchicalNode math, int index, List<HierarchicalState> read) {
+    boolean isVolatile = false;
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    if (math != null) {
+      unprocessed.push(math);
+    }
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.isReaction()) {
+        isVolatile = true;
+      } else if (node.isName()) {
+        HierarchicalState state = getState(node, index);
+        if (state != null) {
+          read.add(state);
+        }
+      } else if (node.getType() == Type.FUNCTION || node.getType() == Type.FUNCTION_DELAY || node.getType() == Type.FUNCTION_RATEOF) {
+        isVolatile = true;
+      }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+    return isVolatile;
+  }
+}
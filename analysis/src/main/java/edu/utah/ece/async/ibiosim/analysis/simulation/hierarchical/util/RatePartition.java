@@ -0,0 +1,234 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Partitions the models of a simulation into groups that can compute their propensities and species rates
+ * concurrently. Computing the propensities of a model writes the state of its reactions and adds to the rate
+ * of its reactants and products, so two models that write the same state, for example a species shared
+ * through a replacement, are placed in the same group. Within a group, the models are visited in the same
+ * order as in a serial evaluation, so the rates are accumulated in the same order and the results do not
+ * depend on the number of threads.
+ *
+ * <p>
+ * The partition falls back to serial evaluation when the models are too small to amortize the cost of the
+ * fork-join tasks, when there are arrays, since array elements are selected through shared dimension nodes,
+ * or when a rate law uses random values or delays.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RatePartition {
+
+  /**
+   * The minimum number of reactions for the propensities to be computed in parallel.
+   */
+  public static final int MIN_PARALLEL_REACTIONS = 2048;
+
+  private final List<HierarchicalModel> models;
+  private final HierarchicalModel[][] groups;
+  private final boolean parallel;
+
+  /**
+   * Partitions the given models.
+   *
+   * @param models
+   *          - the hierarchical models of the simulation.
+   */
+  public RatePartition(List<HierarchicalModel> models) {
+    this.models = models;
+
+    int n = models.size();
+    int[] parent = new int[n];
+    int numOfReactions = 0;
+    boolean supported = true;
+    IdentityHashMap<HierarchicalState, Integer> writers = new IdentityHashMap<>();
+
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+      HierarchicalModel model = models.get(i);
+      int index = model.getIndex();
+      if (model.getListOfArrays() != null && !model.getListOfArrays().isEmpty()) {
+        supported = false;
+      }
+      if (model.getListOfReactions() == null) {
+        continue;
+      }
+      for (ReactionNode reaction : model.getListOfReactions()) {
+        numOfReactions++;
+        if (!isDeterministic(reaction.getForwardRate()) || !isDeterministic(reaction.getReverseRate())) {
+          supported = false;
+        }
+        union(parent, writers, reaction.getState().getChild(index), i);
+        addSpecies(parent, writers, reaction.getListOfReactants(), index, i);
+        addSpecies(parent, writers, reaction.getListOfProducts(), index, i);
+      }
+    }
+
+    List<List<HierarchicalModel>> listOfGroups = new ArrayList<>();
+    int[] groupOfRoot = new int[n];
+    for (int i = 0; i < n; i++) {
+      groupOfRoot[i] = -1;
+    }
+    for (int i = 0; i < n; i++) {
+      int root = find(parent, i);
+      if (groupOfRoot[root] < 0) {
+        groupOfRoot[root] = listOfGroups.size();
+        listOfGroups.add(new ArrayList<HierarchicalModel>());
+      }
+      listOfGroups.get(groupOfRoot[root]).add(models.get(i));
+    }
+
+    this.groups = new HierarchicalModel[listOfGroups.size()][];
+    for (int i = 0; i < groups.length; i++) {
+      groups[i] = listOfGroups.get(i).toArray(new HierarchicalModel[0]);
+    }
+    this.parallel = supported && groups.length > 1 && numOfReactions >= MIN_PARALLEL_REACTIONS && ForkJoinPool.getCommonPoolParallelism() > 1;
+  }
+
+  /**
+   * Checks if the propensities are computed in parallel.
+   *
+   * @return true if the models are split across the fork-join pool.
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * Gets the number of groups of models that do not write any common state.
+   *
+   * @return the number of independent groups.
+   */
+  public int getNumOfGroups() {
+    return groups.length;
+  }
+
+  /**
+   * Gets the models of a group in the order of a serial evaluation.
+   *
+   * @param group
+   *          - the position of the group.
+   * @return the models of the group.
+   */
+  HierarchicalModel[] getGroup(int group) {
+    return groups[group];
+  }
+
+  /**
+   * Computes the propensities of every model and adds the reaction rates to the rates of the species. The
+   * rates must have been reset before this call.
+   */
+  public void computePropensities() {
+    if (!parallel) {
+      for (HierarchicalModel model : models) {
+        model.computePropensities(true);
+      }
+      return;
+    }
+    int grain = Math.max(1, groups.length / (4 * ForkJoinPool.getCommonPoolParallelism()));
+    ForkJoinPool.commonPool().invoke(new PropensityTask(0, groups.length, grain));
+  }
+
+  private class PropensityTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    PropensityTask(int from, int to, int grain) {
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        for (int i = from; i < to; i++) {
+          for (HierarchicalModel model : groups[i]) {
+            model.computePropensities(true);
+          }
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new PropensityTask(from, middle, grain), new PropensityTask(middle, to, grain));
+      }
+    }
+  }
+
+  private static void addSpecies(int[] parent, IdentityHashMap<HierarchicalState, Integer> writers, List<SpeciesReferenceNode> speciesReferences, int index, int model) {
+    if (speciesReferences != null) {
+      for (SpeciesReferenceNode speciesReference : speciesReferences) {
+        HierarchicalNode species = speciesReference.getSpecies();
+        if (species != null && species.getState() != null) {
+          union(parent, writers, species.getState().getChild(index), model);
+        }
+      }
+    }
+  }
+
+  private static void union(int[] parent, IdentityHashMap<HierarchicalState, Integer> writers, HierarchicalState state, int model) {
+    if (state == null) { return; }
+    Integer writer = writers.get(state);
+    if (writer == null) {
+      writers.put(state, model);
+    } else {
+      int a = find(parent, writer), b = find(parent, model);
+      if (a != b) {
+        parent[Math.max(a, b)] = Math.min(a, b);
+      }
+    }
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  private static boolean isDeterministic(HierarchicalNode math) {
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    if (math != null) {
+      unprocessed.push(math);
+    }
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.getType() == Type.FUNCTION || node.getType() == Type.FUNCTION_DELAY) { return false; }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Schedules the evaluation of assignment rules. The dependency graph between the assignment rules of all
+ * models is built once: a rule depends on another rule if its math reads the state the other rule writes.
+ * Variables are identified by their state, so a variable that replaces or is replaced by another variable in
+ * a different submodel is a single vertex, and an array is a single vertex for all of its elements.
+ *
+ * <p>
+ * When the graph is acyclic, the rules are sorted topologically and evaluated in a single pass, and after a
+ * reaction fires only the rules downstream of the species it changes are evaluated. When a cycle is found,
+ * for example between the elements of an array, the rules are evaluated until a fixed point is reached.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RuleScheduler {
+
+  private final FunctionNode[] rules;
+  private final int[] indices;
+  private final int[][] dependents;
+  private final IdentityHashMap<HierarchicalState, int[]> readers;
+  private final BitSet alwaysEvaluated;
+  private final boolean acyclic;
+  private final boolean dependsOnReactions;
+  private final Map<ReactionNode, Map<Integer, BitSet>> reactionRules;
+
+  /**
+   * Builds the dependency graph of the assignment rules of the given models.
+   *
+   * @param models
+   *          - the hierarchical models of the simulation.
+   * @param time
+   *          - the simulation time node.
+   */
+  public RuleScheduler(List<HierarchicalModel> models, VariableNode time) {
+    List<FunctionNode> listOfRules = new ArrayList<>();
+    List<Integer> listOfIndices = new ArrayList<>();
+    for (HierarchicalModel model : models) {
+      if (model.getListOfAssignmentRules() != null) {
+        for (FunctionNode rule : model.getListOfAssignmentRules()) {
+          listOfRules.add(rule);
+          listOfIndices.add(model.getIndex());
+        }
+      }
+    }
+
+    int n = listOfRules.size();
+    HierarchicalState timeState = time.getState().getChild(0);
+    IdentityHashMap<HierarchicalState, List<Integer>> writers = new IdentityHashMap<>();
+    List<List<HierarchicalState>> reads = new ArrayList<>(n);
+    BitSet volatileRules = new BitSet(n);
+    boolean readsReactions = false;
+
+    for (int i = 0; i < n; i++) {
+      FunctionNode rule = listOfRules.get(i);
+      int index = listOfIndices.get(i);
+      HierarchicalState written = getState(rule.getVariable(), index);
+      if (written != null) {
+        getList(writers, written).add(i);
+      }
+      List<HierarchicalState> read = new ArrayList<>();
+      if (collectReads(rule.getMath(), index, read)) {
+        volatileRules.set(i);
+      }
+      for (HierarchicalState state : read) {
+        if (state == timeState) {
+          volatileRules.set(i);
+        }
+      }
+      readsReactions |= hasReactionRead(rule.getMath());
+      reads.add(read);
+    }
+
+    // edges go from the rule that writes a state to the rules that read it
+    List<List<Integer>> edges = new ArrayList<>(n);
+    int[] inDegree = new int[n];
+    IdentityHashMap<HierarchicalState, List<Integer>> listOfReaders = new IdentityHashMap<>();
+    for (int i = 0; i < n; i++) {
+      edges.add(new ArrayList<Integer>());
+    }
+    for (int j = 0; j < n; j++) {
+      for (HierarchicalState state : reads.get(j)) {
+        getList(listOfReaders, state).add(j);
+        List<Integer> sources = writers.get(state);
+        if (sources != null) {
+          for (int i : sources) {
+            edges.get(i).add(j);
+            inDegree[j]++;
+          }
+        }
+      }
+    }
+
+    PriorityQueue<Integer> ready = new PriorityQueue<>();
+    for (int i = 0; i < n; i++) {
+      if (inDegree[i] == 0) {
+        ready.add(i);
+      }
+    }
+    int[] order = new int[n];
+    int[] position = new int[n];
+    int count = 0;
+    while (!ready.isEmpty()) {
+      int i = ready.poll();
+      position[i] = count;
+      order[count++] = i;
+      for (int j : edges.get(i)) {
+        if (--inDegree[j] == 0) {
+          ready.add(j);
+        }
+      }
+    }
+
+    this.acyclic = count == n;
+    this.dependsOnReactions = readsReactions;
+    this.reactionRules = new HashMap<>();
+    this.rules = new FunctionNode[n];
+    this.indices = new int[n];
+    this.dependents = new int[n][];
+    this.alwaysEvaluated = new BitSet(n);
+    this.readers = new IdentityHashMap<>();
+
+    if (acyclic) {
+      for (int k = 0; k < n; k++) {
+        int i = order[k];
+        rules[k] = listOfRules.get(i);
+        indices[k] = listOfIndices.get(i);
+        List<Integer> next = edges.get(i);
+        dependents[k] = new int[next.size()];
+        for (int e = 0; e < next.size(); e++) {
+          dependents[k][e] = position[next.get(e)];
+        }
+        if (volatileRules.get(i)) {
+          alwaysEvaluated.set(k);
+        }
+      }
+      for (Map.Entry<HierarchicalState, List<Integer>> entry : listOfReaders.entrySet()) {
+        List<Integer> list = entry.getValue();
+        int[] positions = new int[list.size()];
+        for (int e = 0; e < positions.length; e++) {
+          positions[e] = position[list.get(e)];
+        }
+        readers.put(entry.getKey(), positions);
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        rules[i] = listOfRules.get(i);
+        indices[i] = listOfIndices.get(i);
+      }
+    }
+  }
+
+  /**
+   * Checks if the assignment rules have no cyclic dependency.
+   *
+   * @return true if the rules can be evaluated in a single pass.
+   */
+  public boolean isAcyclic() {
+    return acyclic;
+  }
+
+  /**
+   * Checks if the values of the assignment rules are final after one evaluation. This is the case when the
+   * rules are acyclic and none of them reads the value of a reaction, which changes when the propensities
+   * are computed.
+   *
+   * @return true if the rules do not need to be evaluated again in the same time step.
+   */
+  public boolean isSinglePass() {
+    return acyclic && !dependsOnReactions;
+  }
+
+  /**
+   * Evaluates every assignment rule.
+   *
+   * @return true if any variable has changed.
+   */
+  public boolean computeAssignmentRules() {
+    if (!acyclic) {
+      boolean changed = true, anyChanged = false;
+      while (changed) {
+        changed = false;
+        for (int i = 0; i < rules.length; i++) {
+          changed |= evaluate(i);
+        }
+        anyChanged |= changed;
+      }
+      return anyChanged;
+    }
+    boolean changed = false;
+    for (int i = 0; i < rules.length; i++) {
+      changed |= evaluate(i);
+    }
+    return changed;
+  }
+
+  /**
+   * Evaluates the assignment rules that can be affected by firing the given reaction: the rules downstream
+   * of the species of the reaction, and the rules that depend on time or on random values.
+   *
+   * @param reaction
+   *          - the reaction that has fired.
+   * @param index
+   *          - the index of the model the reaction belongs to.
+   * @return true if any variable has changed.
+   */
+  public boolean computeAssignmentRules(ReactionNode reaction, int index) {
+    if (!acyclic || dependsOnReactions) { return computeAssignmentRules(); }
+    Map<Integer, BitSet> affectedByIndex = reactionRules.get(reaction);
+    if (affectedByIndex == null) {
+      affectedByIndex = new HashMap<>();
+      reactionRules.put(reaction, affectedByIndex);
+    }
+    BitSet affected = affectedByIndex.get(index);
+    if (affected == null) {
+      affected = getAffectedRules(reaction, index);
+      affectedByIndex.put(index, affected);
+    }
+    boolean changed = false;
+    for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+      changed |= evaluate(i);
+    }
+    return changed;
+  }
+
+  private boolean evaluate(int position) {
+    boolean changed = false;
+    FunctionNode rule = rules[position];
+    for (int element = 0; element < rule.getNumOfElements(); element++) {
+      rule.setArrayElement(element);
+      changed |= rule.updateVariable(indices[position]);
+    }
+    return changed;
+  }
+
+  private BitSet getAffectedRules(ReactionNode reaction, int index) {
+    BitSet affected = (BitSet) alwaysEvaluated.clone();
+    addReaders(affected, reaction.getListOfReactants(), index);
+    addReaders(affected, reaction.getListOfProducts(), index);
+    // rules are in topological order, so every dependent comes after the rule it depends on
+    for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+      for (int j : dependents[i]) {
+        affected.set(j);
+      }
+    }
+    return affected;
+  }
+
+  private void addReaders(BitSet affected, List<SpeciesReferenceNode> speciesReferences, int index) {
+    if (speciesReferences != null) {
+      for (SpeciesReferenceNode speciesReference : speciesReferences) {
+        int[] positions = readers.get(getState(speciesReference.getSpecies(), index));
+        if (positions != null) {
+          for (int position : positions) {
+            affected.set(position);
+          }
+        }
+      }
+    }
+  }
+
+  private static HierarchicalState getState(HierarchicalNode node, int index) {
+    if (node == null || node.getState() == null) { return null; }
+    return node.getState().getChild(index);
+  }
+
+  /**
+   * Collects the states read by the given math.
+   *
+   * @return true if the math depends on a random value or a delay, so it must always be evaluated.
+   */
+  private static boolean collectReads(HierarchicalNode math, int index, List<HierarchicalState> read) {
+    boolean isVolatile = false;
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    if (math != null) {
+      unprocessed.push(math);
+    }
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.isName()) {
+        HierarchicalState state = getState(node, index);
+        if (state != null) {
+          read.add(state);
+        }
+      } else if (node.getType() == Type.FUNCTION || node.getType() == Type.FUNCTION_DELAY || node.getType() == Type.FUNCTION_RATEOF) {
+        isVolatile = true;
+      }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+    return isVolatile;
+  }
+
+  private static boolean hasReactionRead(HierarchicalNode math) {
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    if (math != null) {
+      unprocessed.push(math);
+    }
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.isReaction() || node.getType() == Type.FUNCTION_RATEOF) { return true; }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+    return false;
+  }
+
+  private static <T> List<Integer> getList(IdentityHashMap<T, List<Integer>> map, T key) {
+    List<Integer> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<>();
+      map.put(key, list);
+    }
+    return list;
+  }
+}
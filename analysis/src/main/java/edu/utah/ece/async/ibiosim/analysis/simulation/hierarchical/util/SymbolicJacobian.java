@@ -0,0 +1,546 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Differentiator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
+
+/**
+ * The Jacobian of the right-hand side of the ODE simulator, built from the symbolic derivatives of the kinetic
+ * laws and rate rules. The row and column of an entry are positions in the state vector, and the matrix is
+ * stored in compressed sparse row form.
+ *
+ * <p>
+ * Every kinetic law, assignment rule and rate rule is differentiated once with respect to each state that it
+ * reads. The derivatives are not substituted into each other: the total derivative of an assignment rule or of
+ * a reaction rate is accumulated numerically from the partial derivatives of the expressions it reads, in
+ * dependency order, which keeps the derivatives of every expression in the scope of its own model. The sparsity
+ * pattern is fixed when the Jacobian is built, and the partial derivatives that only read constants are
+ * evaluated once, so only the entries that depend on the state are recomputed.
+ *
+ * <p>
+ * The Jacobian is not supported when the models have arrays, a rate reads random values, delays or rates of
+ * change, a stoichiometry or the compartment of a rate rule is not constant, or the rules are cyclic. Callers
+ * should then fall back to finite differences.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SymbolicJacobian {
+
+  private final int dimension;
+  private final HierarchicalState timeState;
+  private final IdentityHashMap<HierarchicalState, Expression> derived;
+  private final List<Expression> expressions;
+  private boolean supported;
+  private int[] rowPointers;
+  private int[] columnIndices;
+  private double[] values;
+  private boolean[] constantEntries;
+  private Contribution[] contributions;
+
+  /**
+   * Differentiates the rates of the given models and computes the sparsity pattern of the Jacobian.
+   *
+   * @param models
+   *          - the hierarchical models of the simulation.
+   * @param time
+   *          - the simulation time node.
+   * @param dimension
+   *          - the size of the state vector.
+   */
+  public SymbolicJacobian(List<HierarchicalModel> models, VariableNode time, int dimension) {
+    this.dimension = dimension;
+    this.timeState = time.getState().getChild(0);
+    this.derived = new IdentityHashMap<>();
+    this.expressions = new ArrayList<>();
+    try {
+      build(models);
+      supported = true;
+      updateConstants();
+    } catch (IllegalArgumentException e) {
+      supported = false;
+      rowPointers = new int[dimension + 1];
+      columnIndices = new int[0];
+      values = new double[0];
+    }
+  }
+
+  /**
+   * Checks if the models could be differentiated.
+   *
+   * @return true if the Jacobian is available.
+   */
+  public boolean isSupported() {
+    return supported;
+  }
+
+  /**
+   * Gets the number of structurally nonzero entries.
+   *
+   * @return the number of entries.
+   */
+  public int getNumOfNonZeros() {
+    return columnIndices.length;
+  }
+
+  /**
+   * Gets the number of entries whose value does not depend on the state.
+   *
+   * @return the number of constant entries.
+   */
+  public int getNumOfConstantEntries() {
+    int count = 0;
+    for (int k = 0; k < columnIndices.length; k++) {
+      if (constantEntries[k]) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Gets the row pointers. The entries of row i are at positions rowPointers[i] to rowPointers[i + 1] - 1.
+   *
+   * @return the row pointers, with one more element than the size of the state vector.
+   */
+  public int[] getRowPointers() {
+    return rowPointers;
+  }
+
+  /**
+   * Gets the column of every entry.
+   *
+   * @return the column indices.
+   */
+  public int[] getColumnIndices() {
+    return columnIndices;
+  }
+
+  /**
+   * Gets the value of every entry, as of the last call to {@link #compute()} or {@link #updateConstants()}.
+   *
+   * @return the values.
+   */
+  public double[] getValues() {
+    return values;
+  }
+
+  /**
+   * Checks if an entry does not depend on the state.
+   *
+   * @param k
+   *          - the position of the entry.
+   * @return true if the entry is constant.
+   */
+  public boolean isConstant(int k) {
+    return constantEntries[k];
+  }
+
+  /**
+   * Evaluates the entries that depend on the state. The assignment rules and reaction rates of the models
+   * must be up to date with the state, for example after the right-hand side has been computed.
+   */
+  public void compute() {
+    if (!supported) { return; }
+    for (Expression expression : expressions) {
+      if (!expression.constant) {
+        expression.evaluate(false);
+      }
+    }
+    for (int k = 0; k < values.length; k++) {
+      if (!constantEntries[k]) {
+        values[k] = 0;
+      }
+    }
+    for (Contribution contribution : contributions) {
+      contribution.add(values, constantEntries);
+    }
+  }
+
+  /**
+   * Evaluates every entry, including the ones that only read constants. This must be called when a constant
+   * of the models changes.
+   */
+  public void updateConstants() {
+    if (!supported) { return; }
+    for (Expression expression : expressions) {
+      expression.evaluate(true);
+    }
+    for (int k = 0; k < values.length; k++) {
+      values[k] = 0;
+    }
+    for (Contribution contribution : contributions) {
+      contribution.add(values, null);
+    }
+  }
+
+  private void build(List<HierarchicalModel> models) {
+    for (HierarchicalModel model : models) {
+      int index = model.getIndex();
+      if (model.getListOfArrays() != null && !model.getListOfArrays().isEmpty()) { throw new IllegalArgumentException("Arrays are not supported."); }
+      if (model.getListOfAssignmentRules() != null) {
+        for (FunctionNode rule : model.getListOfAssignmentRules()) {
+          derived.put(rule.getVariable().getState().getChild(index), new Expression(index, rule.getMath()));
+        }
+      }
+      if (model.getListOfReactions() != null) {
+        for (ReactionNode reaction : model.getListOfReactions()) {
+          derived.put(reaction.getState().getChild(index), new Expression(index, reaction.getForwardRate(), reaction.getReverseRate()));
+        }
+      }
+    }
+
+    Map<Integer, BitSet> rowColumns = new HashMap<>();
+    List<Contribution> listOfContributions = new ArrayList<>();
+    for (HierarchicalModel model : models) {
+      int index = model.getIndex();
+      if (model.getListOfReactions() != null) {
+        for (ReactionNode reaction : model.getListOfReactions()) {
+          if (reaction.isDeleted(index)) {
+            continue;
+          }
+          Expression expression = derived.get(reaction.getState().getChild(index));
+          build(expression);
+          addSpecies(reaction.getListOfReactants(), index, -1, expression, rowColumns, listOfContributions);
+          addSpecies(reaction.getListOfProducts(), index, 1, expression, rowColumns, listOfContributions);
+        }
+      }
+      if (model.getListOfRateRules() != null) {
+        for (FunctionNode rule : model.getListOfRateRules()) {
+          HierarchicalState state = rule.getVariable().getState().getChild(index);
+          if (rule.isDeleted(index) || !(state instanceof VectorState)) {
+            continue;
+          }
+          Expression expression = new Expression(index, rule.getMath());
+          build(expression);
+          HierarchicalNode compartment = null;
+          if (!state.hasOnlySubstance()) {
+            compartment = rule.getVariable().getCompartment();
+            checkConstant(compartment, index);
+          }
+          addContribution(((VectorState) state).getIndex(), expression, compartment, 1, index, rowColumns, listOfContributions);
+        }
+      }
+    }
+
+    rowPointers = new int[dimension + 1];
+    for (int row = 0; row < dimension; row++) {
+      BitSet columns = rowColumns.get(row);
+      rowPointers[row + 1] = rowPointers[row] + (columns == null ? 0 : columns.cardinality());
+    }
+    columnIndices = new int[rowPointers[dimension]];
+    values = new double[columnIndices.length];
+    for (int row = 0; row < dimension; row++) {
+      BitSet columns = rowColumns.get(row);
+      if (columns != null) {
+        int k = rowPointers[row];
+        for (int column = columns.nextSetBit(0); column >= 0; column = columns.nextSetBit(column + 1)) {
+          columnIndices[k++] = column;
+        }
+      }
+    }
+
+    constantEntries = new boolean[columnIndices.length];
+    for (int k = 0; k < constantEntries.length; k++) {
+      constantEntries[k] = true;
+    }
+    contributions = listOfContributions.toArray(new Contribution[listOfContributions.size()]);
+    for (Contribution contribution : contributions) {
+      int[] pattern = contribution.expression.pattern;
+      contribution.offsets = new int[pattern.length];
+      for (int i = 0; i < pattern.length; i++) {
+        int k = find(contribution.row, pattern[i]);
+        contribution.offsets[i] = k;
+        constantEntries[k] &= contribution.expression.constant;
+      }
+    }
+  }
+
+  private void addSpecies(List<SpeciesReferenceNode> specRefs, int index, int sign, Expression expression, Map<Integer, BitSet> rowColumns, List<Contribution> listOfContributions) {
+    if (specRefs == null) { return; }
+    for (SpeciesReferenceNode specRef : specRefs) {
+      HierarchicalState speciesState = specRef.getSpeciesState(index);
+      if (speciesState.isBoundaryCondition() || !(speciesState instanceof VectorState)) {
+        continue;
+      }
+      checkConstant(specRef, index);
+      addContribution(((VectorState) speciesState).getIndex(), expression, specRef, sign, index, rowColumns, listOfContributions);
+    }
+  }
+
+  private static void addContribution(int row, Expression expression, HierarchicalNode coefficient, int sign, int index, Map<Integer, BitSet> rowColumns, List<Contribution> listOfContributions) {
+    BitSet columns = rowColumns.get(row);
+    if (columns == null) {
+      columns = new BitSet();
+      rowColumns.put(row, columns);
+    }
+    for (int column : expression.pattern) {
+      columns.set(column);
+    }
+    listOfContributions.add(new Contribution(row, expression, coefficient, sign, index));
+  }
+
+  private void checkConstant(HierarchicalNode node, int index) {
+    if (node == null || node.getState() == null) { return; }
+    HierarchicalState state = node.getState().getChild(index);
+    if (state instanceof VectorState || derived.containsKey(state)) { throw new IllegalArgumentException(node.getName() + " is not constant."); }
+  }
+
+  private int find(int row, int column) {
+    for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+      if (columnIndices[k] == column) { return k; }
+    }
+    throw new IllegalStateException("Column " + column + " is not in the pattern of row " + row + ".");
+  }
+
+  /**
+   * Differentiates an expression with respect to every state it reads, after the expressions it depends on.
+   */
+  private void build(Expression expression) {
+    if (expression.built) { return; }
+    if (expression.building) { throw new IllegalArgumentException("The rules are cyclic."); }
+    expression.building = true;
+    int index = expression.index;
+
+    List<HierarchicalNode> names = new ArrayList<>();
+    IdentityHashMap<HierarchicalState, Boolean> visited = new IdentityHashMap<>();
+    for (HierarchicalNode math : expression.listOfMath) {
+      collectNames(math, index, names, visited);
+    }
+
+    List<Partial> partials = new ArrayList<>();
+    for (HierarchicalNode name : names) {
+      HierarchicalState state = name.getState().getChild(index);
+      if (state == timeState) {
+        continue;
+      }
+      HierarchicalNode derivative = Differentiator.number(0);
+      for (HierarchicalNode math : expression.listOfMath) {
+        derivative = Differentiator.sum(derivative, Differentiator.differentiate(math, state, index));
+      }
+      if (Differentiator.isNumber(derivative, 0)) {
+        continue;
+      }
+      HierarchicalNode compartment = name.getCompartment();
+      if (name.isSpecies() && !state.hasOnlySubstance() && !derived.containsKey(state) && compartment != null) {
+        // the name reads the concentration, which is the amount in the state divided by the compartment size
+        addPartial(partials, state, Differentiator.quotient(derivative, compartment), index);
+        addPartial(partials, compartment.getState().getChild(index), Differentiator.negate(Differentiator.quotient(Differentiator.product(derivative, name), compartment)), index);
+      } else {
+        addPartial(partials, state, derivative, index);
+      }
+    }
+
+    BitSet columns = new BitSet();
+    boolean constant = true;
+    for (Partial partial : partials) {
+      if (partial.source == null) {
+        columns.set(partial.column);
+      } else {
+        for (int column : partial.source.pattern) {
+          columns.set(column);
+        }
+      }
+      partial.constant = !dependsOnState(partial.math, index);
+      constant &= partial.constant && (partial.source == null || partial.source.constant);
+    }
+    int[] pattern = new int[columns.cardinality()];
+    int[] offsetOfColumn = new int[columns.length()];
+    int k = 0;
+    for (int column = columns.nextSetBit(0); column >= 0; column = columns.nextSetBit(column + 1)) {
+      offsetOfColumn[column] = k;
+      pattern[k++] = column;
+    }
+    for (Partial partial : partials) {
+      if (partial.source == null) {
+        partial.offsets = new int[] { offsetOfColumn[partial.column] };
+      } else {
+        int[] sourcePattern = partial.source.pattern;
+        partial.offsets = new int[sourcePattern.length];
+        for (int i = 0; i < sourcePattern.length; i++) {
+          partial.offsets[i] = offsetOfColumn[sourcePattern[i]];
+        }
+      }
+    }
+
+    expression.partials = partials.toArray(new Partial[partials.size()]);
+    expression.pattern = pattern;
+    expression.values = new double[pattern.length];
+    expression.constant = constant;
+    expression.building = false;
+    expression.built = true;
+    expressions.add(expression);
+  }
+
+  private void addPartial(List<Partial> partials, HierarchicalState state, HierarchicalNode math, int index) {
+    Expression source = derived.get(state);
+    if (source != null) {
+      build(source);
+      if (source.pattern.length > 0) {
+        partials.add(new Partial(math, index, source, -1));
+      }
+    } else if (state instanceof VectorState) {
+      partials.add(new Partial(math, index, null, ((VectorState) state).getIndex()));
+    }
+  }
+
+  /**
+   * Checks if math reads a state that changes with the state vector.
+   */
+  private boolean dependsOnState(HierarchicalNode math, int index) {
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    unprocessed.push(math);
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.isName() && node.getState() != null) {
+        HierarchicalState state = node.getState().getChild(index);
+        if (state instanceof VectorState || state == timeState || derived.containsKey(state)) { return true; }
+      }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+    return false;
+  }
+
+  private static void collectNames(HierarchicalNode math, int index, List<HierarchicalNode> names, IdentityHashMap<HierarchicalState, Boolean> visited) {
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    if (math != null) {
+      unprocessed.push(math);
+    }
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode node = unprocessed.pop();
+      if (node.isName() && node.getState() != null) {
+        if (visited.put(node.getState().getChild(index), true) == null) {
+          names.add(node);
+        }
+      }
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        unprocessed.push(node.getChild(i));
+      }
+    }
+  }
+
+  private static class Expression {
+
+    private final int index;
+    private final List<HierarchicalNode> listOfMath;
+    private Partial[] partials;
+    private int[] pattern;
+    private double[] values;
+    private boolean constant;
+    private boolean building;
+    private boolean built;
+
+    Expression(int index, HierarchicalNode... maths) {
+      this.index = index;
+      this.listOfMath = new ArrayList<>();
+      for (HierarchicalNode math : maths) {
+        if (math != null) {
+          listOfMath.add(math);
+        }
+      }
+    }
+
+    /**
+     * Accumulates the total derivative of the expression from its partial derivatives and the total
+     * derivatives of the expressions it reads, which have already been evaluated.
+     */
+    void evaluate(boolean all) {
+      for (int k = 0; k < values.length; k++) {
+        values[k] = 0;
+      }
+      for (Partial partial : partials) {
+        if (all || !partial.constant) {
+          partial.value = Evaluator.evaluateExpressionRecursive(partial.math, index);
+        }
+        if (partial.source == null) {
+          values[partial.offsets[0]] += partial.value;
+        } else {
+          double[] sourceValues = partial.source.values;
+          for (int i = 0; i < sourceValues.length; i++) {
+            values[partial.offsets[i]] += partial.value * sourceValues[i];
+          }
+        }
+      }
+    }
+  }
+
+  private static class Partial {
+
+    private final HierarchicalNode math;
+    private final int index;
+    private final Expression source;
+    private final int column;
+    private int[] offsets;
+    private boolean constant;
+    private double value;
+
+    Partial(HierarchicalNode math, int index, Expression source, int column) {
+      this.math = math;
+      this.index = index;
+      this.source = source;
+      this.column = column;
+    }
+  }
+
+  private static class Contribution {
+
+    private final int row;
+    private final Expression expression;
+    private final HierarchicalNode coefficient;
+    private final int sign;
+    private final int index;
+    private int[] offsets;
+
+    Contribution(int row, Expression expression, HierarchicalNode coefficient, int sign, int index) {
+      this.row = row;
+      this.expression = expression;
+      this.coefficient = coefficient;
+      this.sign = sign;
+      this.index = index;
+    }
+
+    /**
+     * Adds the derivative of the expression, scaled by the stoichiometry or the compartment size, to the
+     * entries of the row that are not skipped.
+     */
+    void add(double[] values, boolean[] skipped) {
+      double scale = coefficient == null ? sign : sign * coefficient.getValue(index);
+      double[] expressionValues = expression.values;
+      for (int i = 0; i < offsets.length; i++) {
+        if (skipped == null || !skipped[offsets[i]]) {
+          values[offsets[i]] += scale * expressionValues[i];
+        }
+      }
+    }
+  }
+}
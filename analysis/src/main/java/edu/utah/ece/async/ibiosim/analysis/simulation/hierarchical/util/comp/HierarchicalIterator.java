@@ -14,9 +14,7 @@
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp;
 
 import java.util.Iterator;
-import java.util.List;
 
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ArrayDimensionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 
 /**
@@ -28,7 +26,7 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Hierarch
 public class HierarchicalIterator implements Iterator<HierarchicalNode> {
 
   private final HierarchicalNode node;
-  private int size;
+  private final int size;
   private int iterator;
 
   /**
@@ -37,14 +35,8 @@ public class HierarchicalIterator implements Iterator<HierarchicalNode> {
    */
   public HierarchicalIterator(HierarchicalNode node) {
     this.node = node;
-    this.size = 1;
+    this.size = node.getNumOfElements();
     this.iterator = 0;
-    if (node.getListOfDimensions() != null) {
-      for (ArrayDimensionNode dimension : node.getListOfDimensions()) {
-        size = dimension.getSize() * size;
-      }
-    }
-
   }
 
   @Override
@@ -54,35 +46,7 @@ public class HierarchicalIterator implements Iterator<HierarchicalNode> {
 
   @Override
   public HierarchicalNode next() {
-
-    if (node.getListOfDimensions() != null) {
-      List<ArrayDimensionNode> listOfDimensions = node.getListOfDimensions();
-      if (iterator == 0) {
-        for (int i = 0; i < listOfDimensions.size(); i++) {
-          ArrayDimensionNode dimension = listOfDimensions.get(i);
-          dimension.getState().setStateValue(0);
-        }
-      } else {
-        for (int i = 0; i < listOfDimensions.size(); i++) {
-          ArrayDimensionNode dimension = listOfDimensions.get(i);
-          if (!incrementValue(dimension)) {
-            break;
-          }
-        }
-      }
-
-    }
-    iterator++;
+    node.setArrayElement(iterator++);
     return node;
   }
-
-  private boolean incrementValue(ArrayDimensionNode dimension) {
-    double value = dimension.getState().getValue() + 1;
-    if (value >= dimension.getSize()) {
-      dimension.getState().setStateValue(0);
-      return true;
-    }
-    dimension.getState().setStateValue(value);
-    return false;
-  }
 }
@@ -18,7 +18,6 @@ import java.util.List;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ArrayDimensionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 
 /**
  * Container for events that have been triggered.
@@ -30,20 +29,38 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Hierarch
 public class TriggeredEvent implements Comparable<TriggeredEvent> {
   private double priority;
   private double[] assignmentValues;
-  private final int index;
-  private final double fireTime;
-  private final EventNode parent;
+  private int index;
+  private double fireTime;
+  private EventNode parent;
   private boolean hasFlipped;
-  private final double[] eventDimensions;
+  private double[] eventDimensions;
 
   public TriggeredEvent(int index, double fireTime, EventNode parent) {
+    reset(index, fireTime, parent);
+  }
+
+  /**
+   * Reinitializes the triggered event so that it can be reused for a new firing.
+   *
+   * @param index
+   *          - the model index.
+   * @param fireTime
+   *          - the time the event should be fired.
+   * @param parent
+   *          - the event node that got triggered.
+   */
+  public void reset(int index, double fireTime, EventNode parent) {
     this.parent = parent;
     this.index = index;
     this.hasFlipped = false;
     this.fireTime = fireTime;
+    this.priority = 0;
+    this.assignmentValues = null;
     if (parent.isArray()) {
       List<ArrayDimensionNode> dimensions = parent.getListOfDimensions();
-      eventDimensions = new double[dimensions.size()];
+      if (eventDimensions == null || eventDimensions.length != dimensions.size()) {
+        eventDimensions = new double[dimensions.size()];
+      }
       for (int i = 0; i < dimensions.size(); i++) {
         eventDimensions[i] = dimensions.get(i).getValue(index);
       }
@@ -52,6 +69,14 @@ public class TriggeredEvent implements Comparable<TriggeredEvent> {
     }
   }
 
+  /**
+   * Releases the references held by the triggered event.
+   */
+  public void clear() {
+    this.parent = null;
+    this.assignmentValues = null;
+  }
+
   /**
    * Gets the index of the model that had the event triggered.
    *
@@ -146,7 +171,8 @@ public class TriggeredEvent implements Comparable<TriggeredEvent> {
         List<FunctionNode> eventAssignments = parent.getEventAssignments();
         int assignmentIndex = 0;
         for (FunctionNode eventAssigment : eventAssignments) {
-          for (HierarchicalNode subNode : eventAssigment) {
+          for (int element = 0; element < eventAssigment.getNumOfElements(); element++) {
+            eventAssigment.setArrayElement(element);
             eventAssigment.updateVariable(index, assignmentValues[assignmentIndex++]);
           }
         }
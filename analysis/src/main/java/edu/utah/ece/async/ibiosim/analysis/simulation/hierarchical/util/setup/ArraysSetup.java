@@ -91,7 +91,9 @@ class ArraysSetup {
         int value = (int) variable.getState().getChild(index).getValue();
         dimension.setSize(value);
       }
+      node.initializeArrayElements();
       initializeArraysState(model, node, type, wrapper);
+      node.initializeElementStates(index);
     }
   }
 
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
+import org.sbml.jsbml.ext.comp.Submodel;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.HierarchicalUtilities;
+
+/**
+ * A compiled model holds the parsed SBML of a simulation together with the resolved hierarchy of
+ * submodels. It is produced once and can then be shared by any number of simulators, which
+ * avoids reading and resolving the SBML files again for every run of a parameter sweep,
+ * sensitivity analysis or parameter estimation.
+ *
+ * <p>
+ * A compiled model is never modified after it is created. Each simulator built from it sets up
+ * its own math trees and states, so simulators created from the same compiled model can run
+ * concurrently.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class CompiledModel {
+
+  private final AnalysisProperties properties;
+  private final List<Instance> instances;
+  private final Object lock;
+
+  /**
+   * An instance of a model in the hierarchy.
+   */
+  static final class Instance {
+    private final Model model;
+    private final String id;
+    private final int index;
+    private final int parent;
+
+    private Instance(Model model, String id, int index, int parent) {
+      this.model = model;
+      this.id = id;
+      this.index = index;
+      this.parent = parent;
+    }
+
+    Model getModel() {
+      return model;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    int getIndex() {
+      return index;
+    }
+
+    /**
+     * Gets the position of the parent instance in the list of instances.
+     *
+     * @return the parent position, or -1 for the top model.
+     */
+    int getParent() {
+      return parent;
+    }
+  }
+
+  private CompiledModel(AnalysisProperties properties, List<Instance> instances, Object lock) {
+    this.properties = properties;
+    this.instances = Collections.unmodifiableList(instances);
+    this.lock = lock;
+  }
+
+  /**
+   * Parses the model file of the given analysis properties and resolves its submodels.
+   *
+   * @param properties
+   *          - the analysis properties.
+   * @return the compiled model.
+   * @throws XMLStreamException
+   *           - if there is any issue with the SBML.
+   * @throws IOException
+   *           - if there is any issue with the input file.
+   */
+  public static CompiledModel compile(AnalysisProperties properties) throws XMLStreamException, IOException {
+    Map<String, SBMLDocument> sourceMap = new HashMap<>();
+    List<Instance> instances = new ArrayList<>();
+    SBMLDocument document = SBMLReader.read(new File(properties.getFilename()));
+
+    LinkedList<Instance> unproc = new LinkedList<>();
+    unproc.push(new Instance(document.getModel(), "topmodel", 0, -1));
+    int count = 0;
+
+    while (!unproc.isEmpty()) {
+      Instance instance = unproc.pop();
+      int position = instances.size();
+      instances.add(instance);
+
+      CompModelPlugin compModel = (CompModelPlugin) instance.model.getPlugin(CompConstants.namespaceURI);
+      if (compModel == null || instance.model.getSBMLDocument() == null) {
+        continue;
+      }
+      for (Submodel submodel : compModel.getListOfSubmodels()) {
+        Model model = null;
+        CompSBMLDocumentPlugin compDoc = (CompSBMLDocumentPlugin) instance.model.getSBMLDocument().getPlugin(CompConstants.namespaceURI);
+        if (compDoc != null) {
+          if (compDoc.getListOfExternalModelDefinitions() != null && compDoc.getListOfExternalModelDefinitions().get(submodel.getModelRef()) != null) {
+            ExternalModelDefinition ext = compDoc.getListOfExternalModelDefinitions().get(submodel.getModelRef());
+
+            String source = ext.getSource();
+            SBMLDocument extDoc = getDocument(source, properties, sourceMap);
+            model = extDoc.getModel();
+            compDoc = (CompSBMLDocumentPlugin) extDoc.getPlugin(CompConstants.namespaceURI);
+
+            while (ext.isSetModelRef()) {
+              if (compDoc.getExternalModelDefinition(ext.getModelRef()) != null) {
+                ext = compDoc.getListOfExternalModelDefinitions().get(ext.getModelRef());
+                source = ext.getSource().replace("file:", "");
+                extDoc = getDocument(source, properties, sourceMap);
+                model = extDoc.getModel();
+                compDoc = (CompSBMLDocumentPlugin) extDoc.getPlugin(CompConstants.namespaceURI);
+              } else if (compDoc.getModelDefinition(ext.getModelRef()) != null) {
+                model = compDoc.getModelDefinition(ext.getModelRef());
+                break;
+              } else {
+                break;
+              }
+            }
+          } else if (compDoc.getListOfModelDefinitions() != null && compDoc.getListOfModelDefinitions().get(submodel.getModelRef()) != null) {
+            model = compDoc.getModelDefinition(submodel.getModelRef());
+          }
+
+          if (model != null) {
+            unproc.push(new Instance(model, submodel.getId(), ++count, position));
+          }
+        }
+      }
+    }
+    return new CompiledModel(properties, instances, new Object());
+  }
+
+  /**
+   * Creates a compiled model that shares the parsed SBML of this one but is simulated with the given
+   * properties. Callers that need to change simulation options, such as the time limit, while other
+   * simulators run on the same model use a copy of the properties through this method.
+   *
+   * @param properties
+   *          - the analysis properties used by simulators built from the result.
+   * @return the compiled model with the given properties.
+   */
+  public CompiledModel withProperties(AnalysisProperties properties) {
+    return new CompiledModel(properties, instances, lock);
+  }
+
+  /**
+   * Gets the analysis properties the model was compiled from.
+   *
+   * @return the analysis properties.
+   */
+  public AnalysisProperties getProperties() {
+    return properties;
+  }
+
+  /**
+   * Gets the top-level SBML model.
+   *
+   * @return the top-level model.
+   */
+  public Model getTopModel() {
+    return instances.get(0).model;
+  }
+
+  /**
+   * Gets the number of model instances in the hierarchy, including the top-level model.
+   *
+   * @return the number of model instances.
+   */
+  public int getNumberOfInstances() {
+    return instances.size();
+  }
+
+  /**
+   * Gets the model instances in the order they are set up.
+   *
+   * @return the model instances.
+   */
+  List<Instance> getInstances() {
+    return instances;
+  }
+
+  /**
+   * Gets the lock guarding reads of the shared SBML, common to all models returned by
+   * {@link #withProperties(AnalysisProperties)}.
+   *
+   * @return the lock object.
+   */
+  Object getLock() {
+    return lock;
+  }
+
+  private static SBMLDocument getDocument(String source, AnalysisProperties properties, Map<String, SBMLDocument> sourceMap) throws XMLStreamException, IOException {
+    SBMLDocument extDoc = null;
+    String extDef = String.join(HierarchicalUtilities.separator, properties.getRoot(), source);
+    if (sourceMap.containsKey(source)) {
+      extDoc = sourceMap.get(source);
+    } else {
+      extDoc = SBMLReader.read(new File(extDef));
+      sourceMap.put(source, extDoc);
+    }
+    return extDoc;
+  }
+}
@@ -489,6 +489,8 @@ class CoreSetup {
     HierarchicalModel hierarchicalModel = container.getHierarchicalModel();
     int index = hierarchicalModel.getIndex();
     boolean split = hierarchicalModel.getModelType() == ModelType.HSSA;
+    // a continuous model keeps the net rate as the sum of the forward rate and the negated reverse rate
+    boolean signedSplit = !split && sim.isSplitReversibleReactions();
     for (Reaction reaction : model.getListOfReactions()) {
       String reactionId = reaction.getId();
       ReactionNode node = hierarchicalModel.createReaction(reactionId);
@@ -520,7 +522,7 @@ class CoreSetup {
         }
         if (kineticLaw.isSetMath()) {
           ASTNode reactionFormula = kineticLaw.getMath();
-          if (reaction.isReversible() && split) {
+          if (reaction.isReversible() && (split || signedSplit)) {
             ASTNode[] splitMath = splitMath(reactionFormula);
             if (splitMath == null) {
               HierarchicalNode math = mathInterpreter.parseASTNode(reactionFormula, node.getLocalParameters(), hierarchicalModel.getVariableToNodeMap(), node.getDimensionMapping(), hierarchicalModel.getIndex());
@@ -528,7 +530,8 @@ class CoreSetup {
             } else {
               HierarchicalNode forwardRate = mathInterpreter.parseASTNode(splitMath[0], node.getLocalParameters(), hierarchicalModel.getVariableToNodeMap(), node.getDimensionMapping(), hierarchicalModel.getIndex());
               node.setForwardRate(forwardRate);
-              HierarchicalNode reverseRate = mathInterpreter.parseASTNode(splitMath[1], node.getLocalParameters(), hierarchicalModel.getVariableToNodeMap(), node.getDimensionMapping(), hierarchicalModel.getIndex());
+              ASTNode reverseMath = signedSplit ? ASTNode.uMinus(splitMath[1]) : splitMath[1];
+              HierarchicalNode reverseRate = mathInterpreter.parseASTNode(reverseMath, node.getLocalParameters(), hierarchicalModel.getVariableToNodeMap(), node.getDimensionMapping(), hierarchicalModel.getIndex());
               node.setReverseRate(reverseRate);
             }
           } else {
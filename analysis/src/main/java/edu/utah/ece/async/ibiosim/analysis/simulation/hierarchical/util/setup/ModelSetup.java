@@ -14,25 +14,13 @@
 
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLStreamException;
 
-import org.sbml.jsbml.Model;
-import org.sbml.jsbml.SBMLDocument;
-import org.sbml.jsbml.SBMLReader;
-import org.sbml.jsbml.ext.comp.CompConstants;
-import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
-import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
-import org.sbml.jsbml.ext.comp.Submodel;
-
-import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
@@ -41,7 +29,6 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Reaction
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalMixedSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.HierarchicalUtilities;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.interpreter.MathInterpreter;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
@@ -92,102 +79,53 @@ public class ModelSetup {
    */
   public static void setupModels(HierarchicalSimulation sim, ModelType type, VectorWrapper wrapper) throws XMLStreamException, IOException, BioSimException {
 
-    Map<String, SBMLDocument> sourceMap = new HashMap<>();
-    List<ModelContainer> listOfContainers = new ArrayList<>();
-    AnalysisProperties properties = sim.getProperties();
-    SBMLDocument document = SBMLReader.read(new File(properties.getFilename()));
-    Model model = document.getModel();
-    HierarchicalModel hierarchicalModel = new HierarchicalModel("topmodel", 0);
-    sim.setTopmodel(hierarchicalModel);
-
-    LinkedList<ModelContainer> unproc = new LinkedList<>();
-
-    unproc.push(new ModelContainer(model, hierarchicalModel, null, type));
-    int count = 0;
-
-    while (!unproc.isEmpty()) {
-      ModelContainer container = unproc.pop();
-      listOfContainers.add(container);
-      sim.addHierarchicalModel(container.getHierarchicalModel());
-
-      if (container.getCompModel() != null) {
-        for (Submodel submodel : container.getCompModel().getListOfSubmodels()) {
-          model = null;
-          CompSBMLDocumentPlugin compDoc = container.getCompDoc();
-          if (compDoc != null) {
-            if (compDoc.getListOfExternalModelDefinitions() != null && compDoc.getListOfExternalModelDefinitions().get(submodel.getModelRef()) != null) {
-              ExternalModelDefinition ext = compDoc.getListOfExternalModelDefinitions().get(submodel.getModelRef());
-
-              String source = ext.getSource();
-              SBMLDocument extDoc = getDocument(source, properties, sourceMap);
-              model = extDoc.getModel();
-              compDoc = (CompSBMLDocumentPlugin) extDoc.getPlugin(CompConstants.namespaceURI);
-
-              while (ext.isSetModelRef()) {
-                if (compDoc.getExternalModelDefinition(ext.getModelRef()) != null) {
-                  ext = compDoc.getListOfExternalModelDefinitions().get(ext.getModelRef());
-                  source = ext.getSource().replace("file:", "");
-                  extDoc = getDocument(source, properties, sourceMap);
-                  model = extDoc.getModel();
-                  compDoc = (CompSBMLDocumentPlugin) extDoc.getPlugin(CompConstants.namespaceURI);
-                } else if (compDoc.getModelDefinition(ext.getModelRef()) != null) {
-                  model = compDoc.getModelDefinition(ext.getModelRef());
-                  break;
-                } else {
-                  break;
-                }
-              }
-            } else if (compDoc.getListOfModelDefinitions() != null && compDoc.getListOfModelDefinitions().get(submodel.getModelRef()) != null) {
-              model = compDoc.getModelDefinition(submodel.getModelRef());
-            }
-
-            if (model != null) {
-              hierarchicalModel = new HierarchicalModel(submodel.getId(), ++count);
-              unproc.push(new ModelContainer(model, hierarchicalModel, container, type));
-            }
-          }
+    CompiledModel compiledModel = sim.getCompiledModel();
+    if (compiledModel == null) {
+      compiledModel = CompiledModel.compile(sim.getProperties());
+    }
+    // The compiled model is shared between simulators; its SBML is only read while holding its lock.
+    synchronized (compiledModel.getLock()) {
+      List<ModelContainer> listOfContainers = new ArrayList<>();
+      for (CompiledModel.Instance instance : compiledModel.getInstances()) {
+        HierarchicalModel hierarchicalModel = new HierarchicalModel(instance.getId(), instance.getIndex());
+        ModelContainer parent = instance.getParent() < 0 ? null : listOfContainers.get(instance.getParent());
+        if (parent == null) {
+          sim.setTopmodel(hierarchicalModel);
         }
+        listOfContainers.add(new ModelContainer(instance.getModel(), hierarchicalModel, parent, type));
+        sim.addHierarchicalModel(hierarchicalModel);
       }
-    }
-    MathInterpreter mathInterpreter = new MathInterpreter();
-    CoreSetup.initializeCore(sim, listOfContainers, sim.getCurrentTime(), wrapper, mathInterpreter);
-    ReplacementSetup.initializeComp(listOfContainers);
-    ArraysSetup.initializeArrays(listOfContainers, sim.getAtomicType(), wrapper);
-    setupOutputVariables(sim, listOfContainers);
+      MathInterpreter mathInterpreter = new MathInterpreter();
+      CoreSetup.initializeCore(sim, listOfContainers, sim.getCurrentTime(), wrapper, mathInterpreter);
+      ReplacementSetup.initializeComp(listOfContainers);
+      ArraysSetup.initializeArrays(listOfContainers, sim.getAtomicType(), wrapper);
+      setupOutputVariables(sim, listOfContainers);
+      setupInitialValueOverrides(sim);
 
-    sim.computeRateOfChange(mathInterpreter.hasRateOf());
+      sim.computeRateOfChange(mathInterpreter.hasRateOf());
 
-    if (sim instanceof HierarchicalMixedSimulator) {
-      initializeHybridSimulation((HierarchicalMixedSimulator) sim, listOfContainers);
+      if (sim instanceof HierarchicalMixedSimulator) {
+        initializeHybridSimulation((HierarchicalMixedSimulator) sim, listOfContainers);
+      }
     }
   }
 
-  private static void initializeHybridSimulation(HierarchicalMixedSimulator sim, List<ModelContainer> listOfContainers) throws IOException, XMLStreamException, BioSimException {
-
-    List<HierarchicalModel> listOfODEModels = new ArrayList<>();
+  private static void initializeHybridSimulation(HierarchicalMixedSimulator sim, List<ModelContainer> listOfContainers) {
     for (ModelContainer container : listOfContainers) {
       HierarchicalModel state = container.getHierarchicalModel();
 
       if (state.getModelType() == ModelType.HFBA) {
         sim.createFBASim(state, container.getModel());
-      } else if (state.getModelType() == ModelType.HODE) {
-        listOfODEModels.add(state);
       }
     }
-
-    sim.createODESim(listOfContainers.get(0).getHierarchicalModel(), listOfODEModels);
   }
 
-  private static SBMLDocument getDocument(String source, AnalysisProperties properties, Map<String, SBMLDocument> sourceMap) throws XMLStreamException, IOException {
-    SBMLDocument extDoc = null;
-    String extDef = String.join(HierarchicalUtilities.separator, properties.getRoot(), source);
-    if (sourceMap.containsKey(source)) {
-      extDoc = sourceMap.get(source);
-    } else {
-      extDoc = SBMLReader.read(new File(extDef));
-      sourceMap.put(source, extDoc);
+  private static void setupInitialValueOverrides(HierarchicalSimulation sim) throws BioSimException {
+    for (Map.Entry<String, Double> entry : sim.getInitialValueOverrides().entrySet()) {
+      HierarchicalNode node = sim.getTopmodel().getNode(entry.getKey());
+      if (node == null) { throw new BioSimException("Cannot override the initial value of " + entry.getKey() + " because it is not a top-level variable.", "Error in model setup"); }
+      node.getState().getChild(0).setInitialValue(entry.getValue());
     }
-    return extDoc;
   }
 
   private static void setupOutputVariables(HierarchicalSimulation sim, List<ModelContainer> listOfContainers) {
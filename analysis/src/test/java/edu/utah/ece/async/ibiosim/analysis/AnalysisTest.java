@@ -0,0 +1,104 @@
+package edu.utah.ece.async.ibiosim.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnalysisTest {
+  private static final String ROOT = "/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/";
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("analysis").toFile();
+  }
+
+  @Test
+  public void test_forward_sensitivity() throws Exception {
+    Analysis.main(new String[] { "-sens", "k1", "-outputs", "S1", "-tl", "1", "-pi", "0.5", "-outDir", directory.getPath(), copy("decay-sbml-l3v2.xml") });
+    List<String> rows = Files.readAllLines(new File(directory, "sensitivity.csv").toPath());
+    Assert.assertEquals("time,S1,d(S1)/d(k1)", rows.get(0));
+    Assert.assertEquals(4, rows.size());
+    String[] last = rows.get(3).split(",");
+    Assert.assertEquals(1, Double.parseDouble(last[0]), 1e-9);
+    Assert.assertEquals(-Math.exp(-1), Double.parseDouble(last[2]), 1e-4);
+  }
+
+  @Test
+  public void test_morris() throws Exception {
+    Analysis.main(new String[] { "-gsa", "morris", "-bounds", "k1=0.5:2,k2=0.5:2", "-outputs", "S2", "-tl", "1", "-outDir", directory.getPath(), copy("decay-sbml-l3v2.xml") });
+    List<String> rows = Files.readAllLines(new File(directory, "gsa.csv").toPath());
+    Assert.assertEquals("output,parameter,mu,mu_star,sigma", rows.get(0));
+    Assert.assertEquals(3, rows.size());
+    String[] k1 = rows.get(1).split(",");
+    String[] k2 = rows.get(2).split(",");
+    Assert.assertEquals("k1", k1[1]);
+    Assert.assertTrue(Double.parseDouble(k1[3]) > 0);
+    // k2 is not used by the model
+    Assert.assertEquals("k2", k2[1]);
+    Assert.assertEquals(0, Double.parseDouble(k2[3]), 0);
+  }
+
+  @Test
+  public void test_missing_outputs() throws Exception {
+    Analysis.main(new String[] { "-sens", "k1", "-outDir", directory.getPath(), copy("decay-sbml-l3v2.xml") });
+    Assert.assertFalse(new File(directory, "sensitivity.csv").exists());
+  }
+
+  @Test
+  public void test_invalid_bounds() throws Exception {
+    Analysis.main(new String[] { "-gsa", "sobol", "-bounds", "k1=0.5", "-outputs", "S2", "-outDir", directory.getPath(), copy("decay-sbml-l3v2.xml") });
+    Assert.assertFalse(new File(directory, "gsa.csv").exists());
+  }
+
+  @Test
+  public void test_steady_state() throws Exception {
+    Analysis.main(new String[] { "-ss", "solve", "-outputs", "S1,S2", "-aErr", "1e-9", "-outDir", directory.getPath(), copy("decay-sbml-l3v2.xml") });
+    List<String> rows = Files.readAllLines(new File(directory, "steadystate.csv").toPath());
+    Assert.assertEquals("S1,S2", rows.get(0));
+    String[] row = rows.get(1).split(",");
+    Assert.assertEquals(0, Double.parseDouble(row[0]), 1e-6);
+    Assert.assertEquals(1, Double.parseDouble(row[1]), 1e-6);
+  }
+
+  @Test
+  public void test_continuation() throws Exception {
+    Analysis.main(new String[] { "-ss", "k1=1:2:2", "-outputs", "S2", "-aErr", "1e-9", "-outDir", directory.getPath(), copy("reversible-sbml-l3v2.xml") });
+    List<String> rows = Files.readAllLines(new File(directory, "steadystate.csv").toPath());
+    Assert.assertEquals("k1,S2", rows.get(0));
+    Assert.assertEquals(4, rows.size());
+    for (int i = 1; i < rows.size(); i++) {
+      String[] row = rows.get(i).split(",");
+      double k1 = Double.parseDouble(row[0]);
+      Assert.assertEquals(1 + 0.5 * (i - 1), k1, 1e-9);
+      // S2 = 1000 * k1 / (k1 + k2) with k2 = 1
+      Assert.assertEquals(1000 * k1 / (k1 + 1), Double.parseDouble(row[1]), 1e-6);
+    }
+  }
+
+  @Test
+  public void test_invalid_continuation() throws Exception {
+    Analysis.main(new String[] { "-ss", "k1=1:2", "-outputs", "S2", "-outDir", directory.getPath(), copy("reversible-sbml-l3v2.xml") });
+    List<String> rows = Files.readAllLines(new File(directory, "steadystate.csv").toPath());
+    Assert.assertTrue(rows.isEmpty());
+  }
+
+  /**
+   * Copies a test model to the temporary directory, so the properties written by the analysis do not
+   * end up next to the test resources.
+   */
+  private String copy(String model) throws IOException {
+    File file = new File(directory, model);
+    try (InputStream in = AnalysisTest.class.getResourceAsStream(ROOT + model)) {
+      Files.copy(in, file.toPath());
+    }
+    return file.getPath();
+  }
+}
@@ -0,0 +1,130 @@
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+
+public class CSLCheckerTest {
+
+	private LPN lpn;
+
+	@Before
+	public void setUp() {
+		lpn = new LPN();
+		lpn.addInteger("x", "0");
+	}
+
+	/*
+	 * Builds a checker for the CTMC with the given transitions {from, to, rate}, where
+	 * x takes the value of the state index.
+	 */
+	private CSLChecker createChecker(int numStates, double[][] transitions, double error) {
+		int[] rowStart = new int[numStates + 1];
+		int[] column = new int[transitions.length];
+		double[] rate = new double[transitions.length];
+		int t = 0;
+		for (int s = 0; s < numStates; s++) {
+			for (double[] transition : transitions) {
+				if ((int) transition[0] == s) {
+					column[t] = (int) transition[1];
+					rate[t] = transition[2];
+					t++;
+				}
+			}
+			rowStart[s + 1] = t;
+		}
+		@SuppressWarnings("unchecked")
+		HashMap<String, String>[] stateVariables = new HashMap[numStates];
+		for (int s = 0; s < numStates; s++) {
+			stateVariables[s] = new HashMap<String, String>();
+			stateVariables[s].put("x", "" + s);
+		}
+		return new CSLChecker(lpn, rowStart, column, rate, stateVariables, error);
+	}
+
+	@Test
+	public void test_satisfying_states() {
+		CSLChecker checker = createChecker(3, new double[][] { { 0, 1, 1 }, { 1, 2, 1 } }, 1e-9);
+		Assert.assertEquals(3, checker.getNumberOfStates());
+		Assert.assertEquals("{1, 2}", checker.getSatisfyingStates("x>0").toString());
+		Assert.assertEquals("{0, 1, 2}", checker.getSatisfyingStates("true").toString());
+		Assert.assertTrue(checker.getSatisfyingStates("false").isEmpty());
+	}
+
+	@Test
+	public void test_bounded_until() {
+		CSLChecker checker = createChecker(2, new double[][] { { 0, 1, 2 } }, 1e-12);
+		double[] probs = checker.getUntilProbabilities("true", "x=1", 0, 0.5);
+		Assert.assertEquals(1 - Math.exp(-1), probs[0], 1e-9);
+		Assert.assertEquals(1, probs[1], 1e-9);
+	}
+
+	@Test
+	public void test_bounded_until_with_lower_bound() {
+		CSLChecker checker = createChecker(2, new double[][] { { 0, 1, 2 } }, 1e-12);
+		// x=1 is absorbing, so it holds somewhere in [1,2] exactly when it is reached by 2.
+		double[] probs = checker.getUntilProbabilities("true", "x=1", 1, 2);
+		Assert.assertEquals(1 - Math.exp(-4), probs[0], 1e-9);
+	}
+
+	@Test
+	public void test_unbounded_until() {
+		CSLChecker checker = createChecker(3, new double[][] { { 0, 1, 1 }, { 0, 2, 3 } }, 1e-12);
+		double[] probs = checker.getUntilProbabilities("true", "x=1", 0, Double.POSITIVE_INFINITY);
+		Assert.assertEquals(0.25, probs[0], 1e-9);
+		Assert.assertEquals(1, probs[1], 0);
+		Assert.assertEquals(0, probs[2], 0);
+	}
+
+	@Test
+	public void test_steady_state() {
+		// 0 -> 1 at rate 1 and 1 -> 0 at rate 2 spend a third of the time in state 1.
+		CSLChecker checker = createChecker(3, new double[][] { { 0, 1, 1 }, { 1, 0, 2 }, { 2, 0, 5 } }, 1e-12);
+		double[] probs = checker.getSteadyStateProbabilities("x=1");
+		for (int s = 0; s < 3; s++) {
+			Assert.assertEquals(1.0 / 3, probs[s], 1e-6);
+		}
+	}
+
+	@Test
+	public void test_nested_state_variable() {
+		lpn.addInteger("p", "0");
+		CSLChecker checker = createChecker(3, new double[][] { { 0, 1, 1 }, { 0, 2, 3 } }, 1e-12);
+		checker.addStateVariable("p", checker.getUntilProbabilities("true", "x=1", 0, Double.POSITIVE_INFINITY));
+		Assert.assertEquals("{0, 1}", checker.getSatisfyingStates("p>0.2").toString());
+	}
+
+	@Test
+	public void test_results_cached() {
+		CSLChecker checker = createChecker(2, new double[][] { { 0, 1, 2 } }, 1e-12);
+		Assert.assertSame(checker.getSatisfyingStates("x=1"), checker.getSatisfyingStates("x=1"));
+		Assert.assertSame(checker.getUntilProbabilities("true", "x=1", 0, 1),
+				checker.getUntilProbabilities("true", "x=1", 0, 1));
+		Assert.assertSame(checker.getSteadyStateProbabilities("x=1"), checker.getSteadyStateProbabilities("x=1"));
+	}
+
+	@Test
+	public void test_state_graph_checker_keyed_on_error() {
+		lpn.addPlace("p0", true);
+		lpn.addPlace("p1", false);
+		lpn.addTransition("t0");
+		lpn.addMovement("p0", "t0");
+		lpn.addMovement("t0", "p1");
+		lpn.addIntAssign("t0", "x", "1");
+		lpn.addTransitionRate("t0", "2");
+		StateGraph graph = new StateGraph(lpn);
+		graph.buildStateGraph(null);
+		CSLChecker checker = graph.getCSLChecker(1e-6);
+		Assert.assertEquals(2, checker.getNumberOfStates());
+		Assert.assertSame(checker, graph.getCSLChecker(1e-6));
+		CSLChecker finer = graph.getCSLChecker(1e-12);
+		Assert.assertNotSame(checker, finer);
+		Assert.assertEquals(1 - Math.exp(-1), finer.getUntilProbabilities("true", "x=1", 0, 0.5)[0], 1e-9);
+		graph.buildStateGraph(null);
+		Assert.assertNotSame(finer, graph.getCSLChecker(1e-12));
+	}
+}
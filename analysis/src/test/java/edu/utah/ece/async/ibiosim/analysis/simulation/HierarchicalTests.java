@@ -5,9 +5,25 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchyTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.DifferentiatorTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNodeTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalCLESimulatorTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalMixedSimulatorTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulatorTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.ParameterScanTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan.ScanTSDWriterTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity.ForwardSensitivityTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity.GlobalSensitivityTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc.StatisticalModelCheckerTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate.SteadyStateContinuationTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate.SteadyStateSolverTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.EventIndexTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.RatePartitionTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SymbolicJacobianTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModelTest;
 
 
 @RunWith(Suite.class)
-@SuiteClasses({HierarchyTest.class})
+@SuiteClasses({HierarchyTest.class, StatisticalModelCheckerTest.class, CompiledModelTest.class, HierarchicalODERKSimulatorTest.class, ForwardSensitivityTest.class, GlobalSensitivityTest.class, ParameterScanTest.class, ScanTSDWriterTest.class, HierarchicalMixedSimulatorTest.class, HierarchicalCLESimulatorTest.class, SteadyStateSolverTest.class, SteadyStateContinuationTest.class, DifferentiatorTest.class, SymbolicJacobianTest.class, EventIndexTest.class, HierarchicalNodeTest.class, RatePartitionTest.class})
 public class HierarchicalTests {
 }
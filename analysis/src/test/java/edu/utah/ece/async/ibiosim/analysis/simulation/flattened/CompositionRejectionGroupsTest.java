@@ -0,0 +1,126 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompositionRejectionGroupsTest
+{
+
+	/*
+	 * Draws the given number of reactions and checks that each reaction is
+	 * selected in proportion to its propensity, within five standard errors.
+	 */
+	private static void assertSelectionFrequencies(CompositionRejectionGroups groups, double[] propensities, int samples)
+	{
+
+		XORShiftRandom random = new XORShiftRandom(7);
+		int[] counts = new int[propensities.length];
+		double total = 0;
+
+		for (double propensity : propensities)
+		{
+			total += propensity;
+		}
+
+		for (int i = 0; i < samples; i++)
+		{
+			counts[groups.selectReaction(random.nextDouble(), random.nextDouble(), random.nextDouble(), random)]++;
+		}
+
+		for (int reaction = 0; reaction < propensities.length; reaction++)
+		{
+
+			double p = propensities[reaction] / total;
+			double error = 5 * Math.sqrt(p * (1 - p) / samples);
+
+			Assert.assertEquals("reaction " + reaction, p, (double) counts[reaction] / samples, error);
+		}
+	}
+
+	@Test
+	public void test_total_propensity()
+	{
+
+		double[] propensities = { 1, 2, 3, 0, 10.5, 1e-3 };
+		CompositionRejectionGroups groups = new CompositionRejectionGroups(propensities);
+
+		Assert.assertEquals(16.501, groups.getTotalPropensity(), 1e-12);
+
+		// within a group, across groups, to and from zero
+		groups.update(0, 1.5);
+		groups.update(1, 100);
+		groups.update(2, 0);
+		groups.update(3, 4);
+
+		Assert.assertEquals(1.5, propensities[0], 0);
+		Assert.assertEquals(116.001, groups.getTotalPropensity(), 1e-12);
+
+		for (int reaction = 0; reaction < propensities.length; reaction++)
+		{
+			groups.update(reaction, 0);
+		}
+
+		Assert.assertEquals(0, groups.getTotalPropensity(), 0);
+	}
+
+	@Test
+	public void test_selection_frequencies()
+	{
+
+		double[] propensities = { 1, 2, 3, 0, 10.5, 0.25 };
+		CompositionRejectionGroups groups = new CompositionRejectionGroups(propensities);
+
+		assertSelectionFrequencies(groups, propensities.clone(), 200000);
+	}
+
+	@Test
+	public void test_selection_frequencies_after_updates()
+	{
+
+		double[] propensities = { 1, 2, 3, 0, 10.5, 0.25 };
+		CompositionRejectionGroups groups = new CompositionRejectionGroups(propensities);
+
+		// moves reactions between groups, empties one and fills the zero one
+		groups.update(2, 0);
+		groups.update(3, 7);
+		groups.update(4, 10.75);
+		groups.update(5, 8);
+
+		assertSelectionFrequencies(groups, propensities.clone(), 200000);
+	}
+
+	@Test
+	public void test_selection_in_top_group()
+	{
+
+		// propensities in the highest binary exponent are still accepted
+		double[] propensities = { 1e308, 1e307 };
+		CompositionRejectionGroups groups = new CompositionRejectionGroups(propensities);
+
+		assertSelectionFrequencies(groups, new double[] { 10, 1 }, 20000);
+	}
+
+	@Test
+	public void test_no_reaction_without_propensity()
+	{
+
+		CompositionRejectionGroups groups = new CompositionRejectionGroups(new double[] { 0, 0 });
+
+		Assert.assertEquals(-1, groups.selectReaction(0.5, 0.5, 0.5, new XORShiftRandom(1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_infinite_propensity_rejected()
+	{
+		new CompositionRejectionGroups(new double[] { 1, Double.POSITIVE_INFINITY });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_nan_propensity_rejected()
+	{
+
+		CompositionRejectionGroups groups = new CompositionRejectionGroups(new double[] { 1, 2 });
+
+		groups.update(1, Double.NaN);
+	}
+}
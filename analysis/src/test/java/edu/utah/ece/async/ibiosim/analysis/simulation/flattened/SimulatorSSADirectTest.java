@@ -0,0 +1,148 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimulatorSSADirectTest
+{
+
+	private String	modelFile;
+
+	@Before
+	public void setUp()
+	{
+		modelFile = SimulatorSSADirectTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/flattened/dimerization-sbml-l3v2.xml").getPath();
+	}
+
+	private SimulatorSSADirect createSimulator(File outputDirectory, long seed) throws IOException
+	{
+		return new SimulatorSSADirect(modelFile, outputDirectory.getAbsolutePath(), 1, 20, Double.POSITIVE_INFINITY, 0, seed, 0.5, 1, new String[0], "amount");
+	}
+
+	private String simulate(boolean indexed, long seed) throws IOException
+	{
+
+		File outputDirectory = Files.createTempDirectory("ssa").toFile();
+		SimulatorSSADirect simulator = createSimulator(outputDirectory, seed);
+
+		simulator.setIndexedNetworkEnabled(indexed);
+		simulator.simulate();
+
+		return new String(Files.readAllBytes(new File(outputDirectory, "run-1.tsd").toPath()), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void test_indexed_trajectory_matches_name_based()
+	{
+		try
+		{
+			for (long seed = 1; seed <= 5; seed++)
+			{
+
+				String indexed = simulate(true, seed);
+
+				Assert.assertEquals(simulate(false, seed), indexed);
+				// the trajectory does react: 41 print points after the header
+				Assert.assertTrue(indexed.split("\\),").length > 40);
+			}
+		}
+		catch (IOException e)
+		{
+			Assert.fail("Could not simulate");
+		}
+	}
+
+	@Test
+	public void test_compiled_propensities_match_evaluator()
+	{
+		try
+		{
+
+			SimulatorSSADirect simulator = createSimulator(Files.createTempDirectory("ssa").toFile(), 1);
+
+			simulator.setupIndexedNetwork(false);
+
+			IndexedReactionNetwork network = simulator.indexedNetwork;
+
+			Assert.assertEquals(2, network.getNumberOfReactions());
+
+			for (int reaction = 0; reaction < network.getNumberOfReactions(); reaction++)
+			{
+
+				String reactionID = network.getReactionID(reaction);
+
+				Assert.assertEquals(simulator.evaluateExpressionRecursive(simulator.reactionToFormulaMap.get(reactionID)), network.computePropensity(reaction), 0);
+				Assert.assertEquals(simulator.reactionToPropensityMap.get(reactionID), network.getPropensity(reaction), 0);
+			}
+
+			// kf * compartment * (A / compartment)^2 with A = 200 in a compartment of size 2
+			Assert.assertEquals(200, network.computePropensity(network.getReactionIndex("dimerization")), 1e-9);
+
+			// a reaction lacking its reactants has no propensity
+			Assert.assertEquals(0, network.computePropensity(network.getReactionIndex("dissociation")), 0);
+
+			// firing the dimerization twice updates the species in the value map
+			int dimerization = network.getReactionIndex("dimerization");
+
+			simulator.performReaction(dimerization, true, true);
+			simulator.performReaction(dimerization, true, true);
+
+			Assert.assertEquals(196, simulator.variableToValueMap.get("A"), 0);
+			Assert.assertEquals(2, simulator.variableToValueMap.get("B"), 0);
+			Assert.assertEquals(1, network.computePropensity(network.getReactionIndex("dissociation")), 0);
+		}
+		catch (IOException e)
+		{
+			Assert.fail("Could not initialize");
+		}
+	}
+
+	@Test
+	public void test_sum_tree_selection_matches_linear_scan()
+	{
+		try
+		{
+
+			SimulatorSSADirect simulator = createSimulator(Files.createTempDirectory("ssa").toFile(), 1);
+
+			simulator.setupIndexedNetwork(false);
+
+			IndexedReactionNetwork network = simulator.indexedNetwork;
+
+			network.buildSumTree();
+			network.setPropensity(network.getReactionIndex("dissociation"), 50);
+
+			double total = network.getPropensity(0) + network.getPropensity(1);
+			XORShiftRandom random = new XORShiftRandom(1);
+
+			for (int i = 0; i < 1000; i++)
+			{
+
+				double randomPropensity = random.nextDouble() * total;
+				int expected = randomPropensity < network.getPropensity(0) ? 0 : 1;
+
+				Assert.assertEquals(expected, network.selectReaction(randomPropensity));
+			}
+
+			Assert.assertEquals(-1, network.selectReaction(total));
+
+			// the propensity map is kept in step for rules and events
+			Assert.assertEquals(50, simulator.reactionToPropensityMap.get("dissociation"), 0);
+
+			network.setPropensity(0, 0);
+			network.setPropensity(1, 0);
+
+			Assert.assertEquals(-1, network.selectReaction(0));
+		}
+		catch (IOException e)
+		{
+			Assert.fail("Could not initialize");
+		}
+	}
+}
@@ -83,4 +83,38 @@ public class HierarchyTest {
       fail("Could not initialize");
     }
   }
+
+  @Test
+  public void test_gaussians() {
+    try {
+      properties.setModelFile("00001-sbml-l3v2.xml");
+      HierarchicalSimulation simulator = new HierarchicalSSADirectSimulator(properties);
+      simulator.setRandomSeed(1);
+      // an odd length uses the first value of the last pair
+      double[] values = new double[100001];
+      simulator.getGaussians(values);
+      double sum = 0, squareSum = 0;
+      int withinOne = 0;
+      for (double value : values) {
+        Assert.assertTrue(Double.isFinite(value));
+        sum += value;
+        squareSum += value * value;
+        if (Math.abs(value) < 1) {
+          withinOne++;
+        }
+      }
+      double mean = sum / values.length;
+      Assert.assertEquals(0, mean, 0.02);
+      Assert.assertEquals(1, squareSum / values.length - mean * mean, 0.02);
+      Assert.assertEquals(0.6827, (double) withinOne / values.length, 0.01);
+
+      double[] again = new double[values.length];
+      simulator.setRandomSeed(1);
+      simulator.getGaussians(again);
+      Assert.assertArrayEquals(values, again, 0);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
 }
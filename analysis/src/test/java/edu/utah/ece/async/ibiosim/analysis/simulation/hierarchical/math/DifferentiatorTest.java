@@ -0,0 +1,101 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState.StateType;
+
+public class DifferentiatorTest {
+  private VariableNode x;
+  private VariableNode y;
+
+  @Before
+  public void setUp() {
+    x = new VariableNode("x", StateType.SCALAR);
+    y = new VariableNode("y", StateType.SCALAR);
+    x.getState().setStateValue(0.7);
+    y.getState().setStateValue(1.3);
+  }
+
+  @Test
+  public void test_product_rule() {
+    HierarchicalNode math = node(Type.TIMES, x, y, x);
+    Assert.assertEquals(2 * 0.7 * 1.3, derivative(math, x), 1e-12);
+    assertFiniteDifference(math, x);
+    assertFiniteDifference(math, y);
+  }
+
+  @Test
+  public void test_quotient_and_chain_rules() {
+    HierarchicalNode math = node(Type.DIVIDE, node(Type.FUNCTION_SIN, node(Type.TIMES, x, y)), node(Type.PLUS, x, Differentiator.number(2)));
+    assertFiniteDifference(math, x);
+    assertFiniteDifference(math, y);
+    assertFiniteDifference(node(Type.FUNCTION_EXP, node(Type.POWER, x, Differentiator.number(2))), x);
+    assertFiniteDifference(node(Type.FUNCTION_LN, node(Type.FUNCTION_COSH, x)), x);
+    assertFiniteDifference(node(Type.FUNCTION_ROOT, Differentiator.number(3), node(Type.PLUS, x, y)), x);
+  }
+
+  @Test
+  public void test_variable_exponent() {
+    HierarchicalNode math = node(Type.POWER, x, y);
+    Assert.assertEquals(Math.pow(0.7, 1.3) * Math.log(0.7), derivative(math, y), 1e-12);
+    assertFiniteDifference(math, x);
+  }
+
+  @Test
+  public void test_piecewise_branches() {
+    HierarchicalNode math = node(Type.FUNCTION_ABS, node(Type.MINUS, x, y));
+    Assert.assertEquals(-1, derivative(math, x), 0);
+    x.getState().setStateValue(2);
+    Assert.assertEquals(1, derivative(math, x), 0);
+
+    HierarchicalNode max = node(Type.FUNCTION_MAX, node(Type.TIMES, Differentiator.number(3), x), y);
+    Assert.assertEquals(3, derivative(max, x), 0);
+    Assert.assertEquals(0, derivative(max, y), 0);
+  }
+
+  @Test
+  public void test_zero_derivative_is_number() {
+    HierarchicalNode math = node(Type.PLUS, node(Type.TIMES, Differentiator.number(3), y), node(Type.FUNCTION_FLOOR, x));
+    Assert.assertTrue(Differentiator.isNumber(Differentiator.differentiate(math, x.getState().getChild(0), 0), 0));
+  }
+
+  @Test
+  public void test_simplify_drops_neutral_elements() {
+    HierarchicalNode math = node(Type.PLUS, Differentiator.number(0), node(Type.TIMES, Differentiator.number(1), x));
+    Assert.assertSame(x, Differentiator.simplify(math));
+    HierarchicalNode folded = Differentiator.simplify(node(Type.TIMES, Differentiator.number(2), node(Type.PLUS, Differentiator.number(1), Differentiator.number(3))));
+    Assert.assertTrue(Differentiator.isNumber(folded, 8));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_delay_is_not_differentiable() {
+    Differentiator.differentiate(node(Type.FUNCTION_DELAY, x, Differentiator.number(1)), x.getState().getChild(0), 0);
+  }
+
+  private static HierarchicalNode node(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private static double derivative(HierarchicalNode math, VariableNode variable) {
+    HierarchicalNode derivative = Differentiator.differentiate(math, variable.getState().getChild(0), 0);
+    return Evaluator.evaluateExpressionRecursive(derivative, 0);
+  }
+
+  private static void assertFiniteDifference(HierarchicalNode math, VariableNode variable) {
+    double value = variable.getState().getValue();
+    double step = 1e-6;
+    variable.getState().setStateValue(value + step);
+    double upper = Evaluator.evaluateExpressionRecursive(math, 0);
+    variable.getState().setStateValue(value - step);
+    double lower = Evaluator.evaluateExpressionRecursive(math, 0);
+    variable.getState().setStateValue(value);
+    Assert.assertEquals((upper - lower) / (2 * step), derivative(math, variable), 1e-6);
+  }
+}
@@ -0,0 +1,82 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.DenseState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+
+public class HierarchicalNodeTest {
+  private static final int ROWS = 3;
+  private static final int COLUMNS = 2;
+
+  private HierarchicalNode node;
+
+  @Before
+  public void setUp() {
+    node = new HierarchicalNode(Type.NAME);
+    node.addDimension("i", 0, "n");
+    node.addDimension("j", 1, "m");
+    node.getListOfDimensions().get(0).setSize(ROWS);
+    node.getListOfDimensions().get(1).setSize(COLUMNS);
+    DenseState root = new DenseState();
+    for (int index = 0; index < 2; index++) {
+      DenseState modelState = new DenseState();
+      for (int j = 0; j < COLUMNS; j++) {
+        DenseState column = new DenseState();
+        for (int i = 0; i < ROWS; i++) {
+          column.addState(i, new ValueState(value(index, i, j)));
+        }
+        modelState.addState(j, column);
+      }
+      root.addState(index, modelState);
+    }
+    node.setState(root);
+    node.initializeArrayElements();
+  }
+
+  @Test
+  public void test_element_states_follow_iterator_order() {
+    Assert.assertEquals(ROWS * COLUMNS, node.getNumOfElements());
+    int element = 0;
+    for (HierarchicalNode current : node) {
+      Assert.assertSame(current.getRootState(0), node.getElementState(0, element));
+      element++;
+    }
+    Assert.assertEquals(ROWS * COLUMNS, element);
+  }
+
+  @Test
+  public void test_element_states_leave_dimensions_untouched() {
+    node.setArrayElement(4);
+    for (int pass = 0; pass < 2; pass++) {
+      for (int index = 0; index < 2; index++) {
+        for (int element = node.getNumOfElements() - 1; element >= 0; element--) {
+          HierarchicalState state = node.getElementState(index, element);
+          Assert.assertEquals(value(index, element % ROWS, element / ROWS), state.getValue(), 0);
+        }
+      }
+      Assert.assertEquals(4 % ROWS, node.getListOfDimensions().get(0).getState().getValue(), 0);
+      Assert.assertEquals(4 / ROWS, node.getListOfDimensions().get(1).getState().getValue(), 0);
+      node.initializeElementStates(0);
+      node.initializeElementStates(1);
+    }
+  }
+
+  @Test
+  public void test_initialized_states_are_shared() {
+    node.initializeElementStates(1);
+    HierarchicalState state = node.getElementState(1, 5);
+    Assert.assertSame(state, node.getElementState(1, 5));
+    state.setStateValue(-1);
+    node.setArrayElement(5);
+    Assert.assertEquals(-1, node.getValue(1), 0);
+  }
+
+  private static double value(int index, int i, int j) {
+    return 100 * index + 10 * j + i;
+  }
+}
@@ -0,0 +1,77 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class HierarchicalCLESimulatorTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = HierarchicalCLESimulatorTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("reversible-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(3);
+    properties.getSimulationProperties().setMaxTimeStep(0.01);
+  }
+
+  @Test
+  public void test_reversible_noise_at_equilibrium() {
+    try {
+      HierarchicalCLESimulator sim = new HierarchicalCLESimulator(CompiledModel.compile(properties), false);
+      sim.setRandomSeed(1);
+      int runs = 100;
+      double sum = 0, squareSum = 0;
+      for (int run = 1; run <= runs; run++) {
+        if (run > 1) {
+          sim.setupForNewRun(run);
+          Assert.assertEquals(0, sim.getCurrentTime().getState().getValue(), 0);
+          Assert.assertEquals(500, sim.getTopLevelValue("S1"), 0);
+        }
+        sim.simulate();
+        Assert.assertEquals(3, sim.getCurrentTime().getState().getValue(), 1e-9);
+        double s1 = sim.getTopLevelValue("S1");
+        Assert.assertEquals(1000, s1 + sim.getTopLevelValue("S2"), 1e-6);
+        sum += s1;
+        squareSum += s1 * s1;
+      }
+      // The net rate is zero at equilibrium, but each direction fires at rate 500, so the
+      // stationary variance of S1 is that of a binomial with 1000 trials, 1000 / 4.
+      double mean = sum / runs;
+      double variance = (squareSum - runs * mean * mean) / (runs - 1);
+      Assert.assertEquals(500, mean, 10);
+      Assert.assertEquals(250, variance, 120);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_negative_propensity_is_reported() {
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    try {
+      HierarchicalCLESimulator sim = new HierarchicalCLESimulator(CompiledModel.compile(properties), false);
+      sim.overrideInitialValue("k1", -1);
+      sim.simulate();
+      fail("A negative propensity was not reported");
+    }
+    catch (BioSimException e) {
+      Assert.assertTrue(e.getMessage().contains("reaction1"));
+    }
+    catch (IOException | XMLStreamException e) {
+      fail("Could not initialize");
+    }
+  }
+}
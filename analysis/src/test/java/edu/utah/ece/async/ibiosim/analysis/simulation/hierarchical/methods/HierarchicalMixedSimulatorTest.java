@@ -0,0 +1,154 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class HierarchicalMixedSimulatorTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = HierarchicalMixedSimulatorTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(1);
+    properties.getSimulationProperties().setPrintInterval(0.5);
+  }
+
+  @Test
+  public void test_runs_without_output() {
+    try {
+      HierarchicalMixedSimulator sim = new HierarchicalMixedSimulator(CompiledModel.compile(properties), false);
+      sim.setRandomSeed(1);
+      sim.simulate();
+      Assert.assertEquals(1, sim.getCurrentTime().getState().getValue(), 0);
+      Assert.assertEquals(1, sim.getTopLevelValue("S1") + sim.getTopLevelValue("S2"), 1e-9);
+
+      sim.setupForNewRun(2);
+      Assert.assertEquals(0, sim.getCurrentTime().getState().getValue(), 0);
+      Assert.assertEquals(1, sim.getTopLevelValue("S1"), 0);
+      Assert.assertEquals(0, sim.getTopLevelValue("S2"), 0);
+
+      sim.simulate();
+      Assert.assertEquals(1, sim.getCurrentTime().getState().getValue(), 0);
+      Assert.assertEquals(1, sim.getTopLevelValue("S1") + sim.getTopLevelValue("S2"), 1e-9);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_every_run_prints_from_the_start() {
+    try {
+      File outDir = Files.createTempDirectory("mixed").toFile();
+      properties.setOutDir(outDir.getPath());
+      HierarchicalMixedSimulator sim = new HierarchicalMixedSimulator(CompiledModel.compile(properties), true);
+      sim.setRandomSeed(1);
+      sim.simulate();
+      sim.setupForNewRun(2);
+      sim.simulate();
+
+      String first = new String(Files.readAllBytes(new File(outDir, "run-1.tsd").toPath()));
+      String second = new String(Files.readAllBytes(new File(outDir, "run-2.tsd").toPath()));
+      // the first run is closed when the second one starts
+      Assert.assertTrue(first.endsWith("))"));
+      Assert.assertTrue(second.contains("\n(0.0,"));
+      Assert.assertTrue(second.contains("\n(0.5,"));
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_fast_reactions_follow_the_ode() {
+    properties.setModelFile("growth-sbml-l3v2.xml");
+    try {
+      HierarchicalODERKSimulator odeSim = new HierarchicalODERKSimulator(properties, false);
+      odeSim.simulate();
+
+      HierarchicalMixedSimulator sim = new HierarchicalMixedSimulator(CompiledModel.compile(properties), false);
+      sim.setRandomSeed(1);
+      sim.setCopyNumberThreshold(0);
+      sim.setPropensityThreshold(0);
+      sim.simulate();
+      Assert.assertTrue(sim.isFast("production"));
+      Assert.assertTrue(sim.isFast("degradation"));
+      Assert.assertEquals(1000 * (1 - Math.exp(-0.1)), sim.getTopLevelValue("S"), 1e-2);
+      Assert.assertEquals(odeSim.getTopLevelValue("S"), sim.getTopLevelValue("S"), 1e-2);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_slow_reactions_match_the_mean() {
+    int runs = 2000;
+    try {
+      HierarchicalODERKSimulator odeSim = new HierarchicalODERKSimulator(properties, false);
+      odeSim.simulate();
+
+      HierarchicalMixedSimulator sim = new HierarchicalMixedSimulator(CompiledModel.compile(properties), false);
+      sim.setRandomSeed(1);
+      double sum = 0;
+      for (int run = 1; run <= runs; run++) {
+        if (run > 1) {
+          sim.setupForNewRun(run);
+        }
+        sim.simulate();
+        Assert.assertFalse(sim.isFast("reaction1"));
+        Assert.assertEquals(1, sim.getCurrentTime().getState().getValue(), 0);
+        double s1 = sim.getTopLevelValue("S1");
+        // a slow reaction fires whole molecules
+        Assert.assertTrue(s1 == 0 || s1 == 1);
+        sum += s1;
+      }
+      // the single molecule is left with probability exp(-k1 t), the solution of the ODE
+      Assert.assertEquals(odeSim.getTopLevelValue("S1"), sum / runs, 0.05);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_reactions_move_to_the_ode_above_the_copy_number_threshold() {
+    properties.setModelFile("growth-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(0.1);
+    try {
+      HierarchicalMixedSimulator sim = new HierarchicalMixedSimulator(CompiledModel.compile(properties), false);
+      sim.setRandomSeed(1);
+      sim.setCopyNumberThreshold(50);
+      sim.setPropensityThreshold(5);
+      sim.simulate();
+      Assert.assertTrue(sim.getTopLevelValue("S") < 50);
+      Assert.assertFalse(sim.isFast("production"));
+      Assert.assertFalse(sim.isFast("degradation"));
+
+      properties.getSimulationProperties().setTimeLimit(3);
+      sim.simulate();
+      Assert.assertEquals(3, sim.getCurrentTime().getState().getValue(), 0);
+      Assert.assertTrue(sim.getTopLevelValue("S") > 50);
+      Assert.assertTrue(sim.isFast("production"));
+      Assert.assertTrue(sim.isFast("degradation"));
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
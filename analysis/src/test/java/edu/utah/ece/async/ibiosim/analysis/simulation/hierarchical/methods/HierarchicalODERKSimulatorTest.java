@@ -0,0 +1,62 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class HierarchicalODERKSimulatorTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = HierarchicalODERKSimulatorTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.getSimulationProperties().setTimeLimit(1);
+  }
+
+  @Test
+  public void test_rate_rule_reads_current_flux() {
+    properties.setModelFile("raterule-flux-sbml-l3v2.xml");
+    try {
+      HierarchicalODERKSimulator sim = new HierarchicalODERKSimulator(properties, false);
+      sim.initialize(0);
+      double[] values = sim.getStateValues().clone();
+      for (int i = 0; i < values.length; i++) {
+        values[i] = values[i] / 2;
+      }
+      double[] rates = new double[values.length];
+      sim.computeDerivatives(0, values, rates);
+
+      // dx/dt = reaction1 must see the flux of the state passed in, not the one of the previous evaluation.
+      double flux = -sim.getTopmodel().getNode("S1").getState().getChild(0).getRateValue();
+      Assert.assertTrue(flux > 0 && flux <= 0.5);
+      Assert.assertEquals(flux, sim.getTopmodel().getNode("x").getState().getChild(0).getRateValue(), 1e-12);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_simulate_without_output() {
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    try {
+      HierarchicalODERKSimulator sim = new HierarchicalODERKSimulator(properties, false);
+      sim.simulate();
+      Assert.assertEquals(1, sim.getCurrentTime().getState().getValue(), 0);
+      Assert.assertEquals(Math.exp(-1), sim.getTopLevelValue("S1"), 1e-4);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParameterScanTest {
+
+  @Test
+  public void test_parse() {
+    ParameterScan scan = ParameterScan.parse(Arrays.asList("k1 Sweep (0,1,0.1,1)", "k2 Modified 5", "S1 Sweep (1,2,1,2)"));
+    Assert.assertEquals(Arrays.asList("k1", "S1"), scan.getParameters());
+    Assert.assertEquals(22, scan.getNumOfPoints());
+    // the second level is the inner loop
+    Assert.assertArrayEquals(new double[] { 0, 1 }, scan.getPoint(0), 0);
+    Assert.assertArrayEquals(new double[] { 0, 2 }, scan.getPoint(1), 0);
+    Assert.assertArrayEquals(new double[] { 1, 2 }, scan.getPoint(21), 0);
+  }
+
+  @Test
+  public void test_sweep_keeps_stop_value() {
+    ParameterScan scan = new ParameterScan();
+    // 3 * 0.1 is slightly more than 0.3
+    scan.addSweep("k1", "(0,0.3,0.1,1)");
+    Assert.assertEquals(4, scan.getNumOfPoints());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals(i * 0.1, scan.getPoint(i)[0], 0);
+    }
+  }
+
+  @Test
+  public void test_iterations_without_parameters() {
+    ParameterScan scan = new ParameterScan();
+    scan.addIterations(1, 3);
+    scan.addSweep("k1", "(1,2,1,2)");
+    Assert.assertEquals(6, scan.getNumOfPoints());
+    Assert.assertArrayEquals(new double[] { 2 }, scan.getPoint(5), 0);
+  }
+}
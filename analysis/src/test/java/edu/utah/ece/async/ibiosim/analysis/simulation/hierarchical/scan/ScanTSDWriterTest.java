@@ -0,0 +1,55 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.scan;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class ScanTSDWriterTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = ScanTSDWriterTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(1);
+    properties.getSimulationProperties().setPrintInterval(0.5);
+  }
+
+  @Test
+  public void test_directory_name() {
+    Assert.assertEquals("k1_0_5_k2_1_0", ScanTSDWriter.getDirectoryName(Arrays.asList("k1", "k2"), new double[] { 0.5, 1 }));
+    Assert.assertEquals("k1__2_0", ScanTSDWriter.getDirectoryName(Arrays.asList("k1"), new double[] { -2 }));
+  }
+
+  @Test
+  public void test_point_files() {
+    try {
+      File directory = Files.createTempDirectory("scan").toFile();
+      ParameterScan scan = ParameterScan.parse(Arrays.asList("k1 Sweep (1,2,1,1)"));
+      new ScanExecutor(CompiledModel.compile(properties), 1).run(scan, new ScanTSDWriter(scan.getParameters(), directory.getPath()));
+      for (String point : new String[] { "k1_1_0", "k1_2_0" }) {
+        String tsd = new String(Files.readAllBytes(new File(new File(directory, point), "run-1.tsd").toPath()));
+        Assert.assertTrue(tsd.startsWith("((\"time\""));
+        Assert.assertTrue(tsd.contains("\"S1\""));
+        Assert.assertTrue(tsd.endsWith("))"));
+      }
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
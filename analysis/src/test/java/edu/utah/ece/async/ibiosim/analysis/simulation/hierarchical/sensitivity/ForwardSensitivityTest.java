@@ -0,0 +1,54 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class ForwardSensitivityTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = ForwardSensitivityTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(1);
+    properties.getSimulationProperties().setPrintInterval(0.5);
+  }
+
+  @Test
+  public void test_decay() {
+    try {
+      ForwardSensitivity sensitivity = new ForwardSensitivity(CompiledModel.compile(properties), Arrays.asList("k1", "k2"), Arrays.asList("S1"));
+      StringWriter writer = new StringWriter();
+      sensitivity.run(writer);
+      String[] rows = writer.toString().trim().split("\n");
+      Assert.assertEquals("time,S1,d(S1)/d(k1),d(S1)/d(k2)", rows[0]);
+      Assert.assertEquals(4, rows.length);
+
+      // S1(t) = exp(-k1 t), so dS1/dk1 = -t exp(-k1 t), and k2 is not used by the model.
+      for (int i = 1; i < rows.length; i++) {
+        String[] row = rows[i].split(",");
+        double time = Double.parseDouble(row[0]);
+        Assert.assertEquals(Math.exp(-time), Double.parseDouble(row[1]), 1e-4);
+        Assert.assertEquals(-time * Math.exp(-time), Double.parseDouble(row[2]), 1e-4);
+        Assert.assertEquals(0, Double.parseDouble(row[3]), 1e-12);
+      }
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
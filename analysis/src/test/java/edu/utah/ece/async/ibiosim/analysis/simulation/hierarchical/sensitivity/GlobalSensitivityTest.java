@@ -0,0 +1,57 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.sensitivity;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class GlobalSensitivityTest {
+  private GlobalSensitivity sensitivity;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = GlobalSensitivityTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    AnalysisProperties properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(1);
+    ParameterPointExecutor executor = new ParameterPointExecutor(CompiledModel.compile(properties), Arrays.asList("k1", "k2"), Arrays.asList("S2"), 2);
+    sensitivity = new GlobalSensitivity(executor, new double[] { 0.5, 0.5 }, new double[] { 2, 2 }, 1);
+  }
+
+  @Test
+  public void test_morris() {
+    try {
+      GlobalSensitivity.Indices indices = sensitivity.morris(4, 4, null);
+      // S2(1) = 1 - exp(-k1) increases with k1, and k2 is not used by the model.
+      Assert.assertTrue(indices.getValue(0, 0, 0) > 0);
+      Assert.assertEquals(indices.getValue(0, 0, 0), indices.getValue(0, 0, 1), 1e-12);
+      Assert.assertEquals(0, indices.getValue(0, 1, 1), 0);
+      Assert.assertEquals(0, indices.getValue(0, 1, 2), 0);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_sobol() {
+    try {
+      GlobalSensitivity.Indices indices = sensitivity.sobol(128, null);
+      Assert.assertEquals(1, indices.getValue(0, 0, 1), 0.25);
+      Assert.assertEquals(0, indices.getValue(0, 1, 1), 0);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
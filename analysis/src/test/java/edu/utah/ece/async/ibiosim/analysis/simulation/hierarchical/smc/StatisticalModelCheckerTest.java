@@ -0,0 +1,79 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.smc;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class StatisticalModelCheckerTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = StatisticalModelCheckerTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(2);
+    properties.getSimulationProperties().setRndSeed(314159);
+  }
+
+  @Test
+  public void test_parse() {
+    Assert.assertEquals(1, BoundedProperty.parse("F[0,1] S2 >= 1").getUpperBound(), 0);
+    Assert.assertEquals(2, BoundedProperty.parse("G[0.5,2](S1==1)").getUpperBound(), 0);
+    Assert.assertEquals(3, BoundedProperty.parse("S1 >= 1 U[0,3] S2 >= 1").getUpperBound(), 0);
+  }
+
+  @Test
+  public void test_estimate() {
+    try {
+      // The single molecule has decayed by time 1 with probability 1 - exp(-1).
+      StatisticalModelChecker checker = new StatisticalModelChecker(properties, BoundedProperty.parse("F[0,1] S2 >= 1"), 2);
+      StatisticalModelChecker.Result result = checker.estimate(0.05, 0.01);
+      Assert.assertEquals(1060, result.getNumberOfSamples());
+      Assert.assertEquals(1 - Math.exp(-1), result.getProbability(), 0.05);
+
+      // The globally property is the complement.
+      checker = new StatisticalModelChecker(properties, BoundedProperty.parse("G[0,1] S1 >= 1"), 2);
+      result = checker.estimate(0.05, 0.01);
+      Assert.assertEquals(Math.exp(-1), result.getProbability(), 0.05);
+      Assert.assertEquals(2, properties.getSimulationProperties().getTimeLimit(), 0);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_reproducible() {
+    try {
+      BoundedProperty property = BoundedProperty.parse("F[0,1] S2 >= 1");
+      long first = new StatisticalModelChecker(properties, property, 1).estimate(0.1, 0.1).getNumberOfSuccesses();
+      long second = new StatisticalModelChecker(properties, property, 3).estimate(0.1, 0.1).getNumberOfSuccesses();
+      Assert.assertEquals(first, second);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_hypothesis() {
+    try {
+      StatisticalModelChecker checker = new StatisticalModelChecker(properties, BoundedProperty.parse("F[0,1] S2 >= 1"), 2);
+      Assert.assertEquals(StatisticalModelChecker.Hypothesis.ACCEPTED, checker.test(0.5, 0.05, 0.01, 0.01, 10000).getHypothesis());
+      Assert.assertEquals(StatisticalModelChecker.Hypothesis.REJECTED, checker.test(0.75, 0.05, 0.01, 0.01, 10000).getHypothesis());
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
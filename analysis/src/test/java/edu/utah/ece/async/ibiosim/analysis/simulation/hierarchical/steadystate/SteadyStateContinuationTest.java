@@ -0,0 +1,53 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class SteadyStateContinuationTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = SteadyStateContinuationTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.getSimulationProperties().setAbsError(1e-9);
+  }
+
+  @Test
+  public void test_reversible_branch() {
+    properties.setModelFile("reversible-sbml-l3v2.xml");
+    try {
+      SteadyStateContinuation continuation = new SteadyStateContinuation(CompiledModel.compile(properties), "k1", Arrays.asList("S1", "S2"));
+      StringWriter writer = new StringWriter();
+      Assert.assertTrue(continuation.run(0.5, 2, 6, writer));
+
+      String[] lines = writer.toString().split("\n");
+      Assert.assertEquals("k1,S1,S2", lines[0]);
+      Assert.assertEquals(8, lines.length);
+      for (int i = 1; i < lines.length; i++) {
+        String[] row = lines[i].split(",");
+        double k1 = Double.parseDouble(row[0]);
+        Assert.assertEquals(0.5 + 0.25 * (i - 1), k1, 1e-9);
+        // S1 = 1000 * k2 / (k1 + k2) with k2 = 1.
+        Assert.assertEquals(1000 / (k1 + 1), Double.parseDouble(row[1]), 1e-6);
+        Assert.assertEquals(1000 * k1 / (k1 + 1), Double.parseDouble(row[2]), 1e-6);
+      }
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.steadystate;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class SteadyStateSolverTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = SteadyStateSolverTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+  }
+
+  @Test
+  public void test_decay() {
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    try {
+      SteadyStateSystem system = new SteadyStateSystem(CompiledModel.compile(properties));
+      double[] x = system.getValues();
+      Assert.assertTrue(new SteadyStateSolver(system, 1e-9).solve(x));
+      system.evaluate(x, new double[x.length]);
+      Assert.assertEquals(0, system.getTopLevelValue("S1"), 1e-6);
+      Assert.assertEquals(1, system.getTopLevelValue("S2"), 1e-6);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  @Test
+  public void test_reversible() {
+    properties.setModelFile("reversible-sbml-l3v2.xml");
+    try {
+      SteadyStateSystem system = new SteadyStateSystem(CompiledModel.compile(properties));
+      system.setParameter("k1", 3);
+      double[] x = system.getValues();
+      Assert.assertTrue(new SteadyStateSolver(system, 1e-9).solve(x));
+      system.evaluate(x, new double[x.length]);
+      // k1 * S1 = k2 * S2 with S1 + S2 = 1000 conserved.
+      Assert.assertEquals(250, system.getTopLevelValue("S1"), 1e-6);
+      Assert.assertEquals(750, system.getTopLevelValue("S2"), 1e-6);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class EventIndexTest {
+  // positions of the events of events-sbml-l3v2.xml
+  private static final int EA = 0, EP = 1, ET = 2, EC = 3, ED = 4, ER = 5;
+
+  private HierarchicalModel model;
+  private EventIndex eventIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = EventIndexTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    AnalysisProperties properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("events-sbml-l3v2.xml");
+    try {
+      HierarchicalODERKSimulator sim = new HierarchicalODERKSimulator(properties, false);
+      sim.initialize(0);
+      model = sim.getListOfHierarchicalModels().get(0);
+      eventIndex = new EventIndex(sim.getListOfHierarchicalModels(), sim.getCurrentTime());
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+
+  private static BitSet positions(int... events) {
+    BitSet positions = new BitSet();
+    for (int event : events) {
+      positions.set(event);
+    }
+    return positions;
+  }
+
+  @Test
+  public void test_events_in_model_order() {
+    Assert.assertEquals(6, eventIndex.getNumberOfEvents());
+    for (int i = 0; i < eventIndex.getNumberOfEvents(); i++) {
+      Assert.assertSame(model.getListOfEvents().get(i), eventIndex.getEvent(i));
+      Assert.assertEquals(model.getIndex(), eventIndex.getIndex(i));
+    }
+  }
+
+  @Test
+  public void test_species_readers() {
+    // eT reads time and eR reads a reaction, so they are checked after every reaction
+    BitSet affected = eventIndex.getAffectedEvents((ReactionNode) model.getNode("rA"), model.getIndex());
+    Assert.assertEquals(positions(EA, ET, ED, ER), affected);
+    Assert.assertFalse(affected.get(EC));
+  }
+
+  @Test
+  public void test_rule_readers() {
+    // eP reads p, which an assignment rule computes from B
+    BitSet affected = eventIndex.getAffectedEvents((ReactionNode) model.getNode("rB"), model.getIndex());
+    Assert.assertEquals(positions(EP, ET, ED, ER), affected);
+  }
+
+  @Test
+  public void test_affected_events_cached() {
+    ReactionNode reaction = (ReactionNode) model.getNode("rA");
+    Assert.assertSame(eventIndex.getAffectedEvents(reaction, model.getIndex()), eventIndex.getAffectedEvents(reaction, model.getIndex()));
+  }
+}
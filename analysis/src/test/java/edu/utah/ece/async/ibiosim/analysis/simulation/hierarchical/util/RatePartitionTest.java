@@ -0,0 +1,185 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.DenseState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+
+public class RatePartitionTest {
+
+  @Test
+  public void test_independent_models() {
+    List<HierarchicalModel> models = models(3);
+    for (HierarchicalModel model : models) {
+      addReaction(model, species(model.getIndex()), species(model.getIndex()));
+    }
+    RatePartition partition = new RatePartition(models);
+    Assert.assertEquals(3, partition.getNumOfGroups());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertArrayEquals(new HierarchicalModel[] { models.get(i) }, partition.getGroup(i));
+    }
+  }
+
+  @Test
+  public void test_shared_species_are_merged_transitively() {
+    List<HierarchicalModel> models = models(6);
+    // 0 - 2 share A, 2 - 4 share B and 1 - 5 share C, while 3 writes only its own species
+    SpeciesNode a = shared(0, 2);
+    SpeciesNode b = shared(2, 4);
+    SpeciesNode c = shared(1, 5);
+    addReaction(models.get(0), a, species(0));
+    addReaction(models.get(1), species(1), c);
+    addReaction(models.get(2), a, b);
+    addReaction(models.get(3), species(3), species(3));
+    addReaction(models.get(4), species(4), b);
+    addReaction(models.get(5), c, null);
+
+    RatePartition partition = new RatePartition(models);
+    Assert.assertEquals(3, partition.getNumOfGroups());
+    Assert.assertEquals(Arrays.asList(models.get(0), models.get(2), models.get(4)), Arrays.asList(partition.getGroup(0)));
+    Assert.assertEquals(Arrays.asList(models.get(1), models.get(5)), Arrays.asList(partition.getGroup(1)));
+    Assert.assertEquals(Arrays.asList(models.get(3)), Arrays.asList(partition.getGroup(2)));
+  }
+
+  @Test
+  public void test_merge_keeps_serial_order() {
+    List<HierarchicalModel> models = models(5);
+    // the last model joins two groups that were built separately
+    SpeciesNode a = shared(0, 4);
+    SpeciesNode b = shared(2, 4);
+    addReaction(models.get(0), a, null);
+    addReaction(models.get(1), species(1), null);
+    addReaction(models.get(2), b, null);
+    addReaction(models.get(3), species(3), null);
+    addReaction(models.get(4), a, b);
+
+    RatePartition partition = new RatePartition(models);
+    Assert.assertEquals(3, partition.getNumOfGroups());
+    Assert.assertEquals(Arrays.asList(models.get(0), models.get(2), models.get(4)), Arrays.asList(partition.getGroup(0)));
+    Assert.assertEquals(Arrays.asList(models.get(1)), Arrays.asList(partition.getGroup(1)));
+    Assert.assertEquals(Arrays.asList(models.get(3)), Arrays.asList(partition.getGroup(2)));
+  }
+
+  @Test
+  public void test_small_models_are_serial() {
+    List<HierarchicalModel> models = models(4);
+    for (HierarchicalModel model : models) {
+      addReaction(model, species(model.getIndex()), null);
+    }
+    Assert.assertFalse(new RatePartition(models).isParallel());
+  }
+
+  @Test
+  public void test_parallel_propensities() {
+    Assume.assumeTrue(ForkJoinPool.getCommonPoolParallelism() > 1);
+    List<HierarchicalModel> models = largeModels();
+    RatePartition partition = new RatePartition(models);
+    Assert.assertTrue(partition.isParallel());
+    Assert.assertEquals(models.size(), partition.getNumOfGroups());
+
+    partition.computePropensities();
+    for (HierarchicalModel model : models) {
+      int index = model.getIndex();
+      List<ReactionNode> reactions = model.getListOfReactions();
+      for (int i = 0; i < reactions.size(); i++) {
+        Assert.assertEquals(rate(index, i), reactions.get(i).getValue(index), 0);
+      }
+    }
+  }
+
+  @Test
+  public void test_random_rates_are_serial() {
+    List<HierarchicalModel> models = largeModels();
+    HierarchicalNode uniform = new HierarchicalNode(Type.FUNCTION);
+    uniform.addChild(new HierarchicalNode(0));
+    uniform.addChild(new HierarchicalNode(1));
+    models.get(0).getListOfReactions().get(0).setForwardRate(uniform);
+    RatePartition partition = new RatePartition(models);
+    Assert.assertFalse(partition.isParallel());
+    Assert.assertEquals(models.size(), partition.getNumOfGroups());
+  }
+
+  private static List<HierarchicalModel> largeModels() {
+    List<HierarchicalModel> models = models(4);
+    int numOfReactions = RatePartition.MIN_PARALLEL_REACTIONS / models.size();
+    for (HierarchicalModel model : models) {
+      int index = model.getIndex();
+      for (int i = 0; i < numOfReactions; i++) {
+        SpeciesNode reactant = species(index);
+        reactant.getState().getChild(index).setStateValue(i);
+        ReactionNode reaction = addReaction(model, reactant, null);
+        HierarchicalNode rate = new HierarchicalNode(Type.TIMES);
+        rate.addChild(new HierarchicalNode(index + 1));
+        rate.addChild(reactant);
+        reaction.setForwardRate(rate);
+      }
+    }
+    return models;
+  }
+
+  private static double rate(int index, int reaction) {
+    return (index + 1) * reaction;
+  }
+
+  private static List<HierarchicalModel> models(int n) {
+    List<HierarchicalModel> models = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      models.add(new HierarchicalModel("m" + i, i));
+    }
+    return models;
+  }
+
+  private static SpeciesNode species(int index) {
+    SpeciesNode species = new SpeciesNode("s" + index);
+    DenseState state = new DenseState();
+    state.addState(index, new ValueState(0));
+    species.setState(state);
+    return species;
+  }
+
+  // NOTE: the models share the state of the species as they would through a replacement
+  private static SpeciesNode shared(int... indices) {
+    SpeciesNode species = new SpeciesNode("shared");
+    DenseState state = new DenseState();
+    HierarchicalState value = new ValueState(0);
+    for (int index : indices) {
+      state.addState(index, value);
+    }
+    species.setState(state);
+    return species;
+  }
+
+  private static ReactionNode addReaction(HierarchicalModel model, SpeciesNode reactant, SpeciesNode product) {
+    int index = model.getIndex();
+    ReactionNode reaction = new ReactionNode("r" + model.getListOfReactions().size());
+    DenseState state = new DenseState();
+    state.addState(index, new ValueState(0));
+    reaction.setState(state);
+    reaction.addReactant(reference(reactant));
+    if (product != null) {
+      reaction.addProduct(reference(product));
+    }
+    model.addReaction(reaction);
+    return reaction;
+  }
+
+  private static SpeciesReferenceNode reference(SpeciesNode species) {
+    SpeciesReferenceNode reference = new SpeciesReferenceNode(species);
+    reference.setState(new ValueState(1));
+    return reference;
+  }
+}
@@ -0,0 +1,89 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class SymbolicJacobianTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = SymbolicJacobianTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+  }
+
+  @Test
+  public void test_decay() {
+    assertMatchesFiniteDifferences("decay-sbml-l3v2.xml");
+  }
+
+  @Test
+  public void test_reversible() {
+    assertMatchesFiniteDifferences("reversible-sbml-l3v2.xml");
+  }
+
+  @Test
+  public void test_rate_rule_reading_flux() {
+    assertMatchesFiniteDifferences("raterule-flux-sbml-l3v2.xml");
+  }
+
+  private void assertMatchesFiniteDifferences(String model) {
+    properties.setModelFile(model);
+    try {
+      HierarchicalODERKSimulator sim = new HierarchicalODERKSimulator(properties, false);
+      sim.setParallelRates(false);
+      sim.initialize(0);
+      double[] values = sim.getStateValues().clone();
+      int n = values.length;
+      SymbolicJacobian jacobian = new SymbolicJacobian(sim.getListOfHierarchicalModels(), sim.getCurrentTime(), n);
+      Assert.assertTrue(jacobian.isSupported());
+
+      double[][] expected = new double[n][n];
+      double[] upper = new double[n];
+      double[] lower = new double[n];
+      for (int j = 0; j < n; j++) {
+        double value = values[j];
+        double step = 1e-6 * Math.max(Math.abs(value), 1);
+        values[j] = value + step;
+        sim.computeDerivatives(0, values, upper);
+        values[j] = value - step;
+        sim.computeDerivatives(0, values, lower);
+        values[j] = value;
+        for (int i = 0; i < n; i++) {
+          expected[i][j] = (upper[i] - lower[i]) / (2 * step);
+        }
+      }
+
+      sim.computeDerivatives(0, values, upper);
+      jacobian.compute();
+      double[][] actual = new double[n][n];
+      int[] rowPointers = jacobian.getRowPointers();
+      int[] columnIndices = jacobian.getColumnIndices();
+      double[] entries = jacobian.getValues();
+      for (int i = 0; i < n; i++) {
+        for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+          actual[i][columnIndices[k]] = entries[k];
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          Assert.assertEquals("d" + i + "/d" + j, expected[i][j], actual[i][j], 1e-6 * Math.max(Math.abs(expected[i][j]), 1));
+        }
+      }
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
+import edu.utah.ece.async.ibiosim.dataModels.util.Message;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObserver;
+
+public class CompiledModelTest {
+  private AnalysisProperties properties;
+
+  @Before
+  public void setUp() throws Exception {
+    String root = CompiledModelTest.class.getResource("/edu/utah/ece/async/ibiosim/analysis/simulation/hierarchical/").getPath();
+    properties = new AnalysisProperties("", "", root, false);
+    properties.setModelFile("decay-sbml-l3v2.xml");
+    properties.getSimulationProperties().setTimeLimit(10);
+  }
+
+  @Test
+  public void test_copy_properties() {
+    AnalysisProperties copy = new AnalysisProperties(properties);
+    copy.getSimulationProperties().setTimeLimit(1);
+    copy.getSimulationProperties().setRndSeed(7);
+    Assert.assertEquals(10, properties.getSimulationProperties().getTimeLimit(), 0);
+    Assert.assertEquals(314159, properties.getSimulationProperties().getRndSeed());
+    Assert.assertEquals(properties.getFilename(), copy.getFilename());
+    Assert.assertEquals(properties.getSim(), copy.getSim());
+  }
+
+  @Test
+  public void test_copy_keeps_observers() {
+    final List<String> logged = new ArrayList<String>();
+    properties.addObserver(new BioObserver() {
+      @Override
+      public void update(Message message) {
+        logged.add(message.getMessage());
+      }
+    });
+    AnalysisProperties copy = new AnalysisProperties(properties);
+    Message message = new Message();
+    message.setLog("from copy");
+    copy.notifyObservers(message);
+    Assert.assertEquals(1, logged.size());
+    Assert.assertEquals("from copy", logged.get(0));
+  }
+
+  @Test
+  public void test_with_properties() {
+    try {
+      CompiledModel compiledModel = CompiledModel.compile(properties);
+      AnalysisProperties copy = new AnalysisProperties(properties);
+      copy.getSimulationProperties().setTimeLimit(0);
+      CompiledModel view = compiledModel.withProperties(copy);
+      Assert.assertSame(compiledModel.getTopModel(), view.getTopModel());
+      Assert.assertSame(compiledModel.getLock(), view.getLock());
+      Assert.assertSame(copy, view.getProperties());
+
+      // The simulator only sees the time limit of its own properties.
+      HierarchicalSSADirectSimulator sim = new HierarchicalSSADirectSimulator(view, false);
+      sim.simulate();
+      Assert.assertEquals(0, sim.getCurrentTime().getState().getValue(), 0);
+      Assert.assertEquals(1, sim.getTopLevelValue("S1"), 0);
+      Assert.assertEquals(10, properties.getSimulationProperties().getTimeLimit(), 0);
+    }
+    catch (IOException | XMLStreamException | BioSimException e) {
+      fail("Could not initialize");
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.sbml.jsbml.SBMLDocument;
+import org.sbolstandard.core2.ModuleDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
+
+/**
+ * Converts many SBML and SBOL files in one JVM. Each input file is converted on its own thread:
+ * SBML files are converted to SBOL and SBOL files are converted to SBML. All conversions share a 
+ * {@link ConversionCache}, so the referenced SBOL library is read once and ModuleDefinitions that 
+ * occur as submodules in several designs are converted once.
+ * 
+ * The SBOL produced for an input file named name.xml is written to outputDir/name.sbol. The SBML 
+ * models produced for an input file named name.sbol are written to the directory outputDir/name, 
+ * since every design carries its own copies of the submodel files it references.
+ *
+ * @author Tramy Nguyen
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BatchConverter 
+{
+	/**
+	 * The default number of entries of each kind kept by the shared cache.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	private final ConversionCache cache;
+	private final int numThreads;
+
+	private String URIPrefix = "";
+	private String externalSBMLPath = "";
+	private HashSet<String> ref_sbolInputFilePath = new HashSet<String>();
+
+	/**
+	 * Create a batch converter that uses a cache of the default size and one thread per available processor.
+	 */
+	public BatchConverter()
+	{
+		this(new ConversionCache(DEFAULT_CACHE_SIZE), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a batch converter.
+	 * 
+	 * @param cache - The cache shared by all conversions.
+	 * @param numThreads - The number of files to convert at the same time.
+	 */
+	public BatchConverter(ConversionCache cache, int numThreads)
+	{
+		if (numThreads < 1)
+		{
+			throw new IllegalArgumentException("The number of threads must be positive: " + numThreads);
+		}
+		this.cache = cache;
+		this.numThreads = numThreads;
+	}
+
+	public ConversionCache getCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * @param URIPrefix - The SBOL URI prefix used for converted objects.
+	 */
+	public void setURIPrefix(String URIPrefix)
+	{
+		this.URIPrefix = URIPrefix;
+	}
+
+	/**
+	 * @param externalSBMLPath - The full path of external SBML files to be referenced in the SBML2SBOL conversion.
+	 */
+	public void setExternalSBMLPath(String externalSBMLPath)
+	{
+		this.externalSBMLPath = externalSBMLPath;
+	}
+
+	/**
+	 * @param ref_sbolInputFilePath - The set of SBOL files to reference in the SBML2SBOL conversion.
+	 */
+	public void setReferenceSBOLFiles(HashSet<String> ref_sbolInputFilePath)
+	{
+		this.ref_sbolInputFilePath = ref_sbolInputFilePath;
+	}
+
+	/**
+	 * Expand the given paths into the list of files to convert. Directories are replaced by the files they contain.
+	 * 
+	 * @param paths - Files and directories.
+	 * @return The files to convert.
+	 */
+	public static List<String> listInputFiles(List<String> paths)
+	{
+		List<String> inputFiles = new ArrayList<String>();
+		for (String path : paths)
+		{
+			File file = new File(path);
+			if (file.isDirectory())
+			{
+				for (File eachFile : file.listFiles())
+				{
+					if (eachFile.isFile())
+					{
+						inputFiles.add(eachFile.getAbsolutePath());
+					}
+				}
+			}
+			else
+			{
+				inputFiles.add(file.getAbsolutePath());
+			}
+		}
+		return inputFiles;
+	}
+
+	/**
+	 * Convert the given files in parallel. A file that fails to convert is reported and does not stop the other conversions.
+	 * 
+	 * @param inputFiles - The full paths of the SBML and SBOL files to convert.
+	 * @param outputDir - The directory to write the converted files to.
+	 * @return The number of files that failed to convert.
+	 */
+	public int convert(List<String> inputFiles, final String outputDir)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, Math.max(inputFiles.size(), 1)));
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (final String inputFile : inputFiles)
+		{
+			results.add(executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					if (SBMLutilities.isSBMLFile(inputFile))
+					{
+						convertSBML(inputFile, outputDir);
+					}
+					else
+					{
+						convertSBOL(inputFile, outputDir);
+					}
+					return null;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		int failed = 0;
+		for (int i = 0; i < results.size(); i++)
+		{
+			try
+			{
+				results.get(i).get();
+			}
+			catch (ExecutionException e)
+			{
+				failed++;
+				System.err.println("ERROR: Unable to convert " + inputFiles.get(i));
+				e.getCause().printStackTrace();
+			}
+			catch (InterruptedException e)
+			{
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				return failed + results.size() - i;
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Convert the given SBML file to SBOL.
+	 * 
+	 * @param inputFile - The full path of the SBML file.
+	 * @param outputDir - The directory to write the SBOL file to.
+	 * @throws Exception - The conversion failed.
+	 */
+	private void convertSBML(String inputFile, String outputDir) throws Exception
+	{
+		SBOLDocument sbol_Library = new SBOLDocument();
+		sbol_Library.setDefaultURIprefix(URIPrefix);
+		if (ref_sbolInputFilePath != null && !ref_sbolInputFilePath.isEmpty())
+		{
+			sbol_Library = cache.getSBOLLibrary(ref_sbolInputFilePath, URIPrefix);
+		}
+		SBMLDocument inputSBMLDoc = SBMLutilities.readSBML(inputFile, null, null);
+		SBOLDocument outSBOLDoc = new SBOLDocument();
+		SBML2SBOL.convert_SBML2SBOL(outSBOLDoc, externalSBMLPath, inputSBMLDoc, inputFile, sbol_Library, URIPrefix);
+		outSBOLDoc.write(outputDir + File.separator + getBaseName(inputFile) + ".sbol", SBOLDocument.RDF);
+	}
+
+	/**
+	 * Convert the given SBOL file to SBML. All root ModuleDefinitions are converted.
+	 * 
+	 * @param inputFile - The full path of the SBOL file.
+	 * @param outputDir - The directory to create the SBML output directory of this file in.
+	 * @throws Exception - The conversion failed.
+	 */
+	private void convertSBOL(String inputFile, String outputDir) throws Exception
+	{
+		File projectDirectory = new File(outputDir, getBaseName(inputFile));
+		if (!projectDirectory.isDirectory() && !projectDirectory.mkdirs())
+		{
+			throw new IOException("Unable to create directory " + projectDirectory.getAbsolutePath());
+		}
+		SBOLDocument sbolDoc = ConversionCache.readSBOLFile(inputFile, URIPrefix);
+		for (ModuleDefinition moduleDef : sbolDoc.getRootModuleDefinitions())
+		{
+			HashMap<String,BioModel> models = SBOL2SBML.generateModel(projectDirectory.getAbsolutePath(), moduleDef, sbolDoc, cache);
+			SBMLutilities.exportMultSBMLFile(models, projectDirectory.getAbsolutePath());
+		}
+	}
+
+	private static String getBaseName(String inputFile)
+	{
+		String name = new File(inputFile).getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.conversion;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sbolstandard.core2.SBOLConversionException;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.SBOLReader;
+import org.sbolstandard.core2.SBOLValidationException;
+
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
+import edu.utah.ece.async.ibiosim.dataModels.sbol.SBOLUtility;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.SBOLException;
+
+/**
+ * A bounded cache shared by conversions that run in the same JVM. 
+ * Parsed SBOL libraries are kept keyed by the set of files they were read from (and the 
+ * files' modification times), and the SBML models generated for SBOL ModuleDefinitions are 
+ * kept keyed by the identity URI (and therefore version) of the ModuleDefinition, so parts 
+ * that are shared between designs are only read and converted once.
+ * 
+ * Cached SBOL libraries are handed out as is and must only be read by callers. Cached 
+ * BioModels are copied on the way in and on the way out, so each conversion owns the 
+ * models it is given and may save or modify them.
+ * 
+ * All methods are thread safe. 
+ *
+ * @author Tramy Nguyen
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ConversionCache 
+{
+	private final LinkedHashMap<String, SBOLDocument> libraries;
+	private final LinkedHashMap<URI, HashMap<String, BioModel>> models;
+
+	private int libraryHits, libraryMisses, modelHits, modelMisses;
+
+	/**
+	 * Create a cache that holds at most the given number of SBOL libraries and 
+	 * the given number of generated ModuleDefinition models. When full, the least 
+	 * recently used entry is evicted.
+	 * 
+	 * @param capacity - The maximum number of entries of each kind to keep.
+	 */
+	public ConversionCache(final int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+		}
+		libraries = new LinkedHashMap<String, SBOLDocument>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SBOLDocument> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+		models = new LinkedHashMap<URI, HashMap<String, BioModel>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<URI, HashMap<String, BioModel>> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Read in the given SBOL file. libSBOLj keeps the reader settings in static fields, so all 
+	 * reads made through this cache are serialized with each other.
+	 * 
+	 * @param filePath - Full path to the given SBOL file.
+	 * @param defaultURIPrefix - The default URI prefix to set the SBOL document when reading in the SBOL file.
+	 * @return The SBOLDocument that was created from the SBOL file.
+	 * @throws FileNotFoundException - Unable to find the SBOL file.
+	 * @throws SBOLValidationException - SBOL Exception occurred when reading the SBOL file.
+	 * @throws IOException - Input Exception occurred.
+	 * @throws SBOLConversionException - SBOL conversion exception occurred when reading the SBOL file.
+	 * @throws SBOLException - The SBOL file produced a null SBOLDocument.
+	 */
+	public static SBOLDocument readSBOLFile(String filePath, String defaultURIPrefix) throws FileNotFoundException, SBOLValidationException, IOException, SBOLConversionException, SBOLException
+	{
+		synchronized (SBOLReader.class)
+		{
+			return SBOLUtility.loadSBOLFile(filePath, defaultURIPrefix);
+		}
+	}
+
+	/**
+	 * Get the SBOL library made up of all SBOL objects in the given files. The library is 
+	 * read from disk only when it is not cached or when one of the files has changed since it 
+	 * was cached.
+	 * 
+	 * @param sbolFilePaths - The set of SBOL files that make up the library.
+	 * @param sbolURIPrefix - The SBOL URI prefix that the library will contain.
+	 * @return The SBOL library. It is shared with other callers and must not be modified.
+	 * @throws FileNotFoundException - Unable to find referenced SBOL files. 
+	 * @throws SBOLValidationException - SBOL Exception occurred when loading referenced SBOL files
+	 * @throws IOException - Input Exception occurred. 
+	 * @throws SBOLConversionException - SBOL conversion exception occurred when reading in the referenced SBOL files.
+	 * @throws SBOLException - One of the SBOL files produced a null SBOLDocument.
+	 */
+	public SBOLDocument getSBOLLibrary(Set<String> sbolFilePaths, String sbolURIPrefix) throws FileNotFoundException, SBOLValidationException, IOException, SBOLConversionException, SBOLException
+	{
+		List<String> paths = new ArrayList<String>(sbolFilePaths);
+		Collections.sort(paths);
+		StringBuilder key = new StringBuilder(sbolURIPrefix);
+		for (String path : paths)
+		{
+			key.append('\n').append(path).append('@').append(new File(path).lastModified());
+		}
+
+		synchronized (libraries)
+		{
+			SBOLDocument library = libraries.get(key.toString());
+			if (library != null)
+			{
+				libraryHits++;
+				return library;
+			}
+			libraryMisses++;
+			library = new SBOLDocument();
+			library.setDefaultURIprefix(sbolURIPrefix);
+			for (String path : paths)
+			{
+				library.createCopy(readSBOLFile(path, sbolURIPrefix));
+			}
+			libraries.put(key.toString(), library);
+			return library;
+		}
+	}
+
+	/**
+	 * Get copies of the models generated for the ModuleDefinition with the given identity.
+	 * 
+	 * @param moduleDefURI - The identity of the converted ModuleDefinition.
+	 * @param projectDirectory - The location the copied models belong to.
+	 * @return The models keyed by their SBML model id, or null if the ModuleDefinition has not been converted.
+	 */
+	public HashMap<String, BioModel> getModels(URI moduleDefURI, String projectDirectory)
+	{
+		synchronized (models)
+		{
+			HashMap<String, BioModel> cached = models.get(moduleDefURI);
+			if (cached == null)
+			{
+				modelMisses++;
+				return null;
+			}
+			modelHits++;
+			return copyModels(cached, projectDirectory);
+		}
+	}
+
+	/**
+	 * Store copies of the models generated for the ModuleDefinition with the given identity.
+	 * 
+	 * @param moduleDefURI - The identity of the converted ModuleDefinition.
+	 * @param generatedModels - The models generated for the ModuleDefinition and its submodules, keyed by their SBML model id.
+	 */
+	public void putModels(URI moduleDefURI, HashMap<String, BioModel> generatedModels)
+	{
+		HashMap<String, BioModel> copies = copyModels(generatedModels, null);
+		synchronized (models)
+		{
+			if (!models.containsKey(moduleDefURI))
+			{
+				models.put(moduleDefURI, copies);
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached libraries and models.
+	 */
+	public void clear()
+	{
+		synchronized (libraries)
+		{
+			libraries.clear();
+		}
+		synchronized (models)
+		{
+			models.clear();
+		}
+	}
+
+	public int getLibraryHits()
+	{
+		synchronized (libraries)
+		{
+			return libraryHits;
+		}
+	}
+
+	public int getLibraryMisses()
+	{
+		synchronized (libraries)
+		{
+			return libraryMisses;
+		}
+	}
+
+	public int getModelHits()
+	{
+		synchronized (models)
+		{
+			return modelHits;
+		}
+	}
+
+	public int getModelMisses()
+	{
+		synchronized (models)
+		{
+			return modelMisses;
+		}
+	}
+
+	private static HashMap<String, BioModel> copyModels(HashMap<String, BioModel> source, String projectDirectory)
+	{
+		HashMap<String, BioModel> copies = new HashMap<String, BioModel>();
+		for (Map.Entry<String, BioModel> entry : source.entrySet())
+		{
+			BioModel model = entry.getValue();
+			BioModel copy = new BioModel(projectDirectory != null ? projectDirectory : model.getPath());
+			copy.setSBMLDocument(model.getSBMLDocument().clone());
+			copy.setSBMLFile(model.getSBMLFile());
+			copy.createCompPlugin();
+			copy.createLayoutPlugin();
+			copy.createFBCPlugin();
+			copies.put(entry.getKey(), copy);
+		}
+		return copies;
+	}
+}
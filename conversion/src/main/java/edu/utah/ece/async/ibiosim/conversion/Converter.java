@@ -18,6 +18,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
@@ -72,6 +73,7 @@ public class Converter {
 		System.err.println();
 		System.err.println("Options:");
 		System.err.println("\t-b  check best practices");
+		System.err.println("\t-batch  convert every given input file, or every file in a given input directory, in parallel. Requires -oDir and -p.");
 		System.err.println("\t-cf The name of the file that will be produced to hold the result of the second SBOL file, if SBOL file diff was selected.");
 		System.err.println("\t-d  display detailed error trace");
 		System.err.println("\t-e  The second SBOL file to compare to the main SBOL file.");
@@ -89,6 +91,7 @@ public class Converter {
 		System.err.println("\t-rsbol  The full path of external SBOL files to be referenced in the SBML2SBOL conversion");
 		System.err.println("\t-s  <topLevelURI> select only this object and those it references");
 		System.err.println("\t-t  uses types in URIs");
+		System.err.println("\t-threads  <number> of files to convert at the same time in batch mode (default=number of processors)");
 		System.err.println("\t-v  <version> used for converted objects");
 		System.exit(1);
 	}
@@ -114,6 +117,7 @@ public class Converter {
 		boolean typesInURI = false; //-t
 		boolean isDiffFile = false; //indicate if diffing of SBOL files are done
 		boolean isValidation = false; //indicate if only validate SBOL files
+		boolean isBatch = false; //-batch
 
 		String compFileResult = ""; //-cf
 		String compareFile = ""; //-e
@@ -125,6 +129,8 @@ public class Converter {
 		String externalSBOLPath = ""; //-rsbol
 		String topLevelURIStr = ""; //-s
 		String version = null; //-v
+		int numThreads = Runtime.getRuntime().availableProcessors(); //-threads
+		List<String> inputFiles = new ArrayList<String>(); //input file names for batch conversion
 
 		HashSet<String> ref_sbolInputFilePath = new HashSet<String>(); //rsbol
 
@@ -138,6 +144,9 @@ public class Converter {
 			case "-b":
 				bestPractice = true;
 				break;	
+			case "-batch":
+				isBatch = true;
+				break;
 			case "-d":
 				showDetail = true;
 				break;
@@ -258,6 +267,20 @@ public class Converter {
 				}
 				externalSBOLPath = args[++index];
 				break;
+			case "-threads":
+				if(index+1 >= args.length || (!args[index+1].isEmpty() && args[index+1].charAt(0)=='-'))
+				{
+					usage();
+				}
+				try
+				{
+					numThreads = Integer.parseInt(args[++index]);
+				}
+				catch (NumberFormatException e)
+				{
+					usage();
+				}
+				break;
 			case "-v":
 				if(index+1 >= args.length || (!args[index+1].isEmpty() && args[index+1].charAt(0)=='-'))
 				{
@@ -267,9 +290,33 @@ public class Converter {
 				break;
 			default:
 				fullInputFileName = args[index];
+				inputFiles.add(args[index]);
 			}
 		}
 
+		if(isBatch)
+		{
+			if(inputFiles.isEmpty() || outputDir.isEmpty() || URIPrefix.isEmpty() || numThreads < 1)
+			{
+				System.err.println("ERROR: Batch conversion requires input files, an output directory, an SBOL URI prefix, and a positive number of threads.");
+				usage();
+			}
+			BatchConverter batchConverter = new BatchConverter(new ConversionCache(BatchConverter.DEFAULT_CACHE_SIZE), numThreads);
+			batchConverter.setURIPrefix(URIPrefix);
+			batchConverter.setExternalSBMLPath(externalSBMLPath);
+			if(!externalSBOLPath.isEmpty())
+			{
+				batchConverter.setReferenceSBOLFiles(SBOLUtility.getSBOLFilesFromPath(externalSBOLPath));
+			}
+			int failed = batchConverter.convert(BatchConverter.listInputFiles(inputFiles), outputDir);
+			if(failed > 0)
+			{
+				System.err.println("ERROR: " + failed + " file(s) failed to convert");
+				System.exit(1);
+			}
+			return;
+		}
+
 		/* Note: Check all required field has been set. If not, stop user from continuing.*/
 		boolean inputIsSBOL = false; 
 		boolean inputIsSBML = false;
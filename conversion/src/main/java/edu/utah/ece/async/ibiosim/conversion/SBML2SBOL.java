@@ -133,6 +133,28 @@ public class SBML2SBOL {
 			SBML2SBOL.loadSBOLFiles(sbol_Library, sbolFiles, sbolURIPrefix);
 		}
 
+		return convert_SBML2SBOL(sbolDoc, externalSBMLPath, sbmlDoc, fileName, sbol_Library, sbolURIPrefix);
+	}
+
+	/**
+	 * Convert the given SBML Document to an SBOL Document, referencing SBOL objects from an already loaded SBOL library.
+	 * The library is only read from, so the same library can be shared by conversions running in parallel.
+	 * 
+	 * @param sbolDoc - The SBOLDocument to store the converted SBML content to.
+	 * @param externalSBMLPath - The full path of external SBML files to be referenced in the SBML2SBOL conversion
+	 * @param sbmlDoc - The SBML document to be converted.
+	 * @param fileName - The name of the input SBML file
+	 * @param sbol_Library - The SBOL document that contains all SBOL objects referenced in conversion. 
+	 * @param sbolURIPrefix - The URI prefix to be set on the SBOLDocument.
+	 * @throws SBOLValidationException - SBOL Exception occurred when copying referenced SBOL objects
+	 * @throws XMLStreamException - Invalid XML file.
+	 * @throws IOException - Input Exception occurred. 
+	 * @return URI of the converted SBOL object
+	 */
+	public static URI convert_SBML2SBOL(SBOLDocument sbolDoc, String externalSBMLPath, 
+			SBMLDocument sbmlDoc, String fileName, SBOLDocument sbol_Library, String sbolURIPrefix) 
+					throws SBOLValidationException, XMLStreamException, IOException {
+
 		sbolDoc.setDefaultURIprefix(sbolURIPrefix);
 		sbolDoc.setComplete(false);
 
@@ -271,6 +271,27 @@ public class SBOL2SBML {
 	 */
     
 	public static HashMap<String,BioModel> generateModel(String projectDirectory, ModuleDefinition moduleDef, SBOLDocument sbolDoc) throws XMLStreamException, IOException, BioSimException, SBOLValidationException {
+		return generateModel(projectDirectory, moduleDef, sbolDoc, null);
+	}
+
+	/**
+	 * Perform conversion from the given SBOL ModuleDefinition to SBML models, as in 
+	 * {@link #generateModel(String, ModuleDefinition, SBOLDocument)}, reusing the models of any submodule 
+	 * whose ModuleDefinition was already converted into the given cache. Submodules converted here are added 
+	 * to the cache. Note that no SBOL Model is created in the SBOL document for submodules taken from the cache.
+	 * 
+	 * @param projectDirectory - The location to generate the SBML model
+	 * @param moduleDef - the current ModuleDefinition to convert all SBML object within the ModuleDefinition to its equivalent SBML component.
+	 * @param sbolDoc - The SBOL document to be converted to its equivalent SBML model.
+	 * @param modelCache - The cache of converted submodels, or null to convert every submodel.
+	 * @return The list of SBML models converted from SBOL ModuleDefinition. Each of the converted SBML model are stored within iBioSim's BioModel object.
+	 * @throws XMLStreamException - Invalid XML file occurred
+	 * @throws IOException - Unable to read/write file for SBOL2SBML converter.
+	 * @throws BioSimException - if something is wrong with the SBML model.
+	 * @throws SBOLValidationException - thrown when there is an SBOL validation error
+	 */
+	public static HashMap<String,BioModel> generateModel(String projectDirectory, ModuleDefinition moduleDef, SBOLDocument sbolDoc, 
+			ConversionCache modelCache) throws XMLStreamException, IOException, BioSimException, SBOLValidationException {
 
 		HashMap<String,BioModel> models = new HashMap<String,BioModel>();
 
@@ -443,12 +464,18 @@ public class SBOL2SBML {
 			ModuleDefinition subModuleDef = sbolDoc.getModuleDefinition(subModule.getDefinitionURI());
 			ModuleDefinition subModuleDefFlatt = MDFlattener(sbolDoc, subModuleDef);
 			BioModel subTargetModel = new BioModel(projectDirectory);
+			HashMap<String,BioModel> cachedModels = null;
 			if (subTargetModel.load(projectDirectory + File.separator + getDisplayID(subModuleDefFlatt) + ".xml")) {
 				generateSubModel(projectDirectory, subModule, resultMD, sbolDoc, subTargetModel, targetModel);
 			} if ((subTargetModel=models.get(getDisplayID(subModuleDefFlatt)))!=null) {
 				generateSubModel(projectDirectory, subModule, resultMD, sbolDoc, subTargetModel, targetModel);
+			} else if (modelCache != null && (cachedModels = modelCache.getModels(subModuleDef.getIdentity(), projectDirectory))!=null) {
+				generateSubModel(projectDirectory, subModule, resultMD, sbolDoc, cachedModels.get(getDisplayID(subModuleDefFlatt)), targetModel);
+				for (String key : cachedModels.keySet()) {
+					models.put(key,cachedModels.get(key));
+				}
 			} else {
-				HashMap<String,BioModel> subModels = generateSubModel(projectDirectory, subModule, resultMD, sbolDoc, targetModel);
+				HashMap<String,BioModel> subModels = generateSubModel(projectDirectory, subModule, resultMD, sbolDoc, targetModel, modelCache);
 				for (String key : subModels.keySet()) {
 					models.put(key,subModels.get(key));
 				}
@@ -502,6 +529,7 @@ public class SBOL2SBML {
 	 * @param moduleDef - The SBOL ModuleDefinition that contains the referenced submodules.
 	 * @param sbolDoc - The SBOL Document that contains the SBOL objects to convert to SBML model.
 	 * @param targetModel - The SBML "top level" model that will referenced all converted SBML submodels. 
+	 * @param modelCache - The cache of converted submodels, or null if none is used.
 	 * @return
 	 * @throws XMLStreamException - Invalid XML file.
 	 * @throws IOException - Unable to read/write file for SBOL2SBML converter.
@@ -511,10 +539,13 @@ public class SBOL2SBML {
 	 * @throws SBOLConversionException 
 	 */
 	private static HashMap<String,BioModel> generateSubModel(String projectDirectory, Module subModule, ModuleDefinition moduleDef, SBOLDocument sbolDoc, 
-			BioModel targetModel) throws XMLStreamException, IOException, BioSimException, SBOLValidationException {
+			BioModel targetModel, ConversionCache modelCache) throws XMLStreamException, IOException, BioSimException, SBOLValidationException {
 		ModuleDefinition subModuleDef = sbolDoc.getModuleDefinition(subModule.getDefinitionURI());
 		//convert each submodules into its own SBML model stored in their own .xml file.
-		HashMap<String,BioModel> subModels = generateModel(projectDirectory, subModuleDef, sbolDoc);
+		HashMap<String,BioModel> subModels = generateModel(projectDirectory, subModuleDef, sbolDoc, modelCache);
+		if (modelCache != null) {
+			modelCache.putModels(subModuleDef.getIdentity(), subModels);
+		}
 		BioModel subTargetModel = subModels.get(getDisplayID(subModuleDef));
 		
 		//Perform replacement and replacedBy with each subModules to its referenced ModuleDefinition.
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.conversion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that converting files in parallel through the shared cache produces the same SBML as 
+ * converting them one at a time.
+ *
+ * @author Tramy Nguyen
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BatchConverterTest extends ConversionAbstractTests {
+	
+	@Rule
+	public TemporaryFolder outputDir = new TemporaryFolder();
+	
+	//NOTE: both files contain the same ModuleDefinitions, so the second conversion can reuse the first one's submodels
+	private List<String> inputFiles() {
+		return BatchConverter.listInputFiles(Arrays.asList(sbolDir + "CRISPR_example.xml", 
+				sbolDir + "meherGolden_RepressionModel.xml"));
+	}
+	
+	@Test
+	public void testSequentialConversionReusesSubmodels() throws IOException {
+		BatchConverter converter = new BatchConverter(new ConversionCache(BatchConverter.DEFAULT_CACHE_SIZE), 1);
+		assertEquals(0, converter.convert(inputFiles(), outputDir.newFolder().getAbsolutePath()));
+		assertTrue(converter.getCache().getModelHits() > 0);
+	}
+	
+	@Test
+	public void testParallelMatchesSequential() throws IOException {
+		File sequentialDir = outputDir.newFolder();
+		File parallelDir = outputDir.newFolder();
+		assertEquals(0, new BatchConverter(new ConversionCache(BatchConverter.DEFAULT_CACHE_SIZE), 1)
+				.convert(inputFiles(), sequentialDir.getAbsolutePath()));
+		assertEquals(0, new BatchConverter(new ConversionCache(BatchConverter.DEFAULT_CACHE_SIZE), 4)
+				.convert(inputFiles(), parallelDir.getAbsolutePath()));
+		
+		for (String projectName : new String[] {"CRISPR_example", "meherGolden_RepressionModel"}) {
+			File sequentialProject = new File(sequentialDir, projectName);
+			File parallelProject = new File(parallelDir, projectName);
+			String[] models = sequentialProject.list();
+			Arrays.sort(models);
+			String[] parallelModels = parallelProject.list();
+			Arrays.sort(parallelModels);
+			assertTrue(models.length > 0);
+			assertArrayEquals(models, parallelModels);
+			for (String model : models) {
+				assertEquals(model, new String(Files.readAllBytes(new File(sequentialProject, model).toPath()), "UTF-8"), 
+						new String(Files.readAllBytes(new File(parallelProject, model).toPath()), "UTF-8"));
+			}
+		}
+	}
+	
+	@Test
+	public void testFailedFileDoesNotStopOthers() throws IOException {
+		File missing = new File(outputDir.getRoot(), "missing.sbol");
+		List<String> inputFiles = inputFiles();
+		inputFiles.add(0, missing.getAbsolutePath());
+		File convertedDir = outputDir.newFolder();
+		
+		assertEquals(1, new BatchConverter(new ConversionCache(BatchConverter.DEFAULT_CACHE_SIZE), 2)
+				.convert(inputFiles, convertedDir.getAbsolutePath()));
+		assertTrue(new File(convertedDir, "CRISPR_example").list().length > 0);
+		assertTrue(new File(convertedDir, "meherGolden_RepressionModel").list().length > 0);
+	}
+	
+	@Test
+	public void testListInputFilesExpandsDirectories() throws IOException {
+		File directory = outputDir.newFolder();
+		File first = new File(directory, "a.xml");
+		File second = new File(directory, "b.sbol");
+		assertTrue(first.createNewFile());
+		assertTrue(second.createNewFile());
+		assertTrue(new File(directory, "nested").mkdir());
+		
+		List<String> inputFiles = BatchConverter.listInputFiles(Arrays.asList(directory.getAbsolutePath(), sbolDir + "r1.xml"));
+		assertEquals(3, inputFiles.size());
+		assertTrue(inputFiles.contains(first.getAbsolutePath()));
+		assertTrue(inputFiles.contains(second.getAbsolutePath()));
+		assertTrue(inputFiles.contains(new File(sbolDir + "r1.xml").getAbsolutePath()));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNoThreads() {
+		new BatchConverter(new ConversionCache(1), 0);
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.prefs.Preferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.Event;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.Rule;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SimpleSpeciesReference;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.CompFlattener;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLDocumentCache;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
+
+/**
+ * Checks that the in-memory comp flattener produces the same flat model as the default iBioSim 
+ * flattening routine for the hierarchical SBML files used by the conversion tests.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompFlattenerTests extends ConversionAbstractTests {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private String flattenPreference;
+	
+	@Before
+	public void setUp() throws Exception {
+		//NOTE: flattenModel only uses the iBioSim routine when libsbml flattening is not selected
+		flattenPreference = Preferences.userRoot().get("biosim.general.flatten", null);
+		Preferences.userRoot().put("biosim.general.flatten", "default");
+		for (File file : new File(sbmlDir).listFiles()) {
+			if (file.isFile() && file.getName().endsWith(".xml")) {
+				Files.copy(file.toPath(), new File(folder.getRoot(), file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		SBMLDocumentCache.clear(null);
+	}
+	
+	@After
+	public void tearDown() {
+		if (flattenPreference == null) {
+			Preferences.userRoot().remove("biosim.general.flatten");
+		} else {
+			Preferences.userRoot().put("biosim.general.flatten", flattenPreference);
+		}
+	}
+	
+	private void assertSameAsDefault(String fileName) throws Exception {
+		String path = folder.getRoot().getAbsolutePath();
+		BioModel bioModel = new BioModel(path);
+		bioModel.load(path + File.separator + fileName);
+		
+		SBMLDocument inMemory = new CompFlattener(path).flatten(bioModel.getSBMLDocument(), true);
+		assertNotNull(fileName, inMemory);
+		SBMLDocument flattened = bioModel.flattenModel(true);
+		assertNotNull(fileName, flattened);
+		assertEquals(fileName, describe(flattened.getModel()), describe(inMemory.getModel()));
+	}
+	
+	private static List<String> describe(Model model) {
+		List<String> elements = new ArrayList<String>();
+		for (Compartment compartment : model.getListOfCompartments()) {
+			elements.add("compartment " + compartment.getId() + " " + compartment.getSize());
+		}
+		for (Species species : model.getListOfSpecies()) {
+			elements.add("species " + species.getId() + " " + species.getCompartment() + " " + species.getInitialAmount() + " " 
+					+ species.getInitialConcentration() + " " + species.getBoundaryCondition() + " " + species.getConstant());
+		}
+		for (Parameter parameter : model.getListOfParameters()) {
+			elements.add("parameter " + parameter.getId() + " " + parameter.getValue());
+		}
+		for (Reaction reaction : model.getListOfReactions()) {
+			List<String> participants = new ArrayList<String>();
+			for (SpeciesReference reactant : reaction.getListOfReactants()) {
+				participants.add("reactant " + reactant.getSpecies() + " " + reactant.getStoichiometry());
+			}
+			for (SpeciesReference product : reaction.getListOfProducts()) {
+				participants.add("product " + product.getSpecies() + " " + product.getStoichiometry());
+			}
+			for (SimpleSpeciesReference modifier : reaction.getListOfModifiers()) {
+				participants.add("modifier " + modifier.getSpecies());
+			}
+			Collections.sort(participants);
+			elements.add("reaction " + reaction.getId() + " " + reaction.getReversible() + " " + participants + " " 
+					+ (reaction.isSetKineticLaw() ? SBMLutilities.myFormulaToString(reaction.getKineticLaw().getMath()) : ""));
+		}
+		for (Rule rule : model.getListOfRules()) {
+			elements.add("rule " + SBMLutilities.getVariable(rule) + " " + SBMLutilities.myFormulaToString(rule.getMath()));
+		}
+		for (Event event : model.getListOfEvents()) {
+			elements.add("event " + event.getId());
+		}
+		Collections.sort(elements);
+		return elements;
+	}
+	
+	@Test
+	public void test_CRPb_characterization_Circuit() throws Exception {
+		assertSameAsDefault("CRPb_characterization_Circuit.xml");
+	}
+	
+	@Test
+	public void test_promoter_template() throws Exception {
+		assertSameAsDefault("promoter_template.xml");
+	}
+	
+	@Test
+	public void test_cds_template() throws Exception {
+		assertSameAsDefault("cds_template.xml");
+	}
+}
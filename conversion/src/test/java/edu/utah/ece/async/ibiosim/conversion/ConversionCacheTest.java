@@ -0,0 +1,157 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbolstandard.core2.SBOLDocument;
+
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
+
+/**
+ * Checks when the conversion cache reuses, rereads and evicts its entries.
+ *
+ * @author Tramy Nguyen
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ConversionCacheTest extends ConversionAbstractTests {
+	
+	private String uriPrefix = "http://www.async.ece.utah.edu/";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private String copyOf(String fileName) throws IOException {
+		File copy = new File(folder.getRoot(), fileName);
+		Files.copy(new File(sbolDir + fileName).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy.getAbsolutePath();
+	}
+	
+	@Test
+	public void testLibraryIsReused() throws Exception {
+		ConversionCache cache = new ConversionCache(4);
+		HashSet<String> files = new HashSet<String>(Arrays.asList(copyOf("r1.xml"), copyOf("r2.xml")));
+		
+		SBOLDocument library = cache.getSBOLLibrary(files, uriPrefix);
+		assertFalse(library.getComponentDefinitions().isEmpty());
+		assertSame(library, cache.getSBOLLibrary(new HashSet<String>(files), uriPrefix));
+		assertEquals(1, cache.getLibraryHits());
+		assertEquals(1, cache.getLibraryMisses());
+	}
+	
+	@Test
+	public void testChangedLibraryIsReread() throws Exception {
+		ConversionCache cache = new ConversionCache(4);
+		String path = copyOf("r1.xml");
+		HashSet<String> files = new HashSet<String>(Arrays.asList(path));
+		
+		SBOLDocument library = cache.getSBOLLibrary(files, uriPrefix);
+		File file = new File(path);
+		assertTrue(file.setLastModified(file.lastModified() - 10000));
+		assertNotSame(library, cache.getSBOLLibrary(files, uriPrefix));
+		assertEquals(0, cache.getLibraryHits());
+		assertEquals(2, cache.getLibraryMisses());
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedLibraryIsEvicted() throws Exception {
+		ConversionCache cache = new ConversionCache(1);
+		HashSet<String> first = new HashSet<String>(Arrays.asList(copyOf("r1.xml")));
+		HashSet<String> second = new HashSet<String>(Arrays.asList(copyOf("r2.xml")));
+		
+		SBOLDocument library = cache.getSBOLLibrary(first, uriPrefix);
+		cache.getSBOLLibrary(second, uriPrefix);
+		assertNotSame(library, cache.getSBOLLibrary(first, uriPrefix));
+		assertEquals(0, cache.getLibraryHits());
+		assertEquals(3, cache.getLibraryMisses());
+	}
+	
+	@Test
+	public void testModelsAreCopied() {
+		ConversionCache cache = new ConversionCache(4);
+		URI moduleDefURI = URI.create(uriPrefix + "md/1");
+		assertNull(cache.getModels(moduleDefURI, folder.getRoot().getAbsolutePath()));
+		
+		HashMap<String, BioModel> generated = new HashMap<String, BioModel>();
+		generated.put("md", model("md"));
+		cache.putModels(moduleDefURI, generated);
+		generated.get("md").getSBMLDocument().getModel().setName("changed");
+		
+		HashMap<String, BioModel> first = cache.getModels(moduleDefURI, folder.getRoot().getAbsolutePath());
+		assertNotNull(first);
+		assertEquals(folder.getRoot().getAbsolutePath(), first.get("md").getPath());
+		assertEquals("md", first.get("md").getSBMLDocument().getModel().getId());
+		assertFalse(first.get("md").getSBMLDocument().getModel().isSetName());
+		first.get("md").getSBMLDocument().getModel().setName("changed");
+		
+		HashMap<String, BioModel> second = cache.getModels(moduleDefURI, folder.getRoot().getAbsolutePath());
+		assertNotSame(first.get("md"), second.get("md"));
+		assertFalse(second.get("md").getSBMLDocument().getModel().isSetName());
+		assertEquals(2, cache.getModelHits());
+		assertEquals(1, cache.getModelMisses());
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedModelsAreEvicted() {
+		ConversionCache cache = new ConversionCache(2);
+		URI first = URI.create(uriPrefix + "first/1");
+		URI second = URI.create(uriPrefix + "second/1");
+		URI third = URI.create(uriPrefix + "third/1");
+		cache.putModels(first, models("first"));
+		cache.putModels(second, models("second"));
+		
+		assertNotNull(cache.getModels(first, folder.getRoot().getAbsolutePath()));
+		cache.putModels(third, models("third"));
+		assertNotNull(cache.getModels(first, folder.getRoot().getAbsolutePath()));
+		assertNull(cache.getModels(second, folder.getRoot().getAbsolutePath()));
+		assertNotNull(cache.getModels(third, folder.getRoot().getAbsolutePath()));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsEmptyCache() {
+		new ConversionCache(0);
+	}
+	
+	private BioModel model(String id) {
+		BioModel model = new BioModel(folder.getRoot().getAbsolutePath());
+		model.createSBMLDocument(id, false, false);
+		return model;
+	}
+	
+	private HashMap<String, BioModel> models(String id) {
+		HashMap<String, BioModel> models = new HashMap<String, BioModel>();
+		models.put(id, model(id));
+		return models;
+	}
+}
@@ -43,6 +43,7 @@ import org.sbml.jsbml.Unit.Kind;
 
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.annotation.AnnotationUtility;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLDocumentCache;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.Utility;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.visitor.AbstractPrintVisitor;
@@ -583,6 +584,7 @@ public class GeneticNetwork extends CoreObservable
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		SBMLDocumentCache.invalidate(filename);
 	}
 	
 	/**
@@ -88,6 +88,8 @@ import org.sbml.jsbml.xml.XMLNode;
 import org.sbml.libsbml.libsbmlConstants;
 
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.annotation.AnnotationUtility;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.CompFlattener;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLDocumentCache;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.Utility;
 import edu.utah.ece.async.ibiosim.dataModels.util.Executables;
@@ -2224,6 +2226,7 @@ public class BioModel extends CoreObservable{
 		catch (XMLStreamException e) {
 			e.printStackTrace();
 		}
+		SBMLDocumentCache.invalidate(filename.replace(".gcm",".xml"));
 	}
 
 	public boolean load(String filename) throws XMLStreamException, IOException, BioSimException {
@@ -5564,7 +5567,7 @@ public class BioModel extends CoreObservable{
 		boolean successful = true;
 		if (!sbmlFile.equals("")) {
 			if (new File(path + File.separator + sbmlFile).exists()) {
-				sbml = SBMLutilities.readSBML(path + File.separator + sbmlFile, this, null);
+				sbml = SBMLDocumentCache.readDocument(path + File.separator + sbmlFile, this, null);
 				createLayoutPlugin();
 				createCompPlugin();
 				createFBCPlugin();
@@ -5600,7 +5603,7 @@ public class BioModel extends CoreObservable{
 					.getModelRef()).getSource().replace("file://","").replace("file:","").replace(".gcm",".xml");
 			if (!comps.contains(extModel)) {
 				comps.add(extModel);
-				SBMLDocument subDocument = SBMLutilities.readSBML(path + File.separator + extModel, this, null);
+				SBMLDocument subDocument = SBMLDocumentCache.readDocument(path + File.separator + extModel, this, null);
 				CompModelPlugin subDocumentCompModel = SBMLutilities.getCompModelPlugin(subDocument.getModel());
 				ModelDefinition md = new ModelDefinition(subDocument.getModel());
 				
@@ -5646,6 +5649,7 @@ public class BioModel extends CoreObservable{
 		} catch (XMLStreamException e) {
 			e.printStackTrace();
 		}
+		SBMLDocumentCache.invalidate(exportFile);
 	}
 	
 	public SBMLDocument createSingleDocument() throws XMLStreamException, IOException, BioSimException {
@@ -5687,7 +5691,7 @@ public class BioModel extends CoreObservable{
 						.getModelRef()).getSource().replace("file://","").replace("file:","").replace(".gcm",".xml");
 				if (!comps.contains(extModel)) {
 					comps.add(extModel);
-					SBMLDocument subDocument = SBMLutilities.readSBML(path + File.separator + extModel, this, null);
+					SBMLDocument subDocument = SBMLDocumentCache.readDocument(path + File.separator + extModel, this, null);
 					CompModelPlugin subDocumentCompModel = SBMLutilities.getCompModelPlugin(subDocument.getModel());
 					String id = subDocument.getModel().getId();
 					// TODO: hack to avoid jsbml scope bug
@@ -5816,6 +5820,22 @@ public class BioModel extends CoreObservable{
 		return extModel;
 	}
 	
+	/**
+	 * Flattens the model without writing it to disk, using {@link CompFlattener}.
+	 * 
+	 * @return the flattened document, or null if the model has to be flattened by another routine.
+	 */
+	private SBMLDocument flattenModelInMemory(boolean removeComp) throws XMLStreamException, IOException, BioSimException {
+		if (isGridEnabled()) {
+			return null;
+		}
+		SBMLDocument result = new CompFlattener(path).flatten(sbml, removeComp);
+		if (result!=null) {
+			result.getModel().setName("Created by iBioSim in-memory flatten routine");
+		}
+		return result;
+	}
+
 	public SBMLDocument flattenModelWithLibSBML(boolean removeComp) throws Exception {
 		if (Executables.libsbmlFound) {
 		  
@@ -5880,6 +5900,7 @@ public class BioModel extends CoreObservable{
 			document.enablePackage(org.sbml.libsbml.CompExtension.getXmlnsL3V1V1(), "comp", !removeComp);
 			org.sbml.libsbml.SBMLWriter writer = new org.sbml.libsbml.SBMLWriter();
 			writer.writeSBMLToFile(document, tempFile);
+			SBMLDocumentCache.invalidate(tempFile);
 			BioModel bioModel = BioModel.createBioModel(path, this);
 			bioModel.load(tempFile);
 			new File(tempFile).delete();
@@ -5894,7 +5915,10 @@ public class BioModel extends CoreObservable{
 		if (biosimrc.get("biosim.general.flatten", "").equals("libsbml")) {
 			//String tempFile = filename.replace(".gcm","").replace(".xml","")+"_temp.xml";
 			//save(tempFile);
-			SBMLDocument result = null;
+			SBMLDocument result = flattenModelInMemory(removeComp);
+			if (result!=null) {
+				return result;
+			}
 			try {
 				result = flattenModelWithLibSBML(removeComp);
 			} catch (Exception e) {
@@ -6010,7 +6034,10 @@ public class BioModel extends CoreObservable{
 	public SBMLDocument flattenBioModel() throws XMLStreamException, IOException, BioSimException {
 		Preferences biosimrc = Preferences.userRoot();
 		if (biosimrc.get("biosim.general.flatten", "").equals("libsbml")) {
-			SBMLDocument result = null;
+			SBMLDocument result = flattenModelInMemory(false);
+			if (result!=null) {
+				return result;
+			}
 			try {
 				// TODO: leavePorts or not?
 				result = flattenModelWithLibSBML(false);
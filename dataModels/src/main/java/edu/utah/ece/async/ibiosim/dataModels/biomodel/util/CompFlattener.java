@@ -0,0 +1,977 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.biomodel.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.Constraint;
+import org.sbml.jsbml.Event;
+import org.sbml.jsbml.EventAssignment;
+import org.sbml.jsbml.FunctionDefinition;
+import org.sbml.jsbml.InitialAssignment;
+import org.sbml.jsbml.KineticLaw;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.LocalParameter;
+import org.sbml.jsbml.MathContainer;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.NamedSBase;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.QuantityWithUnit;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.Rule;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBase;
+import org.sbml.jsbml.SimpleSpeciesReference;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.UnitDefinition;
+import org.sbml.jsbml.ext.SBasePlugin;
+import org.sbml.jsbml.ext.arrays.ArraysConstants;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.CompSBasePlugin;
+import org.sbml.jsbml.ext.comp.Deletion;
+import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
+import org.sbml.jsbml.ext.comp.ModelDefinition;
+import org.sbml.jsbml.ext.comp.Port;
+import org.sbml.jsbml.ext.comp.ReplacedElement;
+import org.sbml.jsbml.ext.comp.SBaseRef;
+import org.sbml.jsbml.ext.comp.Submodel;
+import org.sbml.jsbml.ext.fbc.FBCConstants;
+import org.sbml.jsbml.ext.fbc.FBCModelPlugin;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.layout.LayoutConstants;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * This class flattens a hierarchical model that uses the SBML comp package entirely in memory. 
+ * Each model that is used as a submodel is flattened once into a template, and the template is 
+ * indexed by id, metaid and port so that deletions, replaced elements and replaced by references can 
+ * be resolved with map lookups. Each submodel instance is then copied into its parent in a single 
+ * pass that drops the deleted and replaced elements, renames the remaining elements to 
+ * <code>submodel__id</code> and rewrites every reference, including the ones inside math. 
+ * 
+ * External model definitions are read through the {@link SBMLDocumentCache}, so no file is written 
+ * while flattening. Models that use the arrays package or submodel conversion factors, submodels with 
+ * fbc objectives, flux bounds or gene products, copies whose id is already used in the parent, 
+ * function definitions that clash with a different parent function, and models that contain a loop 
+ * in the components are not handled. {@link #flatten(SBMLDocument, boolean)} returns null for them so 
+ * that the caller can use another flattening routine.
+ * 
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompFlattener
+{
+	private final String									path;
+
+	private final HashMap<String, Template>	templates	= new HashMap<String, Template>();
+
+	private final HashSet<String>						visiting	= new HashSet<String>();
+
+	/**
+	 * A flattened model together with the indexes used to resolve references into it. Templates are 
+	 * never modified once they are built; every instance copies the elements it needs.
+	 */
+	private static class Template
+	{
+		private final Model															model;
+		private final HashMap<String, SBase>				elementsById			= new HashMap<String, SBase>();
+		private final HashMap<String, SBase>				elementsByMetaId	= new HashMap<String, SBase>();
+		// elements copied from submodels, keyed by submodel__metaid of the original element, since the 
+		// copy's own metaid may have been changed to keep it unique
+		private final HashMap<String, SBase>				submodelMetaIds		= new HashMap<String, SBase>();
+		private final IdentityHashMap<SBase, String>	metaIdKeys				= new IdentityHashMap<SBase, String>();
+		private final HashMap<String, Port>					ports							= new HashMap<String, Port>();
+		// ports of the submodels of this template, keyed by submodel__port
+		private final HashMap<String, SBase>				submodelPorts			= new HashMap<String, SBase>();
+
+		private Template(Model model)
+		{
+			this.model = model;
+		}
+
+		private void index()
+		{
+			for (Compartment compartment : model.getListOfCompartments())
+			{
+				addId(compartment);
+			}
+			for (Species species : model.getListOfSpecies())
+			{
+				addId(species);
+			}
+			for (Parameter parameter : model.getListOfParameters())
+			{
+				addId(parameter);
+			}
+			for (Reaction reaction : model.getListOfReactions())
+			{
+				addId(reaction);
+				for (SpeciesReference reactant : reaction.getListOfReactants())
+				{
+					addId(reactant);
+				}
+				for (SpeciesReference product : reaction.getListOfProducts())
+				{
+					addId(product);
+				}
+				for (SimpleSpeciesReference modifier : reaction.getListOfModifiers())
+				{
+					addId(modifier);
+				}
+			}
+			for (Event event : model.getListOfEvents())
+			{
+				addId(event);
+			}
+			for (FunctionDefinition functionDefinition : model.getListOfFunctionDefinitions())
+			{
+				addId(functionDefinition);
+			}
+			for (SBase sbase : SBMLutilities.getListOfAllElements(model))
+			{
+				if (sbase.isSetMetaId())
+				{
+					elementsByMetaId.put(sbase.getMetaId(), sbase);
+					metaIdKeys.put(sbase, sbase.getMetaId());
+				}
+			}
+			for (String key : submodelMetaIds.keySet())
+			{
+				metaIdKeys.put(submodelMetaIds.get(key), key);
+			}
+			CompModelPlugin compModel = getCompModel(model);
+			if (compModel != null)
+			{
+				for (Port port : compModel.getListOfPorts())
+				{
+					ports.put(port.getId(), port);
+				}
+			}
+		}
+
+		private void addId(NamedSBase sbase)
+		{
+			if (sbase.isSetId())
+			{
+				elementsById.put(sbase.getId(), sbase);
+			}
+		}
+	}
+
+	/**
+	 * A replaced element or replaced by reference found on an element of the parent model.
+	 */
+	private static class Replacement
+	{
+		private final SBase			element;
+		private final SBaseRef	reference;
+		private final boolean		replacedBy;
+
+		private Replacement(SBase element, SBaseRef reference, boolean replacedBy)
+		{
+			this.element = element;
+			this.reference = reference;
+			this.replacedBy = replacedBy;
+		}
+	}
+
+	/**
+	 * Thrown internally when the model uses a feature that this flattener does not handle.
+	 */
+	private static class UnsupportedModelException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * @param path
+	 *            - the directory used to resolve the sources of external model definitions.
+	 */
+	public CompFlattener(String path)
+	{
+		this.path = path;
+	}
+
+	/**
+	 * Flattens the given document. The document itself is not modified.
+	 * 
+	 * @param document
+	 *            - the hierarchical document.
+	 * @param removeComp
+	 *            - whether the comp package should be disabled in the result.
+	 * @return the flattened document, or null when the model cannot be flattened by this class.
+	 */
+	public SBMLDocument flatten(SBMLDocument document, boolean removeComp) throws XMLStreamException, IOException, BioSimException
+	{
+		if (document.getModel() == null || document.isPackageEnabled(ArraysConstants.shortLabel))
+		{
+			return null;
+		}
+		CompSBMLDocumentPlugin compDoc = (CompSBMLDocumentPlugin) document.getExtension(CompConstants.namespaceURI);
+		SBMLDocument result = document.clone();
+		Model model = result.getModel();
+		model.unsetExtension(LayoutConstants.namespaceURI);
+		result.disablePackage(LayoutConstants.namespaceURI);
+		SBasePlugin resultComp = result.getExtension(CompConstants.namespaceURI);
+		if (resultComp instanceof CompSBMLDocumentPlugin)
+		{
+			removeAll(((CompSBMLDocumentPlugin) resultComp).getListOfModelDefinitions());
+			removeAll(((CompSBMLDocumentPlugin) resultComp).getListOfExternalModelDefinitions());
+		}
+		HashSet<String> metaIds = new HashSet<String>();
+		for (SBase sbase : SBMLutilities.getListOfAllElements(result))
+		{
+			if (sbase.isSetMetaId())
+			{
+				metaIds.add(sbase.getMetaId());
+			}
+		}
+		try
+		{
+			visiting.clear();
+			flattenModel(model, compDoc, path, "", null, metaIds);
+		}
+		catch (UnsupportedModelException e)
+		{
+			return null;
+		}
+		if (removeComp)
+		{
+			result.disablePackage(CompConstants.namespaceURI);
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces every submodel of the given model by a copy of its flattened template.
+	 */
+	private void flattenModel(Model model, CompSBMLDocumentPlugin compDoc, String basePath, String documentKey, Template template, Set<String> metaIds)
+		throws XMLStreamException, IOException, BioSimException, UnsupportedModelException
+	{
+		CompModelPlugin compModel = getCompModel(model);
+		if (compModel == null || compModel.getSubmodelCount() == 0)
+		{
+			return;
+		}
+		HashMap<String, List<Replacement>> replacements = new HashMap<String, List<Replacement>>();
+		for (SBase sbase : SBMLutilities.getListOfAllElements(model))
+		{
+			SBasePlugin plugin = sbase.getExtension(CompConstants.namespaceURI);
+			if (!(plugin instanceof CompSBasePlugin) || plugin instanceof CompModelPlugin)
+			{
+				continue;
+			}
+			CompSBasePlugin compSBase = (CompSBasePlugin) plugin;
+			if (compSBase.isSetListOfReplacedElements())
+			{
+				for (ReplacedElement replacedElement : compSBase.getListOfReplacedElements())
+				{
+					if (replacedElement.isSetConversionFactor())
+					{
+						// the replaced element's uses would need rescaling; leave these to the general flattener
+						throw new UnsupportedModelException();
+					}
+					if (!replacedElement.isSetDeletion())
+					{
+						getReplacements(replacements, replacedElement.getSubmodelRef()).add(new Replacement(sbase, replacedElement, false));
+					}
+				}
+			}
+			if (compSBase.isSetReplacedBy())
+			{
+				getReplacements(replacements, compSBase.getReplacedBy().getSubmodelRef()).add(new Replacement(sbase, compSBase.getReplacedBy(), true));
+			}
+		}
+		for (Submodel submodel : new ArrayList<Submodel>(compModel.getListOfSubmodels()))
+		{
+			if (submodel.isSetTimeConversionFactor() || submodel.isSetExtentConversionFactor())
+			{
+				throw new UnsupportedModelException();
+			}
+			Template submodelTemplate = getTemplate(submodel.getModelRef(), compDoc, basePath, documentKey);
+			List<Replacement> submodelReplacements = replacements.get(submodel.getId());
+			instantiate(model, compModel, submodel, submodelTemplate,
+				submodelReplacements != null ? submodelReplacements : Collections.<Replacement> emptyList(), template, metaIds);
+		}
+		removeAll(compModel.getListOfSubmodels());
+		for (Replacement replacement : flattenReplacements(replacements))
+		{
+			CompSBasePlugin compSBase = (CompSBasePlugin) replacement.element.getExtension(CompConstants.namespaceURI);
+			if (compSBase != null)
+			{
+				compSBase.unsetListOfReplacedElements();
+				compSBase.unsetReplacedBy();
+			}
+		}
+	}
+
+	/**
+	 * Copies one submodel instance into its parent model.
+	 */
+	private void instantiate(Model parent, CompModelPlugin parentComp, Submodel submodel, Template template, List<Replacement> replacements, Template parentTemplate,
+		Set<String> metaIds) throws UnsupportedModelException
+	{
+		String prefix = submodel.getId() + "__";
+		Set<SBase> removed = Collections.newSetFromMap(new IdentityHashMap<SBase, Boolean>());
+		IdentityHashMap<SBase, SBase> replacedBy = new IdentityHashMap<SBase, SBase>();
+		IdentityHashMap<SBase, SBase> copies = new IdentityHashMap<SBase, SBase>();
+		HashMap<String, String> ids = new HashMap<String, String>();
+		HashMap<String, String> units = new HashMap<String, String>();
+
+		if (submodel.isSetListOfDeletions())
+		{
+			for (Deletion deletion : submodel.getListOfDeletions())
+			{
+				SBase target = resolve(template, deletion);
+				if (target != null)
+				{
+					removed.add(target);
+				}
+			}
+		}
+		for (String id : template.elementsById.keySet())
+		{
+			ids.put(id, prefix + id);
+		}
+		// function definitions keep their ids unless they are replaced
+		for (FunctionDefinition functionDefinition : template.model.getListOfFunctionDefinitions())
+		{
+			ids.put(functionDefinition.getId(), functionDefinition.getId());
+		}
+		for (Replacement replacement : replacements)
+		{
+			SBase target = resolve(template, replacement.reference);
+			if (target == null)
+			{
+				continue;
+			}
+			if (target instanceof NamedSBase && ((NamedSBase) target).isSetId() && replacement.element instanceof NamedSBase)
+			{
+				String id = ((NamedSBase) replacement.element).getId();
+				if (target instanceof UnitDefinition)
+				{
+					units.put(((NamedSBase) target).getId(), id);
+				}
+				else
+				{
+					ids.put(((NamedSBase) target).getId(), id);
+				}
+			}
+			if (replacement.replacedBy)
+			{
+				replacedBy.put(target, replacement.element);
+			}
+			else
+			{
+				removed.add(target);
+				copies.put(target, replacement.element);
+			}
+		}
+		// the parent elements that are replaced by a copied element are removed before the copy takes their id
+		for (SBase target : replacedBy.keySet())
+		{
+			if (!isRemoved(target, removed))
+			{
+				replacedBy.get(target).removeFromParent();
+			}
+		}
+
+		Model model = template.model;
+		for (UnitDefinition unitDefinition : model.getListOfUnitDefinitions())
+		{
+			if (removed.contains(unitDefinition) || replacedBy.containsKey(unitDefinition))
+			{
+				continue;
+			}
+			UnitDefinition existing = parent.getUnitDefinition(unitDefinition.getId());
+			if (existing != null && UnitDefinition.areIdentical(existing, unitDefinition))
+			{
+				units.put(unitDefinition.getId(), unitDefinition.getId());
+				copies.put(unitDefinition, existing);
+			}
+			else
+			{
+				units.put(unitDefinition.getId(), prefix + unitDefinition.getId());
+			}
+		}
+		HashMap<String, SBase> submodelMetaIds = parentTemplate != null ? parentTemplate.submodelMetaIds : null;
+		for (UnitDefinition unitDefinition : model.getListOfUnitDefinitions())
+		{
+			if (!copies.containsKey(unitDefinition))
+			{
+				copy(parent, unitDefinition, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+			}
+		}
+		for (FunctionDefinition functionDefinition : model.getListOfFunctionDefinitions())
+		{
+			FunctionDefinition existing = parent.getFunctionDefinition(ids.get(functionDefinition.getId()));
+			if (existing != null && !removed.contains(functionDefinition) && !replacedBy.containsKey(functionDefinition))
+			{
+				if (!existing.isSetMath() || !functionDefinition.isSetMath() || !existing.getMath().equals(functionDefinition.getMath()))
+				{
+					// a different function of the same name is already defined in the parent
+					throw new UnsupportedModelException();
+				}
+				copies.put(functionDefinition, existing);
+				continue;
+			}
+			copy(parent, functionDefinition, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Compartment compartment : model.getListOfCompartments())
+		{
+			copy(parent, compartment, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Species species : model.getListOfSpecies())
+		{
+			copy(parent, species, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Parameter parameter : model.getListOfParameters())
+		{
+			copy(parent, parameter, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (InitialAssignment initialAssignment : model.getListOfInitialAssignments())
+		{
+			copy(parent, initialAssignment, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Rule rule : model.getListOfRules())
+		{
+			copy(parent, rule, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Constraint constraint : model.getListOfConstraints())
+		{
+			copy(parent, constraint, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Reaction reaction : model.getListOfReactions())
+		{
+			copy(parent, reaction, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (Event event : model.getListOfEvents())
+		{
+			copy(parent, event, template, prefix, ids, units, removed, copies, metaIds, submodelMetaIds);
+		}
+		for (SBase target : replacedBy.keySet())
+		{
+			if (!copies.containsKey(target))
+			{
+				// the element of the submodel that takes the place of the parent element is itself deleted
+				copies.put(target, replacedBy.get(target));
+			}
+		}
+
+		// ports of the parent that point inside this submodel now point to the copied elements
+		for (Port port : new ArrayList<Port>(parentComp.getListOfPorts()))
+		{
+			if (!port.isSetIdRef() || !port.getIdRef().equals(submodel.getId()))
+			{
+				continue;
+			}
+			SBase target = port.isSetSBaseRef() ? resolve(template, port.getSBaseRef()) : null;
+			SBase copy = target != null ? copies.get(target) : null;
+			if (!setReference(port, copy))
+			{
+				port.removeFromParent();
+			}
+		}
+		if (parentTemplate != null)
+		{
+			for (Port port : template.ports.values())
+			{
+				SBase target = resolve(template, port);
+				if (target != null && copies.containsKey(target))
+				{
+					parentTemplate.submodelPorts.put(prefix + port.getId(), copies.get(target));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies one element of a template into the parent model and renames the copy and everything it 
+	 * references.
+	 */
+	private static void copy(Model parent, SBase element, Template template, String prefix, HashMap<String, String> ids, HashMap<String, String> units,
+		Set<SBase> removed, IdentityHashMap<SBase, SBase> copies, Set<String> metaIds, HashMap<String, SBase> submodelMetaIds) throws UnsupportedModelException
+	{
+		if (removed.contains(element))
+		{
+			return;
+		}
+		SBase copy = element.clone();
+		ArrayList<SBase> originals = SBMLutilities.getListOfAllElements(element);
+		ArrayList<SBase> copied = SBMLutilities.getListOfAllElements(copy);
+		HashSet<String> localParameters = new HashSet<String>();
+		for (int i = 0; i < copied.size(); i++)
+		{
+			SBase sbase = copied.get(i);
+			if (i < originals.size())
+			{
+				copies.put(originals.get(i), sbase);
+				String metaIdKey = template.metaIdKeys.get(originals.get(i));
+				if (submodelMetaIds != null && metaIdKey != null)
+				{
+					submodelMetaIds.put(prefix + metaIdKey, sbase);
+				}
+			}
+			if (sbase instanceof LocalParameter)
+			{
+				localParameters.add(((LocalParameter) sbase).getId());
+			}
+		}
+		for (SBase sbase : copied)
+		{
+			rename(sbase, prefix, ids, units, localParameters, metaIds);
+			if (sbase instanceof UnitDefinition && parent.getUnitDefinition(((UnitDefinition) sbase).getId()) != null)
+			{
+				throw new UnsupportedModelException();
+			}
+			if (sbase instanceof NamedSBase && !(sbase instanceof UnitDefinition) && !(sbase instanceof LocalParameter) && !(sbase instanceof ListOf)
+				&& ((NamedSBase) sbase).isSetId() && parent.findNamedSBase(((NamedSBase) sbase).getId()) != null)
+			{
+				// the id of the copy is already used in the parent
+				throw new UnsupportedModelException();
+			}
+		}
+		add(parent, copy);
+	}
+
+	/**
+	 * Returns whether the given element of a template or one of the elements that contain it is deleted 
+	 * or replaced.
+	 */
+	private static boolean isRemoved(SBase element, Set<SBase> removed)
+	{
+		for (SBase sbase = element; sbase != null && !(sbase instanceof Model); sbase = (SBase) sbase.getParent())
+		{
+			if (removed.contains(sbase))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void rename(SBase sbase, String prefix, HashMap<String, String> ids, HashMap<String, String> units, Set<String> localParameters,
+		Set<String> metaIds)
+	{
+		if (sbase.isSetMetaId())
+		{
+			String metaId = prefix + sbase.getMetaId();
+			while (!metaIds.add(metaId))
+			{
+				metaId = metaId + "_";
+			}
+			sbase.setMetaId(metaId);
+		}
+		SBasePlugin plugin = sbase.getExtension(CompConstants.namespaceURI);
+		if (plugin instanceof CompSBasePlugin)
+		{
+			((CompSBasePlugin) plugin).unsetListOfReplacedElements();
+			((CompSBasePlugin) plugin).unsetReplacedBy();
+		}
+		if (sbase instanceof UnitDefinition)
+		{
+			((UnitDefinition) sbase).setId(units.get(((UnitDefinition) sbase).getId()));
+			return;
+		}
+		if (sbase instanceof FunctionDefinition)
+		{
+			FunctionDefinition functionDefinition = (FunctionDefinition) sbase;
+			functionDefinition.setId(ids.get(functionDefinition.getId()));
+			if (functionDefinition.isSetMath())
+			{
+				// only calls of other functions are renamed, the arguments are bound inside the function
+				HashSet<String> arguments = new HashSet<String>();
+				for (int i = 0; i < functionDefinition.getArgumentCount(); i++)
+				{
+					arguments.add(functionDefinition.getArgument(i).getName());
+				}
+				renameMath(functionDefinition.getMath(), ids, units, arguments);
+			}
+			return;
+		}
+		if (sbase instanceof QuantityWithUnit)
+		{
+			QuantityWithUnit quantity = (QuantityWithUnit) sbase;
+			if (quantity.isSetUnits() && units.containsKey(quantity.getUnits()))
+			{
+				quantity.setUnits(units.get(quantity.getUnits()));
+			}
+		}
+		if (sbase instanceof LocalParameter)
+		{
+			return;
+		}
+		if (sbase instanceof NamedSBase && ((NamedSBase) sbase).isSetId() && !(sbase instanceof ListOf))
+		{
+			String id = ids.get(((NamedSBase) sbase).getId());
+			if (id != null)
+			{
+				((NamedSBase) sbase).setId(id);
+			}
+		}
+		if (sbase instanceof Species)
+		{
+			Species species = (Species) sbase;
+			if (species.isSetCompartment() && ids.containsKey(species.getCompartment()))
+			{
+				species.setCompartment(ids.get(species.getCompartment()));
+			}
+			if (species.isSetConversionFactor() && ids.containsKey(species.getConversionFactor()))
+			{
+				species.setConversionFactor(ids.get(species.getConversionFactor()));
+			}
+		}
+		else if (sbase instanceof Reaction)
+		{
+			Reaction reaction = (Reaction) sbase;
+			if (reaction.isSetCompartment() && ids.containsKey(reaction.getCompartment()))
+			{
+				reaction.setCompartment(ids.get(reaction.getCompartment()));
+			}
+			FBCReactionPlugin rBounds = (FBCReactionPlugin) reaction.getExtension(FBCConstants.namespaceURI);
+			if (rBounds != null)
+			{
+				if (rBounds.isSetLowerFluxBound() && ids.containsKey(rBounds.getLowerFluxBound()))
+				{
+					rBounds.setLowerFluxBound(ids.get(rBounds.getLowerFluxBound()));
+				}
+				if (rBounds.isSetUpperFluxBound() && ids.containsKey(rBounds.getUpperFluxBound()))
+				{
+					rBounds.setUpperFluxBound(ids.get(rBounds.getUpperFluxBound()));
+				}
+			}
+		}
+		else if (sbase instanceof SimpleSpeciesReference)
+		{
+			SimpleSpeciesReference reference = (SimpleSpeciesReference) sbase;
+			if (reference.isSetSpecies() && ids.containsKey(reference.getSpecies()))
+			{
+				reference.setSpecies(ids.get(reference.getSpecies()));
+			}
+		}
+		else if (sbase instanceof Rule)
+		{
+			Rule rule = (Rule) sbase;
+			if (SBMLutilities.isSetVariable(rule) && ids.containsKey(SBMLutilities.getVariable(rule)))
+			{
+				SBMLutilities.setVariable(rule, ids.get(SBMLutilities.getVariable(rule)));
+			}
+		}
+		else if (sbase instanceof InitialAssignment)
+		{
+			InitialAssignment initialAssignment = (InitialAssignment) sbase;
+			if (initialAssignment.isSetVariable() && ids.containsKey(initialAssignment.getVariable()))
+			{
+				initialAssignment.setVariable(ids.get(initialAssignment.getVariable()));
+			}
+		}
+		else if (sbase instanceof EventAssignment)
+		{
+			EventAssignment eventAssignment = (EventAssignment) sbase;
+			if (eventAssignment.isSetVariable() && ids.containsKey(eventAssignment.getVariable()))
+			{
+				eventAssignment.setVariable(ids.get(eventAssignment.getVariable()));
+			}
+		}
+		if (sbase instanceof MathContainer && ((MathContainer) sbase).isSetMath())
+		{
+			renameMath(((MathContainer) sbase).getMath(), ids, units, sbase instanceof KineticLaw ? localParameters : Collections.<String> emptySet());
+		}
+	}
+
+	private static void renameMath(ASTNode node, HashMap<String, String> ids, HashMap<String, String> units, Set<String> localParameters)
+	{
+		if ((node.getType() == ASTNode.Type.NAME && !localParameters.contains(node.getName())) || node.getType() == ASTNode.Type.FUNCTION)
+		{
+			String id = ids.get(node.getName());
+			if (id != null)
+			{
+				node.setName(id);
+			}
+		}
+		else if (node.isSetUnits() && units.containsKey(node.getUnits()))
+		{
+			node.setUnits(units.get(node.getUnits()));
+		}
+		for (int i = 0; i < node.getChildCount(); i++)
+		{
+			renameMath(node.getChild(i), ids, units, localParameters);
+		}
+	}
+
+	private static void add(Model model, SBase sbase)
+	{
+		if (sbase instanceof UnitDefinition)
+		{
+			model.addUnitDefinition((UnitDefinition) sbase);
+		}
+		else if (sbase instanceof FunctionDefinition)
+		{
+			model.addFunctionDefinition((FunctionDefinition) sbase);
+		}
+		else if (sbase instanceof Compartment)
+		{
+			model.addCompartment((Compartment) sbase);
+		}
+		else if (sbase instanceof Species)
+		{
+			model.addSpecies((Species) sbase);
+		}
+		else if (sbase instanceof Parameter)
+		{
+			model.addParameter((Parameter) sbase);
+		}
+		else if (sbase instanceof InitialAssignment)
+		{
+			model.addInitialAssignment((InitialAssignment) sbase);
+		}
+		else if (sbase instanceof Rule)
+		{
+			model.addRule((Rule) sbase);
+		}
+		else if (sbase instanceof Constraint)
+		{
+			model.addConstraint((Constraint) sbase);
+		}
+		else if (sbase instanceof Reaction)
+		{
+			model.addReaction((Reaction) sbase);
+		}
+		else if (sbase instanceof Event)
+		{
+			model.addEvent((Event) sbase);
+		}
+	}
+
+	/**
+	 * Finds the element of a template that a deletion, replacement or port refers to.
+	 */
+	private static SBase resolve(Template template, SBaseRef reference)
+	{
+		if (reference.isSetPortRef())
+		{
+			Port port = template.ports.get(reference.getPortRef());
+			return port != null ? resolve(template, port) : null;
+		}
+		String prefix = "";
+		SBaseRef current = reference;
+		while (current.isSetIdRef() && current.isSetSBaseRef())
+		{
+			SBaseRef next = current.getSBaseRef();
+			if (next.isSetPortRef())
+			{
+				return template.submodelPorts.get(prefix + current.getIdRef() + "__" + next.getPortRef());
+			}
+			prefix = prefix + current.getIdRef() + "__";
+			current = next;
+		}
+		if (current.isSetIdRef())
+		{
+			return template.elementsById.get(prefix + current.getIdRef());
+		}
+		else if (current.isSetMetaIdRef())
+		{
+			if (prefix.isEmpty())
+			{
+				return template.elementsByMetaId.get(current.getMetaIdRef());
+			}
+			return template.submodelMetaIds.get(prefix + current.getMetaIdRef());
+		}
+		else if (current.isSetUnitRef())
+		{
+			UnitDefinition unitDefinition = template.model.getUnitDefinition(prefix + current.getUnitRef());
+			return unitDefinition != null ? unitDefinition : template.model.getUnitDefinition(current.getUnitRef());
+		}
+		return null;
+	}
+
+	/**
+	 * Points a port at the given element.
+	 * 
+	 * @return false if the element does not exist anymore.
+	 */
+	private static boolean setReference(Port port, SBase element)
+	{
+		if (element == null)
+		{
+			return false;
+		}
+		port.unsetSBaseRef();
+		if (element instanceof UnitDefinition)
+		{
+			port.unsetIdRef();
+			port.setUnitRef(((UnitDefinition) element).getId());
+		}
+		else if (element instanceof NamedSBase && ((NamedSBase) element).isSetId())
+		{
+			port.setIdRef(((NamedSBase) element).getId());
+		}
+		else if (element.isSetMetaId())
+		{
+			port.unsetIdRef();
+			port.setMetaIdRef(element.getMetaId());
+		}
+		else
+		{
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the flattened template of the model with the given id, building it the first time it is 
+	 * needed.
+	 */
+	private Template getTemplate(String modelRef, CompSBMLDocumentPlugin compDoc, String basePath, String documentKey)
+		throws XMLStreamException, IOException, BioSimException, UnsupportedModelException
+	{
+		if (compDoc == null)
+		{
+			throw new UnsupportedModelException();
+		}
+		Model source;
+		CompSBMLDocumentPlugin sourceComp;
+		String sourcePath;
+		String key;
+		ModelDefinition modelDefinition = compDoc.getModelDefinition(modelRef);
+		if (modelDefinition != null)
+		{
+			source = modelDefinition;
+			sourceComp = compDoc;
+			sourcePath = basePath;
+			key = documentKey + "#" + modelRef;
+		}
+		else
+		{
+			ExternalModelDefinition external = compDoc.getExternalModelDefinition(modelRef);
+			if (external == null || !external.isSetSource())
+			{
+				throw new UnsupportedModelException();
+			}
+			File file = new File(external.getSource().replace("file://", "").replace("file:", "").replace(".gcm", ".xml"));
+			if (!file.isAbsolute())
+			{
+				file = new File(basePath, file.getPath());
+			}
+			SBMLDocument document = SBMLDocumentCache.getSharedDocument(file.getPath(), null, null);
+			if (document.getModel() == null || document.isPackageEnabled(ArraysConstants.shortLabel))
+			{
+				throw new UnsupportedModelException();
+			}
+			sourceComp = (CompSBMLDocumentPlugin) document.getExtension(CompConstants.namespaceURI);
+			sourcePath = file.getAbsoluteFile().getParent();
+			if (external.isSetModelRef() && !external.getModelRef().equals(document.getModel().getId()))
+			{
+				return getTemplate(external.getModelRef(), sourceComp, sourcePath, file.getCanonicalPath());
+			}
+			source = document.getModel();
+			key = file.getCanonicalPath();
+		}
+		Template template = templates.get(key);
+		if (template != null)
+		{
+			return template;
+		}
+		if (hasFBCContent(source))
+		{
+			// objectives, flux bounds and gene products are not merged into the parent
+			throw new UnsupportedModelException();
+		}
+		if (!visiting.add(key))
+		{
+			// there is a loop in the components
+			throw new UnsupportedModelException();
+		}
+		Model model = source.clone();
+		model.unsetExtension(LayoutConstants.namespaceURI);
+		template = new Template(model);
+		HashSet<String> metaIds = new HashSet<String>();
+		for (SBase sbase : SBMLutilities.getListOfAllElements(model))
+		{
+			if (sbase.isSetMetaId())
+			{
+				metaIds.add(sbase.getMetaId());
+			}
+		}
+		flattenModel(model, sourceComp, sourcePath, key, template, metaIds);
+		template.index();
+		visiting.remove(key);
+		templates.put(key, template);
+		return template;
+	}
+
+	private static boolean hasFBCContent(Model model)
+	{
+		SBasePlugin plugin = model.getExtension(FBCConstants.namespaceURI);
+		if (!(plugin instanceof FBCModelPlugin))
+		{
+			return false;
+		}
+		FBCModelPlugin fbcModel = (FBCModelPlugin) plugin;
+		return fbcModel.getObjectiveCount() > 0 || fbcModel.getFluxBoundCount() > 0 || fbcModel.getGeneProductCount() > 0;
+	}
+
+	private static CompModelPlugin getCompModel(Model model)
+	{
+		SBasePlugin plugin = model.getExtension(CompConstants.namespaceURI);
+		return plugin instanceof CompModelPlugin ? (CompModelPlugin) plugin : null;
+	}
+
+	private static List<Replacement> getReplacements(HashMap<String, List<Replacement>> replacements, String submodelRef)
+	{
+		List<Replacement> list = replacements.get(submodelRef);
+		if (list == null)
+		{
+			list = new ArrayList<Replacement>();
+			replacements.put(submodelRef, list);
+		}
+		return list;
+	}
+
+	private static List<Replacement> flattenReplacements(HashMap<String, List<Replacement>> replacements)
+	{
+		List<Replacement> all = new ArrayList<Replacement>();
+		for (List<Replacement> list : replacements.values())
+		{
+			all.addAll(list);
+		}
+		return all;
+	}
+
+	private static void removeAll(ListOf<? extends SBase> list)
+	{
+		for (SBase sbase : new ArrayList<SBase>(list))
+		{
+			sbase.removeFromParent();
+		}
+	}
+}
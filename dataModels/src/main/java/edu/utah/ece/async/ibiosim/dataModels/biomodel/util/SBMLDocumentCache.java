@@ -0,0 +1,185 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.biomodel.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.SBMLDocument;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObservable;
+import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObserver;
+
+/**
+ * This class is a cache of parsed SBML files shared by all models of a project. 
+ * Each file is parsed with {@link SBMLutilities#readSBML(String, BioObservable, BioObserver)} the first 
+ * time it is needed, and parsed again only after its modification time or size changes. 
+ * 
+ * Callers that only read a document (for example to look up the species or reactions of a submodel) 
+ * should use {@link #getSharedDocument(String, BioObservable, BioObserver)}, which returns the cached 
+ * document itself. Callers that modify the document should use 
+ * {@link #readDocument(String, BioObservable, BioObserver)}, which returns a private copy.
+ * 
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SBMLDocumentCache
+{
+	/**
+	 * The maximum number of documents kept in the cache.
+	 */
+	public static final int CAPACITY = 256;
+
+	private static final LinkedHashMap<String, CachedDocument> documents = new LinkedHashMap<String, CachedDocument>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedDocument> eldest)
+		{
+			return size() > CAPACITY;
+		}
+	};
+
+	private static class CachedDocument
+	{
+		private final long lastModified;
+		private final long length;
+		private final SBMLDocument document;
+
+		private CachedDocument(long lastModified, long length, SBMLDocument document)
+		{
+			this.lastModified = lastModified;
+			this.length = length;
+			this.document = document;
+		}
+	}
+
+	private SBMLDocumentCache()
+	{
+	}
+
+	/**
+	 * Returns the parsed document for the given SBML file. The document is shared with other 
+	 * callers and must not be modified.
+	 * 
+	 * @param filename - the full path of the SBML file.
+	 * @param observable - notified of conversion messages when the file is parsed.
+	 * @param observer - notified of conversion messages when the file is parsed.
+	 * @return the shared SBML document.
+	 * @throws XMLStreamException - invalid XML file.
+	 * @throws IOException - unable to read the file.
+	 * @throws BioSimException - unable to convert the file to the supported SBML level and version.
+	 */
+	public static SBMLDocument getSharedDocument(String filename, BioObservable observable, BioObserver observer) throws XMLStreamException, IOException, BioSimException
+	{
+		File file = new File(filename);
+		String key = file.getCanonicalPath();
+		synchronized (documents)
+		{
+			CachedDocument cached = documents.get(key);
+			if (cached != null && cached.lastModified == file.lastModified() && cached.length == file.length())
+			{
+				return cached.document;
+			}
+		}
+		// readSBML may rewrite the file when converting it, so check the file after parsing.
+		SBMLDocument document = SBMLutilities.readSBML(filename, observable, observer);
+		synchronized (documents)
+		{
+			documents.put(key, new CachedDocument(file.lastModified(), file.length(), document));
+		}
+		return document;
+	}
+
+	/**
+	 * Returns a copy of the parsed document for the given SBML file that the caller may modify.
+	 * 
+	 * @param filename - the full path of the SBML file.
+	 * @param observable - notified of conversion messages when the file is parsed.
+	 * @param observer - notified of conversion messages when the file is parsed.
+	 * @return a private copy of the SBML document.
+	 * @throws XMLStreamException - invalid XML file.
+	 * @throws IOException - unable to read the file.
+	 * @throws BioSimException - unable to convert the file to the supported SBML level and version.
+	 */
+	public static SBMLDocument readDocument(String filename, BioObservable observable, BioObserver observer) throws XMLStreamException, IOException, BioSimException
+	{
+		return getSharedDocument(filename, observable, observer).clone();
+	}
+
+	/**
+	 * Removes the given file from the cache. This must be called whenever the file is written.
+	 * 
+	 * @param filename - the full path of the SBML file.
+	 */
+	public static void invalidate(String filename)
+	{
+		try
+		{
+			String key = new File(filename).getCanonicalPath();
+			synchronized (documents)
+			{
+				documents.remove(key);
+			}
+		}
+		catch (IOException e)
+		{
+			clear(null);
+		}
+	}
+
+	/**
+	 * Removes all files in the given project directory from the cache.
+	 * 
+	 * @param projectDirectory - the project directory, or null to empty the cache.
+	 */
+	public static void clear(String projectDirectory)
+	{
+		synchronized (documents)
+		{
+			if (projectDirectory == null)
+			{
+				documents.clear();
+				return;
+			}
+			String prefix;
+			try
+			{
+				prefix = new File(projectDirectory).getCanonicalPath() + File.separator;
+			}
+			catch (IOException e)
+			{
+				documents.clear();
+				return;
+			}
+			Iterator<String> keys = documents.keySet().iterator();
+			while (keys.hasNext())
+			{
+				if (keys.next().startsWith(prefix))
+				{
+					keys.remove();
+				}
+			}
+		}
+	}
+}
@@ -7,6 +7,7 @@ import java.awt.Paint;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
@@ -73,6 +74,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.CSVParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DTSDParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDParser;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDReader;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
 
 /**
@@ -774,10 +776,36 @@ public class GraphData extends CoreObservable {
       data = c.getData();
 		}
 		else {
-			p = new TSDParser(file, warn);
-			warn = p.getWarning();
-			graphSpecies = p.getSpecies();
-			data = p.getData();
+			try (TSDReader reader = new TSDReader(file)) {
+				// only the time column and the species kept below are decoded
+				ArrayList<String> plotted = learnSpecs != null ? learnSpecs : averageOrder;
+				ArrayList<String> species = reader.getSpecies();
+				ArrayList<Integer> columns = new ArrayList<Integer>();
+				graphSpecies = new ArrayList<String>();
+				for (int i = 0; i < species.size(); i++) {
+					if (i == 0 || plotted == null || plotted.contains(species.get(i))) {
+						columns.add(i);
+						graphSpecies.add(species.get(i));
+					}
+				}
+				int[] indices = new int[columns.size()];
+				for (int i = 0; i < indices.length; i++) {
+					indices[i] = columns.get(i);
+				}
+				data = reader.getData(indices);
+				if (reader.hasNonFiniteValues() && !warn) {
+					message.setDialog("NAN/INF In Data", "Found NAN or INF in data.\nReplacing NAN with 0s and INF with " + Double.MAX_VALUE + ".");
+					this.notifyObservers(message);
+					warn = true;
+				}
+			}
+			catch (IOException e) {
+				// fall back to the parser, which reports what is wrong with the file
+				p = new TSDParser(file, warn);
+				warn = p.getWarning();
+				graphSpecies = p.getSpecies();
+				data = p.getData();
+			}
 		}
 		
 		if (learnSpecs != null) {
@@ -1035,7 +1063,14 @@ public class GraphData extends CoreObservable {
     }
 		else
 		{
-      graphSpecies = new TSDParser(file, true).getSpecies();
+		  try
+		  {
+		    graphSpecies = TSDReader.readSpecies(file);
+		  }
+		  catch (IOException e)
+		  {
+		    graphSpecies = new TSDParser(file, true).getSpecies();
+		  }
 		}
 		/*
 		if (startsWith!=null) {
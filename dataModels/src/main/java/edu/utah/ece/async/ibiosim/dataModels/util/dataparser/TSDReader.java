@@ -0,0 +1,384 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Random-access reader for TSD files. The file is memory mapped and scanned
+ * once to find where each time point (frame) starts; values are only decoded
+ * when a frame or a set of columns is requested, so a movie or a graph only
+ * pays for the data it displays. Unlike {@link TSDParser}, problems are
+ * reported with exceptions instead of dialogs.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class TSDReader implements Closeable {
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final ArrayList<String> species;
+
+	private final int[] frameOffsets;
+
+	private byte[] token;
+
+	private boolean nonFinite;
+
+	/**
+	 * Opens a TSD file and indexes its frames.
+	 * 
+	 * @param filename
+	 *            the TSD file.
+	 * @throws IOException
+	 *             if the file cannot be read or is too large to be mapped.
+	 */
+	public TSDReader(String filename) throws IOException {
+		file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("TSD file " + filename + " is too large to be indexed.");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		species = new ArrayList<String>();
+		token = new byte[64];
+
+		// The innermost tuples are the header followed by the frames; a tuple
+		// that was not closed yet (a run still being written) is left out.
+		int[] offsets = new int[1024];
+		int numFrames = 0;
+		int tupleStart = -1;
+		int nameStart = -1;
+		boolean header = true;
+		ArrayList<String> names = new ArrayList<String>();
+		int size = buffer.limit();
+		for (int pos = 0; pos < size; pos++) {
+			byte b = buffer.get(pos);
+			if (nameStart >= 0) {
+				if (b == '\"') {
+					names.add(decode(nameStart, pos));
+					nameStart = -1;
+				}
+			}
+			else if (b == '\"') {
+				if (header) {
+					nameStart = pos + 1;
+				}
+			}
+			else if (b == '(') {
+				tupleStart = pos;
+			}
+			else if (b == ')' && tupleStart >= 0) {
+				if (header) {
+					species.addAll(names);
+					header = false;
+				}
+				else {
+					if (numFrames == offsets.length) {
+						offsets = Arrays.copyOf(offsets, numFrames * 2);
+					}
+					offsets[numFrames++] = tupleStart;
+				}
+				tupleStart = -1;
+			}
+		}
+		frameOffsets = Arrays.copyOf(offsets, numFrames);
+	}
+
+	/**
+	 * Reads only the header of a TSD file.
+	 * 
+	 * @param filename
+	 *            the TSD file.
+	 * @return the names of the columns.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	public static ArrayList<String> readSpecies(String filename) throws IOException {
+		ArrayList<String> species = new ArrayList<String>();
+		InputStream input = new BufferedInputStream(new FileInputStream(new File(filename)));
+		try {
+			StringBuilder word = null;
+			int read;
+			while ((read = input.read()) != -1) {
+				char cha = (char) read;
+				if (word != null) {
+					if (cha == '\"') {
+						species.add(word.toString());
+						word = null;
+					}
+					else {
+						word.append(cha);
+					}
+				}
+				else if (cha == '\"') {
+					word = new StringBuilder();
+				}
+				else if (cha == ')') {
+					break;
+				}
+			}
+		}
+		finally {
+			input.close();
+		}
+		return species;
+	}
+
+	/**
+	 * @return the names of the columns; the first one is time.
+	 */
+	public ArrayList<String> getSpecies() {
+		return new ArrayList<String>(species);
+	}
+
+	/**
+	 * @return the number of complete frames in the file.
+	 */
+	public int getNumFrames() {
+		return frameOffsets.length;
+	}
+
+	/**
+	 * @param name
+	 *            the name of a column.
+	 * @return the index of the column, or -1 if there is no such column.
+	 */
+	public int getColumnIndex(String name) {
+		return species.indexOf(name);
+	}
+
+	/**
+	 * Returns whether a nan or inf value was decoded so far. As in
+	 * {@link TSDParser}, nan is read as 0 and inf as the largest double.
+	 * 
+	 * @return true if a non-finite value was replaced.
+	 */
+	public boolean hasNonFiniteValues() {
+		return nonFinite;
+	}
+
+	/**
+	 * Decodes all the values of a frame.
+	 * 
+	 * @param frame
+	 *            the frame index.
+	 * @return the values of the frame, in column order.
+	 * @throws IOException
+	 *             if the frame is malformed.
+	 */
+	public double[] readFrame(int frame) throws IOException {
+		int[] columns = new int[species.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = i;
+		}
+		double[] values = new double[columns.length];
+		readFrame(frame, columns, values);
+		return values;
+	}
+
+	/**
+	 * Decodes the given columns of a frame. Values of the other columns are
+	 * skipped without being parsed, and the rest of the frame is not scanned
+	 * once the last requested column was found.
+	 * 
+	 * @param frame
+	 *            the frame index.
+	 * @param columns
+	 *            the column indices to decode.
+	 * @param values
+	 *            receives the value of columns[i] in values[i].
+	 * @throws IOException
+	 *             if the frame is malformed.
+	 */
+	public void readFrame(int frame, int[] columns, double[] values) throws IOException {
+		decodeFrame(frame, getProjection(columns), values);
+	}
+
+	/**
+	 * Decodes the given columns of every frame.
+	 * 
+	 * @param columns
+	 *            the column indices to decode.
+	 * @return the series of each requested column, indexed [column][frame].
+	 * @throws IOException
+	 *             if a frame is malformed.
+	 */
+	public double[][] readColumns(int[] columns) throws IOException {
+		int[] projection = getProjection(columns);
+		double[][] series = new double[columns.length][frameOffsets.length];
+		double[] values = new double[columns.length];
+		for (int frame = 0; frame < frameOffsets.length; frame++) {
+			decodeFrame(frame, projection, values);
+			for (int i = 0; i < columns.length; i++) {
+				series[i][frame] = values[i];
+			}
+		}
+		return series;
+	}
+
+	/**
+	 * Decodes the whole file in the layout used by {@link DataParser}.
+	 * 
+	 * @return one list of values per column.
+	 * @throws IOException
+	 *             if a frame is malformed.
+	 */
+	public ArrayList<ArrayList<Double>> getData() throws IOException {
+		int[] columns = new int[species.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = i;
+		}
+		return getData(columns);
+	}
+
+	/**
+	 * Decodes the given columns in the layout used by {@link DataParser}.
+	 * 
+	 * @param columns
+	 *            the column indices to decode.
+	 * @return one list of values per requested column.
+	 * @throws IOException
+	 *             if a frame is malformed.
+	 */
+	public ArrayList<ArrayList<Double>> getData(int[] columns) throws IOException {
+		double[][] series = readColumns(columns);
+		ArrayList<ArrayList<Double>> data = new ArrayList<ArrayList<Double>>(series.length);
+		for (double[] column : series) {
+			ArrayList<Double> list = new ArrayList<Double>(column.length);
+			for (double value : column) {
+				list.add(value);
+			}
+			data.add(list);
+		}
+		return data;
+	}
+
+	/**
+	 * Gets a speciesToValue map for a particular frame.
+	 * 
+	 * @param frame
+	 *            the frame index.
+	 * @return the value of every column at the frame.
+	 * @throws IOException
+	 *             if the frame is malformed.
+	 */
+	public HashMap<String, Double> getHashMap(int frame) throws IOException {
+		double[] values = readFrame(frame);
+		HashMap<String, Double> out = new HashMap<String, Double>();
+		for (int i = 0; i < values.length; i++) {
+			out.put(species.get(i), values[i]);
+		}
+		return out;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Maps each column of the file to its position in the requested columns,
+	 * or -1.
+	 */
+	private int[] getProjection(int[] columns) {
+		int[] projection = new int[species.size()];
+		Arrays.fill(projection, -1);
+		for (int i = 0; i < columns.length; i++) {
+			projection[columns[i]] = i;
+		}
+		return projection;
+	}
+
+	private void decodeFrame(int frame, int[] projection, double[] values) throws IOException {
+		int last = projection.length - 1;
+		while (last >= 0 && projection[last] < 0) {
+			last--;
+		}
+		int pos = frameOffsets[frame] + 1;
+		int column = 0;
+		while (column <= last) {
+			byte b = buffer.get(pos);
+			if (b == ')') {
+				throw new IOException("Time point " + frame + " includes less data than number of species.");
+			}
+			if (b == ',' || Character.isWhitespace(b)) {
+				pos++;
+				continue;
+			}
+			int start = pos;
+			while (b != ',' && b != ')' && !Character.isWhitespace(b)) {
+				b = buffer.get(++pos);
+			}
+			if (projection[column] >= 0) {
+				values[projection[column]] = parse(start, pos);
+			}
+			column++;
+		}
+	}
+
+	private double parse(int start, int end) throws IOException {
+		String word = decode(start, end);
+		if (word.equals("nan")) {
+			nonFinite = true;
+			return 0;
+		}
+		if (word.equals("inf")) {
+			nonFinite = true;
+			return Double.MAX_VALUE;
+		}
+		if (word.equals("-inf")) {
+			nonFinite = true;
+			return -Double.MAX_VALUE;
+		}
+		try {
+			return Double.parseDouble(word.replace("nan", "NaN").replace("-NaN", "NaN"));
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid value " + word + " in TSD file.", e);
+		}
+	}
+
+	private String decode(int start, int end) {
+		int length = end - start;
+		if (length > token.length) {
+			token = new byte[Math.max(length, token.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			token[i] = buffer.get(start + i);
+		}
+		return new String(token, 0, length, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -48,6 +48,16 @@ public abstract class CoreObservable implements BioObservable {
 		this.listOfObservers.add(bioObserver);
 	}
 
+	/**
+	 * Registers the observers of the given observable with this observable as well.
+	 *
+	 * @param observable
+	 *          - the observable whose observers are added.
+	 */
+	protected void addObservers(CoreObservable observable) {
+		this.listOfObservers.addAll(observable.listOfObservers);
+	}
+
 	@Override
 	public void notifyObservers(Message message) {
 		if (parent != null) {
@@ -0,0 +1,117 @@
+package edu.utah.ece.async.ibiosim.dataModels.biomodel.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLWriter;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class SBMLDocumentCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void clearCache() {
+		SBMLDocumentCache.clear(null);
+	}
+
+	private String write(String name, String... speciesIDs) throws XMLStreamException, IOException {
+		SBMLDocument document = new SBMLDocument(GlobalConstants.SBML_LEVEL, GlobalConstants.SBML_VERSION);
+		document.createModel(name).createCompartment("c");
+		for (String speciesID : speciesIDs) {
+			document.getModel().createSpecies(speciesID, document.getModel().getCompartment("c"));
+		}
+		String filename = new File(folder.getRoot(), name + ".xml").getAbsolutePath();
+		new SBMLWriter().writeSBMLToFile(document, filename);
+		return filename;
+	}
+
+	private static SBMLDocument read(String filename) throws XMLStreamException, IOException, BioSimException {
+		return SBMLDocumentCache.getSharedDocument(filename, null, null);
+	}
+
+	@Test
+	public void test_entry_reused() throws Exception {
+		String filename = write("m", "S1");
+		SBMLDocument document = read(filename);
+		Assert.assertSame(document, read(filename));
+		Assert.assertSame(document, read(new File(folder.getRoot(), "." + File.separator + "m.xml").getPath()));
+
+		SBMLDocument copy = SBMLDocumentCache.readDocument(filename, null, null);
+		Assert.assertNotSame(document, copy);
+		copy.getModel().removeSpecies("S1");
+		Assert.assertNotNull(read(filename).getModel().getSpecies("S1"));
+	}
+
+	@Test
+	public void test_changed_size_reread() throws Exception {
+		String filename = write("m", "S1");
+		SBMLDocument document = read(filename);
+		long lastModified = new File(filename).lastModified();
+		write("m", "S1", "S2");
+		Assert.assertTrue(new File(filename).setLastModified(lastModified));
+
+		SBMLDocument reread = read(filename);
+		Assert.assertNotSame(document, reread);
+		Assert.assertNotNull(reread.getModel().getSpecies("S2"));
+	}
+
+	@Test
+	public void test_changed_mtime_reread() throws Exception {
+		String filename = write("m", "S1");
+		SBMLDocument document = read(filename);
+		File file = new File(filename);
+		long length = file.length();
+		write("m", "S2");
+		Assert.assertEquals(length, file.length());
+		Assert.assertTrue(file.setLastModified(file.lastModified() + 10000));
+
+		SBMLDocument reread = read(filename);
+		Assert.assertNotSame(document, reread);
+		Assert.assertNull(reread.getModel().getSpecies("S1"));
+		Assert.assertNotNull(reread.getModel().getSpecies("S2"));
+	}
+
+	@Test
+	public void test_invalidate_and_clear() throws Exception {
+		String filename = write("m", "S1");
+		SBMLDocument document = read(filename);
+		SBMLDocumentCache.invalidate(filename);
+		SBMLDocument reread = read(filename);
+		Assert.assertNotSame(document, reread);
+
+		SBMLDocumentCache.clear(folder.newFolder().getAbsolutePath());
+		Assert.assertSame(reread, read(filename));
+		SBMLDocumentCache.clear(folder.getRoot().getAbsolutePath());
+		Assert.assertNotSame(reread, read(filename));
+	}
+
+	@Test
+	public void test_least_recently_used_evicted() throws Exception {
+		String[] filenames = new String[SBMLDocumentCache.CAPACITY + 1];
+		for (int i = 0; i < filenames.length; i++) {
+			filenames[i] = write("m" + i);
+		}
+		SBMLDocument[] documents = new SBMLDocument[SBMLDocumentCache.CAPACITY];
+		for (int i = 0; i < documents.length; i++) {
+			documents[i] = read(filenames[i]);
+		}
+		Assert.assertSame(documents[0], read(filenames[0]));
+
+		read(filenames[SBMLDocumentCache.CAPACITY]);
+		Assert.assertSame(documents[0], read(filenames[0]));
+		Assert.assertSame(documents[2], read(filenames[2]));
+		Assert.assertNotSame(documents[1], read(filenames[1]));
+	}
+}
@@ -0,0 +1,88 @@
+package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TSDReaderTest {
+
+	private static final String SIMULATION = "((\"time\", \"S1\", \"S2\", \"compartment\"),\n"
+			+ "(0, 500, 500, 1),\n(0.5, 498, 502, 1),\n(1.0, 1.5E-3, -2.25e+2, 1),\n(1.5, 12, 988, 1))";
+
+	private static final String NON_FINITE = "((\"time\",\"x\",\"y\"),(0,nan,inf),(1,-inf,2),(2,3,nan))";
+
+	private static String write(String content) throws IOException {
+		File file = File.createTempFile("run-", ".tsd");
+		file.deleteOnExit();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file.getAbsolutePath();
+	}
+
+	private static void assertSameAsParser(String filename) throws IOException {
+		TSDParser parser = new TSDParser(filename, true);
+		try (TSDReader reader = new TSDReader(filename)) {
+			Assert.assertEquals(parser.getSpecies(), reader.getSpecies());
+			Assert.assertEquals(parser.getSpecies(), TSDReader.readSpecies(filename));
+			Assert.assertEquals(parser.getNumSamples(), reader.getNumFrames());
+			Assert.assertEquals(parser.getData(), reader.getData());
+			for (int frame = 0; frame < reader.getNumFrames(); frame++) {
+				Assert.assertEquals(parser.getHashMap(frame), reader.getHashMap(frame));
+			}
+		}
+	}
+
+	@Test
+	public void test_same_data_as_parser() throws IOException {
+		assertSameAsParser(write(SIMULATION));
+	}
+
+	@Test
+	public void test_same_non_finite_values_as_parser() throws IOException {
+		String filename = write(NON_FINITE);
+		assertSameAsParser(filename);
+		try (TSDReader reader = new TSDReader(filename)) {
+			Assert.assertFalse(reader.hasNonFiniteValues());
+			reader.readFrame(0);
+			Assert.assertTrue(reader.hasNonFiniteValues());
+		}
+	}
+
+	@Test
+	public void test_selected_columns() throws IOException {
+		String filename = write(SIMULATION);
+		ArrayList<ArrayList<Double>> data = new TSDParser(filename, true).getData();
+		try (TSDReader reader = new TSDReader(filename)) {
+			int[] columns = { reader.getColumnIndex("S2"), reader.getColumnIndex("time") };
+			double[][] series = reader.readColumns(columns);
+			for (int frame = 0; frame < reader.getNumFrames(); frame++) {
+				Assert.assertEquals(data.get(2).get(frame), series[0][frame], 0);
+				Assert.assertEquals(data.get(0).get(frame), series[1][frame], 0);
+			}
+			double[] values = new double[1];
+			reader.readFrame(2, new int[] { 1 }, values);
+			Assert.assertEquals(1.5E-3, values[0], 0);
+			Assert.assertEquals(-1, reader.getColumnIndex("S3"));
+		}
+	}
+
+	@Test
+	public void test_unfinished_frame_left_out() throws IOException {
+		String filename = write("((\"time\",\"x\"),(0,1),(1,2),(2,");
+		try (TSDReader reader = new TSDReader(filename)) {
+			Assert.assertEquals(2, reader.getNumFrames());
+			Assert.assertArrayEquals(new double[] { 1, 2 }, reader.readFrame(1), 0);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void test_missing_data_reported() throws IOException {
+		try (TSDReader reader = new TSDReader(write("((\"time\",\"x\",\"y\"),(0,1,2),(1,2))"))) {
+			reader.readFrame(1);
+		}
+	}
+}
@@ -190,6 +190,7 @@ import edu.utah.ece.async.ibiosim.dataModels.biomodel.annotation.AnnotationUtili
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.annotation.SBOLAnnotation;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.GCM2SBML;
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLDocumentCache;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
 import edu.utah.ece.async.ibiosim.dataModels.graphData.GraphData;
 import edu.utah.ece.async.ibiosim.dataModels.sbol.SBOLUtility;
@@ -1179,6 +1180,9 @@ public class Gui implements BioObserver, MouseListener, ActionListener, MouseMot
 				
 				return;
 			}
+			if (root != null) {
+				SBMLDocumentCache.clear(root);
+			}
 			root = filename;
 			currentProjectId = GlobalConstants.getFilename(root);
 
@@ -1284,6 +1288,9 @@ public class Gui implements BioObserver, MouseListener, ActionListener, MouseMot
 					}
 				}
 				if (isProject) {
+					if (root != null) {
+						SBMLDocumentCache.clear(root);
+					}
 					root = projDir;
 					currentProjectId = GlobalConstants.getFilename(root);
 					readSEDMLDocument();
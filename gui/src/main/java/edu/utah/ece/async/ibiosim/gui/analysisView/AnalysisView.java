@@ -2744,6 +2744,7 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     simulators.addItem("SSA-Direct (Hierarchical)");
     simulators.addItem("SSA-Direct (Flatten)");
     simulators.addItem("Hybrid-Hierarchical");
+    simulators.addItem("Chemical-Langevin (Hierarchical)");
 
     simulators.addItem("Mixed-Hierarchical");
     simulators.setSelectedItem("SSA-Direct (Dynamic)");
@@ -3572,6 +3573,11 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
         description.setText("SSA-Direct Method on Hierarchical Models (java)");
         enableSSASimulator();
       }
+      else if (((String) simulators.getSelectedItem()).equals("Chemical-Langevin (Hierarchical)"))
+      {
+        description.setText("Chemical Langevin Method on Hierarchical Models (java)");
+        enableSSASimulator();
+      }
       else if (((String) simulators.getSelectedItem()).contains("interactive"))
       {
         description.setText("Interactive SSA-Direct Method (java)");
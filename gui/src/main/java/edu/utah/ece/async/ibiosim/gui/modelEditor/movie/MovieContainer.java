@@ -22,7 +22,7 @@ import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DTSDParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
-import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDParser;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDReader;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.PanelObservable;
 import edu.utah.ece.async.ibiosim.gui.Gui;
 import edu.utah.ece.async.ibiosim.gui.ResourceManager;
@@ -96,7 +96,7 @@ public class MovieContainer extends PanelObservable implements ActionListener {
 	private BioModel bioModel;
 	private Gui biosim;
 	private ModelEditor modelEditor;
-	private TSDParser parser;
+	private TSDReader parser;
 	private DTSDParser dynamicParser;
 	private Timer playTimer;
 	private MovieScheme movieScheme;
@@ -243,8 +243,18 @@ public class MovieContainer extends PanelObservable implements ActionListener {
 		}
 		else {
 			dynamic = false;
-			parser = new TSDParser(fullFilePath, false);		
-			numTimePoints = parser.getNumSamples();
+			// the previous reader is closed even if the new file cannot be opened
+			try (TSDReader previous = parser) {
+				// only the frame offsets are read here; frames are decoded as they are shown
+				parser = new TSDReader(fullFilePath);
+			}
+			catch (IOException e) {
+				parser = null;
+				JOptionPane.showMessageDialog(Gui.frame, "Error Reading Data!" + "\nThere was an error reading the simulation output data.",
+						"Error Reading Data", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			numTimePoints = parser.getNumFrames();
 		}
 		
 		slider.setMaximum(numTimePoints - 1);
@@ -490,7 +500,12 @@ public class MovieContainer extends PanelObservable implements ActionListener {
 		//if not dynamic
 		else {
 		
-			speciesTSData = parser.getHashMap(frameIndex);
+			try {
+				speciesTSData = parser.getHashMap(frameIndex);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
 			
 			//find all the components
 			for (int i = 0; i < bioModel.getSBMLDocument().getModel().getParameterCount(); i++) {
@@ -922,7 +937,7 @@ public class MovieContainer extends PanelObservable implements ActionListener {
 		return dynamicParser;
 	}
 	
-	public TSDParser getTSDParser() {
+	public TSDReader getTSDReader() {
 		return parser;
 	}
 
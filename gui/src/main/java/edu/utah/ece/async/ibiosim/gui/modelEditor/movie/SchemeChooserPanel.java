@@ -120,7 +120,7 @@ public class SchemeChooserPanel extends JPanel implements ActionListener {
 			this.allSpecies.addAll(movieContainer.getDTSDParser()
 					.getSpeciesToValueMap(movieContainer.getFrameIndex()).keySet());
 		else
-			this.allSpecies = movieContainer.getTSDParser().getSpecies();
+			this.allSpecies = movieContainer.getTSDReader().getSpecies();
 		
 		this.colorsArray = new Color[] {this.getBackground(), Color.green, Color.red, Color.blue, Color.cyan, 
 			Color.magenta, Color.pink, Color.yellow, Color.orange};
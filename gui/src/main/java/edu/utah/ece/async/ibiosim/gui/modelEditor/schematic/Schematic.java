@@ -1193,7 +1193,7 @@ public class Schematic extends PanelObservable implements ActionListener {
 //								
 //								//if there isn't a TSDParser, the user hasn't selected
 //								//a TSD file to simulate
-//								if (movieContainer.getTSDParser() == null && movieContainer.getDTSDParser() == null)
+//								if (movieContainer.getTSDReader() == null && movieContainer.getDTSDParser() == null)
 //									JOptionPane.showMessageDialog(Gui.frame, "You must choose a simulation file before editing component properties.");
 //								else {
 //									if (cell != null) {
@@ -2327,7 +2327,7 @@ public class Schematic extends PanelObservable implements ActionListener {
 				speciesPane.addTab("Parameters", speciesPanel);
 				
 				//make sure a simulation file is selected before adding the appearance panel
-				if(movieContainer != null && movieContainer.getTSDParser() != null) {
+				if(movieContainer != null && movieContainer.getTSDReader() != null) {
 					scPanel = ModelEditor.getSchemeChooserPanel(cell.getId(), movieContainer, true);
 					speciesPane.addTab("Appearance", scPanel);
 				}
@@ -2698,7 +2698,7 @@ public class Schematic extends PanelObservable implements ActionListener {
 				speciesPanel.add(copyIntSpecies);
 				
 				//make sure a simulation file is selected before adding the appearance panel
-				if (movieContainer != null && (movieContainer.getTSDParser() != null || movieContainer.getDTSDParser() != null)) {
+				if (movieContainer != null && (movieContainer.getTSDReader() != null || movieContainer.getDTSDParser() != null)) {
 					scPanel = ModelEditor.getSchemeChooserPanel(cell.getId(), movieContainer, true);
 					speciesPane.addTab("Appearance", scPanel);
 				}
@@ -2839,7 +2839,7 @@ public class Schematic extends PanelObservable implements ActionListener {
 				
 				//if there isn't a TSDParser, the user hasn't selected
 				//a TSD file to simulate
-				if (movieContainer.getTSDParser() == null && movieContainer.getDTSDParser() == null)
+				if (movieContainer.getTSDReader() == null && movieContainer.getDTSDParser() == null)
 					JOptionPane.showMessageDialog(Gui.frame, "You must choose a simulation file " +
 							"before editing grid module properties.");
 				else {
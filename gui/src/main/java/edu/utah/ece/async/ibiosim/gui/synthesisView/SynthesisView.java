@@ -33,6 +33,7 @@ import java.util.Set;
 import java.util.prefs.Preferences;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -68,6 +69,7 @@ import edu.utah.ece.async.ibiosim.gui.util.Log;
 import edu.utah.ece.async.ibiosim.gui.util.Utility;
 import edu.utah.ece.async.ibiosim.synthesis.TechMapping;
 import edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping.SynthesisGraph;
+import edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping.SynthesisMatcher;
 import edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping.Synthesizer;
 import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.SBOLTechMap;
 import edu.utah.ece.async.sboldesigner.sbol.editor.SBOLEditorPreferences;
@@ -104,6 +106,7 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 
 	private JRadioButton select_SBMLTechMap;
 	private JRadioButton select_SBOLTechMap;
+	private JCheckBox select_SBOLDynamicProgramming;
 
 	/**
 	 * Constructor to create the technology mapping for the UI.
@@ -229,12 +232,15 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 	 * @return the technology mapping option panel.
 	 */
 	private JPanel constructTechnologyMappingOptions(){
-		JPanel techMapPanel = new JPanel(new GridLayout(1, 2));
+		JPanel techMapPanel = new JPanel(new GridLayout(1, 3));
 		select_SBMLTechMap = new JRadioButton("SBML Technology Mapping");
 		select_SBOLTechMap = new JRadioButton("SBOL Technology Mapping");	
+		select_SBOLDynamicProgramming = new JCheckBox("Dynamic Programming Cover");
 		select_SBMLTechMap.setSelected(true);
+		select_SBOLDynamicProgramming.setEnabled(false);
 		techMapPanel.add(select_SBMLTechMap);
 		techMapPanel.add(select_SBOLTechMap); 
+		techMapPanel.add(select_SBOLDynamicProgramming);
 		select_SBMLTechMap.addActionListener(this);
 		select_SBOLTechMap.addActionListener(this);
 		return techMapPanel;
@@ -352,6 +358,7 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 			if(select_SBMLTechMap.isSelected())
 			{
 				select_SBOLTechMap.setSelected(false);
+				select_SBOLDynamicProgramming.setEnabled(false);
 			}
 			else 
 			{
@@ -365,6 +372,7 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 			if(select_SBOLTechMap.isSelected())
 			{
 				select_SBMLTechMap.setSelected(false);
+				select_SBOLDynamicProgramming.setEnabled(true);
 			}
 			else 
 			{
@@ -519,8 +527,13 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 				SynthesisGraph spec = new SynthesisGraph(specModel, fileManager); //NOTE: load the SBML library file
 
 
-				Synthesizer synthesizer = new Synthesizer(graphlibrary, synthProps);
+				//NOTE: the library matcher is compiled once and reused until the library changes
+				String automatonFilePath = rootFilePath + separator + synthID + separator + synthID + ".automaton";
+				SynthesisMatcher matcher = SynthesisMatcher.load(graphlibrary, new File(automatonFilePath));
+				Synthesizer synthesizer = new Synthesizer(matcher, synthProps);
 				List<List<SynthesisGraph>> solutions = synthesizer.mapSpecification(spec);
+				log.addText("Tried " + synthesizer.getNodesExplored() + " matches ("
+						+ String.format("%.0f", synthesizer.getNodesExploredPerSecond()) + " per second) to cover the specification.\n");
 				List<String> solutionFileIDs;
 
 				solutionFileIDs = importSolutions(solutions, spec, fileManager, synthFilePath);
@@ -569,7 +582,7 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 				SBOLDocument specDoc = new SBOLDocument();
 				specDoc.setDefaultURIprefix(defaultURIPrefix);
 
-				SBML2SBOL.convert_SBML2SBOL(specDoc, specFile, sbmlSpec, f.getName(), null, defaultURIPrefix);
+				SBML2SBOL.convert_SBML2SBOL(specDoc, specFile, sbmlSpec, f.getName(), (HashSet<String>) null, defaultURIPrefix);
 
 				// Note: If there are more than one library file provided, convert them into one SBOL file.
 				SBOLDocument libDoc = new SBOLDocument();
@@ -579,7 +592,7 @@ public class SynthesisView extends JTabbedPane implements ActionListener, Runnab
 					libDoc.createCopy(sbolDoc);
 				}
 
-				SBOLDocument solution = SBOLTechMap.runSBOLTechMap(specDoc, libDoc);
+				SBOLDocument solution = SBOLTechMap.runSBOLTechMap(specDoc, libDoc, select_SBOLDynamicProgramming.isSelected());
 
 				// Note: Convert the solution back to SBML and load back to iBioSim workspace
 				String solution_dir = synthFilePath;
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.learn.genenet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A BitEncodings object is a read-only view of the discretized experiments where every
+ * time point of every experiment is a bit. For each species, there is one bitset per level
+ * marking the time points where the species is at that level, and one bitset marking the
+ * time points where the species is increasing. Counting the time points that satisfy a
+ * combination of conditions is then the population count of the intersection of bitsets.
+ *
+ * @author Leandro Watanabe
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BitEncodings
+{
+
+	private final int					numWords;
+	private final Map<String, long[][]>	levelBits;
+	private final Map<String, long[]>	increasingBits;
+	private final Map<String, int[]>	levelOrder;
+
+	/**
+	 * Creates a BitEncodings object from the level assignments of the interesting species.
+	 * The bitsets cover the time points of the given experiments, while the levels of each
+	 * species are collected over all experiments of the encodings.
+	 * 
+	 * @param S - collection of species.
+	 * @param E - collection of experiments.
+	 * @param L - the encodings of the data.
+	 */
+	public BitEncodings(SpeciesCollection S, Experiments E, Encodings L)
+	{
+		int numPoints = 0;
+
+		for (List<List<Double>> experiment : E.getExperiments())
+		{
+			numPoints += experiment.size();
+		}
+
+		numWords = (numPoints + 63) >>> 6;
+		levelBits = new HashMap<String, long[][]>();
+		increasingBits = new HashMap<String, long[]>();
+		levelOrder = new HashMap<String, int[]>();
+
+		for (String species : S.getInterestingSpecies())
+		{
+			int col = S.getColumn(species);
+			List<long[]> bits = new ArrayList<long[]>();
+			List<Integer> order = new ArrayList<Integer>();
+			long[] increasing = new long[numWords];
+			int index = 0;
+
+			for (int i = 0; i < E.getNumOfExperiments(); i++)
+			{
+				List<List<Double>> experiment = E.getExperiments().get(i);
+				List<List<Integer>> encodings = L.getLevelAssignments().get(i);
+
+				for (int j = 0; j < experiment.size(); j++, index++)
+				{
+					int level = encodings.get(j).get(col);
+
+					while (bits.size() <= level)
+					{
+						bits.add(new long[numWords]);
+					}
+					bits.get(level)[index >>> 6] |= 1L << index;
+
+					if (isIncreasing(experiment, j, col))
+					{
+						increasing[index >>> 6] |= 1L << index;
+					}
+				}
+			}
+
+			for (List<List<Integer>> encodings : L.getLevelAssignments())
+			{
+				for (List<Integer> row : encodings)
+				{
+					int level = row.get(col);
+
+					if (!order.contains(level))
+					{
+						order.add(level);
+					}
+				}
+			}
+
+			int[] orderArray = new int[order.size()];
+			for (int i = 0; i < orderArray.length; i++)
+			{
+				orderArray[i] = order.get(i);
+			}
+
+			levelBits.put(species, bits.toArray(new long[bits.size()][]));
+			increasingBits.put(species, increasing);
+			levelOrder.put(species, orderArray);
+		}
+	}
+
+	private static boolean isIncreasing(List<List<Double>> experiment, int row, int col)
+	{
+		if (row + 1 < experiment.size() && experiment.get(row).get(col) < experiment.get(row + 1).get(col))
+		{
+			return true;
+		}
+
+		return row - 1 >= 0 && experiment.get(row - 1).get(col) < experiment.get(row).get(col);
+	}
+
+	/**
+	 * Returns the levels observed for any of the given species, in the order in which they
+	 * first appear in the data.
+	 * 
+	 * @param species - set of species.
+	 * @return a new list of distinct levels.
+	 */
+	public List<Integer> getLevelAssignments(Set<String> species)
+	{
+		List<Integer> set = new ArrayList<Integer>();
+
+		for (String s : species)
+		{
+			for (int level : levelOrder.get(s))
+			{
+				if (!set.contains(level))
+				{
+					set.add(level);
+				}
+			}
+		}
+
+		return set;
+	}
+
+	/**
+	 * Returns the time points where all given species are at the given level.
+	 * 
+	 * @param species - set of species.
+	 * @param level - the level.
+	 * @return a new bitset of time points.
+	 */
+	public long[] getLevelMask(Set<String> species, int level)
+	{
+		long[] mask = new long[numWords];
+
+		for (int i = 0; i < numWords; i++)
+		{
+			mask[i] = -1L;
+		}
+		for (String s : species)
+		{
+			long[][] bits = levelBits.get(s);
+
+			if (level >= bits.length)
+			{
+				return new long[numWords];
+			}
+			for (int i = 0; i < numWords; i++)
+			{
+				mask[i] &= bits[level][i];
+			}
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Returns the time points where the given species is increasing. The returned array must
+	 * not be modified.
+	 * 
+	 * @param species - id of species.
+	 * @return the bitset of time points.
+	 */
+	public long[] getIncreasing(String species)
+	{
+		return increasingBits.get(species);
+	}
+
+	/**
+	 * Counts the time points in both bitsets.
+	 * 
+	 * @param a - a bitset.
+	 * @param b - a bitset.
+	 * @return the size of the intersection.
+	 */
+	public static int count(long[] a, long[] b)
+	{
+		int count = 0;
+
+		for (int i = 0; i < a.length; i++)
+		{
+			count += Long.bitCount(a[i] & b[i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Counts the time points in all three bitsets.
+	 * 
+	 * @param a - a bitset.
+	 * @param b - a bitset.
+	 * @param c - a bitset.
+	 * @return the size of the intersection.
+	 */
+	public static int count(long[] a, long[] b, long[] c)
+	{
+		int count = 0;
+
+		for (int i = 0; i < a.length; i++)
+		{
+			count += Long.bitCount(a[i] & b[i] & c[i]);
+		}
+
+		return count;
+	}
+}
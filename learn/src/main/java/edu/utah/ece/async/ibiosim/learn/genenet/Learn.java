@@ -27,6 +27,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.parser.BioModel;
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
@@ -44,6 +49,7 @@ public class Learn
 {
 
 	private int	bins;
+	private int	threads;
 
 	/**
 	 * Creates a learn object.
@@ -53,6 +59,17 @@ public class Learn
 	public Learn(int bins)
 	{
 		this.bins = bins;
+		this.threads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the maximum number of species whose parents are learned at the same time.
+	 * 
+	 * @param threads - the number of threads, where 1 learns the species one at a time.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
 	}
 
 
@@ -157,7 +174,8 @@ public class Learn
 
 	/**
 	 * This is the core of the GeneNet procedure. It will learn the connectivity of the
-	 * species from experimental data.
+	 * species from experimental data. The parents of each species are learned independently,
+	 * so the species are processed in parallel over the discretized data in bitset form.
 	 * 
 	 * @param S - collection of species.
 	 * @param E - collection of experiments.
@@ -171,18 +189,79 @@ public class Learn
 	{
 		EncodeExpts(S, E, C, T, L);
 
+		final BitEncodings encodings = new BitEncodings(S, E, L);
+		final SpeciesCollection species = S;
+		List<String> learnedSpecies = new ArrayList<String>();
+		List<Callable<List<Connection>>> tasks = new ArrayList<Callable<List<Connection>>>();
+
 		for (int i = 0; i < S.size(); i++)
 		{
-			String s = S.getInterestingSpecies(i);
+			final String s = S.getInterestingSpecies(i);
 
 			if (!C.containEdge(s))
 			{
 				Experiments new_E = E.removeMutations(s);
-				selectInitialParents(s, S, new_E, C, T, L);
-				createMultipleParents(s, S, new_E, C, T, L);
-				competeMultipleParents(s, S, new_E, C, T, L);
+				final BitEncodings B = new_E == E ? encodings : new BitEncodings(S, new_E, L);
+				final Thresholds threshold = new Thresholds(T.getTa(), T.getTr(), T.getTi(), T.getTt());
+
+				learnedSpecies.add(s);
+				tasks.add(new Callable<List<Connection>>()
+				{
+					@Override
+					public List<Connection> call()
+					{
+						return learnParents(s, species, threshold, B);
+					}
+				});
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(tasks.size(), threads)));
+		try
+		{
+			List<Future<List<Connection>>> results = executor.invokeAll(tasks);
+
+			for (int i = 0; i < results.size(); i++)
+			{
+				List<Connection> connections = results.get(i).get();
+
+				if (connections != null)
+				{
+					for (Connection connection : connections)
+					{
+						C.addConnection(learnedSpecies.get(i), connection);
+					}
+				}
 			}
 		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new BioSimException("Learning was interrupted.", "Error in learning.");
+		}
+		catch (ExecutionException e)
+		{
+			throw new BioSimException("Failed to learn network: " + e.getCause(), "Error in learning.");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Learns the parents of a single species on a private connectivity and threshold copy so
+	 * that several species can be learned at the same time.
+	 */
+	private static List<Connection> learnParents(String s, SpeciesCollection S, Thresholds T, BitEncodings B)
+	{
+		NetCon C = new NetCon();
+
+		selectInitialParents(s, S, C, T, B);
+		createMultipleParents(s, C, T, B);
+		competeMultipleParents(s, C, T, B);
+
+		return C.getListOfConnections(s);
 	}
 
 	private void EncodeExpts(SpeciesCollection S, Experiments E, NetCon C, Thresholds T, Encodings L) throws BioSimException
@@ -270,49 +349,36 @@ public class Learn
 		L.addDiscreteSpecies(col, level);
 	}
 
-	private static double scoreParents(String s, SpeciesCollection S, Set<String> P, Set<String> G, Experiments E, Thresholds T, Encodings L)
+	private static double scoreParents(String s, Set<String> P, Set<String> G, Thresholds T, BitEncodings B)
 	{
 		int votes_a = 0, votes_r = 0, votes_u = 0;
 		int totalDen = 0, den = 0, totalNum = 0, num = 0;
-		int targetCol = S.getColumn(s);
 		double probRatio = 0;
-		List<Integer> levelAssignmentsP = getLevelAssignments(P, S, L);
-		Collections.sort(levelAssignmentsP);
-		List<Integer> levelAssignmentsG = getLevelAssignments(G, S, L);
+		long[] increasing = B.getIncreasing(s);
+		List<Integer> levelAssignmentsP = B.getLevelAssignments(P);
 		Collections.sort(levelAssignmentsP);
+		List<Integer> levelAssignmentsG = B.getLevelAssignments(G);
 		int l0 = levelAssignmentsP.remove(0);
+		long[] p0 = B.getLevelMask(P, l0);
+		long[][] p = new long[levelAssignmentsP.size()][];
 
-		for (int l : levelAssignmentsG)
+		for (int k = 0; k < p.length; k++)
 		{
-			for (int lp : levelAssignmentsP)
-			{
-				for (int i = 0; i < E.getNumOfExperiments(); i++)
-				{
-					for (int j = 0; j < E.getExperiments().get(i).size(); j++)
-					{
+			p[k] = B.getLevelMask(P, levelAssignmentsP.get(k));
+		}
 
-						boolean g = checkSameLevel(G, i, j, l, S, L);
-						boolean p = checkSameLevel(P, i, j, lp, S, L);
-						boolean p0 = checkSameLevel(P, i, j, l0, S, L);
+		for (int l : levelAssignmentsG)
+		{
+			long[] g = B.getLevelMask(G, l);
+			int gp0 = BitEncodings.count(g, p0);
+			int gp0Increasing = BitEncodings.count(g, p0, increasing);
 
-						if (g && p)
-						{
-							if (isIncreasing(i, j, targetCol, E))
-							{
-								num++;
-							}
-							totalNum++;
-						}
-						else if (g && p0)
-						{
-							if (isIncreasing(i, j, targetCol, E))
-							{
-								den++;
-							}
-							totalDen++;
-						}
-					}
-				}
+			for (int k = 0; k < p.length; k++)
+			{
+				totalNum += BitEncodings.count(g, p[k]);
+				num += BitEncodings.count(g, p[k], increasing);
+				totalDen += gp0;
+				den += gp0Increasing;
 			}
 
 			if (num == 0 || den == 0)
@@ -341,70 +407,7 @@ public class Learn
 		return 1.0 * (votes_a - votes_r) / (votes_a + votes_r + votes_u);
 	}
 
-	private static boolean checkSameLevel(Set<String> species, int experiment, int row, int bin, SpeciesCollection S, Encodings L)
-	{
-		for (String s : species)
-		{
-			int col = S.getColumn(s);
-
-			if (L.getLevelAssignments().get(experiment).get(row).get(col) != bin)
-			{
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	private static boolean isIncreasing(int experiment, int row, int targetCol, Experiments E)
-	{
-		List<List<Double>> list = E.getExperiments().get(experiment);
-
-		if (row + 1 < list.size())
-		{
-			if (list.get(row).get(targetCol) < list.get(row + 1).get(targetCol))
-			{
-				return true;
-			}
-		}
-
-		if (row - 1 >= 0)
-		{
-			if (list.get(row - 1).get(targetCol) < list.get(row).get(targetCol))
-			{
-				return true;
-			}
-		}
-		return false;
-	}
-
-	private static List<Integer> getLevelAssignments(Set<String> P, SpeciesCollection S, Encodings L)
-	{
-		List<Integer> set = new ArrayList<Integer>();
-
-		for (String species : P)
-		{
-			int col = S.getColumn(species);
-
-			for (int i = 0; i < L.size(); i++)
-			{
-				List<List<Integer>> encodings = L.getLevelAssignments().get(i);
-
-				for (int j = 0; j < encodings.size(); j++)
-				{
-					int value = encodings.get(j).get(col);
-					if (!set.contains(value))
-					{
-						set.add(encodings.get(j).get(col));
-					}
-				}
-			}
-		}
-
-		return set;
-	}
-
-	private static void selectInitialParents(String s, SpeciesCollection S, Experiments E, NetCon C, Thresholds T, Encodings L)
+	private static void selectInitialParents(String s, SpeciesCollection S, NetCon C, Thresholds T, BitEncodings B)
 	{
 		List<String> interestingSpecies = new ArrayList<String>(S.getInterestingSpecies());
 		interestingSpecies.remove(s);
@@ -413,7 +416,7 @@ public class Learn
 
 		for (String p : interestingSpecies)
 		{
-			score = scoreParents(s, S, new HashSet<String>(Arrays.asList(p)), new HashSet<String>(Arrays.asList(s)), E, T, L);
+			score = scoreParents(s, new HashSet<String>(Arrays.asList(p)), new HashSet<String>(Arrays.asList(s)), T, B);
 
 			if (score >= T.getTi())
 			{
@@ -426,7 +429,7 @@ public class Learn
 		}
 	}
 
-	private static void createMultipleParents(String s, SpeciesCollection S, Experiments E, NetCon C, Thresholds T, Encodings L)
+	private static void createMultipleParents(String s, NetCon C, Thresholds T, BitEncodings B)
 	{
 
 		double score1, score2, scoreb;
@@ -455,7 +458,7 @@ public class Learn
 				parents.addAll(connection1.getParents());
 				parents.addAll(connection2.getParents());
 
-				scoreb = scoreParents(s, S, parents, new HashSet<String>(Arrays.asList(s)), E, T, L);
+				scoreb = scoreParents(s, parents, new HashSet<String>(Arrays.asList(s)), T, B);
 				if (Math.abs(scoreb) >= Math.abs(score1) && Math.abs(scoreb) >= Math.abs(score2))
 				{
 					multipleParents.add(new Connection(s, scoreb, connection1, connection2));
@@ -476,7 +479,7 @@ public class Learn
 		}
 	}
 
-	private static void competeMultipleParents(String s, SpeciesCollection S, Experiments E, NetCon C, Thresholds T, Encodings L)
+	private static void competeMultipleParents(String s, NetCon C, Thresholds T, BitEncodings B)
 	{
 		List<Connection> potentialParents = C.getListOfConnections(s);
 		double scoreq, smallestScore;
@@ -509,7 +512,7 @@ public class Learn
 				}
 
 				G.add(s);
-				scoreq = scoreParents(s, S, P, G, E, T, L);
+				scoreq = scoreParents(s, P, G, T, B);
 				scores.add(Math.abs(scoreq));
 
 				if (Math.abs(scoreq) < smallestScore)
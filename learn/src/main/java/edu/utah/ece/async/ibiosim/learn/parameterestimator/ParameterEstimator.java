@@ -26,8 +26,8 @@ import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLReader;
 
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.ibiosim.learn.genenet.Experiments;
 import edu.utah.ece.async.ibiosim.learn.genenet.SpeciesCollection;
@@ -70,7 +70,9 @@ public class ParameterEstimator
 		double ep = experiments.getExperiments().get(0).get(n).get(0);
 		double[] lowerbounds = new double[numberofparameters];
 		double[] upperbounds = new double[numberofparameters];
-		HierarchicalSimulation sim = new HierarchicalODERKSimulator(properties, false);
+		CompiledModel compiledModel = CompiledModel.compile(properties);
+		HierarchicalODERKSimulator sim = new HierarchicalODERKSimulator(compiledModel, false);
+		sim.initialize(0);
 
 		for (int i = 0; i < numberofparameters; i++)
 		{
@@ -81,7 +83,7 @@ public class ParameterEstimator
 		// Objective objective1 = new ObjectiveSqureError(M1,0.1);
 
 		EvolutionMethodSetting EMS = new EvolutionMethodSetting();
-		ObjectiveSqureError TP = new ObjectiveSqureError(sim, experiments, parameterList, speciesCollection, M1, 0.1);
+		ObjectiveSqureError TP = new ObjectiveSqureError(compiledModel, experiments, parameterList, speciesCollection, M1, 0.1);
 
 		SRES sres = new SRES(TP, EMS);
 		SRES.Solution solution = sres.run(200).getBestSolution();
@@ -22,8 +22,8 @@ import javax.xml.stream.XMLStreamException;
 
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.CompiledModel;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.ibiosim.learn.genenet.Experiments;
 import edu.utah.ece.async.ibiosim.learn.genenet.SpeciesCollection;
@@ -45,7 +45,7 @@ public class ObjectiveSqureError extends Objective
 	private Experiments				experiment;
 	private List<String>			listOfParams;
 	private String[]				speciesCollection;
-	private HierarchicalSimulation	sim;
+	private CompiledModel			compiledModel;
 
 	/*
 	 * public TestProblem(double[] featureUpperBounds, double[]
@@ -61,15 +61,15 @@ public class ObjectiveSqureError extends Objective
 	 */
 
 	/**
-	 * Creates an ObjectiveSqureError object.
-	 * @param sim - simulators
+	 * Creates an ObjectiveSqureError object. Every evaluation simulates a new instance of the compiled model.
+	 * @param compiledModel - the compiled model to simulate
 	 * @param experiments - experimental data
 	 * @param parameterList - list of parameters to estimate
 	 * @param speciesCollection - list of interesting species
 	 * @param Ms - model settings
 	 * @param valueAtSolution - true value
 	 */
-	public ObjectiveSqureError(HierarchicalSimulation sim, Experiments experiments, List<String> parameterList, SpeciesCollection speciesCollection, Modelsettings Ms, double valueAtSolution)
+	public ObjectiveSqureError(CompiledModel compiledModel, Experiments experiments, List<String> parameterList, SpeciesCollection speciesCollection, Modelsettings Ms, double valueAtSolution)
 	{
 		super(Ms);
 		this.valueAtSolution = valueAtSolution;
@@ -84,7 +84,7 @@ public class ObjectiveSqureError extends Objective
 		{
 			this.speciesCollection[speciesCollection.getColumn(species)] = species;
 		}
-		this.sim = sim;
+		this.compiledModel = compiledModel;
 	}
 
 	/**
@@ -112,52 +112,48 @@ public class ObjectiveSqureError extends Objective
 		double sum = 0;
 		List<List<Double>> experiment = this.experiment.getExperiments().get(0);
 
-		HierarchicalODERKSimulator odeSim = (HierarchicalODERKSimulator) sim;
-		AnalysisProperties properties = odeSim.getProperties();
+		// Each evaluation moves the time limit of its own copy of the properties, so evaluations can run concurrently.
+		AnalysisProperties properties = new AnalysisProperties(compiledModel.getProperties());
 		SimulationProperties simProperties = properties.getSimulationProperties();
-		
+		HierarchicalODERKSimulator odeSim;
+		try
+		{
+			odeSim = new HierarchicalODERKSimulator(compiledModel.withProperties(properties), false);
+		}
+		catch (XMLStreamException | IOException | BioSimException e)
+		{
+			return new Result(Double.MAX_VALUE);
+		}
+
 		for (int i = 1; i < speciesCollection.length; i++)
 		{
-			odeSim.setTopLevelValue(speciesCollection[i], experiment.get(0).get(i));
+			odeSim.overrideInitialValue(speciesCollection[i], experiment.get(0).get(i));
 		}
 
 		for (int i = 0; i < listOfParams.size(); i++)
 		{
-			odeSim.setTopLevelValue(listOfParams.get(i), features[i]);
+			odeSim.overrideInitialValue(listOfParams.get(i), features[i]);
 		}
 		for (int i = 0; i < experiment.size() - 1; i++)
 		{
-
-		  simProperties.setTimeLimit(experiment.get(i + 1).get(0));
-			try 
+			simProperties.setTimeLimit(experiment.get(i + 1).get(0));
+			try
 			{
-        odeSim.simulate();
-        for (int j = 1; j < speciesCollection.length; j++)
-        {
-          double tmp = odeSim.getTopLevelValue(speciesCollection[j]) - experiment.get(i + 1).get(j);
-          tmp = tmp * tmp;
-          sum = sum + tmp;
-        }
-      } 
-			catch (XMLStreamException | IOException | BioSimException e) 
+				odeSim.simulate();
+				for (int j = 1; j < speciesCollection.length; j++)
+				{
+					double tmp = odeSim.getTopLevelValue(speciesCollection[j]) - experiment.get(i + 1).get(j);
+					tmp = tmp * tmp;
+					sum = sum + tmp;
+				}
+			}
+			catch (XMLStreamException | IOException | BioSimException e)
 			{
-			  sum = Double.MAX_VALUE;
-      } 
-			
-
+				sum = Double.MAX_VALUE;
+				break;
+			}
 		}
 
-		odeSim.setCurrentTime(0);
-
-		simProperties.setTimeLimit(0);
-
-		try {
-      odeSim.setupForNewRun(0);
-    } catch (IOException e) {
-      // TODO fix this later
-      e.printStackTrace();
-    }
-
 		return new Result(sum);
 	}
 
@@ -16,10 +16,20 @@ package edu.utah.ece.async.ibiosim.learn;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+import edu.utah.ece.async.ibiosim.learn.genenet.Connection;
+import edu.utah.ece.async.ibiosim.learn.genenet.Encodings;
+import edu.utah.ece.async.ibiosim.learn.genenet.Experiments;
+import edu.utah.ece.async.ibiosim.learn.genenet.NetCon;
+import edu.utah.ece.async.ibiosim.learn.genenet.Run;
+import edu.utah.ece.async.ibiosim.learn.genenet.SpeciesCollection;
+import edu.utah.ece.async.ibiosim.learn.genenet.Thresholds;
+
 
 public class LearnTests {
 
@@ -40,4 +50,41 @@ public class LearnTests {
     Learn.main(new String[]{"-e", filename, directory});
     //TODO: add check
   }
+  
+  @Test
+  public void testParallelGeneNet() throws BioSimException {
+    String directory = root + File.separator + "simpleDesign" + File.separator;
+    String filename = directory + "simpleDesign.xml";
+    SpeciesCollection S = new SpeciesCollection();
+    Run.init(filename, S);
+    NetCon sequential = learnNetwork(filename, directory, 1);
+    NetCon parallel = learnNetwork(filename, directory, 4);
+    assertEquals(sequential.getConnections().keySet(), parallel.getConnections().keySet());
+    for (String species : S.getInterestingSpecies()) {
+      List<Connection> expected = sequential.getListOfConnections(species);
+      List<Connection> actual = parallel.getListOfConnections(species);
+      if (expected == null) {
+        assertNull(actual);
+        continue;
+      }
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0);
+      }
+    }
+  }
+
+  private static NetCon learnNetwork(String filename, String directory, int threads) throws BioSimException {
+    SpeciesCollection S = new SpeciesCollection();
+    Experiments E = new Experiments();
+    Encodings L = new Encodings();
+    NetCon C = new NetCon();
+    Run.init(filename, S);
+    Run.loadExperiments(directory, S, E);
+    edu.utah.ece.async.ibiosim.learn.genenet.Learn learn = new edu.utah.ece.async.ibiosim.learn.genenet.Learn(3);
+    learn.setThreads(threads);
+    learn.learnNetwork(S, E, C, new Thresholds(), L);
+    return C;
+  }
 }
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compiled Aho-Corasick automaton over the paths of a gate library. The characters of the
+ * paths are interned into a small alphabet, the goto and failure functions are folded into
+ * one dense transition table indexed by state and symbol, and each state stores every keyword
+ * that ends at it, including the ones reached through failure links. The automaton only
+ * refers to keywords, so it can be written to a file once and bound to the same library again
+ * for later specifications.
+ *
+ * @author Nicholas Roehner
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SynthesisAutomaton implements Serializable {
+
+	/**
+	 * Required for serialization support.
+	 * 
+	 * @see java.io.Serializable
+	 */
+	private static final long serialVersionUID = 6127311820547093462L;
+
+	private static final int[] NO_OUTPUT = new int[0];
+
+	private final String[] keywords;
+	private final int[] charToSymbol; //Symbol index of each character, -1 if it is not in any keyword
+	private final int numSymbols;
+	private final int[] transitions; //Next state at index state * numSymbols + symbol
+	private final int[][] outputs; //Keyword indices that end at each state
+
+	private SynthesisAutomaton(String[] keywords, int[] charToSymbol, int numSymbols, int[] transitions, int[][] outputs) {
+		this.keywords = keywords;
+		this.charToSymbol = charToSymbol;
+		this.numSymbols = numSymbols;
+		this.transitions = transitions;
+		this.outputs = outputs;
+	}
+
+	/**
+	 * Compiles the automaton for the paths of all graphs in a library.
+	 * @param graphLibrary - The library gates.
+	 * @return the compiled automaton.
+	 */
+	public static SynthesisAutomaton compile(Set<SynthesisGraph> graphLibrary) {
+		Set<String> keywords = new LinkedHashSet<String>();
+		for (SynthesisGraph graph : graphLibrary)
+			keywords.addAll(graph.getPaths());
+		return compile(keywords);
+	}
+
+	/**
+	 * Compiles the automaton for a collection of keywords.
+	 * @param keywordCollection - The keywords to recognize.
+	 * @return the compiled automaton.
+	 */
+	public static SynthesisAutomaton compile(Collection<String> keywordCollection) {
+		Set<String> distinct = new LinkedHashSet<String>(keywordCollection);
+		String[] keywords = distinct.toArray(new String[distinct.size()]);
+
+		//NOTE: intern the characters of the keywords into consecutive symbols
+		TreeSet<Character> alphabet = new TreeSet<Character>();
+		for (String keyword : keywords)
+			for (int i = 0; i < keyword.length(); i++)
+				alphabet.add(keyword.charAt(i));
+		int[] charToSymbol = new int[alphabet.isEmpty() ? 0 : alphabet.last() + 1];
+		Arrays.fill(charToSymbol, -1);
+		int numSymbols = 0;
+		for (char c : alphabet)
+			charToSymbol[c] = numSymbols++;
+
+		//NOTE: build the trie, where goTo.get(state)[symbol] is -1 when there is no edge
+		List<int[]> goTo = new ArrayList<int[]>();
+		List<List<Integer>> keywordsAt = new ArrayList<List<Integer>>();
+		goTo.add(newRow(numSymbols));
+		keywordsAt.add(new ArrayList<Integer>());
+		for (int k = 0; k < keywords.length; k++) {
+			int state = 0;
+			for (int i = 0; i < keywords[k].length(); i++) {
+				int symbol = charToSymbol[keywords[k].charAt(i)];
+				if (goTo.get(state)[symbol] < 0) {
+					goTo.get(state)[symbol] = goTo.size();
+					goTo.add(newRow(numSymbols));
+					keywordsAt.add(new ArrayList<Integer>());
+				}
+				state = goTo.get(state)[symbol];
+			}
+			keywordsAt.get(state).add(k);
+		}
+
+		//NOTE: compute failure links breadth first and fold them into the transition table
+		int numStates = goTo.size();
+		int[] transitions = new int[numStates * numSymbols];
+		int[] failure = new int[numStates];
+		int[][] outputs = new int[numStates][];
+		int[] queue = new int[numStates];
+		int head = 0, tail = 0;
+		outputs[0] = toArray(keywordsAt.get(0), NO_OUTPUT);
+		for (int a = 0; a < numSymbols; a++) {
+			int s = goTo.get(0)[a];
+			if (s < 0)
+				transitions[a] = 0;
+			else {
+				transitions[a] = s;
+				failure[s] = 0;
+				queue[tail++] = s;
+			}
+		}
+		while (head < tail) {
+			int r = queue[head++];
+			List<Integer> output = new ArrayList<Integer>(keywordsAt.get(r));
+			for (int k : outputs[failure[r]])
+				output.add(k);
+			outputs[r] = toArray(output, NO_OUTPUT);
+			for (int a = 0; a < numSymbols; a++) {
+				int s = goTo.get(r)[a];
+				if (s < 0)
+					transitions[r * numSymbols + a] = transitions[failure[r] * numSymbols + a];
+				else {
+					transitions[r * numSymbols + a] = s;
+					failure[s] = transitions[failure[r] * numSymbols + a];
+					queue[tail++] = s;
+				}
+			}
+		}
+		return new SynthesisAutomaton(keywords, charToSymbol, numSymbols, transitions, outputs);
+	}
+
+	private static int[] newRow(int numSymbols) {
+		int[] row = new int[numSymbols];
+		Arrays.fill(row, -1);
+		return row;
+	}
+
+	private static int[] toArray(List<Integer> list, int[] empty) {
+		if (list.isEmpty())
+			return empty;
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	/**
+	 * @return the state the automaton is in before reading any input.
+	 */
+	public int getStartState() {
+		return 0;
+	}
+
+	/**
+	 * @return the number of states of the automaton.
+	 */
+	public int getNumberOfStates() {
+		return outputs.length;
+	}
+
+	/**
+	 * Moves the automaton on one input character. A character that does not occur in any
+	 * keyword returns the automaton to its start state.
+	 * @param state - The current state.
+	 * @param c - The input character.
+	 * @return the next state.
+	 */
+	public int nextState(int state, char c) {
+		int symbol = c < charToSymbol.length ? charToSymbol[c] : -1;
+		if (symbol < 0)
+			return 0;
+		return transitions[state * numSymbols + symbol];
+	}
+
+	/**
+	 * @param state - A state of the automaton.
+	 * @return the indices of the keywords that end at the given state. The array must not be modified.
+	 */
+	public int[] getOutputs(int state) {
+		return outputs[state];
+	}
+
+	/**
+	 * @return the keywords recognized by the automaton, indexed as in {@link #getOutputs(int)}.
+	 */
+	public List<String> getKeywords() {
+		return Arrays.asList(keywords);
+	}
+
+	/**
+	 * @return a map from each keyword to its index.
+	 */
+	public Map<String, Integer> getKeywordIndices() {
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		for (int k = 0; k < keywords.length; k++)
+			indices.put(keywords[k], k);
+		return indices;
+	}
+
+	/**
+	 * Writes the compiled automaton to a file.
+	 * @param file - The file to write to.
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+			out.writeObject(this);
+		}
+	}
+
+	/**
+	 * Reads an automaton previously written with {@link #write(File)}.
+	 * @param file - The file to read from.
+	 * @return the compiled automaton.
+	 * @throws IOException
+	 */
+	public static SynthesisAutomaton read(File file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+			return (SynthesisAutomaton) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+}
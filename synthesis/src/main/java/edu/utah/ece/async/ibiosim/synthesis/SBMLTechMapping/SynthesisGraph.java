@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.sbml.jsbml.Model;
@@ -75,6 +76,42 @@ public class SynthesisGraph {
 		paths = buildPaths(getOutput()); 
 	}
 	
+	/**
+	 * Constructor used to build a graph that is only known by its paths, such as a library gate
+	 * that is matched but never covered.
+	 * @param modelFileID - The SBML model ID of the gate.
+	 * @param paths - The paths of the gate.
+	 */
+	SynthesisGraph(String modelFileID, List<String> paths) 
+	{
+		this.modelFileID = modelFileID;
+		this.paths = paths;
+	}
+	
+	/**
+	 * Constructor used to build a graph from nodes and edges that are already decomposed.
+	 * @param modelFileID - The SBML model ID of the graph.
+	 * @param nodes - The nodes of the graph.
+	 * @param edges - The children of each node that has children.
+	 */
+	SynthesisGraph(String modelFileID, Set<SynthesisNode> nodes, Map<SynthesisNode, List<SynthesisNode>> edges) 
+	{
+		this.modelFileID = modelFileID;
+		this.edges = new HashMap<SynthesisNode, List<SynthesisNode>>(edges);
+		nucleotideCount = 0;
+		compURIs = new HashSet<URI>();
+		signals = new HashSet<String>();
+		for (SynthesisNode node : nodes) 
+		{
+			nucleotideCount += node.getNucleotideCount();
+			if (node.getSignal().length() > 0) 
+				signals.add(node.getSignal());
+			compURIs.addAll(node.getCompURIs());
+		}
+		output = identifyOutput(nodes);
+		paths = buildPaths(getOutput());
+	}
+	
 	private void decomposeGraph(Set<SynthesisNode> nodes) {
 		Set<SynthesisNode> typedSpeciesNodes = new HashSet<SynthesisNode>();
 		Set<SynthesisNode> interNodes = new HashSet<SynthesisNode>();
@@ -13,11 +13,13 @@
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -29,114 +31,85 @@ import java.util.Set;
  * @version %I%
  */
 public class SynthesisMatcher {
-	private HashMap<Integer, HashSet<SynthesisGraph>> output = new HashMap<Integer, HashSet<SynthesisGraph>>();
-	private HashMap<String, Integer> nextMove = new HashMap<String, Integer>();
+	private static final SynthesisGraph[] NO_MATCH = new SynthesisGraph[0];
+
+	private SynthesisAutomaton automaton;
+	private SynthesisGraph[][] output; //Library gates with a path that ends at each state of the automaton
 
 	public SynthesisMatcher(Set<SynthesisGraph> graphLibrary) 
 	{
-		//NOTE: get each part within the library and walk that part. Add to alphabet list as parts are being walked
-		Set<String> alphabet = new HashSet<String>();
-		for (SynthesisGraph graph : graphLibrary) 
-			for (String keyword : graph.getPaths())
-				for (int i = 0; i < keyword.length(); i++) 
-					alphabet.add(keyword.substring(i, i + 1)); //TODO: why are we looking at a substring of the path and not each index of that path?
-		HashMap<String, Integer> goTo = constructGoTo(graphLibrary); //TODO: don't understand how this works and constructFailure()...
-		constructFailure(alphabet, goTo);
-		//		System.out.println(goTo);
-		//		System.out.println(output);
-		//		System.out.println(failure);
-		//		System.out.println(nextMove);
+		this(graphLibrary, SynthesisAutomaton.compile(graphLibrary));
 	}
 
-	public List<SynthesisGraph> match(String input) {
-//		HashMap<Integer, HashSet<String>> matched = new HashMap<Integer, HashSet<String>>();
-		List<SynthesisGraph> graphMatches = new LinkedList<SynthesisGraph>();
-		//		System.out.println(input);
-		int state = 0;
-		for (int i = 0; i < input.length(); i++) {
-			String a = input.substring(i, i + 1);
-			if (nextMove.containsKey(state + a))
-				state = nextMove.get(state + a);
-			else
-				state = 0;
-			if (output.containsKey(state)) {
-				graphMatches.addAll(output.get(state));
-				//				System.out.println(i);
-				//				System.out.println(output.get(state));
+	/**
+	 * Binds an automaton that was already compiled for the paths of the given library.
+	 * @param graphLibrary - The library gates.
+	 * @param automaton - An automaton compiled for the same library.
+	 */
+	public SynthesisMatcher(Set<SynthesisGraph> graphLibrary, SynthesisAutomaton automaton) 
+	{
+		this.automaton = automaton;
+		Map<String, Integer> keywordIndices = automaton.getKeywordIndices();
+		List<List<SynthesisGraph>> keywordGraphs = new ArrayList<List<SynthesisGraph>>();
+		for (int k = 0; k < keywordIndices.size(); k++)
+			keywordGraphs.add(new ArrayList<SynthesisGraph>());
+		for (SynthesisGraph graph : graphLibrary) {
+			for (String keyword : graph.getPaths()) {
+				Integer k = keywordIndices.get(keyword);
+				if (k == null)
+					throw new IllegalArgumentException("The automaton was not compiled for path " + keyword + " of " + graph + ".");
+				keywordGraphs.get(k).add(graph);
 			}
 		}
-		return graphMatches;
+		//NOTE: a gate is reported once per state even if several of its paths end there
+		output = new SynthesisGraph[automaton.getNumberOfStates()][];
+		for (int state = 0; state < output.length; state++) {
+			Set<SynthesisGraph> graphs = new LinkedHashSet<SynthesisGraph>();
+			for (int k : automaton.getOutputs(state))
+				graphs.addAll(keywordGraphs.get(k));
+			output[state] = graphs.isEmpty() ? NO_MATCH : graphs.toArray(new SynthesisGraph[graphs.size()]);
+		}
 	}
 
-	public HashMap<String, Integer> constructGoTo(Set<SynthesisGraph> library) {
-		HashMap<String, Integer> goTo = new HashMap<String, Integer>();
-		int newState = 0;
-		for (SynthesisGraph graph : library) {
-			for (String keyword : graph.getPaths()) {
-				//			String keyword = library.get(id);
-				int state = 0;
-				int j = 0;
-				boolean fail = false;
-				while (!fail && j < keyword.length()) 
-				{
-					//TODO: why do we want to get substring of a path?
-					String a = keyword.substring(j, j + 1);
-					if (goTo.containsKey(state + a)) {
-						state = goTo.get(state + a);
-						j++;
-					} else
-						fail = true;
-				}
-				for (int p = j; p < keyword.length(); p++) {
-					newState++;
-					goTo.put(state + keyword.substring(p, p + 1), newState);
-					state = newState;
-				}
-				if (!output.containsKey(state))
-					output.put(state, new HashSet<SynthesisGraph>());
-				output.get(state).add(graph);
+	/**
+	 * Creates a matcher for a library, reusing the automaton written to a file by an earlier
+	 * run when it recognizes every path of the library. Otherwise, the automaton is compiled
+	 * and written to the file for the next run.
+	 * @param graphLibrary - The library gates.
+	 * @param automatonFile - The file that stores the compiled automaton.
+	 * @return the matcher for the library.
+	 * @throws IOException - if the compiled automaton cannot be written.
+	 */
+	public static SynthesisMatcher load(Set<SynthesisGraph> graphLibrary, File automatonFile) throws IOException {
+		Set<String> paths = new HashSet<String>();
+		for (SynthesisGraph graph : graphLibrary)
+			paths.addAll(graph.getPaths());
+		if (automatonFile.isFile()) {
+			try {
+				SynthesisAutomaton automaton = SynthesisAutomaton.read(automatonFile);
+				if (automaton.getKeywords().containsAll(paths))
+					return new SynthesisMatcher(graphLibrary, automaton);
+			} catch (IOException e) {
+				//NOTE: a file written by another version is compiled again below
 			}
 		}
-		return goTo;
+		SynthesisAutomaton automaton = SynthesisAutomaton.compile(graphLibrary);
+		automaton.write(automatonFile);
+		return new SynthesisMatcher(graphLibrary, automaton);
 	}
 
-	public void constructFailure(Set<String> alphabet, HashMap<String, Integer> goTo) {
-		HashMap<Integer, Integer> failure = new HashMap<Integer, Integer>();
-		LinkedList<Integer> queue = new LinkedList<Integer>();
-		for (String a : alphabet) {
-			if (goTo.containsKey("0" + a)) {
-				int s = goTo.get("0" + a);
-				queue.add(s);
-				failure.put(s, 0);
-				nextMove.put("0" + a, s);
-			}
-		}	
-		while (queue.size() > 0) {
-			int r = queue.remove();
-			for (String a : alphabet) {
-				if (goTo.containsKey(r + a)) {
-					int s = goTo.get(r + a);
-					queue.add(s);
-					int state = failure.get(r);
-					while (state != 0 && !goTo.containsKey(state + a))
-						state = failure.get(state);
-					if (state == 0 && !goTo.containsKey(state + a))
-						failure.put(s, 0);
-					else
-						failure.put(s, goTo.get(state + a));
-					int fs = failure.get(s);
-					if (output.containsKey(fs)) {
-						if (!output.containsKey(s))
-							output.put(s, new LinkedHashSet<SynthesisGraph>());
-						output.get(s).addAll(output.get(fs));
-					}
-					nextMove.put(r + a, s);
-				} else {
-					int fs = failure.get(r);
-					if (nextMove.containsKey(fs + a))
-						nextMove.put(r + a, nextMove.get(fs + a));
-				}
-			}
+	public SynthesisAutomaton getAutomaton() {
+		return automaton;
+	}
+
+	public List<SynthesisGraph> match(String input) {
+		List<SynthesisGraph> graphMatches = new ArrayList<SynthesisGraph>();
+		int state = automaton.getStartState();
+		for (int i = 0; i < input.length(); i++) {
+			state = automaton.nextState(state, input.charAt(i));
+			for (SynthesisGraph graph : output[state])
+				graphMatches.add(graph);
 		}
+		return graphMatches;
 	}
 }
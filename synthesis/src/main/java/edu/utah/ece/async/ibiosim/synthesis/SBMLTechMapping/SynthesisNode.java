@@ -14,6 +14,7 @@
 package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -46,25 +47,33 @@ public class SynthesisNode {
 	private String coverConstraint;
 	private List<SynthesisGraph> matches;
 	private List<Integer> matchBounds;
-	private int coverIndex;
-	private List<SynthesisNode> uncoveredNodes;
-	private int uncoveredBound;
 	
 	public SynthesisNode(String type, SBase sbmlElement, SBOLFileManager fileManager) throws SBOLException {
 		id = SBMLutilities.getId(sbmlElement);
 		this.type = type;
 		compURIs = new LinkedList<URI>();
 		processDNAComponents(sbmlElement, fileManager);
-		coverIndex = -1;
-		uncoveredBound = 0; 
 	}
 	
 	public SynthesisNode(String type) {
 		this.type = type;
 		compURIs = new LinkedList<URI>();
 		nucleotideCount = 0;
-		coverIndex = -1;
-		uncoveredBound = 0;
+	}
+	
+	/**
+	 * Constructor used to build a node whose DNA components have already been resolved.
+	 * @param id - The ID of the node.
+	 * @param type - The type of the node.
+	 * @param nucleotideCount - The number of nucleotides of the DNA components of the node.
+	 * @param signal - The URI of the signal DNA component of the node, or the empty string.
+	 */
+	SynthesisNode(String id, String type, int nucleotideCount, String signal) {
+		this.id = id;
+		this.type = type;
+		this.nucleotideCount = nucleotideCount;
+		this.signal = signal;
+		compURIs = new LinkedList<URI>();
 	}
 	
 	private void processDNAComponents(SBase sbmlElement, SBOLFileManager fileManager) throws SBOLException {
@@ -112,7 +121,7 @@ public class SynthesisNode {
 	
 	public List<Integer> getMatchBounds() {
 		if (matchBounds == null)
-			matchBounds = new LinkedList<Integer>();
+			matchBounds = new ArrayList<Integer>();
 		return matchBounds;
 	}
 	
@@ -126,24 +135,6 @@ public class SynthesisNode {
 		return compURIs;
 	}
 	
-	public void setUncoveredNodes(List<SynthesisNode> uncoveredNodes) {
-		this.uncoveredNodes = uncoveredNodes;
-	}
-	
-	public List<SynthesisNode> getUncoveredNodes() {
-		if (uncoveredNodes == null)
-			uncoveredNodes = new LinkedList<SynthesisNode>();
-		return uncoveredNodes;
-	}
-	
-	public void setUncoveredBound(int uncoveredBound) {
-		this.uncoveredBound = uncoveredBound;
-	}
-	
-	public int getUncoveredBound() {
-		return uncoveredBound;
-	}
-	
 	public void setCoverConstraint(String coverConstraint) {
 		this.coverConstraint = coverConstraint;
 	}
@@ -160,64 +151,18 @@ public class SynthesisNode {
 	
 	public List<SynthesisGraph> getMatches() {
 		if (matches == null)
-			matches = new LinkedList<SynthesisGraph>();
+			matches = new ArrayList<SynthesisGraph>();
 		return matches;
 	}
 	
-	public int getCoverIndex() {
-		return coverIndex;
-	}
-	
-	public SynthesisGraph getCover(int coverIndex) {
-		if (coverIndex >= 0 && matches != null && coverIndex < matches.size())
-			return matches.get(coverIndex);
-		return null;
-	}
-	
 	public int getCoverBound(int coverIndex) {
 		if (coverIndex >= 0 && matchBounds != null && coverIndex < matchBounds.size())
 			return matchBounds.get(coverIndex);
 		return 0;
 	}
 	
-	public SynthesisGraph getCover() {
-		if (matches != null && matches.size() > 0) {
-			if (coverIndex < 0)
-				return matches.get(0);
-			else if (coverIndex < matches.size())
-				return matches.get(coverIndex);
-			else
-				return null;
-		}
-		return null;
-	}
-	
 	public int getCoverBound() {
-		if (matchBounds != null && matchBounds.size() > 0) {
-			if (coverIndex < 0)
-				return matchBounds.get(0);
-			else if (coverIndex < matchBounds.size())
-				return matchBounds.get(coverIndex);
-			else
-				return 0;
-		}
-		return 0;
-	}
-	
-	public void terminateBranch() {
-		coverIndex = -1;
-	}
-	
-	public boolean branch() {
-		if (matches != null) {
-			coverIndex++;
-			if (coverIndex < matches.size()) {
-				return true;
-			}
-			coverIndex = -1;
-			return false;
-		}
-		return false;
+		return getCoverBound(0);
 	}
 	
 	public void sortMatches() {
@@ -13,14 +13,178 @@
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * 
+ * Branch-and-bound covering of a subtree of the specification. Each task owns an immutable
+ * frontier of specification nodes still to be covered and an immutable chain of the covers
+ * chosen so far, so branching shares the common prefix instead of copying it. Tasks fork their
+ * branches while the pool has idle workers and otherwise recurse in place. All tasks prune
+ * against one best cost that is read without locking.
  *
  * @author Nicholas Roehner 
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public class SynthesisThread {
+public class SynthesisThread extends RecursiveAction {
+
+	/**
+	 * Required for serialization support.
+	 * 
+	 * @see java.io.Serializable
+	 */
+	private static final long serialVersionUID = -2853960167321048775L;
+
+	private final CoverSearch search;
+	private final Frontier frontier;
+	private final Solution solution;
+	private final int solutionCost;
+
+	SynthesisThread(CoverSearch search, Frontier frontier, Solution solution, int solutionCost) {
+		this.search = search;
+		this.frontier = frontier;
+		this.solution = solution;
+		this.solutionCost = solutionCost;
+	}
+
+	@Override
+	protected void compute() {
+		cover(frontier, solution, solutionCost);
+	}
+
+	private void cover(Frontier frontier, Solution solution, int solutionCost) {
+		List<SynthesisThread> branches = null;
+		SynthesisNode node = frontier.node;
+		List<SynthesisGraph> matches = node.getMatches();
+		int uncoveredBound = frontier.next == null ? 0 : frontier.next.bound;
+		for (int i = 0; i < matches.size() && !search.done; i++) {
+			search.nodesExplored.incrementAndGet();
+			SynthesisGraph cover = matches.get(i);
+			if (crossTalk(cover, solution) || !Synthesizer.ioCompatible(cover.getOutput().getSignal(), frontier.constraint))
+				continue;
+			//NOTE: matches are sorted by bound, so no later match can be in bound either
+			int bestSolutionCost = search.bestSolutionCost.get();
+			if (bestSolutionCost >= 0 && solutionCost + node.getCoverBound(i) + uncoveredBound >= bestSolutionCost)
+				break;
+			Solution nextSolution = new Solution(cover, solution);
+			int nextCost = solutionCost + Synthesizer.calculateCoverCost(cover);
+			List<SynthesisNode> nextNodes = search.spec.walkPaths(node, cover.getPaths());
+			Frontier nextFrontier = frontier.next;
+			ListIterator<SynthesisNode> nextNode = nextNodes.listIterator(nextNodes.size());
+			ListIterator<SynthesisNode> input = cover.getInputs().listIterator(nextNodes.size());
+			while (nextNode.hasPrevious())
+				nextFrontier = new Frontier(nextNode.previous(), input.previous().getSignal(), nextFrontier);
+			nextFrontier = Frontier.skipUncoverable(nextFrontier);
+			if (nextFrontier == null) {
+				//NOTE: the remaining matches of the last covered node cannot be cheaper
+				search.addSolution(nextSolution, nextCost);
+				break;
+			}
+			if (search.parallel && getSurplusQueuedTaskCount() < 2) {
+				SynthesisThread branch = new SynthesisThread(search, nextFrontier, nextSolution, nextCost);
+				branch.fork();
+				if (branches == null)
+					branches = new LinkedList<SynthesisThread>();
+				branches.add(branch);
+			} else
+				cover(nextFrontier, nextSolution, nextCost);
+		}
+		if (branches != null)
+			for (SynthesisThread branch : branches)
+				branch.join();
+	}
+
+	private static boolean crossTalk(SynthesisGraph cover, Solution solution) {
+		for (Solution s = solution; s != null; s = s.previous)
+			for (String coverSignal : cover.getSignals())
+				if (s.cover.getSignals().contains(coverSignal))
+					return true;
+		return false;
+	}
+
+	/**
+	 * Specification node waiting to be covered, followed by the rest of the frontier. The bound
+	 * is the sum of the smallest cover bounds of this node and every node after it.
+	 */
+	static final class Frontier {
+		final SynthesisNode node;
+		final String constraint;
+		final int bound;
+		final Frontier next;
+
+		Frontier(SynthesisNode node, String constraint, Frontier next) {
+			this.node = node;
+			this.constraint = constraint;
+			this.next = next;
+			this.bound = node.getCoverBound(0) + (next == null ? 0 : next.bound);
+		}
+
+		static Frontier skipUncoverable(Frontier frontier) {
+			while (frontier != null && frontier.node.getMatches().size() == 0)
+				frontier = frontier.next;
+			return frontier;
+		}
+	}
+
+	/**
+	 * Cover chosen last, followed by the covers chosen before it.
+	 */
+	static final class Solution {
+		final SynthesisGraph cover;
+		final Solution previous;
+
+		Solution(SynthesisGraph cover, Solution previous) {
+			this.cover = cover;
+			this.previous = previous;
+		}
+
+		List<SynthesisGraph> toList() {
+			LinkedList<SynthesisGraph> covers = new LinkedList<SynthesisGraph>();
+			for (Solution s = this; s != null; s = s.previous)
+				covers.addFirst(s.cover);
+			return covers;
+		}
+	}
+
+	/**
+	 * State shared by all tasks covering one specification.
+	 */
+	static final class CoverSearch {
+		final SynthesisGraph spec;
+		final boolean parallel;
+		final boolean exhaustive;
+		final int solutionCap;
+		final List<List<SynthesisGraph>> bestSolutions;
+		final AtomicInteger bestSolutionCost = new AtomicInteger(-1);
+		final AtomicLong nodesExplored = new AtomicLong();
+		volatile boolean done;
+
+		CoverSearch(SynthesisGraph spec, boolean exhaustive, int solutionCap, boolean parallel, 
+				List<List<SynthesisGraph>> bestSolutions) {
+			this.spec = spec;
+			this.exhaustive = exhaustive;
+			this.solutionCap = solutionCap;
+			this.parallel = parallel;
+			this.bestSolutions = bestSolutions;
+		}
 
+		synchronized void addSolution(Solution solution, int solutionCost) {
+			int bestCost = bestSolutionCost.get();
+			if (bestCost < 0 || solutionCost < bestCost) {
+				bestSolutionCost.set(solutionCost);
+				bestSolutions.add(0, solution.toList());
+				if (exhaustive) {
+					if (bestSolutions.size() > solutionCap)
+						bestSolutions.remove(bestSolutions.size() - 1);
+				} else if (bestSolutions.size() == solutionCap)
+					done = true;
+			}
+		}
+	}
 }
@@ -15,12 +15,13 @@ package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -49,10 +50,22 @@ public class Synthesizer {
 	private SynthesisMatcher matcher; //Store the library of gates that could match to the specification
 	private boolean exhaustive; 
 	private int solutionCap; //Store the number of solutions the user want to perform
+	private long nodesExplored; //Number of matches tried by the last covering search
+	private double coverTime; //Seconds taken by the last covering search
 	//private int greedCount = 0;
 
 	public Synthesizer(Set<SynthesisGraph> graphLibrary, Properties synthProps) {
-		this.matcher = new SynthesisMatcher(graphLibrary);
+		this(new SynthesisMatcher(graphLibrary), synthProps);
+	}
+
+	/**
+	 * Creates a synthesizer around a matcher whose automaton may have been compiled earlier,
+	 * so the same gate library is not compiled again for every specification.
+	 * @param matcher - The matcher for the gate library.
+	 * @param synthProps - The synthesis properties.
+	 */
+	public Synthesizer(SynthesisMatcher matcher, Properties synthProps) {
+		this.matcher = matcher;
 		exhaustive = synthProps.getProperty(GlobalConstants.SBOL_SYNTH_METHOD_PROPERTY).equals(
 				GlobalConstants.SBOL_SYNTH_EXHAUST_BB);
 		solutionCap = Integer.parseInt(synthProps.getProperty(GlobalConstants.SBOL_SYNTH_NUM_SOLNS_PROPERTY));
@@ -91,7 +104,8 @@ public class Synthesizer {
 				matchToCount.put(match, matchToCount.get(match) + 1);
 			else
 				matchToCount.put(match, 1);
-		List<SynthesisGraph> confirmedMatches = new LinkedList<SynthesisGraph>();
+		//NOTE: matches and their bounds are read by index while covering, so keep them in array lists
+		List<SynthesisGraph> confirmedMatches = new ArrayList<SynthesisGraph>();
 		for (SynthesisGraph match : matchToCount.keySet()) {
 			if (matchToCount.get(match).intValue() >= match.getPaths().size())
 				confirmedMatches.add(match);
@@ -100,7 +114,7 @@ public class Synthesizer {
 	}
 
 	private static void boundNode(SynthesisNode node, SynthesisGraph spec) {
-		List<Integer> matchBounds = new LinkedList<Integer>();
+		List<Integer> matchBounds = new ArrayList<Integer>();
 		for (SynthesisGraph match : node.getMatches())
 			matchBounds.add(boundMatch(node, match, spec));
 		node.setMatchBounds(matchBounds);
@@ -122,126 +136,56 @@ public class Synthesizer {
 	}
 
 	private int coverSpec(SynthesisGraph spec, List<List<SynthesisGraph>> bestSolutions) {
-		List<SynthesisGraph> solution = new LinkedList<SynthesisGraph>();
-		int solutionCost = 0;
-		Set<String> solutionSignals = new HashSet<String>();
-		int bestSolutionCost = -1;
-		List<SynthesisNode> previousNodes = new LinkedList<SynthesisNode>();
-		List<SynthesisNode> currentNodes = new LinkedList<SynthesisNode>();
-		currentNodes.add(spec.getOutput());
-		do {
-			if (currentNodes.get(0).getMatches().size() == 0) {
-				currentNodes.remove(0);
-				if (currentNodes.size() == 0 && previousNodes.size() > 0) {
-					if (bestSolutionCost < 0 || solutionCost < bestSolutionCost) {
-						bestSolutionCost = solutionCost;
-						bestSolutions.add(0, new LinkedList<SynthesisGraph>(solution));
-						if (exhaustive) {
-							if (bestSolutions.size() > solutionCap)
-								bestSolutions.remove(bestSolutions.size() - 1);
-						} else if (bestSolutions.size() == solutionCap)
-							return bestSolutionCost;
-					}
-					solutionCost = removeCoverFromSolution(previousNodes.get(0).getCover(), solution,
-							solutionCost, solutionSignals);
-					previousNodes.get(0).terminateBranch();
-					previousNodes.remove(0);
+		//NOTE: only the exhaustive search is split across workers, the greedy search must
+		//		keep returning the first solutions found in depth-first order
+		SynthesisThread.CoverSearch search = new SynthesisThread.CoverSearch(spec, exhaustive, solutionCap, 
+				exhaustive, bestSolutions);
+		SynthesisThread.Frontier frontier = SynthesisThread.Frontier.skipUncoverable(
+				new SynthesisThread.Frontier(spec.getOutput(), "", null));
+		long startTime = System.nanoTime();
+		if (frontier != null) {
+			SynthesisThread task = new SynthesisThread(search, frontier, null, 0);
+			if (exhaustive) {
+				ForkJoinPool pool = new ForkJoinPool();
+				try {
+					pool.invoke(task);
+				} finally {
+					pool.shutdown();
 				}
-			} else if (currentNodes.get(0).branch()) {
-				SynthesisGraph cover = currentNodes.get(0).getCover();
-				if (!crossTalk(cover.getSignals(), solutionSignals) && 
-						ioCompatible(cover.getOutput().getSignal(), currentNodes.get(0).getCoverConstraint())) { 
-					if (solutionInBound(solutionCost, currentNodes.get(0), bestSolutionCost)) {
-						solutionCost = addCoverToSolution(cover, solution, solutionCost, solutionSignals);
-						List<SynthesisNode> nextNodes = spec.walkPaths(currentNodes.get(0), cover.getPaths());
-						constrainNodes(nextNodes, cover.getInputs());
-						previousNodes.add(0, currentNodes.remove(0));
-						currentNodes.addAll(0, nextNodes);
-						documentUncoveredNodes(nextNodes, currentNodes);
-					} else {
-						currentNodes.get(0).terminateBranch();
-						currentNodes.clear();
-					}
-				} 
 			} else
-				currentNodes.clear();
-			if (currentNodes.size() == 0 && previousNodes.size() > 0) {
-				solutionCost = removeCoverFromSolution(previousNodes.get(0).getCover(), solution, 
-						solutionCost, solutionSignals);
-				currentNodes.addAll(previousNodes.get(0).getUncoveredNodes());
-				currentNodes.add(0, previousNodes.remove(0));
-			}
-		} while (currentNodes.size() > 0);
-		return bestSolutionCost;
-	}
-
-	private static void documentUncoveredNodes(List<SynthesisNode> nextNodes, List<SynthesisNode> currentNodes) {
-		int j = 0;
-		if (nextNodes.size() < currentNodes.size()) {
-			if (nextNodes.size() > 1)
-				j = nextNodes.size() - 1;
-		} else if (nextNodes.size() > 2)
-			j = nextNodes.size() - 2;
-		List<SynthesisNode> uncoveredNodes = currentNodes.subList(j + 1, currentNodes.size());
-		nextNodes.get(j).setUncoveredNodes(new LinkedList<SynthesisNode>(uncoveredNodes));
-		int uncoveredBound = 0;
-		for (SynthesisNode uncoveredNode : uncoveredNodes)
-			uncoveredBound += uncoveredNode.getCoverBound();
-		nextNodes.get(j).setUncoveredBound(uncoveredBound);
-		for (int i = j - 1; i >= 0; i--) {
-			uncoveredNodes = currentNodes.subList(i + 1, currentNodes.size());
-			nextNodes.get(i).setUncoveredNodes(new LinkedList<SynthesisNode>(uncoveredNodes));
-			uncoveredBound = nextNodes.get(i + 1).getCoverBound() + nextNodes.get(i + 1).getUncoveredBound();
-			nextNodes.get(i).setUncoveredBound(uncoveredBound);
+				task.invoke();
 		}
+		coverTime = (System.nanoTime() - startTime)*Math.pow(10, -9);
+		nodesExplored = search.nodesExplored.get();
+		return search.bestSolutionCost.get();
 	}
 
-	private static int addCoverToSolution(SynthesisGraph cover, List<SynthesisGraph> solution, 
-			int solutionCost, Set<String> solutionSignals) {
-		solution.add(cover);
-		solutionSignals.addAll(cover.getSignals());
-		return solutionCost + calculateCoverCost(cover);
+	/**
+	 * @return the number of matches tried while covering the last specification.
+	 */
+	public long getNodesExplored() {
+		return nodesExplored;
 	}
 
-	private static int removeCoverFromSolution(SynthesisGraph cover, List<SynthesisGraph> solution, int solutionCost,
-			Set<String> solutionSignals) {
-		solution.remove(solution.size() - 1);
-		solutionSignals.removeAll(cover.getSignals());
-		return solutionCost - calculateCoverCost(cover);
+	/**
+	 * @return the number of matches tried per second while covering the last specification.
+	 */
+	public double getNodesExploredPerSecond() {
+		if (coverTime <= 0)
+			return 0;
+		return nodesExplored/coverTime;
 	}
 
-	private static int calculateCoverCost(SynthesisGraph cover) {
+	static int calculateCoverCost(SynthesisGraph cover) {
 		return cover.getNucleotideCount();
 	}
 
-	private static boolean crossTalk(Set<String> coverSignals, Set<String> solutionSignals) {
-		for (String coverSignal : coverSignals)
-			if (solutionSignals.contains(coverSignal))
-				return true;
-		return false;
-	}
-
-	private static boolean ioCompatible(String outputSignal, String inputSignal) {
+	static boolean ioCompatible(String outputSignal, String inputSignal) {
 		if (outputSignal.length() == 0 || inputSignal.length() == 0)
 			return true;
 		return inputSignal.equals(outputSignal);
 	}
 
-	private static boolean solutionInBound(int solutionCost, SynthesisNode currentNode, int bestSolutionCost) {
-		if (bestSolutionCost < 0)
-			return true;
-		int lowerBound = currentNode.getCoverBound() + currentNode.getUncoveredBound();
-		int bestCaseCost = solutionCost + lowerBound;
-		//		for (SynthesisNode currentNode : currentNodes)
-		//			bestCaseCost = bestCaseCost + currentNode.getCoverBound();
-		return (bestCaseCost < bestSolutionCost);
-	}
-
-	private static void constrainNodes(List<SynthesisNode> specNodes, List<SynthesisNode> coverNodes) {
-		for (int i = 0; i < specNodes.size(); i++)
-			specNodes.get(i).setCoverConstraint(coverNodes.get(i).getSignal());
-	}
-
 	public static void composeSolutionModel(List<SynthesisGraph> solution, SynthesisGraph spec, BioModel solutionModel) throws XMLStreamException, IOException, BioSimException {
 
 		List<SynthesisGraph> solutionCopy = new LinkedList<SynthesisGraph>();
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sbolstandard.core2.ModuleDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+
+/**
+ * A scored library of gates that can be reused to technology map many specifications. Gates are
+ * scored once when the library is built and grouped by the structure of their input cone, so a
+ * specification node is matched against each distinct structure only once.
+ *
+ * @author Tramy Nguyen
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class GateLibrary
+{
+	private List<SBOLGraph> _gates;
+	private Map<String, List<SBOLGraph>> _structures; //Gates with the same structure, cheapest first
+	private Map<SBOLGraph, Set<URI>> _definitions; //Definition URIs of the functional components of each gate
+
+	public GateLibrary(SBOLDocument libDoc)
+	{
+		this(createGraphs(libDoc));
+	}
+
+	public GateLibrary(List<SBOLGraph> gates)
+	{
+		_gates = new ArrayList<SBOLGraph>(gates);
+		_structures = new LinkedHashMap<String, List<SBOLGraph>>();
+		_definitions = new HashMap<SBOLGraph, Set<URI>>();
+		for(SBOLGraph g : _gates)
+		{
+			setGateScore(g);
+			String structure = getStructure(g.getOutputNode());
+			if(!_structures.containsKey(structure))
+			{
+				_structures.put(structure, new ArrayList<SBOLGraph>());
+			}
+			_structures.get(structure).add(g);
+
+			Set<URI> definitions = new HashSet<URI>();
+			for(SynthesisNode node : g.getTopologicalSortNodes())
+			{
+				definitions.add(node.getFunctionalComponent().getDefinitionURI());
+			}
+			_definitions.put(g, definitions);
+		}
+		for(List<SBOLGraph> structure : _structures.values())
+		{
+			Collections.sort(structure, new Comparator<SBOLGraph>()
+			{
+				@Override
+				public int compare(SBOLGraph g1, SBOLGraph g2)
+				{
+					return Double.compare(g1.getOutputNode().getScore(), g2.getOutputNode().getScore());
+				}
+			});
+		}
+	}
+
+	private static List<SBOLGraph> createGraphs(SBOLDocument libDoc)
+	{
+		List<SBOLGraph> gates = new ArrayList<SBOLGraph>();
+		for(ModuleDefinition m : libDoc.getModuleDefinitions())
+		{
+			SBOLGraph sbolGraph = new SBOLGraph();
+			sbolGraph.createGraph(libDoc, m);
+			sbolGraph.topologicalSort();
+			gates.add(sbolGraph);
+		}
+		return gates;
+	}
+
+	/**
+	 * Score a library gate by the length of the sequence of its output node.
+	 * @param gate
+	 */
+	public static void setGateScore(SBOLGraph gate)
+	{
+		SynthesisNode node = gate.getOutputNode();
+		int score = node.getSequence().length() - 1;
+		node.setScore(score);
+	}
+
+	/**
+	 * Return the structural hash of the input cone of a node. The inputs of a node are
+	 * interchangeable when matching, so their structures are sorted before they are joined.
+	 * Two library gates with the same structure match exactly the same specification nodes.
+	 * @param node
+	 * @return
+	 */
+	public static String getStructure(SynthesisNode node)
+	{
+		if(node.isRoot())
+			return "x";
+		List<String> parents = new ArrayList<String>();
+		for(SynthesisNode parent : node.getParents())
+		{
+			parents.add(getStructure(parent));
+		}
+		Collections.sort(parents);
+		StringBuilder structure = new StringBuilder("(");
+		for(String parent : parents)
+		{
+			structure.append(parent);
+		}
+		return structure.append(")").toString();
+	}
+
+	public List<SBOLGraph> getGates()
+	{
+		return _gates;
+	}
+
+	/**
+	 * Retrieve the gates grouped by structure. Each group is sorted by increasing score.
+	 * @return
+	 */
+	public Collection<List<SBOLGraph>> getStructures()
+	{
+		return _structures.values();
+	}
+
+	/**
+	 * Check if two gates share a functional component definition and so cannot be used in the same solution.
+	 * @param g1
+	 * @param g2
+	 * @return
+	 */
+	public boolean isCrossTalk(SBOLGraph g1, SBOLGraph g2)
+	{
+		Set<URI> definitions = _definitions.get(g2);
+		for(URI definition : _definitions.get(g1))
+		{
+			if(definitions.contains(definition))
+				return true;
+		}
+		return false;
+	}
+}
@@ -31,6 +31,7 @@ public class SBOLTechMap {
 		boolean greedySol = false;
 		boolean exactSol = false;
 		boolean createDotFile = false;
+		boolean dynamicProgramming = false;
 		
 		int index = 0;
 
@@ -81,6 +82,9 @@ public class SBOLTechMap {
 				}
 				createDotFile = true;
 				break;
+			case "-dp":
+				dynamicProgramming = true;
+				break;
 			default:
 				usage();
 			}
@@ -110,7 +114,7 @@ public class SBOLTechMap {
 			
 			SBOLDocument specDoc = SBOLUtility.loadSBOLFile(specFile, defaultPrefix);
 			
-			SBOLDocument solution = runSBOLTechMap(specDoc, libDoc);
+			SBOLDocument solution = runSBOLTechMap(specDoc, libDoc, dynamicProgramming);
 			solution.write(new File(outFileName));
 		} 
 		catch (SBOLValidationException e) 
@@ -144,6 +148,7 @@ public class SBOLTechMap {
 		System.err.println("Options:");
 		System.err.println("-o name of output file along with full path of where output file will be written to.");
 		System.err.println("-p SBOL URI prefix needed to set the SBOLDocument when converting the technology mapping solution to SBOL data format.");
+		System.err.println("-dp cover the specification with the dynamic programming covering mode instead of branch and bound.");
 		
 	}
 	
@@ -162,5 +167,48 @@ public class SBOLTechMap {
 		
 		return syn.getSBOLfromTechMapping(solution, syn.getSpecification(), GlobalConstants.SBOL_AUTHORITY_DEFAULT);
 	}
+	
+	/**
+	 * Technology map a specification with the branch and bound covering, or with the dynamic
+	 * programming covering when it is requested.
+	 */
+	public static SBOLDocument runSBOLTechMap(SBOLDocument specDoc, SBOLDocument libDoc, boolean dynamicProgramming) throws SBOLValidationException, FileNotFoundException, SBOLException, IOException, SBOLConversionException
+	{
+		if(dynamicProgramming)
+		{
+			return runSBOLTechMap(specDoc, new GateLibrary(libDoc));
+		}
+		return runSBOLTechMap(specDoc, libDoc);
+	}
+	
+	/**
+	 * Technology map a specification against a library that was built once with {@link GateLibrary},
+	 * using the dynamic programming covering mode.
+	 */
+	public static SBOLDocument runSBOLTechMap(SBOLDocument specDoc, GateLibrary library) throws SBOLValidationException
+	{
+		Synthesis syn = new Synthesis();
+		syn.createSBOLGraph(specDoc, false);
+		syn.setLibrary(library);
+		
+		Map<SynthesisNode, SBOLGraph> solution = syn.cover_dp(syn.getSpecification());
+		
+		return syn.getSBOLfromTechMapping(solution, syn.getSpecification(), GlobalConstants.SBOL_AUTHORITY_DEFAULT);
+	}
+	
+	/**
+	 * Technology map a batch of specifications against the same library. The library gates are
+	 * built and scored only once.
+	 */
+	public static List<SBOLDocument> runSBOLTechMap(List<SBOLDocument> specDocs, SBOLDocument libDoc) throws SBOLValidationException
+	{
+		GateLibrary library = new GateLibrary(libDoc);
+		List<SBOLDocument> solutions = new ArrayList<SBOLDocument>();
+		for(SBOLDocument specDoc : specDocs)
+		{
+			solutions.add(runSBOLTechMap(specDoc, library));
+		}
+		return solutions;
+	}
 
 }
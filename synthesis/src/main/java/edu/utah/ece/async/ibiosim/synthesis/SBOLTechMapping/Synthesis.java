@@ -18,10 +18,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.sbolstandard.core2.AccessType;
 import org.sbolstandard.core2.ComponentDefinition;
@@ -49,6 +52,7 @@ public class Synthesis
 {
 	private static List<SBOLGraph> _libraryGraph; 
 	private static SBOLGraph _specificationGraph; 
+	private GateLibrary _gateLibrary; 
 
 	public Synthesis()
 	{
@@ -90,13 +94,21 @@ public class Synthesis
 		return sbolGraph;
 	}
 
+	/**
+	 * Use a library that was already built and scored, so the same gates can be reused for many specifications.
+	 * @param library
+	 */
+	public void setLibrary(GateLibrary library)
+	{
+		_libraryGraph = new ArrayList<SBOLGraph>(library.getGates());
+		_gateLibrary = library;
+	}
+
 	public void setLibraryGateScores(List<SBOLGraph> library)
 	{
 		for(SBOLGraph g: library)
 		{
-			SynthesisNode node = g.getOutputNode();
-			int score = node.getSequence().length() - 1;
-			node.setScore(score);
+			GateLibrary.setGateScore(g);
 		}
 	}
 
@@ -168,12 +180,10 @@ public class Synthesis
 
 	public double getSubNodeScore(SynthesisNode spec, SynthesisNode lib)
 	{
-		if(lib.isRoot())
-			return spec.getScore();
 		double total = 0;
-		for(int i=0; i<lib.getParents().size(); i++)
+		for(SynthesisNode end : getEndNodes(spec, lib))
 		{
-			total += getSubNodeScore(spec.getParents().get(i), lib.getParents().get(i));
+			total += end.getScore();
 		}
 		return total;
 	}
@@ -197,6 +207,12 @@ public class Synthesis
 	{
 		if(lib.isRoot())
 			nodes.add(spec);
+		else if(getDegree(lib) == 2 && !(isMatch(spec.getParents().get(0), lib.getParents().get(0)) && isMatch(spec.getParents().get(1), lib.getParents().get(1))))
+		{
+			//NOTE: the gate only matches with its two inputs swapped, see isMatch
+			getNodes(spec.getParents().get(1), lib.getParents().get(0), nodes);
+			getNodes(spec.getParents().get(0), lib.getParents().get(1), nodes);
+		}
 		else
 		{
 			for(int i=0; i<lib.getParents().size(); i++)
@@ -324,6 +340,192 @@ public class Synthesis
 	}
 
 
+	/**
+	 * Dynamic programming covering mode. The cheapest cover cost of every specification node is
+	 * memoized once, matching each node against every distinct gate structure of the library only once.
+	 * A depth-first search then picks gates that do not crosstalk, using the memoized costs as bounds.
+	 * When the specification has no internal fanout the memoized costs are exact lower bounds for the
+	 * remaining subtrees; otherwise only the cheapest gate of each node that still needs a gate is counted.
+	 * @param syn - The specification graph.
+	 * @return the lowest scoring solution, or null if the specification cannot be covered.
+	 */
+	public Map<SynthesisNode, SBOLGraph> cover_dp(SBOLGraph syn)
+	{
+		if(_gateLibrary == null)
+		{
+			_gateLibrary = new GateLibrary(_libraryGraph);
+		}
+		Map<SynthesisNode, List<CoverChoice>> choices = new HashMap<SynthesisNode, List<CoverChoice>>();
+		Map<SynthesisNode, Double> bestCoverScores = new HashMap<SynthesisNode, Double>();
+		SynthesisNode n = syn.getOutputNode();
+		if(getBestCoverScore(n, choices, bestCoverScores) == Double.POSITIVE_INFINITY)
+		{
+			return null;
+		}
+		Map<SynthesisNode, Double> bounds = bestCoverScores;
+		if(hasInternalFanout(syn))
+		{
+			bounds = new HashMap<SynthesisNode, Double>();
+			for(Map.Entry<SynthesisNode, List<CoverChoice>> entry : choices.entrySet())
+			{
+				double cheapest = Double.POSITIVE_INFINITY;
+				for(CoverChoice choice : entry.getValue())
+				{
+					cheapest = Math.min(cheapest, cost(choice.gate));
+				}
+				bounds.put(entry.getKey(), cheapest);
+			}
+		}
+
+		CoverSearch search = new CoverSearch(choices, bounds);
+		search.pending.add(n);
+		search.pendingSet.add(n);
+		search.cover(0, 0, bounds.get(n));
+		return search.bestSolution;
+	}
+
+	private double getBestCoverScore(SynthesisNode n, Map<SynthesisNode, List<CoverChoice>> choices, Map<SynthesisNode, Double> bestCoverScores)
+	{
+		if(n.isRoot())
+			return 0;
+		Double memo = bestCoverScores.get(n);
+		if(memo != null)
+			return memo;
+
+		List<CoverChoice> nodeChoices = new ArrayList<CoverChoice>();
+		double bestScore = Double.POSITIVE_INFINITY;
+		for(List<SBOLGraph> structure : _gateLibrary.getStructures())
+		{
+			if(isMatch(n, structure.get(0).getOutputNode()))
+			{
+				for(SBOLGraph gate : structure)
+				{
+					//NOTE: gates of one structure may list their inputs in a different order and so end at different nodes
+					List<SynthesisNode> endNodes = getEndNodes(n, gate.getOutputNode());
+					double totalScore = cost(gate);
+					for(SynthesisNode end : endNodes)
+					{
+						totalScore += getBestCoverScore(end, choices, bestCoverScores);
+					}
+					nodeChoices.add(new CoverChoice(gate, endNodes, totalScore));
+					bestScore = Math.min(bestScore, totalScore);
+				}
+			}
+		}
+		Collections.sort(nodeChoices);
+		choices.put(n, nodeChoices);
+		bestCoverScores.put(n, bestScore);
+		return bestScore;
+	}
+
+	private boolean hasInternalFanout(SBOLGraph syn)
+	{
+		for(SynthesisNode node : syn.getTopologicalSortNodes())
+		{
+			if(!node.isRoot() && node.getChildren().size() > 1)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * A library gate that matches a specification node, the specification nodes at its inputs and
+	 * the cheapest score of a cover that uses it.
+	 */
+	private static class CoverChoice implements Comparable<CoverChoice>
+	{
+		private SBOLGraph gate;
+		private List<SynthesisNode> endNodes;
+		private double score;
+
+		public CoverChoice(SBOLGraph gate, List<SynthesisNode> endNodes, double score)
+		{
+			this.gate = gate;
+			this.endNodes = endNodes;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(CoverChoice other)
+		{
+			return Double.compare(score, other.score);
+		}
+	}
+
+	/**
+	 * Depth-first search over the specification nodes that still need a gate. The solution and the
+	 * pending nodes are updated in place and restored when backtracking.
+	 */
+	private class CoverSearch
+	{
+		private Map<SynthesisNode, List<CoverChoice>> choices;
+		private Map<SynthesisNode, Double> bounds;
+		private List<SynthesisNode> pending = new ArrayList<SynthesisNode>();
+		private Set<SynthesisNode> pendingSet = new HashSet<SynthesisNode>();
+		private Map<SynthesisNode, SBOLGraph> solution = new HashMap<SynthesisNode, SBOLGraph>();
+		private Map<SynthesisNode, SBOLGraph> bestSolution = null;
+		private double bestScore = Double.POSITIVE_INFINITY;
+
+		public CoverSearch(Map<SynthesisNode, List<CoverChoice>> choices, Map<SynthesisNode, Double> bounds)
+		{
+			this.choices = choices;
+			this.bounds = bounds;
+		}
+
+		private void cover(int index, double score, double remainingBound)
+		{
+			if(index == pending.size())
+			{
+				if(score < bestScore)
+				{
+					bestScore = score;
+					bestSolution = new HashMap<SynthesisNode, SBOLGraph>(solution);
+				}
+				return;
+			}
+
+			SynthesisNode n = pending.get(index);
+			double otherBound = remainingBound - bounds.get(n);
+			for(CoverChoice choice : choices.get(n))
+			{
+				if(isCrossTalk(choice.gate))
+					continue;
+				int added = 0;
+				double nextBound = otherBound;
+				for(SynthesisNode end : choice.endNodes)
+				{
+					if(!end.isRoot() && pendingSet.add(end))
+					{
+						pending.add(end);
+						nextBound += bounds.get(end);
+						added++;
+					}
+				}
+				double nextScore = score + cost(choice.gate);
+				if(nextScore + nextBound < bestScore)
+				{
+					solution.put(n, choice.gate);
+					cover(index + 1, nextScore, nextBound);
+					solution.remove(n);
+				}
+				for(int i = 0; i < added; i++)
+				{
+					pendingSet.remove(pending.remove(pending.size() - 1));
+				}
+			}
+		}
+
+		private boolean isCrossTalk(SBOLGraph gate)
+		{
+			for(SBOLGraph used : solution.values())
+			{
+				if(_gateLibrary.isCrossTalk(used, gate))
+					return true;
+			}
+			return false;
+		}
+	}
+
 	private double getCurrentCoveredScore(Collection<SBOLGraph> gatesUsed)
 	{
 		double totalScore = 0;  //TODO: Should this be init. to 0? 
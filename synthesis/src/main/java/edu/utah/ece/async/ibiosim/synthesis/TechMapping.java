@@ -26,6 +26,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.SBOLException;
 import edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping.SynthesisGraph;
+import edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping.SynthesisMatcher;
 import edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping.Synthesizer;
 import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.SBOLTechMap;
 
@@ -39,6 +40,7 @@ public class TechMapping {
 		String specFile = "";
 		String outFileName = "";
 		String defaultPrefix = "";
+		String automatonFile = "";
 
 		boolean sbmlTechMap = false;
 		boolean sbolTechMap = false;
@@ -50,6 +52,7 @@ public class TechMapping {
 		boolean branch_bound = false;
 		
 		boolean createDotFile = false;
+		boolean dynamicProgramming = false;
 
 		int num_sol = 0;
 		int index = 0;
@@ -129,6 +132,16 @@ public class TechMapping {
 				}
 				defaultPrefix = args[++index];
 				break;
+			case "-af":
+				if(index+1 >= args.length || args[index+1].equals("-"))
+				{
+					usage();
+				}
+				automatonFile = args[++index];
+				break;
+			case "-dp":
+				dynamicProgramming = true;
+				break;
 			case "-dot":
 				if(index+1 >= args.length || args[index+1].equals("-"))
 				{
@@ -149,7 +162,7 @@ public class TechMapping {
 				SBOLDocument specDoc = SBOLUtility.loadSBOLFile(specFile, defaultPrefix);
 				SBOLDocument libDoc = SBOLUtility.loadSBOLFile(sbolLibDir, defaultPrefix);
 
-				SBOLDocument sbolDoc_sol = SBOLTechMap.runSBOLTechMap(specDoc, libDoc);
+				SBOLDocument sbolDoc_sol = SBOLTechMap.runSBOLTechMap(specDoc, libDoc, dynamicProgramming);
 				if(outSBOL)
 				{
 					sbolDoc_sol.write(new File(outFileName));
@@ -206,7 +219,9 @@ public class TechMapping {
 				SynthesisGraph spec = new SynthesisGraph(specModel, fileManager);
 
 				Properties synthProps = createDefaultSynthesisProperties(specFileName);
-				Synthesizer synthesizer = new Synthesizer(graphlibrary, synthProps);
+				SynthesisMatcher matcher = automatonFile.isEmpty() ? new SynthesisMatcher(graphlibrary) 
+						: SynthesisMatcher.load(graphlibrary, new File(automatonFile));
+				Synthesizer synthesizer = new Synthesizer(matcher, synthProps);
 				List<List<SynthesisGraph>> solutions = synthesizer.mapSpecification(spec);
 				List<String> solutionFileIDs;
 				
@@ -421,6 +436,8 @@ public class TechMapping {
 		System.err.println("Options:");
 		System.err.println("-p SBOL URI prefix needed to set the SBOLDocument when converting the technology mapping solution to the desired SBOL or SBML data format.");
 		System.err.println("-ld: directory to multiple SBOL or SBML library files");
+		System.err.println("-af file that stores the compiled SBML library matcher so that later runs on the same library can reuse it.");
+		System.err.println("-dp perform SBOL Technology Mapping with the dynamic programming covering mode.");
 		System.err.println("-dot produced SBOL technology mapping solution in dot format.");
 	}
 
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Compares the compiled Aho-Corasick matcher with the map-based matcher it replaced.
+ *
+ * @author Nicholas Roehner
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SynthesisMatcherTest {
+
+	private static final String ALPHABET = "t1r2ps3";
+
+	@Test
+	public void testGateLibraryPaths() {
+		Set<SynthesisGraph> library = new LinkedHashSet<SynthesisGraph>();
+		library.add(new SynthesisGraph("inverter", Arrays.asList("t1rp1s")));
+		library.add(new SynthesisGraph("nor", Arrays.asList("t1rp1s", "t1rp2s")));
+		library.add(new SynthesisGraph("yes", Arrays.asList("t1rp1sp1s")));
+		library.add(new SynthesisGraph("output", Arrays.asList("s")));
+		assertSameMatches(library, Arrays.asList("t1rp1s", "t1rp2s", "t1rp1sp1s", "t1rp1sp1rp2s", "x", ""));
+	}
+
+	@Test
+	public void testRandomLibraries() {
+		Random random = new Random(7);
+		for (int trial = 0; trial < 50; trial++) {
+			Set<SynthesisGraph> library = new LinkedHashSet<SynthesisGraph>();
+			int numGates = 1 + random.nextInt(8);
+			for (int g = 0; g < numGates; g++) {
+				List<String> paths = new LinkedList<String>();
+				int numPaths = 1 + random.nextInt(3);
+				for (int p = 0; p < numPaths; p++)
+					paths.add(randomString(random, 1 + random.nextInt(6)));
+				library.add(new SynthesisGraph("gate" + g, paths));
+			}
+			List<String> inputs = new ArrayList<String>();
+			for (int i = 0; i < 20; i++)
+				inputs.add(randomString(random, random.nextInt(20)));
+			assertSameMatches(library, inputs);
+		}
+	}
+
+	@Test
+	public void testLoadReusesAutomaton() throws IOException {
+		Set<SynthesisGraph> library = new LinkedHashSet<SynthesisGraph>();
+		library.add(new SynthesisGraph("inverter", Arrays.asList("t1rp1s")));
+		File automatonFile = File.createTempFile("library", ".automaton");
+		automatonFile.deleteOnExit();
+		automatonFile.delete();
+
+		SynthesisMatcher compiled = SynthesisMatcher.load(library, automatonFile);
+		assertTrue(automatonFile.isFile());
+		long written = automatonFile.lastModified();
+		SynthesisMatcher read = SynthesisMatcher.load(library, automatonFile);
+		assertEquals(written, automatonFile.lastModified());
+		assertEquals(compiled.getAutomaton().getKeywords(), read.getAutomaton().getKeywords());
+		assertEquals(countMatches(compiled.match("t1rp1s")), countMatches(read.match("t1rp1s")));
+
+		//NOTE: a library with a path the stored automaton does not know is compiled again
+		library.add(new SynthesisGraph("nor", Arrays.asList("t1rp1s", "t1rp2s")));
+		SynthesisMatcher recompiled = SynthesisMatcher.load(library, automatonFile);
+		assertTrue(recompiled.getAutomaton().getKeywords().contains("t1rp2s"));
+		assertTrue(SynthesisAutomaton.read(automatonFile).getKeywords().contains("t1rp2s"));
+		assertNotEquals(countMatches(compiled.match("t1rp2s")), countMatches(recompiled.match("t1rp2s")));
+		assertSameMatches(library, Arrays.asList("t1rp1s", "t1rp2s"), recompiled);
+	}
+
+	private static String randomString(Random random, int length) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return builder.toString();
+	}
+
+	private static void assertSameMatches(Set<SynthesisGraph> library, List<String> inputs) {
+		assertSameMatches(library, inputs, new SynthesisMatcher(library));
+	}
+
+	private static void assertSameMatches(Set<SynthesisGraph> library, List<String> inputs, SynthesisMatcher matcher) {
+		ReferenceMatcher reference = new ReferenceMatcher(library);
+		for (String input : inputs)
+			assertEquals(input, countMatches(reference.match(input)), countMatches(matcher.match(input)));
+	}
+
+	//NOTE: matches are compared as counts since the synthesizer only counts them
+	private static Map<SynthesisGraph, Integer> countMatches(List<SynthesisGraph> matches) {
+		Map<SynthesisGraph, Integer> counts = new HashMap<SynthesisGraph, Integer>();
+		for (SynthesisGraph match : matches)
+			counts.put(match, counts.containsKey(match) ? counts.get(match) + 1 : 1);
+		return counts;
+	}
+
+	/**
+	 * The matcher as it was before the automaton was compiled into arrays.
+	 */
+	private static class ReferenceMatcher {
+		private HashMap<Integer, HashSet<SynthesisGraph>> output = new HashMap<Integer, HashSet<SynthesisGraph>>();
+		private HashMap<String, Integer> nextMove = new HashMap<String, Integer>();
+
+		ReferenceMatcher(Set<SynthesisGraph> graphLibrary) {
+			Set<String> alphabet = new HashSet<String>();
+			for (SynthesisGraph graph : graphLibrary)
+				for (String keyword : graph.getPaths())
+					for (int i = 0; i < keyword.length(); i++)
+						alphabet.add(keyword.substring(i, i + 1));
+			HashMap<String, Integer> goTo = constructGoTo(graphLibrary);
+			constructFailure(alphabet, goTo);
+		}
+
+		List<SynthesisGraph> match(String input) {
+			List<SynthesisGraph> graphMatches = new LinkedList<SynthesisGraph>();
+			int state = 0;
+			for (int i = 0; i < input.length(); i++) {
+				String a = input.substring(i, i + 1);
+				if (nextMove.containsKey(state + a))
+					state = nextMove.get(state + a);
+				else
+					state = 0;
+				if (output.containsKey(state))
+					graphMatches.addAll(output.get(state));
+			}
+			return graphMatches;
+		}
+
+		private HashMap<String, Integer> constructGoTo(Set<SynthesisGraph> library) {
+			HashMap<String, Integer> goTo = new HashMap<String, Integer>();
+			int newState = 0;
+			for (SynthesisGraph graph : library) {
+				for (String keyword : graph.getPaths()) {
+					int state = 0;
+					int j = 0;
+					boolean fail = false;
+					while (!fail && j < keyword.length()) {
+						String a = keyword.substring(j, j + 1);
+						if (goTo.containsKey(state + a)) {
+							state = goTo.get(state + a);
+							j++;
+						} else
+							fail = true;
+					}
+					for (int p = j; p < keyword.length(); p++) {
+						newState++;
+						goTo.put(state + keyword.substring(p, p + 1), newState);
+						state = newState;
+					}
+					if (!output.containsKey(state))
+						output.put(state, new HashSet<SynthesisGraph>());
+					output.get(state).add(graph);
+				}
+			}
+			return goTo;
+		}
+
+		private void constructFailure(Set<String> alphabet, HashMap<String, Integer> goTo) {
+			HashMap<Integer, Integer> failure = new HashMap<Integer, Integer>();
+			LinkedList<Integer> queue = new LinkedList<Integer>();
+			for (String a : alphabet) {
+				if (goTo.containsKey("0" + a)) {
+					int s = goTo.get("0" + a);
+					queue.add(s);
+					failure.put(s, 0);
+					nextMove.put("0" + a, s);
+				}
+			}
+			while (queue.size() > 0) {
+				int r = queue.remove();
+				for (String a : alphabet) {
+					if (goTo.containsKey(r + a)) {
+						int s = goTo.get(r + a);
+						queue.add(s);
+						int state = failure.get(r);
+						while (state != 0 && !goTo.containsKey(state + a))
+							state = failure.get(state);
+						if (state == 0 && !goTo.containsKey(state + a))
+							failure.put(s, 0);
+						else
+							failure.put(s, goTo.get(state + a));
+						int fs = failure.get(s);
+						if (output.containsKey(fs)) {
+							if (!output.containsKey(s))
+								output.put(s, new LinkedHashSet<SynthesisGraph>());
+							output.get(s).addAll(output.get(fs));
+						}
+						nextMove.put(r + a, s);
+					} else {
+						int fs = failure.get(r);
+						if (nextMove.containsKey(fs + a))
+							nextMove.put(r + a, nextMove.get(fs + a));
+					}
+				}
+			}
+		}
+	}
+}
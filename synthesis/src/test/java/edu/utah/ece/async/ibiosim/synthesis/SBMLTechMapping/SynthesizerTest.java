@@ -0,0 +1,182 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.synthesis.SBMLTechMapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+
+/**
+ * Checks that the covering search finds the same best cost on the fork/join pool as it does
+ * on one thread.
+ *
+ * @author Nicholas Roehner
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SynthesizerTest {
+
+	private int nextID;
+
+	@Test
+	public void testChainOfInverters() {
+		Set<SynthesisGraph> library = new LinkedHashSet<SynthesisGraph>();
+		library.add(inverter(5, "a"));
+		library.add(inverter(3, "b"));
+		library.add(buffer(7, "c", "d"));
+		SynthesisGraph spec = chain(2);
+
+		List<List<SynthesisGraph>> solutions = new Synthesizer(library, properties(3)).mapSpecification(spec);
+		assertFalse(solutions.isEmpty());
+		assertEquals(7, cost(solutions.get(0)));
+		assertEquals(7, coverSequentially(spec, 3));
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		Random random = new Random(11);
+		for (int trial = 0; trial < 20; trial++) {
+			Set<SynthesisGraph> library = new LinkedHashSet<SynthesisGraph>();
+			for (int i = 0; i < 12; i++)
+				library.add(inverter(1 + random.nextInt(20), "i" + i));
+			for (int i = 0; i < 6; i++)
+				library.add(nor(1 + random.nextInt(30), "n" + i));
+			for (int i = 0; i < 4; i++)
+				library.add(buffer(1 + random.nextInt(30), "b" + i, "c" + i));
+			SynthesisGraph spec = tree(random, 4);
+
+			List<List<SynthesisGraph>> solutions = new Synthesizer(library, properties(3)).mapSpecification(spec);
+			int sequentialCost = coverSequentially(spec, 3);
+			if (solutions.isEmpty())
+				assertEquals(-1, sequentialCost);
+			else
+				assertEquals(sequentialCost, cost(solutions.get(0)));
+		}
+	}
+
+	private static Properties properties(int numSolutions) {
+		Properties synthProps = new Properties();
+		synthProps.setProperty(GlobalConstants.SBOL_SYNTH_METHOD_PROPERTY, GlobalConstants.SBOL_SYNTH_EXHAUST_BB);
+		synthProps.setProperty(GlobalConstants.SBOL_SYNTH_NUM_SOLNS_PROPERTY, String.valueOf(numSolutions));
+		return synthProps;
+	}
+
+	//NOTE: covers the already matched specification again without forking any branch
+	private static int coverSequentially(SynthesisGraph spec, int numSolutions) {
+		SynthesisThread.CoverSearch search = new SynthesisThread.CoverSearch(spec, true, numSolutions, false,
+				new LinkedList<List<SynthesisGraph>>());
+		SynthesisThread.Frontier frontier = SynthesisThread.Frontier.skipUncoverable(
+				new SynthesisThread.Frontier(spec.getOutput(), "", null));
+		if (frontier != null)
+			new SynthesisThread(search, frontier, null, 0).invoke();
+		return search.bestSolutionCost.get();
+	}
+
+	private static int cost(List<SynthesisGraph> solution) {
+		int cost = 0;
+		for (SynthesisGraph cover : solution)
+			cost += Synthesizer.calculateCoverCost(cover);
+		return cost;
+	}
+
+	private SynthesisNode node(String type, int nucleotideCount, String signal) {
+		return new SynthesisNode("n" + nextID++, type, nucleotideCount, signal);
+	}
+
+	private SynthesisGraph graph(String id, Map<SynthesisNode, List<SynthesisNode>> edges) {
+		Set<SynthesisNode> nodes = new LinkedHashSet<SynthesisNode>();
+		for (Map.Entry<SynthesisNode, List<SynthesisNode>> edge : edges.entrySet()) {
+			nodes.add(edge.getKey());
+			nodes.addAll(edge.getValue());
+		}
+		return new SynthesisGraph(id, nodes, edges);
+	}
+
+	private SynthesisGraph inverter(int cost, String signal) {
+		Map<SynthesisNode, List<SynthesisNode>> edges = new HashMap<SynthesisNode, List<SynthesisNode>>();
+		SynthesisNode promoter = node("p", cost, signal);
+		edges.put(node("s", 0, ""), Arrays.asList(promoter));
+		edges.put(promoter, Arrays.asList(node("s", 0, "")));
+		return graph("inverter_" + signal, edges);
+	}
+
+	private SynthesisGraph nor(int cost, String signal) {
+		Map<SynthesisNode, List<SynthesisNode>> edges = new HashMap<SynthesisNode, List<SynthesisNode>>();
+		SynthesisNode promoter = node("p", cost, signal);
+		edges.put(node("s", 0, ""), Arrays.asList(promoter));
+		edges.put(promoter, Arrays.asList(node("s", 0, ""), node("s", 0, "")));
+		return graph("nor_" + signal, edges);
+	}
+
+	private SynthesisGraph buffer(int cost, String firstSignal, String secondSignal) {
+		Map<SynthesisNode, List<SynthesisNode>> edges = new HashMap<SynthesisNode, List<SynthesisNode>>();
+		SynthesisNode firstPromoter = node("p", cost, firstSignal);
+		SynthesisNode middle = node("s", 0, "");
+		SynthesisNode secondPromoter = node("p", 0, secondSignal);
+		edges.put(node("s", 0, ""), Arrays.asList(firstPromoter));
+		edges.put(firstPromoter, Arrays.asList(middle));
+		edges.put(middle, Arrays.asList(secondPromoter));
+		edges.put(secondPromoter, Arrays.asList(node("s", 0, "")));
+		return graph("buffer_" + firstSignal, edges);
+	}
+
+	private SynthesisGraph chain(int length) {
+		Map<SynthesisNode, List<SynthesisNode>> edges = new HashMap<SynthesisNode, List<SynthesisNode>>();
+		SynthesisNode species = node("s", 0, "");
+		for (int i = 0; i < length; i++) {
+			SynthesisNode promoter = node("p", 0, "");
+			SynthesisNode input = node("s", 0, "");
+			edges.put(species, Arrays.asList(promoter));
+			edges.put(promoter, Arrays.asList(input));
+			species = input;
+		}
+		return graph("spec", edges);
+	}
+
+	private SynthesisGraph tree(Random random, int depth) {
+		Map<SynthesisNode, List<SynthesisNode>> edges = new HashMap<SynthesisNode, List<SynthesisNode>>();
+		grow(random, node("s", 0, ""), depth, edges);
+		return graph("spec", edges);
+	}
+
+	private void grow(Random random, SynthesisNode species, int depth, Map<SynthesisNode, List<SynthesisNode>> edges) {
+		if (depth == 0)
+			return;
+		SynthesisNode promoter = node("p", 0, "");
+		List<SynthesisNode> inputs = new LinkedList<SynthesisNode>();
+		int numInputs = 1 + random.nextInt(2);
+		for (int i = 0; i < numInputs; i++) {
+			SynthesisNode input = node("s", 0, "");
+			inputs.add(input);
+			if (random.nextInt(4) > 0)
+				grow(random, input, depth - 1, edges);
+		}
+		edges.put(species, Arrays.asList(promoter));
+		edges.put(promoter, inputs);
+	}
+}
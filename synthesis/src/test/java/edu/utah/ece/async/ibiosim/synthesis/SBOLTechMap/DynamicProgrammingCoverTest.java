@@ -0,0 +1,296 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.synthesis.SBOLTechMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.sbolstandard.core2.AccessType;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.DirectionType;
+import org.sbolstandard.core2.FunctionalComponent;
+import org.sbolstandard.core2.Interaction;
+import org.sbolstandard.core2.ModuleDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.Sequence;
+import org.sbolstandard.core2.SystemsBiologyOntology;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.GateLibrary;
+import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.SBOLGraph;
+import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.SBOLTechMap;
+import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.Synthesis;
+import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.SynthesisNode;
+import edu.utah.ece.async.ibiosim.synthesis.SBOLTechMapping.WeightedGraph;
+
+/**
+ * Compares the dynamic programming covering mode with the branch and bound covering on small
+ * libraries of NOT and NOR gates.
+ *
+ * @author Tramy Nguyen
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class DynamicProgrammingCoverTest
+{
+	private static final String PREFIX = "http://www.async.ece.utah.edu/";
+
+	@Test
+	public void testCrossTalkFreeCover() throws Exception
+	{
+		SBOLDocument libDoc = createDocument();
+		createNOT(libDoc, "NOT1", 5);
+		createNOT(libDoc, "NOT2", 8);
+		createNOT(libDoc, "NOT3", 12);
+		createNOR(libDoc, "NOR1", 20);
+		createNOR(libDoc, "NOR2", 25);
+		SBOLDocument specDoc = createNORofNOTs();
+
+		Synthesis dp = new Synthesis();
+		dp.createSBOLGraph(specDoc, false);
+		dp.setLibrary(new GateLibrary(libDoc));
+		Map<SynthesisNode, SBOLGraph> dpSolution = dp.cover_dp(dp.getSpecification());
+		assertNotNull(dpSolution);
+		assertEquals(3, dpSolution.size());
+		assertEquals(33, cost(dp, dpSolution), 0);
+		assertEquals(3, new HashSet<SBOLGraph>(dpSolution.values()).size());
+
+		Synthesis bb = new Synthesis();
+		bb.createSBOLGraph(specDoc, false);
+		bb.createSBOLGraph(libDoc, true);
+		bb.setLibraryGateScores(bb.getLibrary());
+		Map<SynthesisNode, LinkedList<WeightedGraph>> matches = new HashMap<SynthesisNode, LinkedList<WeightedGraph>>();
+		bb.match_topLevel(bb.getSpecification(), matches);
+		Map<SynthesisNode, SBOLGraph> bbSolution = bb.cover_topLevel(bb.getSpecification(), matches);
+		assertNotNull(bbSolution);
+		assertEquals(cost(bb, bbSolution), cost(dp, dpSolution), 0);
+	}
+
+	@Test
+	public void testTechMapOption() throws Exception
+	{
+		SBOLDocument libDoc = createDocument();
+		createNOT(libDoc, "NOT1", 5);
+		createNOT(libDoc, "NOT2", 8);
+		createNOR(libDoc, "NOR1", 20);
+		createNOR(libDoc, "NOR2", 25);
+
+		SBOLDocument dpSolution = SBOLTechMap.runSBOLTechMap(createNORofNOTs(), libDoc, true);
+		SBOLDocument bbSolution = SBOLTechMap.runSBOLTechMap(createNORofNOTs(), libDoc, false);
+		assertEquals(getModuleIds(bbSolution), getModuleIds(dpSolution));
+		assertEquals(4, getModuleIds(dpSolution).size());
+	}
+
+	@Test
+	public void testStructureIgnoresInputOrder() throws Exception
+	{
+		SBOLDocument libDoc = createDocument();
+		List<SBOLGraph> gates = new ArrayList<SBOLGraph>();
+		SBOLGraph straight = createGraph(libDoc, createInvertedInputNOR(libDoc, "INOR1", 10));
+		SBOLGraph swapped = createGraph(libDoc, createInvertedInputNOR(libDoc, "INOR2", 9));
+		orderInputs(straight, true);
+		orderInputs(swapped, false);
+		gates.add(straight);
+		gates.add(swapped);
+		gates.add(createGraph(libDoc, createNOR(libDoc, "NOR1", 20)));
+		gates.add(createGraph(libDoc, createNOT(libDoc, "NOT1", 5)));
+
+		assertEquals(GateLibrary.getStructure(straight.getOutputNode()), GateLibrary.getStructure(swapped.getOutputNode()));
+		GateLibrary library = new GateLibrary(gates);
+		assertEquals(3, library.getStructures().size());
+
+		SBOLDocument specDoc = createDocument();
+		createInvertedInputNOR(specDoc, "spec", 0);
+		Synthesis dp = new Synthesis();
+		dp.createSBOLGraph(specDoc, false);
+		dp.setLibrary(library);
+		Map<SynthesisNode, SBOLGraph> dpSolution = dp.cover_dp(dp.getSpecification());
+		assertNotNull(dpSolution);
+		assertEquals(1, dpSolution.size());
+		assertSame(swapped, dpSolution.get(dp.getSpecification().getOutputNode()));
+		assertNotNull(dp.getSBOLfromTechMapping(dpSolution, dp.getSpecification(), GlobalConstants.SBOL_AUTHORITY_DEFAULT));
+
+		Synthesis bb = new Synthesis();
+		bb.createSBOLGraph(specDoc, false);
+		bb.setLibrary(library);
+		Map<SynthesisNode, LinkedList<WeightedGraph>> matches = new HashMap<SynthesisNode, LinkedList<WeightedGraph>>();
+		bb.match_topLevel(bb.getSpecification(), matches);
+		Map<SynthesisNode, SBOLGraph> bbSolution = bb.cover_topLevel(bb.getSpecification(), matches);
+		assertEquals(cost(bb, bbSolution), cost(dp, dpSolution), 0);
+		assertNotSame(straight, bbSolution.get(bb.getSpecification().getOutputNode()));
+	}
+
+	private static double cost(Synthesis syn, Map<SynthesisNode, SBOLGraph> solution)
+	{
+		double cost = 0;
+		for(SBOLGraph gate : solution.values())
+		{
+			cost += syn.cost(gate);
+		}
+		return cost;
+	}
+
+	private static Set<String> getModuleIds(SBOLDocument doc)
+	{
+		Set<String> ids = new HashSet<String>();
+		for(ModuleDefinition md : doc.getModuleDefinitions())
+		{
+			ids.add(md.getDisplayId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Puts the input that comes straight from outside the gate first or last among the inputs
+	 * of the output promoter.
+	 */
+	private static void orderInputs(SBOLGraph gate, boolean rootFirst)
+	{
+		List<SynthesisNode> inputs = gate.getOutputNode().getParents().get(0).getParents();
+		if(inputs.get(0).isRoot() != rootFirst)
+		{
+			Collections.reverse(inputs);
+		}
+	}
+
+	private static SBOLGraph createGraph(SBOLDocument doc, ModuleDefinition md)
+	{
+		SBOLGraph graph = new SBOLGraph();
+		graph.createGraph(doc, md);
+		graph.topologicalSort();
+		return graph;
+	}
+
+	private static SBOLDocument createDocument()
+	{
+		SBOLDocument doc = new SBOLDocument();
+		doc.setDefaultURIprefix(PREFIX);
+		return doc;
+	}
+
+	private static SBOLDocument createNORofNOTs() throws Exception
+	{
+		SBOLDocument specDoc = createDocument();
+		ModuleDefinition md = specDoc.createModuleDefinition("spec");
+		FunctionalComponent a = createProtein(specDoc, md, "a", 0);
+		FunctionalComponent b = createProtein(specDoc, md, "b", 0);
+		FunctionalComponent pa = createPromoter(specDoc, md, "pa");
+		FunctionalComponent pb = createPromoter(specDoc, md, "pb");
+		FunctionalComponent na = createProtein(specDoc, md, "na", 0);
+		FunctionalComponent nb = createProtein(specDoc, md, "nb", 0);
+		FunctionalComponent pn = createPromoter(specDoc, md, "pn");
+		FunctionalComponent out = createProtein(specDoc, md, "out", 0);
+		repress(md, a, pa);
+		produce(md, pa, na);
+		repress(md, b, pb);
+		produce(md, pb, nb);
+		repress(md, na, pn);
+		repress(md, nb, pn);
+		produce(md, pn, out);
+		return specDoc;
+	}
+
+	private static ModuleDefinition createNOT(SBOLDocument doc, String id, int cost) throws Exception
+	{
+		ModuleDefinition md = doc.createModuleDefinition(id);
+		FunctionalComponent in = createProtein(doc, md, "in", 0);
+		FunctionalComponent p = createPromoter(doc, md, "p");
+		FunctionalComponent out = createProtein(doc, md, "out", cost);
+		repress(md, in, p);
+		produce(md, p, out);
+		return md;
+	}
+
+	private static ModuleDefinition createNOR(SBOLDocument doc, String id, int cost) throws Exception
+	{
+		ModuleDefinition md = doc.createModuleDefinition(id);
+		FunctionalComponent in1 = createProtein(doc, md, "in1", 0);
+		FunctionalComponent in2 = createProtein(doc, md, "in2", 0);
+		FunctionalComponent p = createPromoter(doc, md, "p");
+		FunctionalComponent out = createProtein(doc, md, "out", cost);
+		repress(md, in1, p);
+		repress(md, in2, p);
+		produce(md, p, out);
+		return md;
+	}
+
+	/**
+	 * A NOR gate with a NOT gate in front of one of its inputs.
+	 */
+	private static ModuleDefinition createInvertedInputNOR(SBOLDocument doc, String id, int cost) throws Exception
+	{
+		ModuleDefinition md = doc.createModuleDefinition(id);
+		FunctionalComponent x = createProtein(doc, md, "x", 0);
+		FunctionalComponent y = createProtein(doc, md, "y", 0);
+		FunctionalComponent q = createPromoter(doc, md, "q");
+		FunctionalComponent m = createProtein(doc, md, "m", 0);
+		FunctionalComponent p = createPromoter(doc, md, "p");
+		FunctionalComponent out = createProtein(doc, md, "out", cost);
+		repress(md, y, q);
+		produce(md, q, m);
+		repress(md, x, p);
+		repress(md, m, p);
+		produce(md, p, out);
+		return md;
+	}
+
+	//NOTE: a gate is scored by the length of the sequence of its output protein minus one
+	private static FunctionalComponent createProtein(SBOLDocument doc, ModuleDefinition md, String id, int cost) throws Exception
+	{
+		ComponentDefinition cd = doc.createComponentDefinition(md.getDisplayId() + "_" + id, ComponentDefinition.PROTEIN);
+		StringBuilder elements = new StringBuilder();
+		for(int i = 0; i <= cost; i++)
+		{
+			elements.append('a');
+		}
+		Sequence sequence = doc.createSequence(cd.getDisplayId() + "_sequence", elements.toString(), Sequence.IUPAC_PROTEIN);
+		cd.addSequence(sequence.getIdentity());
+		return md.createFunctionalComponent(id, AccessType.PUBLIC, cd.getIdentity(), DirectionType.INOUT);
+	}
+
+	private static FunctionalComponent createPromoter(SBOLDocument doc, ModuleDefinition md, String id) throws Exception
+	{
+		ComponentDefinition cd = doc.createComponentDefinition(md.getDisplayId() + "_" + id, ComponentDefinition.DNA);
+		return md.createFunctionalComponent(id, AccessType.PUBLIC, cd.getIdentity(), DirectionType.INOUT);
+	}
+
+	private static void repress(ModuleDefinition md, FunctionalComponent tf, FunctionalComponent promoter) throws Exception
+	{
+		Interaction interaction = md.createInteraction(tf.getDisplayId() + "_represses_" + promoter.getDisplayId(),
+				SystemsBiologyOntology.INHIBITION);
+		interaction.createParticipation(tf.getDisplayId(), tf.getIdentity(), SystemsBiologyOntology.INHIBITOR);
+		interaction.createParticipation(promoter.getDisplayId(), promoter.getIdentity(), SystemsBiologyOntology.INHIBITED);
+	}
+
+	private static void produce(ModuleDefinition md, FunctionalComponent promoter, FunctionalComponent protein) throws Exception
+	{
+		Interaction interaction = md.createInteraction(promoter.getDisplayId() + "_produces_" + protein.getDisplayId(),
+				SystemsBiologyOntology.GENETIC_PRODUCTION);
+		interaction.createParticipation(promoter.getDisplayId(), promoter.getIdentity(), SystemsBiologyOntology.TEMPLATE);
+		interaction.createParticipation(protein.getDisplayId(), protein.getIdentity(), SystemsBiologyOntology.PRODUCT);
+	}
+}
@@ -18,6 +18,7 @@ import java.util.ArrayList;
 
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.lpn.LPNCache;
 import edu.utah.ece.async.lema.verification.platu.main.Options;
 import edu.utah.ece.async.lema.verification.platu.project.Project;
 
@@ -70,6 +71,10 @@ public class VerificationCommandLine {
 				else if (args[i].contains("-log=")) { 
 					Options.setLogName(args[i].trim().substring(5));
 				}
+				// Parsed LPNs are cached as binary images in the directory given by -cache=.
+				else if (args[i].contains("-cache=")) {
+					Options.setLpnCacheDir(args[i].trim().substring(7));
+				}
 				//			else if (args[i].contains("-memlim=")) {
 				//				Options.setMemUpperBoundFlag();
 				//				String memUpperBound = args[i].trim().replace("-memlim=", "");
@@ -133,22 +138,22 @@ public class VerificationCommandLine {
 		// If the "-allLPNs" option exists, then all LPNs under a directory (either specified by "-dir" or
 		// the current directory by default) are considered. If this option is followed by user specified LPNs, they
 		// get ignored.
+		LPNCache lpnCache = null;
+		if (Options.getLpnCacheDir() != null) {
+			lpnCache = new LPNCache(Options.getLpnCacheDir());
+		}
 		try {
 		if (allLPNs) {
 			File[] lpns = dir.listFiles(new FileExtentionFilter(".lpn"));
 			lpnList.clear();
 			for (int i=0; i < lpns.length; i++) {
 				String curLPNname = lpns[i].getName();
-				LPN curLPN = new LPN();
-				curLPN.load(directory + File.separator + curLPNname);
-				lpnList.add(curLPN);
+				lpnList.add(loadLPN(lpnCache, directory + File.separator + curLPNname));
 			}
 		}
 		else {
 			for (int i=0; i < lpnNames.size(); i++) {
-				LPN curLPN = new LPN();
-				curLPN.load(directory + File.separator + lpnNames.get(i));//load(directory + curLPNname);
-				lpnList.add(curLPN);
+				lpnList.add(loadLPN(lpnCache, directory + File.separator + lpnNames.get(i)));
 			}
 		}
 		} catch (BioSimException e) {
@@ -165,4 +170,13 @@ public class VerificationCommandLine {
       e.printStackTrace();
     }
 	}
+
+	private static LPN loadLPN(LPNCache lpnCache, String filename) throws BioSimException {
+		if (lpnCache != null) {
+			return lpnCache.load(filename);
+		}
+		LPN lpn = new LPN();
+		lpn.load(filename);
+		return lpn;
+	}
 }
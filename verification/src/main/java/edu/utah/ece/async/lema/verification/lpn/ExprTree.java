@@ -136,6 +136,11 @@ public class ExprTree {
 		real = 0;
 	}
 
+	ExprTree(LPN lhpn, double value) {
+		this(lhpn);
+		setVarValues('n', value, value, null);
+	}
+
 	public ExprTree(ExprTree nr1, ExprTree nr2, String nop, char willbe) {
 		op = nop;
 		r1 = nr1;
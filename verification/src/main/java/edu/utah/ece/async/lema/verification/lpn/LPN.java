@@ -149,6 +149,7 @@ public class LPN extends CoreObservable {
 		network.markAbstractable();
 		AbstractionEngine abs = network.createAbstractionEngine();
 		ArrayList<String> biochemical = bioModel.getBiochemicalSpecies();
+		HashMap<String, String[]> reactionRateMap = getReactionRates(sbml, bioModel);
 		LPN LHPN = new LPN();
 		for (int i = 0; i < specs.size(); i++) {
 			if (sbml.getModel().getSpecies(specs.get(i))==null) continue;
@@ -218,6 +219,8 @@ public class LPN extends CoreObservable {
 					LHPN.addPlace(previousPlaceName, false);
 				}
 				String number = "0";
+				ExprTree productionRate = null;
+				ExprTree degradationRate = null;
 				for (Object threshold : conLevel.get(i)) {
 					if (LHPN.getIntegers().get(specs.get(i)).equals("" + ((int) Double.parseDouble((String) threshold)))) {
 						LHPN.addPlace(specs.get(i) + placeNum, true);
@@ -270,78 +273,10 @@ public class LPN extends CoreObservable {
 						}
 						String reactionProductions = "";
 						String reactionDegradations = "";
-						ListOf<Reaction> reactions = sbml.getModel().getListOfReactions();
-						for (int j = 0; j < sbml.getModel().getReactionCount(); j++) {
-							Reaction r = reactions.get(j);
-							if (!BioModel.isProductionReaction(r) && !BioModel.isDegradationReaction(r)
-									&& !BioModel.isComplexReaction(r)) {
-								for (int k = 0; k < r.getReactantCount(); k++) {
-									if (r.getReactant(k).getSpecies().equals(specs.get(i))) {
-										KineticLaw law = r.getKineticLaw();
-										HashMap<String, String> parameters = new HashMap<String, String>();
-										for (String parameter : bioModel.getParameters()) {
-											parameters.put(parameter, bioModel.getParameter(parameter));
-										}
-										for (int l = 0; l < law.getLocalParameterCount(); l++) {
-											parameters.put(law.getLocalParameter(l).getId(), ""
-													+ law.getLocalParameter(l).getValue());
-										}
-										if (r.isSetReversible() && law.getMath().getCharacter() == '-') {
-											reactionDegradations += "(("
-													+ SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath().getLeftChild(),
-															parameters)) + ")*" + r.getReactant(k).getStoichiometry()
-													+ ") + ";
-											reactionProductions += "(("
-													+ SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath().getRightChild(),
-															parameters)) + ")*" + r.getReactant(k).getStoichiometry()
-													+ ") + ";
-										}
-										else {
-											reactionDegradations += "(("
-													+ SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath(),
-															parameters)) + ")*" + r.getReactant(k).getStoichiometry()
-													+ ") + ";
-										}
-									}
-								}
-								for (int k = 0; k < r.getProductCount(); k++) {
-									if (r.getProduct(k).getSpecies().equals(specs.get(i))) {
-										KineticLaw law = r.getKineticLaw();
-										HashMap<String, String> parameters = new HashMap<String, String>();
-										for (String parameter : bioModel.getParameters()) {
-											parameters.put(parameter, bioModel.getParameter(parameter));
-										}
-										for (int l = 0; l < law.getLocalParameterCount(); l++) {
-											parameters.put(law.getLocalParameter(l).getId(), ""
-													+ law.getLocalParameter(l).getValue());
-										}
-										if (r.isSetReversible() && law.getMath().getCharacter() == '-') {
-											reactionProductions += "(("
-													+ SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath().getLeftChild(),
-															parameters)) + ")*" + r.getProduct(k).getStoichiometry()
-													+ ") + ";
-											reactionDegradations += "(("
-													+ SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath().getRightChild(),
-															parameters)) + ")*" + r.getProduct(k).getStoichiometry()
-													+ ") + ";
-										}
-										else {
-											reactionProductions += "(("
-													+ SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath(),
-															parameters)) + ")*" + r.getProduct(k).getStoichiometry()
-													+ ") + ";
-										}
-									}
-								}
-							}
-						}
-						if (!reactionProductions.equals("")) {
-							reactionProductions = reactionProductions.substring(0, reactionProductions.length() - 3);
-							reactionProductions = reactionProductions.replaceAll(" ", "");
-						}
-						if (!reactionDegradations.equals("")) {
-							reactionDegradations = reactionDegradations.substring(0, reactionDegradations.length() - 3);
-							reactionDegradations = reactionDegradations.replaceAll(" ", "");
+						String[] reactionRates = reactionRateMap.get(specs.get(i));
+						if (reactionRates != null) {
+							reactionProductions = reactionRates[0];
+							reactionDegradations = reactionRates[1];
 						}
 						if (!rate.equals("") || !reactionProductions.equals("")) {
 							if (rate.equals("")) {
@@ -354,8 +289,11 @@ public class LPN extends CoreObservable {
 							LHPN.addMovement(previousPlaceName, specs.get(i) + "_trans" + transNum);
 							LHPN.addMovement(specs.get(i) + "_trans" + transNum, specs.get(i) + placeNum);
 							LHPN.addIntAssign(specs.get(i) + "_trans" + transNum, specs.get(i), (String) threshold);
-							LHPN.addTransitionRate(specs.get(i) + "_trans" + transNum, rate + "/" + "(" + threshold
-									+ "-" + number + "))");
+							if (productionRate == null) {
+								productionRate = parseRate(LHPN, rate);
+							}
+							addThresholdRate(LHPN, specs.get(i) + "_trans" + transNum, productionRate, rate,
+									(String) threshold, number);
 							transNum++;
 						}
 						String specExpr = specs.get(i);
@@ -380,14 +318,18 @@ public class LPN extends CoreObservable {
 							LHPN.addMovement(specs.get(i) + placeNum, specs.get(i) + "_trans" + transNum);
 							LHPN.addMovement(specs.get(i) + "_trans" + transNum, previousPlaceName);
 							LHPN.addIntAssign(specs.get(i) + "_trans" + transNum, specs.get(i), number);
+							String degradation;
 							if (!reactionDegradations.equals("")) {
-								LHPN.addTransitionRate(specs.get(i) + "_trans" + transNum, "((" + specExpr + "*" + kd + ")"
-										+ "+" + reactionDegradations + ")/" + "(" + threshold + "-" + number + ")");
+								degradation = "((" + specExpr + "*" + kd + ")" + "+" + reactionDegradations + ")";
 							}
 							else {
-								LHPN.addTransitionRate(specs.get(i) + "_trans" + transNum, "(" + specExpr + "*" + kd + ")/"
-										+ "(" + threshold + "-" + number + ")");
+								degradation = "(" + specExpr + "*" + kd + ")";
+							}
+							if (degradationRate == null) {
+								degradationRate = parseRate(LHPN, degradation);
 							}
+							addThresholdRate(LHPN, specs.get(i) + "_trans" + transNum, degradationRate, degradation,
+									(String) threshold, number);
 							transNum++;
 						}
 						else if (!reactionDegradations.equals("")) {
@@ -395,8 +337,11 @@ public class LPN extends CoreObservable {
 							LHPN.addMovement(specs.get(i) + placeNum, specs.get(i) + "_trans" + transNum);
 							LHPN.addMovement(specs.get(i) + "_trans" + transNum, previousPlaceName);
 							LHPN.addIntAssign(specs.get(i) + "_trans" + transNum, specs.get(i), number);
-							LHPN.addTransitionRate(specs.get(i) + "_trans" + transNum, "(" + reactionDegradations
-									+ ")/" + "(" + threshold + "-" + number + ")");
+							if (degradationRate == null) {
+								degradationRate = parseRate(LHPN, "(" + reactionDegradations + ")");
+							}
+							addThresholdRate(LHPN, specs.get(i) + "_trans" + transNum, degradationRate,
+									"(" + reactionDegradations + ")", (String) threshold, number);
 							transNum++;
 						}
 					}
@@ -440,6 +385,123 @@ public class LPN extends CoreObservable {
 		return LHPN;
 	}
 	
+	/**
+	 * Collects, in a single pass over the reactions, the production and degradation
+	 * rate expressions contributed to each species by the non-genetic reactions.
+	 * Each kinetic law is converted to a formula once, however many species and
+	 * thresholds refer to it.
+	 * 
+	 * @return a map from species id to its {productions, degradations} expressions.
+	 */
+	private static HashMap<String, String[]> getReactionRates(SBMLDocument sbml, BioModel bioModel) {
+		HashMap<String, String> globalParameters = new HashMap<String, String>();
+		for (String parameter : bioModel.getParameters()) {
+			globalParameters.put(parameter, bioModel.getParameter(parameter));
+		}
+		HashMap<String, StringBuilder> productions = new HashMap<String, StringBuilder>();
+		HashMap<String, StringBuilder> degradations = new HashMap<String, StringBuilder>();
+		ListOf<Reaction> reactions = sbml.getModel().getListOfReactions();
+		for (int j = 0; j < sbml.getModel().getReactionCount(); j++) {
+			Reaction r = reactions.get(j);
+			if (BioModel.isProductionReaction(r) || BioModel.isDegradationReaction(r)
+					|| BioModel.isComplexReaction(r) || !r.isSetKineticLaw()) {
+				continue;
+			}
+			KineticLaw law = r.getKineticLaw();
+			HashMap<String, String> parameters = new HashMap<String, String>(globalParameters);
+			for (int l = 0; l < law.getLocalParameterCount(); l++) {
+				parameters.put(law.getLocalParameter(l).getId(), "" + law.getLocalParameter(l).getValue());
+			}
+			String forward, reverse = null;
+			if (r.isSetReversible() && law.getMath().getCharacter() == '-') {
+				forward = SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath().getLeftChild(), parameters));
+				reverse = SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath().getRightChild(), parameters));
+			}
+			else {
+				forward = SBMLutilities.myFormulaToString(bioModel.replaceParams(law.getMath(), parameters));
+			}
+			for (int k = 0; k < r.getReactantCount(); k++) {
+				String species = r.getReactant(k).getSpecies();
+				double stoichiometry = r.getReactant(k).getStoichiometry();
+				appendReactionRate(degradations, species, forward, stoichiometry);
+				if (reverse != null) {
+					appendReactionRate(productions, species, reverse, stoichiometry);
+				}
+			}
+			for (int k = 0; k < r.getProductCount(); k++) {
+				String species = r.getProduct(k).getSpecies();
+				double stoichiometry = r.getProduct(k).getStoichiometry();
+				appendReactionRate(productions, species, forward, stoichiometry);
+				if (reverse != null) {
+					appendReactionRate(degradations, species, reverse, stoichiometry);
+				}
+			}
+		}
+		HashMap<String, String[]> reactionRates = new HashMap<String, String[]>();
+		HashSet<String> species = new HashSet<String>(productions.keySet());
+		species.addAll(degradations.keySet());
+		for (String s : species) {
+			reactionRates.put(s, new String[] { reactionRateString(productions.get(s)),
+					reactionRateString(degradations.get(s)) });
+		}
+		return reactionRates;
+	}
+
+	private static void appendReactionRate(HashMap<String, StringBuilder> rates, String species, String formula,
+			double stoichiometry) {
+		StringBuilder rate = rates.get(species);
+		if (rate == null) {
+			rate = new StringBuilder();
+			rates.put(species, rate);
+		}
+		else {
+			rate.append(" + ");
+		}
+		rate.append("((").append(formula).append(")*").append(stoichiometry).append(")");
+	}
+
+	private static String reactionRateString(StringBuilder rate) {
+		if (rate == null) {
+			return "";
+		}
+		return rate.toString().replaceAll(" ", "");
+	}
+
+	/**
+	 * Parses a threshold independent rate numerator once, so that each threshold
+	 * transition only needs a division node on top of a copy of the tree.
+	 * 
+	 * @return the parsed rate, or null if it does not parse.
+	 */
+	private static ExprTree parseRate(LPN lhpn, String rate) {
+		ExprTree expr = new ExprTree(lhpn);
+		try {
+			expr.token = expr.intexpr_gettok(rate);
+			expr.intexpr_L(rate);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		return expr;
+	}
+
+	/**
+	 * Sets the rate of a threshold transition to the given numerator divided by the
+	 * distance between the thresholds. Each transition gets its own copy of the
+	 * parsed numerator. If the numerator did not parse, the rate is added as a string
+	 * so that the parse error is reported through the transition's observers.
+	 */
+	private static void addThresholdRate(LPN lhpn, String transition, ExprTree rate, String rateString,
+			String threshold, String number) {
+		if (rate == null) {
+			lhpn.addTransitionRate(transition, rateString + "/(" + threshold + "-" + number + ")");
+			return;
+		}
+		ExprTree expr = new ExprTree(lhpn);
+		expr.setNodeValues(rate.clone(), new ExprTree(lhpn, Double.parseDouble(threshold) - Double.parseDouble(number)),
+				"/", 'a');
+		lhpn.addTransitionRate(transition, expr);
+	}
+	
 	public static void convertLPN2PRISM(FileWriter logFile,LPN LPN,String filename, SBMLDocument sbml) {
 		File file = new File(filename);
 		try {
@@ -1266,6 +1328,12 @@ public class LPN extends CoreObservable {
 		transitions.get(transition).addDelay("exponential(" + rate + ")");
 	}
 
+	public void addTransitionRate(String transition, ExprTree rate) {
+		ExprTree delay = new ExprTree(this);
+		delay.setNodeValues(rate, null, "exponential", 'a');
+		transitions.get(transition).addDelay(delay);
+	}
+
 	public void addBoolAssign(String transition, String variable,
 			String assignment) {
 		Variable var = new Variable(variable, "integer", "unknown", Variable.OUTPUT);
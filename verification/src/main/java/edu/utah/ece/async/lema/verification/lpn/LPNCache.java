@@ -0,0 +1,459 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.lpn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * On-disk cache of parsed LPNs. The first time an .lpn file is loaded, it is parsed
+ * with {@link LPN#load(String)} and a compact binary image of the result (places,
+ * variables, transition tables and every expression tree) is written to the cache
+ * directory under the SHA-256 hash of the file contents. Later loads of the same
+ * content memory-map that image and rebuild the LPN without tokenizing any expression.
+ *
+ * @author Chris Myers
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class LPNCache {
+
+	private static final int MAGIC = 0x4c504e43; // "LPNC"
+
+	/*
+	 * Bump whenever the layout written by encode changes so that stale images are
+	 * ignored and regenerated.
+	 */
+	private static final int VERSION = 1;
+
+	private static final String EXTENSION = ".lpnc";
+
+	private static final byte NULL_TREE = 0;
+
+	private static final byte TREE_NODE = 1;
+
+	private final File cacheDir;
+
+	public LPNCache(String cacheDir) {
+		this.cacheDir = new File(cacheDir);
+	}
+
+	/**
+	 * Loads the LPN in filename, using the cached image when one exists for its contents.
+	 * A missing or unreadable image is silently regenerated.
+	 */
+	public LPN load(String filename) throws BioSimException {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(new File(filename).toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new IllegalStateException("Error opening file");
+		}
+		String label = GlobalConstants.getFilename(filename).replace(".lpn","");
+		File image = new File(cacheDir, hash(content) + EXTENSION);
+		if (image.exists()) {
+			try {
+				LPN lpn = decode(map(image));
+				lpn.label = label;
+				return lpn;
+			} catch (IOException | RuntimeException e) {
+				// Corrupt or truncated image: fall through and rebuild it.
+				image.delete();
+			}
+		}
+		LPN lpn = new LPN();
+		lpn.load(filename);
+		try {
+			store(lpn, image);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return lpn;
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] bytes = digest.digest(content);
+			StringBuilder hex = new StringBuilder(bytes.length * 2);
+			for (byte b : bytes) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static ByteBuffer map(File image) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(image, "r");
+				FileChannel channel = file.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.load();
+			return buffer;
+		}
+	}
+
+	private void store(LPN lpn, File image) throws IOException {
+		if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+			throw new IOException("Unable to create LPN cache directory " + cacheDir);
+		}
+		byte[] bytes = encode(lpn);
+		// Write to a temporary file first so a concurrent reader never maps a partial image.
+		File temp = File.createTempFile("lpn", ".tmp", cacheDir);
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			out.write(bytes);
+		}
+		if (!temp.renameTo(image)) {
+			temp.delete();
+		}
+	}
+
+	/*
+	 * Layout: header, string table, places, variables, properties, transitions. Every
+	 * string is written once in the table and referenced elsewhere by its index.
+	 */
+	static byte[] encode(LPN lpn) throws IOException {
+		Encoder encoder = new Encoder();
+		for (Place place : lpn.places.values()) {
+			encoder.intern(place.getName());
+		}
+		List<Variable> vars = collectVariables(lpn);
+		for (Variable var : vars) {
+			encoder.intern(var.getName());
+			encoder.intern(var.getType());
+			encoder.intern(var.getInitValue());
+			encoder.intern(var.getInitRate());
+			encoder.intern(var.getPort());
+		}
+		for (String property : lpn.properties) {
+			encoder.intern(property);
+		}
+		Transition[] transitions = sortedTransitions(lpn);
+		for (Transition t : transitions) {
+			encoder.intern(t.getLabel());
+			encoder.intern(t.getEnabling());
+			encoder.intern(t.getDelay());
+			encoder.intern(t.getPriority());
+			encoder.internTree(t.getEnablingTree());
+			encoder.internTree(t.getDelayTree());
+			encoder.internTree(t.getPriorityTree());
+			encoder.internAssignments(t.getBoolAssignments(), t.getBoolAssignTrees());
+			encoder.internAssignments(t.getIntAssignments(), t.getIntAssignTrees());
+			encoder.internAssignments(t.getContAssignments(), t.getContAssignTrees());
+			encoder.internAssignments(t.getRateAssignments(), t.getRateAssignTrees());
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		encoder.writeStrings(out);
+
+		out.writeInt(lpn.places.size());
+		for (Place place : lpn.places.values()) {
+			out.writeInt(encoder.ref(place.getName()));
+			out.writeBoolean(place.isMarked());
+		}
+
+		out.writeInt(vars.size());
+		for (Variable var : vars) {
+			out.writeInt(encoder.ref(var.getName()));
+			out.writeInt(encoder.ref(var.getType()));
+			out.writeInt(encoder.ref(var.getInitValue()));
+			out.writeInt(encoder.ref(var.getInitRate()));
+			out.writeInt(encoder.ref(var.getPort()));
+			out.writeBoolean(lpn.variables.contains(var));
+		}
+
+		out.writeInt(lpn.properties.size());
+		for (String property : lpn.properties) {
+			out.writeInt(encoder.ref(property));
+		}
+
+		out.writeInt(transitions.length);
+		for (Transition t : transitions) {
+			out.writeInt(encoder.ref(t.getLabel()));
+			out.writeInt(t.getIndex());
+			out.writeBoolean(t.isFail());
+			out.writeBoolean(t.isPersistent());
+			Place[] preset = t.getPreset();
+			out.writeInt(preset.length);
+			for (Place p : preset) {
+				out.writeInt(encoder.ref(p.getName()));
+			}
+			Place[] postset = t.getPostset();
+			out.writeInt(postset.length);
+			for (Place p : postset) {
+				out.writeInt(encoder.ref(p.getName()));
+			}
+			out.writeInt(encoder.ref(t.getEnabling()));
+			encoder.writeTree(out, t.getEnablingTree());
+			out.writeInt(encoder.ref(t.getDelay()));
+			encoder.writeTree(out, t.getDelayTree());
+			out.writeInt(encoder.ref(t.getPriority()));
+			encoder.writeTree(out, t.getPriorityTree());
+			encoder.writeAssignments(out, t.getBoolAssignments(), t.getBoolAssignTrees());
+			encoder.writeAssignments(out, t.getIntAssignments(), t.getIntAssignTrees());
+			encoder.writeAssignments(out, t.getContAssignments(), t.getContAssignTrees());
+			encoder.writeAssignments(out, t.getRateAssignments(), t.getRateAssignTrees());
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	static LPN decode(ByteBuffer in) throws IOException {
+		if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+			throw new IOException("Not a current LPN cache image");
+		}
+		String[] strings = new String[in.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] utf8 = new byte[in.getInt()];
+			in.get(utf8);
+			strings[i] = new String(utf8, StandardCharsets.UTF_8);
+		}
+		LPN lpn = new LPN();
+
+		int placeCount = in.getInt();
+		for (int i = 0; i < placeCount; i++) {
+			String name = string(strings, in.getInt());
+			lpn.addPlace(name, in.get() != 0);
+		}
+
+		// All variables must be registered before any tree is built, since the
+		// ExprTree(LPN) constructor captures the signal lists of the LPN.
+		int varCount = in.getInt();
+		for (int i = 0; i < varCount; i++) {
+			String name = string(strings, in.getInt());
+			String type = string(strings, in.getInt());
+			String initValue = string(strings, in.getInt());
+			String initRate = string(strings, in.getInt());
+			String port = string(strings, in.getInt());
+			boolean listed = in.get() != 0;
+			Variable var = new Variable(name, type, initValue, port);
+			var.addInitRate(initRate);
+			if (type.equals(Variable.BOOLEAN)) {
+				lpn.booleans.put(name, var);
+			} else if (type.equals(Variable.INTEGER)) {
+				lpn.integers.put(name, var);
+			} else if (type.equals(Variable.CONTINUOUS)) {
+				lpn.continuous.put(name, var);
+			}
+			if (listed) {
+				lpn.variables.add(var);
+			}
+		}
+
+		int propertyCount = in.getInt();
+		for (int i = 0; i < propertyCount; i++) {
+			lpn.addProperty(string(strings, in.getInt()));
+		}
+
+		int transitionCount = in.getInt();
+		int maxIndex = -1;
+		for (int i = 0; i < transitionCount; i++) {
+			String label = string(strings, in.getInt());
+			int index = in.getInt();
+			Transition t = new Transition(label, index, lpn);
+			t.setFail(in.get() != 0);
+			t.setPersistent(in.get() != 0);
+			lpn.addTransition(t);
+			maxIndex = Math.max(maxIndex, index);
+			int presetCount = in.getInt();
+			for (int j = 0; j < presetCount; j++) {
+				Place p = lpn.places.get(string(strings, in.getInt()));
+				t.addPreset(p);
+				p.addPostset(t);
+			}
+			int postsetCount = in.getInt();
+			for (int j = 0; j < postsetCount; j++) {
+				Place p = lpn.places.get(string(strings, in.getInt()));
+				t.addPostset(p);
+				p.addPreset(t);
+			}
+			ExprTree template = new ExprTree(lpn);
+			String enabling = string(strings, in.getInt());
+			t.restoreEnabling(enabling, readTree(in, strings, lpn, template));
+			String delay = string(strings, in.getInt());
+			t.restoreDelay(delay, readTree(in, strings, lpn, template));
+			String priority = string(strings, in.getInt());
+			t.restorePriority(priority, readTree(in, strings, lpn, template));
+			readAssignments(in, strings, lpn, template, t.getBoolAssignments(), t.getBoolAssignTrees());
+			readAssignments(in, strings, lpn, template, t.getIntAssignments(), t.getIntAssignTrees());
+			readAssignments(in, strings, lpn, template, t.getContAssignments(), t.getContAssignTrees());
+			readAssignments(in, strings, lpn, template, t.getRateAssignments(), t.getRateAssignTrees());
+		}
+		lpn.tranIndex = maxIndex + 1;
+		return lpn;
+	}
+
+	private static List<Variable> collectVariables(LPN lpn) {
+		// Continuous variables are normally kept outside of the variables list, so
+		// gather every distinct Variable and record list membership separately.
+		IdentityHashMap<Variable, Boolean> seen = new IdentityHashMap<Variable, Boolean>();
+		List<Variable> vars = new ArrayList<Variable>();
+		for (Variable var : lpn.variables) {
+			if (seen.put(var, Boolean.TRUE) == null) {
+				vars.add(var);
+			}
+		}
+		for (Map<String, Variable> map : Arrays.asList(lpn.booleans, lpn.integers, lpn.continuous)) {
+			for (Variable var : map.values()) {
+				if (seen.put(var, Boolean.TRUE) == null) {
+					vars.add(var);
+				}
+			}
+		}
+		return vars;
+	}
+
+	private static Transition[] sortedTransitions(LPN lpn) {
+		Transition[] transitions = lpn.transitions.values().toArray(new Transition[0]);
+		Arrays.sort(transitions, new Comparator<Transition>() {
+			@Override
+			public int compare(Transition t1, Transition t2) {
+				return Integer.compare(t1.getIndex(), t2.getIndex());
+			}
+		});
+		return transitions;
+	}
+
+	private static String string(String[] strings, int ref) {
+		return ref < 0 ? null : strings[ref];
+	}
+
+	private static void readAssignments(ByteBuffer in, String[] strings, LPN lpn, ExprTree template,
+			HashMap<String, String> assignments, HashMap<String, ExprTree> trees) {
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			String var = string(strings, in.getInt());
+			assignments.put(var, string(strings, in.getInt()));
+			ExprTree tree = readTree(in, strings, lpn, template);
+			if (tree != null) {
+				trees.put(var, tree);
+			}
+		}
+	}
+
+	private static ExprTree readTree(ByteBuffer in, String[] strings, LPN lpn, ExprTree template) {
+		if (in.get() == NULL_TREE) {
+			return null;
+		}
+		// Nodes share the LPN and signal lists of the root, as they do when parsed.
+		ExprTree node = new ExprTree(template);
+		node.op = string(strings, in.getInt());
+		node.isit = in.getChar();
+		node.lvalue = in.getDouble();
+		node.uvalue = in.getDouble();
+		node.variable = string(strings, in.getInt());
+		node.real = in.getDouble();
+		node.logical = in.get() != 0;
+		node.r1 = readTree(in, strings, lpn, template);
+		node.r2 = readTree(in, strings, lpn, template);
+		return node;
+	}
+
+	private static class Encoder {
+
+		private final HashMap<String, Integer> refs = new HashMap<String, Integer>();
+
+		private final List<String> strings = new ArrayList<String>();
+
+		void intern(String s) {
+			if (s != null && !refs.containsKey(s)) {
+				refs.put(s, strings.size());
+				strings.add(s);
+			}
+		}
+
+		void internTree(ExprTree tree) {
+			if (tree != null) {
+				intern(tree.op);
+				intern(tree.variable);
+				internTree(tree.r1);
+				internTree(tree.r2);
+			}
+		}
+
+		void internAssignments(HashMap<String, String> assignments, HashMap<String, ExprTree> trees) {
+			for (Map.Entry<String, String> entry : assignments.entrySet()) {
+				intern(entry.getKey());
+				intern(entry.getValue());
+				internTree(trees.get(entry.getKey()));
+			}
+		}
+
+		int ref(String s) {
+			return s == null ? -1 : refs.get(s);
+		}
+
+		void writeStrings(DataOutputStream out) throws IOException {
+			out.writeInt(strings.size());
+			for (String s : strings) {
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(utf8.length);
+				out.write(utf8);
+			}
+		}
+
+		void writeAssignments(DataOutputStream out, HashMap<String, String> assignments,
+				HashMap<String, ExprTree> trees) throws IOException {
+			out.writeInt(assignments.size());
+			for (Map.Entry<String, String> entry : assignments.entrySet()) {
+				out.writeInt(ref(entry.getKey()));
+				out.writeInt(ref(entry.getValue()));
+				writeTree(out, trees.get(entry.getKey()));
+			}
+		}
+
+		void writeTree(DataOutputStream out, ExprTree tree) throws IOException {
+			if (tree == null) {
+				out.writeByte(NULL_TREE);
+				return;
+			}
+			out.writeByte(TREE_NODE);
+			out.writeInt(ref(tree.op));
+			out.writeChar(tree.isit);
+			out.writeDouble(tree.lvalue);
+			out.writeDouble(tree.uvalue);
+			out.writeInt(ref(tree.variable));
+			out.writeDouble(tree.real);
+			out.writeBoolean(tree.logical);
+			writeTree(out, tree.r1);
+			writeTree(out, tree.r2);
+		}
+	}
+}
@@ -187,6 +187,25 @@ public class Transition extends CoreObservable {
 		}
 	}
 
+	/*
+	 * The restore methods install an expression that has already been parsed
+	 * (e.g., one decoded by LPNCache) without re-tokenizing its string form.
+	 */
+	void restoreEnabling(String enabling, ExprTree enablingTree) {
+		this.enabling = enabling;
+		this.enablingTree = enablingTree;
+	}
+
+	void restoreDelay(String delay, ExprTree delayTree) {
+		this.delay = delay;
+		this.delayTree = delayTree;
+	}
+
+	void restorePriority(String priority, ExprTree priorityTree) {
+		this.priority = priority;
+		this.priorityTree = priorityTree;
+	}
+
 	public boolean addIntAssign(String variable, String assignment) {
 		ExprTree expr = new ExprTree(lhpn);
 		try {
@@ -278,6 +297,14 @@ public class Transition extends CoreObservable {
 		}
 	}
 
+	/**
+	 * Sets the delay from an already built expression tree, skipping the parse.
+	 */
+	public void addDelay(ExprTree delayTree) {
+		this.delayTree = delayTree;
+		this.delay = delayTree.toString("LHPN");
+	}
+
 	public boolean addPriority(String priority) {
 		if (priority.equals("")) {
 			this.priority = null;
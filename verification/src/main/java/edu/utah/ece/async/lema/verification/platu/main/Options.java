@@ -135,6 +135,11 @@ public class Options {
 	 */
 	private static String prjSgPath = null;
 	
+	/*
+	 * Directory holding binary images of parsed LPNs (see LPNCache). Null disables the cache.
+	 */
+	private static String lpnCacheDir = null;
+	
 	/*
 	 * Flag indate if there is a user specified memory upper bound
 	 */
@@ -432,6 +437,14 @@ public class Options {
 		return prjSgPath;
 	}
 
+	public static void setLpnCacheDir(String path) {
+		lpnCacheDir = path;
+	}
+
+	public static String getLpnCacheDir() {
+		return lpnCacheDir;
+	}
+
 	public static void setCycleClosingStrongStubbornMethd(String method) {
 		cycleClosingStrongStubbornMethd = method;		
 	}
@@ -0,0 +1,169 @@
+package edu.utah.ece.async.lema.verification.lpn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LPNCacheTest {
+	private static final String ROOT = "/edu/utah/ece/async/lema/verification/lpn/";
+
+	private File directory;
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("lpn").toFile();
+		cacheDir = new File(directory, "cache");
+	}
+
+	@Test
+	public void test_round_trip() throws Exception {
+		LPN parsed = new LPN();
+		parsed.load(copy("lambda.lpn"));
+		assertSameLPN(parsed, LPNCache.decode(ByteBuffer.wrap(LPNCache.encode(parsed))));
+	}
+
+	@Test
+	public void test_round_trip_of_every_assignment_kind() throws Exception {
+		LPN lpn = new LPN();
+		lpn.addPlace("p0", true);
+		lpn.addPlace("p1", false);
+		lpn.addTransition("t0");
+		lpn.addTransition("t1");
+		lpn.addMovement("p0", "t0");
+		lpn.addMovement("t0", "p1");
+		lpn.addMovement("p1", "t1");
+		lpn.addMovement("t1", "p0");
+		lpn.addBoolean("b", "false");
+		lpn.addInteger("n", "0");
+		lpn.addContinuous("x", "0", "1");
+		lpn.addEnabling("t0", "~b&(n<3)");
+		lpn.addIntAssign("t0", "n", "n+1");
+		lpn.addBoolAssign("t0", "b", "TRUE");
+		lpn.getTransition("t0").addDelay("uniform(1,2)");
+		lpn.addRateAssign("t1", "x", "2");
+		lpn.getTransition("t1").addDelay("5");
+		String filename = new File(directory, "mixed.lpn").getPath();
+		lpn.save(filename);
+
+		LPN parsed = new LPN();
+		parsed.load(filename);
+		assertSameLPN(parsed, LPNCache.decode(ByteBuffer.wrap(LPNCache.encode(parsed))));
+		LPNCache cache = new LPNCache(cacheDir.getPath());
+		cache.load(filename);
+		assertSameLPN(parsed, cache.load(filename));
+	}
+
+	@Test
+	public void test_image_reused() throws Exception {
+		String filename = copy("lambda.lpn");
+		LPNCache cache = new LPNCache(cacheDir.getPath());
+		LPN first = cache.load(filename);
+		File[] images = images();
+		Assert.assertEquals(1, images.length);
+		byte[] image = Files.readAllBytes(images[0].toPath());
+
+		LPN second = cache.load(filename);
+		Assert.assertEquals("lambda", second.getLabel());
+		assertSameLPN(first, second);
+		Assert.assertEquals(1, images().length);
+		Assert.assertArrayEquals(image, Files.readAllBytes(images[0].toPath()));
+	}
+
+	@Test
+	public void test_changed_content_gets_new_image() throws Exception {
+		String filename = copy("lambda.lpn");
+		LPNCache cache = new LPNCache(cacheDir.getPath());
+		cache.load(filename);
+		Files.write(new File(filename).toPath(), "\n".getBytes(), StandardOpenOption.APPEND);
+		LPN parsed = new LPN();
+		parsed.load(filename);
+		assertSameLPN(parsed, cache.load(filename));
+		Assert.assertEquals(2, images().length);
+	}
+
+	@Test
+	public void test_corrupt_image_rebuilt() throws Exception {
+		String filename = copy("lambda.lpn");
+		LPNCache cache = new LPNCache(cacheDir.getPath());
+		LPN first = cache.load(filename);
+		File image = images()[0];
+		byte[] bytes = Files.readAllBytes(image.toPath());
+		try (FileOutputStream out = new FileOutputStream(image)) {
+			out.write(Arrays.copyOf(bytes, bytes.length / 2));
+		}
+		assertSameLPN(first, cache.load(filename));
+		Assert.assertTrue(image.exists());
+		assertSameLPN(first, cache.load(filename));
+	}
+
+	private File[] images() {
+		return cacheDir.listFiles((dir, name) -> name.endsWith(".lpnc"));
+	}
+
+	private String copy(String name) throws IOException {
+		File file = new File(directory, name);
+		try (InputStream in = LPNCacheTest.class.getResourceAsStream(ROOT + name)) {
+			Files.copy(in, file.toPath());
+		}
+		return file.getPath();
+	}
+
+	private static void assertSameLPN(LPN expected, LPN actual) {
+		Assert.assertEquals(new TreeSet<>(Arrays.asList(expected.getPlaceList())), new TreeSet<>(Arrays.asList(actual.getPlaceList())));
+		for (String place : expected.getPlaceList()) {
+			Assert.assertEquals(place, expected.getInitialMarking(place), actual.getInitialMarking(place));
+		}
+		Assert.assertEquals(new TreeSet<>(Arrays.asList(expected.getVariables())), new TreeSet<>(Arrays.asList(actual.getVariables())));
+		for (String variable : expected.getVariables()) {
+			Assert.assertEquals(variable, expected.getInitialVal(variable), actual.getInitialVal(variable));
+			Assert.assertEquals(variable, expected.getInitialRate(variable), actual.getInitialRate(variable));
+		}
+		Assert.assertEquals(expected.getProperties(), actual.getProperties());
+		Assert.assertEquals(new TreeSet<>(Arrays.asList(expected.getTransitionList())), new TreeSet<>(Arrays.asList(actual.getTransitionList())));
+		for (String label : expected.getTransitionList()) {
+			Transition e = expected.getTransition(label);
+			Transition a = actual.getTransition(label);
+			Assert.assertEquals(label, names(e.getPreset()), names(a.getPreset()));
+			Assert.assertEquals(label, names(e.getPostset()), names(a.getPostset()));
+			Assert.assertEquals(label, e.getEnabling(), a.getEnabling());
+			Assert.assertEquals(label, String.valueOf(e.getEnablingTree()), String.valueOf(a.getEnablingTree()));
+			Assert.assertEquals(label, e.getDelay(), a.getDelay());
+			Assert.assertEquals(label, String.valueOf(e.getDelayTree()), String.valueOf(a.getDelayTree()));
+			Assert.assertEquals(label, e.getPriority(), a.getPriority());
+			Assert.assertEquals(label, e.getBoolAssignments(), a.getBoolAssignments());
+			Assert.assertEquals(label, e.getIntAssignments(), a.getIntAssignments());
+			Assert.assertEquals(label, e.getContAssignments(), a.getContAssignments());
+			Assert.assertEquals(label, e.getRateAssignments(), a.getRateAssignments());
+			Assert.assertEquals(label, strings(e.getIntAssignTrees()), strings(a.getIntAssignTrees()));
+		}
+	}
+
+	private static TreeSet<String> names(Place[] places) {
+		TreeSet<String> names = new TreeSet<>();
+		for (Place place : places) {
+			names.add(place.getName());
+		}
+		return names;
+	}
+
+	private static Map<String, String> strings(Map<String, ExprTree> trees) {
+		Map<String, String> strings = new HashMap<>();
+		for (Map.Entry<String, ExprTree> entry : trees.entrySet()) {
+			strings.put(entry.getKey(), String.valueOf(entry.getValue()));
+		}
+		return strings;
+	}
+}